@@ -0,0 +1,92 @@
+package com.websolutions.companies.collection.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.websolutions.companies.collection.modelAI.JobFieldModelHolder;
+import com.websolutions.companies.collection.modelAI.PredictTitle;
+
+/*
+ * The job field classification : one title with the model already loaded, a chunk of titles as the classify stage
+ * of the ingestion pipeline sends them, and the cost of loading the model the first time (see coldModel).
+ * tokenize* compare the tokenizer of the training code (String.split, the regex compiled for every title) with the
+ * precompiled pattern PredictTitle uses.
+ * Reads models/jobFieldModel.tribuo, so run it from the companies.collection directory.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(3)
+public class ClassificationBenchmark {
+
+	private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^a-z0-9+]+");
+
+	private PredictTitle predictTitle;
+	private List<String> titles;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void loadModel() throws Exception {
+		JobFieldModelHolder holder = new JobFieldModelHolder();
+		holder.get();
+		predictTitle = new PredictTitle(holder);
+
+		titles = new ArrayList<>();
+		for (int i = 0; i < 256; i++) {
+			titles.add(Fixtures.TITLES.get(i % Fixtures.TITLES.size()));
+		}
+	}
+
+	private String nextTitle() {
+		next = (next + 1) % Fixtures.TITLES.size();
+		return Fixtures.TITLES.get(next);
+	}
+
+	@Benchmark
+	public String predictFieldCachedModel() throws Exception {
+		return predictTitle.predictField(nextTitle());
+	}
+
+	@Benchmark
+	public List<String> predictFieldsChunk() {
+		return predictTitle.predictFields(titles);
+	}
+
+	/* A new holder deserializes the model file on its first call, this is what the first offer of a run pays */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 2)
+	@Measurement(iterations = 10)
+	public String predictFieldColdModel() throws Exception {
+		return new PredictTitle(new JobFieldModelHolder()).predictField(nextTitle());
+	}
+
+	@Benchmark
+	public void tokenizeStringSplit(Blackhole blackhole) {
+		blackhole.consume(nextTitle().toLowerCase(Locale.ROOT).split("[^a-z0-9+]+"));
+	}
+
+	@Benchmark
+	public void tokenizePrecompiledPattern(Blackhole blackhole) {
+		blackhole.consume(TOKEN_SEPARATOR.split(nextTitle().toLowerCase(Locale.ROOT)));
+	}
+}
@@ -0,0 +1,224 @@
+package com.websolutions.companies.collection.benchmarks;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.websolutions.companies.collection.Application;
+import com.websolutions.companies.collection.browser.PageLoadStats;
+import com.websolutions.companies.collection.browser.PageLoadStats.PageLoadStat;
+import com.websolutions.companies.collection.browser.WebDriverPool;
+import com.websolutions.companies.collection.orchestration.CollectorOrchestrator;
+import com.websolutions.companies.collection.orchestration.CollectorRunReport;
+import com.websolutions.companies.collection.replay.FixtureArchive;
+import com.websolutions.companies.collection.replay.ReplayServer;
+import com.websolutions.companies.collection.services.CrawlMode;
+import com.websolutions.companies.collection.services.JobCollector;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+/*
+ * End to end crawl benchmark : runs whole collectors, from the listing to the rows in the database, and reports
+ * offers per second, the p50/p99 page load time, the WebDriver calls per offer and the SQL statements per offer.
+ *
+ *   mvn -Pjmh verify -Djmh.main=com.websolutions.companies.collection.benchmarks.CrawlBenchmark \
+ *       -Djmh.args="--fixtures=fixtures --parallelism=4 DevoteamJobCollector SqliJobCollector"
+ *
+ * Each collector runs once per scenario, on a new application context and an empty jobs_offers table of an embedded
+ * PostgreSQL. Its pages are served by a ReplayServer from <fixtures>/<collector>.zip (recorded with
+ * replay.record=true), so every scenario gets the same input and writes every offer :
+ * - http-sequential / http-parallel : the collector in http mode, one download at a time or --parallelism at a time.
+ *   A collector without an http mode (Alten, Expleo, Stellantis...) ignores it and loads the pages in its browser.
+ * - browser-sequential / browser-parallel (with --browser) : the collector in browser mode on the Grid of
+ *   selenium.url, without or with extra detail page sessions. The browsers load the recorded pages too.
+ * A Grid running in a container can't reach the loopback address the replay server listens on by default :
+ *   --replay-bind=0.0.0.0                   the address it listens on
+ *   --replay-host=host.docker.internal      the host name the browsers are given to reach it
+ * No rate limit applies, and the known offers filter and the checkpoints are off.
+ * */
+public final class CrawlBenchmark {
+
+	record Scenario(String name, boolean http, boolean parallel) {
+	}
+
+	record Result(String collector, Scenario scenario, long offers, Duration duration, PageLoadStat pages,
+			long webDriverCalls, long statements, String error) {
+
+		double offersPerSecond() {
+			return duration.isZero() ? 0 : offers * 1000.0 / duration.toMillis();
+		}
+
+		double perOffer(long value) {
+			return offers == 0 ? 0 : (double) value / offers;
+		}
+	}
+
+	private final Path fixtures;
+	private final int parallelism;
+	private final String jdbcUrl;
+	private final InetSocketAddress replayBind;
+	private final String replayHost;
+	private final StatementCounter statementCounter = new StatementCounter();
+
+	private CrawlBenchmark(Path fixtures, int parallelism, String jdbcUrl, InetSocketAddress replayBind,
+			String replayHost) {
+		this.fixtures = fixtures;
+		this.parallelism = parallelism;
+		this.jdbcUrl = jdbcUrl;
+		this.replayBind = replayBind;
+		this.replayHost = replayHost;
+	}
+
+	public static void main(String[] args) throws Exception {
+		/* The devtools restarter would start this main method again with the arguments of each context */
+		System.setProperty("spring.devtools.restart.enabled", "false");
+
+		Path fixtures = Paths.get("fixtures");
+		int parallelism = 4;
+		boolean browser = false;
+		InetSocketAddress replayBind = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+		String replayHost = null;
+		List<String> collectors = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.startsWith("--fixtures=")) {
+				fixtures = Paths.get(arg.substring("--fixtures=".length()));
+			} else if (arg.startsWith("--parallelism=")) {
+				parallelism = Math.max(1, Integer.parseInt(arg.substring("--parallelism=".length())));
+			} else if (arg.equals("--browser")) {
+				browser = true;
+			} else if (arg.startsWith("--replay-bind=")) {
+				replayBind = new InetSocketAddress(InetAddress.getByName(arg.substring("--replay-bind=".length())), 0);
+			} else if (arg.startsWith("--replay-host=")) {
+				replayHost = arg.substring("--replay-host=".length());
+			} else if (!arg.isBlank()) {
+				collectors.add(arg.strip());
+			}
+		}
+		if (collectors.isEmpty()) {
+			collectors = recordedCollectors(fixtures);
+		}
+
+		List<Scenario> scenarios = new ArrayList<>(List.of(new Scenario("http-sequential", true, false),
+				new Scenario("http-parallel", true, true)));
+		if (browser) {
+			scenarios.add(new Scenario("browser-sequential", false, false));
+			scenarios.add(new Scenario("browser-parallel", false, true));
+		}
+
+		List<Result> results = new ArrayList<>();
+		try (EmbeddedPostgres postgres = EmbeddedPostgres.start()) {
+			CrawlBenchmark benchmark = new CrawlBenchmark(fixtures, parallelism,
+					postgres.getJdbcUrl("postgres", "postgres"), replayBind, replayHost);
+			for (String collector : collectors) {
+				for (Scenario scenario : scenarios) {
+					benchmark.run(collector, scenario).ifPresent(results::add);
+				}
+			}
+		}
+		print(results, parallelism);
+		System.exit(0);
+	}
+
+	private static List<String> recordedCollectors(Path fixtures) throws IOException {
+		if (!Files.isDirectory(fixtures)) {
+			return List.of();
+		}
+		try (Stream<Path> files = Files.list(fixtures)) {
+			return files.map(file -> file.getFileName().toString())
+					.filter(name -> name.endsWith(".zip"))
+					.map(name -> name.substring(0, name.length() - ".zip".length()))
+					.sorted()
+					.toList();
+		}
+	}
+
+	private Optional<Result> run(String collectorName, Scenario scenario) throws Exception {
+		Path archive = fixtures.resolve(collectorName + ".zip");
+		if (!Files.exists(archive)) {
+			System.out.println("No fixtures for " + collectorName + " in " + fixtures + ", " + scenario.name()
+					+ " skipped (record them with replay.record=true)");
+			return Optional.empty();
+		}
+
+		SpringApplication application = new SpringApplication(Application.class);
+		application.addInitializers(context -> context.getBeanFactory().addBeanPostProcessor(statementCounter));
+		try (ReplayServer replayServer = ReplayServer.start(FixtureArchive.read(archive), replayBind, replayHost);
+				ConfigurableApplicationContext context = application.run(
+						arguments(collectorName, scenario, replayServer))) {
+			CollectorOrchestrator orchestrator = context.getBean(CollectorOrchestrator.class);
+			Optional<JobCollector> collector = orchestrator.getCollectors().stream()
+					.filter(candidate -> candidate.getName().equals(collectorName))
+					.findFirst();
+			if (collector.isEmpty()) {
+				System.out.println("No collector named " + collectorName + ", " + scenario.name() + " skipped");
+				return Optional.empty();
+			}
+
+			/* The fetch mode is read for each crawl, it only needs the company name the collector gives */
+			context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("crawl-benchmark",
+					Map.of("http-fetch.mode." + collector.get().getCompanyName(), scenario.http() ? "http" : "browser")));
+
+			context.getBean(JdbcTemplate.class).execute("TRUNCATE jobs_offers");
+			WebDriverPool webDriverPool = context.getBean(WebDriverPool.class);
+			long webDriverCallsBefore = webDriverPool.getCommandCount();
+			statementCounter.reset();
+
+			CollectorRunReport report = orchestrator.run(collector.get(), CrawlMode.FULL);
+
+			return Optional.of(new Result(collectorName, scenario, report.rowsAdded(), report.duration(),
+					context.getBean(PageLoadStats.class).overall(),
+					webDriverPool.getCommandCount() - webDriverCallsBefore, statementCounter.count(), report.error()));
+		}
+	}
+
+	/* Given as command line arguments, so they win over application.properties */
+	private String[] arguments(String collectorName, Scenario scenario, ReplayServer replayServer) {
+		Map<String, String> properties = new LinkedHashMap<>();
+		properties.put("spring.datasource.url", jdbcUrl);
+		properties.put("spring.datasource.username", "postgres");
+		properties.put("spring.datasource.password", "postgres");
+		properties.put("collectors.run-on-startup", "false");
+		properties.put("collectors.enabled", collectorName);
+		properties.put("scheduler.enabled", "false");
+		properties.put("known-offers.enabled", "false");
+		properties.put("checkpoints.enabled", "false");
+		properties.put("replay.record", "false");
+		properties.put("metrics.prometheus.enabled", "false");
+		properties.put("rate-limit.default.requests-per-second", "0");
+		properties.put("http-fetch.concurrency", String.valueOf(scenario.parallel() ? parallelism : 1));
+		properties.put("detail-fetch.extra-sessions", String.valueOf(scenario.parallel() ? parallelism - 1 : 0));
+		properties.put("replay.serve-from", replayServer.baseUrl());
+		return properties.entrySet().stream().map(entry -> "--" + entry.getKey() + "=" + entry.getValue())
+				.toArray(String[]::new);
+	}
+
+	private static void print(List<Result> results, int parallelism) {
+		StringBuilder table = new StringBuilder();
+		table.append(String.format("%nCrawl benchmark (parallel scenarios: %d at a time)%n", parallelism));
+		table.append(String.format("%-34s %-19s %7s %9s %9s %8s %8s %13s %13s  %s%n", "Collector", "Scenario", "Offers",
+				"Seconds", "Offers/s", "p50 ms", "p99 ms", "WD calls/off", "SQL stmt/off", "Error"));
+		for (Result result : results) {
+			table.append(String.format("%-34s %-19s %7d %9.1f %9.2f %8d %8d %13.1f %13.2f  %s%n", result.collector(),
+					result.scenario().name(), result.offers(), result.duration().toMillis() / 1000.0,
+					result.offersPerSecond(), result.pages().p50Millis(), result.pages().p99Millis(),
+					result.perOffer(result.webDriverCalls()), result.perOffer(result.statements()),
+					result.error() == null ? "" : result.error()));
+		}
+		System.out.println(table);
+	}
+}
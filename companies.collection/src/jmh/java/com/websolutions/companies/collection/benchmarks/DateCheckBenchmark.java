@@ -0,0 +1,62 @@
+package com.websolutions.companies.collection.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.websolutions.companies.collection.services.AltenJobCollector;
+import com.websolutions.companies.collection.services.StellantisJobCollector;
+
+/*
+ * The publication date check every job card goes through. Alten tries dd/MM/yyyy first and falls back to
+ * ISO dates through a DateTimeParseException, Stellantis only reads ISO dates.
+ * The collectors are built without their beans, the date check doesn't use any of them.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(3)
+public class DateCheckBenchmark {
+
+	private AltenJobCollector alten;
+	private StellantisJobCollector stellantis;
+	private List<String> dates;
+	private List<String> isoDates;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createCollectors() {
+		alten = new AltenJobCollector(null, null, null, null, null, null);
+		stellantis = new StellantisJobCollector(null, null, null, null, null, null);
+		dates = Fixtures.publishDates();
+		isoDates = dates.stream().filter(date -> date.contains("-")).toList();
+	}
+
+	private int nextIndex() {
+		return next++ & Integer.MAX_VALUE;
+	}
+
+	/* Both formats, the ISO half pays for the exception of the first attempt */
+	@Benchmark
+	public boolean altenMixedFormats() {
+		return alten.dateCheckValabilityStatus(dates.get(nextIndex() % dates.size()));
+	}
+
+	@Benchmark
+	public boolean stellantisIsoDates() {
+		return stellantis.dateCheckValabilityStatus(isoDates.get(nextIndex() % isoDates.size()));
+	}
+}
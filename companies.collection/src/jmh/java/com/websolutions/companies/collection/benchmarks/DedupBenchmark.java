@@ -0,0 +1,76 @@
+package com.websolutions.companies.collection.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.websolutions.companies.collection.entites.JobsOffers;
+import com.websolutions.companies.collection.utils.OfferFingerprint;
+
+/*
+ * The offer identity : the fingerprint of one offer, and the deduplication of a write chunk the way
+ * JobOffersBatch.firstSeen does it (one fingerprint per offer, kept in a set for the whole crawl).
+ * A quarter of the offers are duplicates, as when a listing shows the same job in several cities' pages.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(3)
+public class DedupBenchmark {
+
+	@Param({ "500" })
+	public int chunkSize;
+
+	private List<JobsOffers> offers;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createOffers() {
+		offers = new ArrayList<>(chunkSize);
+		int distinct = chunkSize - chunkSize / 4;
+		for (int i = 0; i < chunkSize; i++) {
+			int id = i % distinct;
+			String title = Fixtures.TITLES.get(id % Fixtures.TITLES.size());
+			String city = Fixtures.CITIES.get(id % Fixtures.CITIES.size());
+			offers.add(new JobsOffers(null, title, "Alten", city, "France",
+					"https://www.alten.fr/jobs/" + id + "-" + title.toLowerCase().replace(' ', '-'), "CDI", "Undefined",
+					"2025-09-01", null, "Description of job " + id));
+		}
+	}
+
+	@Benchmark
+	public UUID fingerprintOne() {
+		next = (next + 1) % chunkSize;
+		return OfferFingerprint.of(offers.get(next));
+	}
+
+	@Benchmark
+	public List<JobsOffers> firstSeenChunk() {
+		Set<UUID> seen = new HashSet<>();
+		List<JobsOffers> unique = new ArrayList<>();
+		for (JobsOffers offer : offers) {
+			if (seen.add(OfferFingerprint.of(offer))) {
+				unique.add(offer);
+			}
+		}
+		return unique;
+	}
+}
@@ -0,0 +1,51 @@
+package com.websolutions.companies.collection.benchmarks;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/*
+ * Inputs shaped like the values the collectors read on the career sites, shared by the benchmarks.
+ * */
+final class Fixtures {
+
+	static final List<String> TITLES = List.of(
+			"Ingénieur Logiciel Embarqué C/C++ H/F",
+			"Senior Java Backend Developer (Spring Boot)",
+			"Data Engineer - Azure / Databricks",
+			"Chef de projet SAP FI/CO",
+			"Validation Engineer ADAS",
+			"Stagiaire Ressources Humaines",
+			"DevOps Engineer Kubernetes & Terraform",
+			"Responsable Qualité Fournisseurs Automobile",
+			"Technicien de maintenance industrielle",
+			"Full Stack Developer React / Node.js",
+			"Consultant Cybersécurité SOC",
+			"Electrical Design Engineer Power Electronics",
+			"Business Analyst Finance",
+			"Ingénieur Calcul Structure Aéronautique",
+			"Product Owner Digital",
+			"Mechanical Engineer CATIA V5");
+
+	/* Cities of models/country_cities.json, written as the sites write them (case, spaces) */
+	static final List<String> CITIES = List.of("Lyon", "BORDEAUX", " Nantes ", "Stockholm", "göteborg", "Chicago",
+			"San Jose", "Seattle", "Canton", "Carlsbad");
+
+	/* Cities the local file is not expected to know, a lookup then falls through to Nominatim */
+	static final List<String> UNKNOWN_CITIES = List.of("Xqztown", "Nowhereville", "Plopville", "Zzyzx Springs");
+
+	static final List<String> COUNTRIES = List.of("France", "Deutschland", "czechia", "Morocco", "Spain", "India");
+
+	/* Publication dates in the two formats the Alten listing uses, half of them within the two months window */
+	static List<String> publishDates() {
+		LocalDate today = LocalDate.now();
+		DateTimeFormatter french = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+		return List.of(today.minusDays(3).format(french), today.minusDays(40).format(french),
+				today.minusMonths(3).format(french), today.minusMonths(8).format(french),
+				today.minusDays(10).toString(), today.minusDays(50).toString(), today.minusMonths(4).toString(),
+				today.minusYears(1).toString());
+	}
+
+	private Fixtures() {
+	}
+}
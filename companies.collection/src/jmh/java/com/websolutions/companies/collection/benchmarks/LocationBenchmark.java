@@ -0,0 +1,62 @@
+package com.websolutions.companies.collection.benchmarks;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.websolutions.companies.collection.locations.DetectCities;
+import com.websolutions.companies.collection.utils.CountryNormalizer;
+
+/*
+ * The geo lookups the normalize stage does for every offer without a country : the local city index
+ * (a hit, and a miss that would then go to Nominatim) and the country name normalization.
+ * Reads models/country_cities.json, so run it from the companies.collection directory. Nothing is sent to Nominatim.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(3)
+public class LocationBenchmark {
+
+	private final CountryNormalizer countryNormalizer = new CountryNormalizer();
+	private int next;
+
+	@Setup(Level.Trial)
+	public void loadIndex() throws Exception {
+		/* The first lookup reads the file, the benchmarks measure the lookups that follow */
+		DetectCities.findCountryInLocalJson(Fixtures.CITIES.get(0));
+	}
+
+	private int nextIndex() {
+		return next++ & Integer.MAX_VALUE;
+	}
+
+	@Benchmark
+	public Optional<String> findCountryInLocalJsonHit() throws Exception {
+		return DetectCities.findCountryInLocalJson(Fixtures.CITIES.get(nextIndex() % Fixtures.CITIES.size()));
+	}
+
+	@Benchmark
+	public Optional<String> findCountryInLocalJsonMiss() throws Exception {
+		return DetectCities.findCountryInLocalJson(
+				Fixtures.UNKNOWN_CITIES.get(nextIndex() % Fixtures.UNKNOWN_CITIES.size()));
+	}
+
+	@Benchmark
+	public String countryNormalizerFind() {
+		return countryNormalizer.find(Fixtures.COUNTRIES.get(nextIndex() % Fixtures.COUNTRIES.size()));
+	}
+}
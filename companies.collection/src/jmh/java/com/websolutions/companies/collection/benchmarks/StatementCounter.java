@@ -0,0 +1,77 @@
+package com.websolutions.companies.collection.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/*
+ * Counts the SQL statements sent to the database : wraps the DataSource bean, the connections it hands out and the
+ * statements they create, and counts every execute call. A batch (executeBatch) is one round trip, so it counts once
+ * whatever its number of rows, like a multi-row INSERT.
+ * */
+final class StatementCounter implements BeanPostProcessor {
+
+	private static final Set<String> EXECUTE_METHODS = Set.of("execute", "executeQuery", "executeUpdate",
+			"executeBatch", "executeLargeUpdate", "executeLargeBatch");
+
+	private static final Set<Class<?>> STATEMENT_TYPES = Set.of(Statement.class, PreparedStatement.class,
+			CallableStatement.class);
+
+	private final LongAdder statements = new LongAdder();
+
+	long count() {
+		return statements.sum();
+	}
+
+	void reset() {
+		statements.reset();
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (bean instanceof DataSource dataSource) {
+			return wrap(DataSource.class, dataSource);
+		}
+		return bean;
+	}
+
+	private <T> T wrap(Class<T> type, T target) {
+		InvocationHandler handler = (proxy, method, args) -> {
+			if (EXECUTE_METHODS.contains(method.getName())) {
+				statements.increment();
+			}
+			Object result = invoke(method, target, args);
+			return shouldWrap(method, result) ? wrapResult(method.getReturnType(), result) : result;
+		};
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+	}
+
+	private static boolean shouldWrap(Method method, Object result) {
+		Class<?> type = method.getReturnType();
+		return result != null && (type == Connection.class || STATEMENT_TYPES.contains(type));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Object wrapResult(Class type, Object result) {
+		return wrap(type, result);
+	}
+
+	private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
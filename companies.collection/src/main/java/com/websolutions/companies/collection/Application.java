@@ -1,22 +1,16 @@
 package com.websolutions.companies.collection;
 
-import java.io.IOException;
-
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import com.websolutions.companies.collection.ingestion.FingerprintBackfill;
 import com.websolutions.companies.collection.modelAI.PredictTitle;
 import com.websolutions.companies.collection.modelAI.TrainAndSave;
-import com.websolutions.companies.collection.services.AkkodisJobCollector;
-import com.websolutions.companies.collection.services.AltenJobCollector;
-import com.websolutions.companies.collection.services.ApsideJobCollector;
-import com.websolutions.companies.collection.services.AvlJobCollector;
-import com.websolutions.companies.collection.services.CapgeminiEngineeringJobCollector;
-import com.websolutions.companies.collection.services.CapgeminiJobCollector;
-import com.websolutions.companies.collection.services.DevoteamJobCollector;
-import com.websolutions.companies.collection.services.ExpleoJobCollector;
-import com.websolutions.companies.collection.services.HirschmannAutomotiveJobCollector;
+import com.websolutions.companies.collection.orchestration.CollectorOrchestrator;
+import com.websolutions.companies.collection.scheduling.CollectorScheduler;
+import com.websolutions.companies.collection.services.CrawlMode;
 import com.websolutions.companies.collection.services.repositories.ImportImagesService;
 
 @SpringBootApplication
@@ -24,18 +18,31 @@ public class Application implements CommandLineRunner {
 
 	private final ImportImagesService importImagesService;
 	
-    private final CapgeminiEngineeringJobCollector capgeminiJobCollector;
-    private final AvlJobCollector avlJobCollector;
-    private final HirschmannAutomotiveJobCollector hirschmannAutomotiveJobCollector;
+    private final CollectorOrchestrator collectorOrchestrator;
+    private final boolean runCollectorsOnStartup;
+    private final CrawlMode crawlMode;
+    private final CollectorScheduler collectorScheduler;
+    private final boolean schedulerEnabled;
     
     private final TrainAndSave trainAndSave;
+    private final PredictTitle predictTitle;
+    private final FingerprintBackfill fingerprintBackfill;
 
-    public Application(ImportImagesService importImagesService, CapgeminiEngineeringJobCollector capgeminiJobCollector, AvlJobCollector avlJobCollector, HirschmannAutomotiveJobCollector hirschmannAutomotiveJobCollector, TrainAndSave trainAndSave) {
+    public Application(ImportImagesService importImagesService, CollectorOrchestrator collectorOrchestrator, TrainAndSave trainAndSave, PredictTitle predictTitle,
+    		FingerprintBackfill fingerprintBackfill,
+    		@Value("${collectors.run-on-startup:false}") boolean runCollectorsOnStartup,
+    		@Value("${collectors.crawl-mode:recent}") CrawlMode crawlMode,
+    		CollectorScheduler collectorScheduler,
+    		@Value("${scheduler.enabled:false}") boolean schedulerEnabled) {
         this.importImagesService = importImagesService;
-    	this.capgeminiJobCollector = capgeminiJobCollector;
-        this.avlJobCollector = avlJobCollector;
-        this.hirschmannAutomotiveJobCollector = hirschmannAutomotiveJobCollector;
+    	this.collectorOrchestrator = collectorOrchestrator;
+        this.runCollectorsOnStartup = runCollectorsOnStartup;
+        this.crawlMode = crawlMode;
+        this.collectorScheduler = collectorScheduler;
+        this.schedulerEnabled = schedulerEnabled;
         this.trainAndSave = trainAndSave;
+        this.predictTitle = predictTitle;
+        this.fingerprintBackfill = fingerprintBackfill;
     }
 
     public static void main(String[] args) {
@@ -47,14 +54,29 @@ public class Application implements CommandLineRunner {
     	
     	trainAndSave.trainData();
     	System.out.println(" ---------------------------------------------- ");
-    	new PredictTitle().predictField("Diagnostic automotive engineer");
+    	predictTitle.predictField("Diagnostic automotive engineer");
 
     	//importImagesService.loadImages("Logos");
     	//importImagesService.loadFlags("Flags");
     	
-    	//capgeminiEngineeringJobCollector.getMoroccanJobs(false);
-//    	capgeminiJobCollector.getMoroccanJobs(false);
-//    	avlJobCollector.getFulljobs(false);
-    	//hirschmannAutomotiveJobCollector.getFulljobs(false);
+    	/* Rows stored before the fingerprint column existed get theirs before any new offer is compared to them */
+    	fingerprintBackfill.backfill();
+
+    	/*
+    	 * All the collectors (every JobCollector bean) run in parallel, bounded by collectors.parallelism.
+    	 * Use collectors.enabled to run only some of them, and collectors.crawl-mode to choose between the first pages
+    	 * only (recent), every page (full) or every page until the offers already stored (incremental).
+    	 */
+    	if (runCollectorsOnStartup) {
+    		collectorOrchestrator.runAll(crawlMode);
+    	}
+
+    	/*
+    	 * With scheduler.enabled the application keeps running and refreshes each collector on its own cadence
+    	 * (scheduler.collector.<name>.interval / .mode), see CollectorScheduler.
+    	 */
+    	if (schedulerEnabled) {
+    		collectorScheduler.start();
+    	}
     }
 }
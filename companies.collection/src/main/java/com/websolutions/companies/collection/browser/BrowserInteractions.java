@@ -0,0 +1,181 @@
+package com.websolutions.companies.collection.browser;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openqa.selenium.ElementClickInterceptedException;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.FluentWait;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+
+/*
+ * The clicks and waits shared by every collector.
+ * Each collector used to have its own safeClick : scroll, sleep 500 ms, click. The sleep was paid on every click,
+ * even when the element was ready right away, and it didn't protect against what actually goes wrong (an element
+ * still moving after the scroll, a cookie banner on top of it, a next page that is not loaded yet).
+ * Here we wait for those conditions instead, polling them closely, and we record how long each wait really took,
+ * per site, so slow sites can be told apart from fast ones.
+ * */
+@Service
+public class BrowserInteractions {
+
+	private static final Logger logger = Logger.getLogger(BrowserInteractions.class.getName());
+
+	/*
+	 * Runs in the browser, so scrolling and waiting for the element to settle cost one single round trip.
+	 * The element is ready when its position didn't change for two checks in a row, it is visible, not disabled,
+	 * and the point we are going to click belongs to it (nothing covering it).
+	 * Calls back false when maxMs is reached, the click is then attempted anyway.
+	 * */
+	private static final String SCROLL_AND_SETTLE_SCRIPT = """
+			const el = arguments[0], maxMs = arguments[1], done = arguments[arguments.length - 1];
+			el.scrollIntoView({block: 'center', inline: 'center'});
+			const start = Date.now();
+			let last = null, stable = 0;
+			function check() {
+			  const r = el.getBoundingClientRect();
+			  const key = r.top + ',' + r.left + ',' + r.width + ',' + r.height;
+			  stable = key === last ? stable + 1 : 0;
+			  last = key;
+			  const hit = r.width > 0 && r.height > 0
+			      ? document.elementFromPoint(r.left + r.width / 2, r.top + r.height / 2) : null;
+			  const ready = stable >= 2 && hit !== null && (hit === el || el.contains(hit)) && !el.disabled;
+			  if (ready) { done(true); return; }
+			  if (Date.now() - start > maxMs) { done(false); return; }
+			  setTimeout(check, 25);
+			}
+			check();
+			""";
+
+	/*
+	 * A cheap fingerprint of a listing : number of cards plus the text of the first and last one.
+	 * */
+	private static final String LISTING_SIGNATURE_SCRIPT = """
+			const cards = document.querySelectorAll(arguments[0]);
+			if (cards.length === 0) return '';
+			return cards.length + '|' + cards[0].innerText + '|' + cards[cards.length - 1].innerText;
+			""";
+
+	public record WaitStat(String site, String kind, long count, long totalMs, long maxMs) {
+		public long averageMs() {
+			return count == 0 ? 0 : totalMs / count;
+		}
+	}
+
+	private static final class WaitCounter {
+		final LongAdder count = new LongAdder();
+		final LongAdder totalMs = new LongAdder();
+		final AtomicLong maxMs = new AtomicLong();
+
+		void add(long ms) {
+			count.increment();
+			totalMs.add(ms);
+			maxMs.accumulateAndGet(ms, Math::max);
+		}
+	}
+
+	private final WebDriverPool webDriverPool;
+	private final long clickSettleTimeoutMs;
+	private final Duration listingChangeTimeout;
+	private final ConcurrentHashMap<String, WaitCounter> waits = new ConcurrentHashMap<>();
+	private final CollectorMetrics collectorMetrics;
+
+	public BrowserInteractions(WebDriverPool webDriverPool,
+			@Value("${browser.click-settle-timeout-ms:2000}") long clickSettleTimeoutMs,
+			@Value("${browser.listing-change-timeout-ms:10000}") long listingChangeTimeoutMs,
+			CollectorMetrics collectorMetrics) {
+		this.webDriverPool = webDriverPool;
+		this.clickSettleTimeoutMs = clickSettleTimeoutMs;
+		this.listingChangeTimeout = Duration.ofMillis(listingChangeTimeoutMs);
+		this.collectorMetrics = collectorMetrics;
+	}
+
+	/**
+	 * Scrolls the element to the center of the window, waits until it can really be clicked and clicks it.
+	 * If Selenium's click is still intercepted (an overlay that never goes away), the element is clicked through
+	 * JavaScript, like the old safeClick did. A click that still fails is logged and counted, the collector goes on
+	 * and finds out from what the page shows next.
+	 */
+	public void safeClick(WebDriver driver, WebElement element) {
+		long start = System.nanoTime();
+		try {
+			((JavascriptExecutor) driver).executeAsyncScript(SCROLL_AND_SETTLE_SCRIPT, element, clickSettleTimeoutMs);
+			record(driver, "click-settle", start);
+			element.click();
+		} catch (ElementClickInterceptedException e) {
+			((JavascriptExecutor) driver).executeScript("arguments[0].click();", element);
+		} catch (Exception e) {
+			collectorMetrics.clickFailed();
+			logger.log(Level.WARNING, "Error clicking an element on " + webDriverPool.siteOf(driver), e);
+		}
+	}
+
+	/**
+	 * The current state of a listing, to be taken just before clicking "next page".
+	 */
+	public String listingSignature(WebDriver driver, String cardSelector) {
+		try {
+			Object signature = ((JavascriptExecutor) driver).executeScript(LISTING_SIGNATURE_SCRIPT, cardSelector);
+			return signature == null ? "" : signature.toString();
+		} catch (Exception e) {
+			return "";
+		}
+	}
+
+	/**
+	 * Waits until the listing shows other cards than the ones of the given signature, so the next page is not read
+	 * before it replaced the previous one. Returns false if the listing didn't change within the timeout.
+	 */
+	public boolean awaitListingChange(WebDriver driver, String cardSelector, String previousSignature) {
+		long start = System.nanoTime();
+		try {
+			new FluentWait<>(driver).withTimeout(listingChangeTimeout).pollingEvery(Duration.ofMillis(100))
+					.until(d -> {
+						String signature = listingSignature(d, cardSelector);
+						return !signature.isEmpty() && !signature.equals(previousSignature);
+					});
+			return true;
+		} catch (Exception e) {
+			return false;
+		} finally {
+			record(driver, "listing-change", start);
+		}
+	}
+
+	public List<WaitStat> getWaitStats() {
+		List<WaitStat> stats = new ArrayList<>();
+		waits.forEach((key, counter) -> {
+			String[] parts = key.split("\\|", 2);
+			stats.add(new WaitStat(parts[0], parts[1], counter.count.sum(), counter.totalMs.sum(), counter.maxMs.get()));
+		});
+		stats.sort(Comparator.comparingLong(WaitStat::totalMs).reversed());
+		return stats;
+	}
+
+	public void logWaitStats() {
+		for (WaitStat stat : getWaitStats()) {
+			logger.info(String.format("Waits %-22s %-15s count=%d total=%dms avg=%dms max=%dms", stat.site(),
+					stat.kind(), stat.count(), stat.totalMs(), stat.averageMs(), stat.maxMs()));
+		}
+	}
+
+	private void record(WebDriver driver, String kind, long startNanos) {
+		long nanos = System.nanoTime() - startNanos;
+		collectorMetrics.waited(kind, nanos);
+		long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+		waits.computeIfAbsent(webDriverPool.siteOf(driver) + "|" + kind, key -> new WaitCounter()).add(ms);
+	}
+}
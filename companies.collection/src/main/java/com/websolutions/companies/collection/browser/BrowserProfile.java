@@ -0,0 +1,33 @@
+package com.websolutions.companies.collection.browser;
+
+import org.openqa.selenium.edge.EdgeOptions;
+
+/*
+ * The browser configurations used by the collectors.
+ * Most sites are crawled with a headless Edge, a few of them (Inetum, SQLi) refuse to serve a headless browser
+ * and need a regular window. Sessions of different profiles are never mixed in the pool.
+ * */
+public enum BrowserProfile {
+	HEADLESS(true),
+	HEADED(false);
+
+	private final boolean headless;
+
+	BrowserProfile(boolean headless) {
+		this.headless = headless;
+	}
+
+	public EdgeOptions toOptions() {
+		EdgeOptions options = new EdgeOptions();
+		options.addArguments("--no-sandbox");
+		if (headless) {
+			options.addArguments("--headless=new");
+		}
+		options.addArguments("--disable-dev-shm-usage");
+		options.addArguments("--lang=en-US");
+		options.addArguments("--disable-gpu");
+		options.addArguments("--disable-notifications");
+		options.addArguments("--window-size=1920,1080");
+		return options;
+	}
+}
@@ -0,0 +1,108 @@
+package com.websolutions.companies.collection.browser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Describes the job cards of a listing page : the CSS selector of one card and, for each value we need,
+ * where to find it inside the card. The description is plain data, so the same spec can be run inside the browser
+ * (CardExtractor, one executeScript per page) or on a downloaded HTML page.
+ *
+ *   CardSpec.of("div.job-card")
+ *       .text("title", "h3")
+ *       .attribute("link", "a", "href")
+ *       .optionalText("date", "span.date");
+ *
+ * A field selector is searched inside the card, an empty selector means the card itself. With an index,
+ * the n-th match is used (querySelectorAll(selector)[index]), and an inner selector can then go one level deeper.
+ * Cards missing a required field are dropped, like the collectors used to skip a card when findElement failed.
+ * */
+public final class CardSpec {
+
+	public enum Kind {
+		TEXT, HTML, ATTRIBUTE
+	}
+
+	public record Field(String name, String selector, int index, String innerSelector, Kind kind, String attribute,
+			boolean required) {
+
+		Map<String, Object> toMap() {
+			Map<String, Object> map = new HashMap<>();
+			map.put("name", name);
+			map.put("selector", selector);
+			map.put("index", index);
+			map.put("inner", innerSelector);
+			map.put("kind", kind.name());
+			map.put("attribute", attribute);
+			return map;
+		}
+	}
+
+	private final String cardSelector;
+	private final List<Field> fields = new ArrayList<>();
+
+	private CardSpec(String cardSelector) {
+		this.cardSelector = cardSelector;
+	}
+
+	public static CardSpec of(String cardSelector) {
+		return new CardSpec(cardSelector);
+	}
+
+	public CardSpec text(String name, String selector) {
+		return add(new Field(name, selector, -1, "", Kind.TEXT, "", true));
+	}
+
+	public CardSpec text(String name, String selector, int index, String innerSelector) {
+		return add(new Field(name, selector, index, innerSelector, Kind.TEXT, "", true));
+	}
+
+	public CardSpec optionalText(String name, String selector) {
+		return add(new Field(name, selector, -1, "", Kind.TEXT, "", false));
+	}
+
+	public CardSpec html(String name, String selector) {
+		return add(new Field(name, selector, -1, "", Kind.HTML, "", true));
+	}
+
+	public CardSpec html(String name, String selector, int index, String innerSelector) {
+		return add(new Field(name, selector, index, innerSelector, Kind.HTML, "", true));
+	}
+
+	public CardSpec optionalHtml(String name, String selector) {
+		return add(new Field(name, selector, -1, "", Kind.HTML, "", false));
+	}
+
+	public CardSpec attribute(String name, String selector, String attribute) {
+		return add(new Field(name, selector, -1, "", Kind.ATTRIBUTE, attribute, true));
+	}
+
+	public CardSpec optionalAttribute(String name, String selector, String attribute) {
+		return add(new Field(name, selector, -1, "", Kind.ATTRIBUTE, attribute, false));
+	}
+
+	private CardSpec add(Field field) {
+		fields.add(field);
+		return this;
+	}
+
+	public String getCardSelector() {
+		return cardSelector;
+	}
+
+	public List<Field> getFields() {
+		return List.copyOf(fields);
+	}
+
+	/*
+	 * The shape sent to the browser as the executeScript argument (maps and lists are converted to JS objects).
+	 * */
+	Map<String, Object> toScriptArgument() {
+		Map<String, Object> argument = new HashMap<>();
+		argument.put("card", cardSelector);
+		argument.put("fields", fields.stream().map(Field::toMap).toList());
+		return argument;
+	}
+}
@@ -0,0 +1,139 @@
+package com.websolutions.companies.collection.browser;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openqa.selenium.WebDriver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.ingestion.KnownOffersFilter;
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+import com.websolutions.companies.collection.replay.PageRecorder;
+
+/*
+ * Visits the detail page of every job found on the listing pages.
+ * The listing walk is sequential by nature (next page, next page...), but the detail pages don't depend on each other,
+ * so they are shared between the collector's own browser and a few extra sessions borrowed from the pool.
+ * Every session takes the next URL from a common counter, so a slow page never blocks the others.
+ * The extra sessions are driven from virtual threads : they spend their time waiting for the Grid, and the sessions
+ * the pool hands out are the only limit on their number.
+ *
+ * To stay polite with the career sites, every page load takes its turn from HostRateLimiter (in the WebDriverPool
+ * listener), whatever the number of sessions.
+ *
+ * The detail pages of offers already stored by a previous crawl are not visited at all (see KnownOffersFilter).
+ * When pages are recorded (see PageRecorder), the source of each loaded page is added to the fixture archive.
+ * */
+@Service
+public class DetailPageFetcher {
+
+	private static final Logger logger = Logger.getLogger(DetailPageFetcher.class.getName());
+
+	/*
+	 * Below this number of pages, opening or resetting extra sessions costs more than it saves.
+	 * */
+	private static final int PARALLEL_THRESHOLD = 4;
+
+	/**
+	 * The work done on one detail page, once it's loaded in the given driver.
+	 * The index is the position of the URL in the list given to {@link DetailPageFetcher#visitAll}.
+	 */
+	@FunctionalInterface
+	public interface DetailPageVisitor {
+		void visit(WebDriver driver, int index) throws Exception;
+	}
+
+	private final WebDriverPool webDriverPool;
+	private final int extraSessions;
+	private final KnownOffersFilter knownOffersFilter;
+	private final PageRecorder pageRecorder;
+	private final CollectorMetrics collectorMetrics;
+
+	public DetailPageFetcher(WebDriverPool webDriverPool,
+			@Value("${detail-fetch.extra-sessions:2}") int extraSessions,
+			KnownOffersFilter knownOffersFilter, PageRecorder pageRecorder,
+			CollectorMetrics collectorMetrics) {
+		this.webDriverPool = webDriverPool;
+		this.extraSessions = Math.max(0, extraSessions);
+		this.knownOffersFilter = knownOffersFilter;
+		this.pageRecorder = pageRecorder;
+		this.collectorMetrics = collectorMetrics;
+	}
+
+	/**
+	 * Loads every URL and hands the loaded page to the visitor, using the caller's driver plus the extra sessions
+	 * the pool can give right now. If the pool is busy (other collectors running), everything runs on the caller's
+	 * driver, exactly like a plain loop. Returns when every page has been visited.
+	 * URLs of offers already stored are skipped, the visitor is never called for their index.
+	 */
+	public void visitAll(WebDriver driver, List<String> urls, DetailPageVisitor visitor) {
+		Set<String> known = knownOffersFilter.knownLinks(urls);
+		if (!known.isEmpty()) {
+			logger.info("Skipping " + known.size() + " of " + urls.size() + " detail pages already stored");
+		}
+		AtomicInteger nextIndex = new AtomicInteger();
+		List<WebDriver> borrowed = new ArrayList<>();
+		/* The workers of this call live inside this block : close() waits for all of them before the sessions go back */
+		try (ExecutorService workers = Executors.newThreadPerTaskExecutor(
+				Thread.ofVirtual().name("detail-fetch-", 1).factory())) {
+			int toVisit = urls.size() - known.size();
+			if (toVisit >= PARALLEL_THRESHOLD) {
+				int wanted = Math.min(extraSessions, toVisit / PARALLEL_THRESHOLD);
+				for (int i = 0; i < wanted; i++) {
+					/* Never wait for a session here : a collector with one browser is still better than a blocked one */
+					WebDriver extra = webDriverPool.tryBorrowSimilar(driver, Duration.ZERO).orElse(null);
+					if (extra == null) {
+						break;
+					}
+					borrowed.add(extra);
+					workers.submit(() -> work(extra, urls, known, nextIndex, visitor));
+				}
+			}
+
+			work(driver, urls, known, nextIndex, visitor);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			borrowed.forEach(webDriverPool::release);
+		}
+	}
+
+	private void work(WebDriver driver, List<String> urls, Set<String> known, AtomicInteger nextIndex,
+			DetailPageVisitor visitor) {
+		int index;
+		while ((index = nextIndex.getAndIncrement()) < urls.size()) {
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			String url = urls.get(index);
+			if (known.contains(url)) {
+				continue;
+			}
+			long start = System.nanoTime();
+			try {
+				driver.get(url);
+				if (pageRecorder.isRecording()) {
+					/* One more Grid round trip per page, only paid while recording */
+					pageRecorder.record(url, 200, "text/html", driver.getPageSource());
+				}
+				visitor.visit(driver, index);
+				collectorMetrics.detailFetched("browser", System.nanoTime() - start, true);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				collectorMetrics.detailFetched("browser", System.nanoTime() - start, false);
+				collectorMetrics.extractionFailed("detail");
+				logger.log(Level.WARNING, "Unexpected error at job " + index + " (" + url + ")", e);
+			}
+		}
+	}
+}
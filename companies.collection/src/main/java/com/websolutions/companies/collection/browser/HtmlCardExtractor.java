@@ -0,0 +1,63 @@
+package com.websolutions.companies.collection.browser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+/*
+ * Runs a CardSpec on a page downloaded by HttpPageFetcher, the same way CardExtractor runs it inside the browser.
+ * A collector can then describe its cards once and read them in browser mode or in HTTP mode.
+ *
+ * text() is used for the TEXT fields : like innerText it drops the tags, but it also joins the lines with spaces.
+ * */
+public final class HtmlCardExtractor {
+
+	private HtmlCardExtractor() {
+	}
+
+	/**
+	 * Returns one map per card (field name -> stripped value, in card order). Optional fields that were not
+	 * found are null, cards missing a required field are left out.
+	 */
+	public static List<Map<String, String>> extract(Element page, CardSpec spec) {
+		List<Map<String, String>> cards = new ArrayList<>();
+		for (Element card : page.select(spec.getCardSelector())) {
+			Map<String, String> values = new HashMap<>();
+			for (CardSpec.Field field : spec.getFields()) {
+				values.put(field.name(), valueOf(card, field));
+			}
+			Map<String, String> row = CardExtractor.toCard(values, spec);
+			if (row != null) {
+				cards.add(row);
+			}
+		}
+		return cards;
+	}
+
+	private static String valueOf(Element card, CardSpec.Field field) {
+		Element element = card;
+		if (!field.selector().isEmpty()) {
+			if (field.index() >= 0) {
+				Elements matches = card.select(field.selector());
+				element = field.index() < matches.size() ? matches.get(field.index()) : null;
+			} else {
+				element = card.selectFirst(field.selector());
+			}
+		}
+		if (element != null && !field.innerSelector().isEmpty()) {
+			element = element.selectFirst(field.innerSelector());
+		}
+		if (element == null) {
+			return null;
+		}
+		return switch (field.kind()) {
+			case TEXT -> element.text();
+			case HTML -> element.html();
+			case ATTRIBUTE -> element.hasAttr(field.attribute()) ? element.attr(field.attribute()) : null;
+		};
+	}
+}
@@ -0,0 +1,196 @@
+package com.websolutions.companies.collection.browser;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.ingestion.KnownOffersFilter;
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+import com.websolutions.companies.collection.ratelimit.HostRateLimiter;
+import com.websolutions.companies.collection.replay.PageRecorder;
+import com.websolutions.companies.collection.replay.ReplayServer;
+
+import jakarta.annotation.PreDestroy;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/*
+ * Downloads pages with a plain HTTP client and parses them with jsoup, without any browser.
+ * Some career sites (Devoteam, SQLi, Inetum, the SuccessFactors pages of Lear and AVL) send the job list in the
+ * first HTML response, so a Grid session only adds a page render we don't need. Here a page costs one HTTP request,
+ * and the detail pages are downloaded at the same time, each on its own virtual thread : a thread waiting for
+ * a response holds no platform thread, so the number of pages in flight is only bounded by the host limits
+ * (http-fetch.concurrency requests at a time, at the rate HostRateLimiter allows for the host).
+ *
+ * The mode is chosen per company with http-fetch.mode.<company>=http (browser is the default), so a site can go
+ * back to the browser as soon as it starts rendering its list with JavaScript.
+ *
+ * Record and replay : with replay.record the downloaded pages are saved by PageRecorder, with replay.serve-from
+ * every download goes to a ReplayServer instead of the site. The documents keep the URL of the site as base URI,
+ * so the links the parsers read and the host limits stay the same as in a live crawl.
+ * */
+@Service
+public class HttpPageFetcher {
+
+	private static final Logger logger = Logger.getLogger(HttpPageFetcher.class.getName());
+
+	/**
+	 * The work done on one downloaded page.
+	 * The index is the position of the URL in the list given to {@link HttpPageFetcher#visitAll}.
+	 */
+	@FunctionalInterface
+	public interface PageVisitor {
+		void visit(Document page, int index) throws Exception;
+	}
+
+	private final Environment environment;
+	private final OkHttpClient client;
+	private final String userAgent;
+	private final int concurrency;
+	private final ConcurrentHashMap<String, Semaphore> inFlight = new ConcurrentHashMap<>();
+	private final HostRateLimiter hostRateLimiter;
+	private final KnownOffersFilter knownOffersFilter;
+	private final PageRecorder pageRecorder;
+	private final PageLoadStats pageLoadStats;
+	private final CollectorMetrics collectorMetrics;
+	/* Base URL of a ReplayServer, empty for a live crawl */
+	private final String replayServeFrom;
+
+	public HttpPageFetcher(Environment environment,
+			@Value("${http-fetch.user-agent:Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/137.0.0.0 Safari/537.36 Edg/137.0.0.0}") String userAgent,
+			@Value("${http-fetch.timeout-seconds:20}") int timeoutSeconds,
+			@Value("${http-fetch.concurrency:4}") int concurrency,
+			@Value("${replay.serve-from:}") String replayServeFrom,
+			HostRateLimiter hostRateLimiter, KnownOffersFilter knownOffersFilter, PageRecorder pageRecorder,
+			PageLoadStats pageLoadStats, CollectorMetrics collectorMetrics) {
+		this.environment = environment;
+		this.userAgent = userAgent;
+		this.concurrency = Math.max(1, concurrency);
+		this.hostRateLimiter = hostRateLimiter;
+		this.knownOffersFilter = knownOffersFilter;
+		this.pageRecorder = pageRecorder;
+		this.pageLoadStats = pageLoadStats;
+		this.collectorMetrics = collectorMetrics;
+		this.replayServeFrom = replayServeFrom.strip();
+
+		/* One client for the whole application, so every collector reuses the same connection pool */
+		this.client = new OkHttpClient.Builder()
+				.callTimeout(Duration.ofSeconds(timeoutSeconds))
+				.followRedirects(true)
+				.build();
+	}
+
+	/**
+	 * True when the company is configured to be crawled over plain HTTP instead of a browser session.
+	 */
+	public boolean isHttpMode(String company) {
+		String mode = environment.getProperty("http-fetch.mode." + company, "browser");
+		return mode.strip().toLowerCase(Locale.ROOT).equals("http");
+	}
+
+	/**
+	 * Downloads and parses one page. The document keeps the final URL (after redirects) as base URI,
+	 * so element.absUrl("href") gives absolute links. Pretty printing is turned off, so html() returns the markup
+	 * as the site sent it, like innerHTML in the browser.
+	 */
+	public Document fetch(String url) throws IOException, InterruptedException {
+		Semaphore hostSlots = inFlight.computeIfAbsent(HostRateLimiter.hostOf(url),
+				host -> new Semaphore(concurrency, true));
+		hostSlots.acquire();
+		try {
+			hostRateLimiter.acquire(url);
+			long start = System.nanoTime();
+			Document page = download(url);
+			pageLoadStats.record(url, "http", System.nanoTime() - start);
+			return page;
+		} finally {
+			hostSlots.release();
+		}
+	}
+
+	private Document download(String url) throws IOException {
+		boolean replay = !replayServeFrom.isEmpty();
+		Request request = new Request.Builder()
+				.url(replay ? ReplayServer.localUrl(replayServeFrom, url) : url)
+				.header("User-Agent", userAgent)
+				.header("Accept", "text/html,application/xhtml+xml")
+				.header("Accept-Language", "en-US,en;q=0.9")
+				.build();
+
+		try (Response response = client.newCall(request).execute()) {
+			ResponseBody body = response.body();
+			if (!response.isSuccessful() || body == null) {
+				throw new IOException("HTTP " + response.code() + " for " + url);
+			}
+			String html = body.string();
+			String finalUrl = replay ? url : response.request().url().toString();
+			/* Recorded under the requested URL, the one the replay will ask for */
+			pageRecorder.record(url, response.code(), "text/html", html);
+			Document page = Jsoup.parse(html, finalUrl);
+			page.outputSettings().prettyPrint(false);
+			return page;
+		}
+	}
+
+	/**
+	 * Downloads every URL and hands the parsed page to the visitor, one virtual thread per page.
+	 * The host limits still apply, so more pages in flight never means more load on the site than configured.
+	 * Returns when every page has been visited. URLs of offers already stored are not downloaded (see KnownOffersFilter).
+	 */
+	public void visitAll(List<String> urls, PageVisitor visitor) {
+		Set<String> known = knownOffersFilter.knownLinks(urls);
+		if (!known.isEmpty()) {
+			logger.info("Skipping " + known.size() + " of " + urls.size() + " detail pages already stored");
+		}
+		/* The pages of this call are fetched inside this block : close() waits for all of them */
+		try (ExecutorService pages = Executors.newThreadPerTaskExecutor(
+				Thread.ofVirtual().name("http-fetch-", 1).factory())) {
+			for (int i = 0; i < urls.size(); i++) {
+				String url = urls.get(i);
+				if (known.contains(url)) {
+					continue;
+				}
+				int index = i;
+				pages.submit(() -> visit(url, index, visitor));
+			}
+		}
+	}
+
+	private void visit(String url, int index, PageVisitor visitor) {
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			visitor.visit(fetch(url), index);
+			succeeded = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			collectorMetrics.extractionFailed(e instanceof IOException ? "download" : "detail");
+			logger.log(Level.WARNING, "Unexpected error at job " + index + " (" + url + ")", e);
+		} finally {
+			collectorMetrics.detailFetched("http", System.nanoTime() - start, succeeded);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		client.dispatcher().executorService().shutdown();
+		client.connectionPool().evictAll();
+	}
+}
@@ -0,0 +1,190 @@
+package com.websolutions.companies.collection.browser;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openqa.selenium.WebDriver;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.websolutions.companies.collection.browser.NetworkResponseCapture.CapturedResponse;
+import com.websolutions.companies.collection.browser.NetworkResponseCapture.Recorder;
+import com.websolutions.companies.collection.entites.JobsOffers;
+
+/*
+ * Turns the JSON payloads of a listing API into JobsOffers, using JSON pointers declared per company in
+ * application.properties :
+ *
+ *   json-capture.<company>.url-contains   part of the API url, used to pick the responses to record
+ *   json-capture.<company>.items          pointer to the array of jobs in the payload
+ *   json-capture.<company>.title / city / country / contract-type / publish-date / link
+ *                                         pointers inside one job, empty means "Undefined"
+ *   json-capture.<company>.link-prefix    added in front of the link value (relative links)
+ *
+ * The offers returned only carry the listing data, their url is the detail page link. The collector still fills
+ * the rest (post, apply link, job field) like it does for the offers read from the DOM.
+ * */
+@Service
+public class JsonListingMapper {
+
+	private static final Logger logger = Logger.getLogger(JsonListingMapper.class.getName());
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final String UNDEFINED = "Undefined";
+
+	public record JsonListingSpec(String urlContains, String items, String title, String city, String country,
+			String contractType, String publishDate, String link, String linkPrefix) {}
+
+	private final boolean enabled;
+	private final Environment environment;
+	private final NetworkResponseCapture networkResponseCapture;
+
+	/**
+	 * The listing pages of one collector run, read from the captured API payloads.
+	 */
+	public final class ListingCapture implements AutoCloseable {
+		private final Recorder recorder;
+		private final JsonListingSpec spec;
+		private final String company;
+		private boolean failed = false;
+
+		private ListingCapture(Recorder recorder, JsonListingSpec spec, String company) {
+			this.recorder = recorder;
+			this.spec = spec;
+			this.company = company;
+		}
+
+		/**
+		 * The jobs of the page that was just loaded. Only the most recent payload is kept, an API called twice
+		 * for the same page (default size then a bigger one) doesn't produce duplicates.
+		 * Once a page gives nothing the capture is considered not working for this site, and the next calls return
+		 * an empty list immediately so the DOM fallback doesn't wait for a timeout on every page.
+		 */
+		public List<JobsOffers> nextPage(Duration timeout) {
+			if (failed) {
+				return List.of();
+			}
+			try {
+				List<CapturedResponse> responses = recorder.awaitResponses(timeout);
+				List<JobsOffers> offers = responses.isEmpty() ? List.of() : map(List.of(responses.getLast()), spec, company);
+				if (offers.isEmpty()) {
+					failed = true;
+					logger.info("No usable listing payload for " + company + ", reading the page instead");
+				}
+				return offers;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return List.of();
+			}
+		}
+
+		/**
+		 * Forgets the responses received so far, called before an action whose response is the one we want.
+		 */
+		public void discardPending() {
+			recorder.clear();
+		}
+
+		@Override
+		public void close() {
+			recorder.close();
+		}
+	}
+
+	public JsonListingMapper(Environment environment, NetworkResponseCapture networkResponseCapture) {
+		this.environment = environment;
+		this.networkResponseCapture = networkResponseCapture;
+		this.enabled = environment.getProperty("json-capture.enabled", Boolean.class, false);
+	}
+
+	/**
+	 * The mapping of a company, empty when JSON capture is disabled or the company has no mapping.
+	 */
+	public Optional<JsonListingSpec> specFor(String company) {
+		String prefix = "json-capture." + company + ".";
+		String urlContains = environment.getProperty(prefix + "url-contains", "");
+		if (!enabled || urlContains.isBlank()) {
+			return Optional.empty();
+		}
+		return Optional.of(new JsonListingSpec(urlContains,
+				environment.getProperty(prefix + "items", ""),
+				environment.getProperty(prefix + "title", ""),
+				environment.getProperty(prefix + "city", ""),
+				environment.getProperty(prefix + "country", ""),
+				environment.getProperty(prefix + "contract-type", ""),
+				environment.getProperty(prefix + "publish-date", ""),
+				environment.getProperty(prefix + "link", ""),
+				environment.getProperty(prefix + "link-prefix", "")));
+	}
+
+	/**
+	 * Starts recording the listing API of the company on this driver, before the first page is loaded.
+	 * Empty when the company has no mapping or the session has no DevTools : the collector reads the DOM.
+	 */
+	public Optional<ListingCapture> capture(WebDriver driver, String company) {
+		return specFor(company).flatMap(spec -> networkResponseCapture.record(driver, spec.urlContains())
+				.map(recorder -> new ListingCapture(recorder, spec, company)));
+	}
+
+	/**
+	 * Maps every captured payload. Jobs without a title or a link are dropped, so a payload that doesn't match
+	 * the expected shape gives an empty list and the collector falls back to the DOM.
+	 */
+	public List<JobsOffers> map(List<CapturedResponse> responses, JsonListingSpec spec, String company) {
+		List<JobsOffers> offers = new ArrayList<>();
+		for (CapturedResponse response : responses) {
+			if (response.status() >= 400) {
+				continue;
+			}
+			try {
+				JsonNode items = MAPPER.readTree(response.body()).at(spec.items());
+				if (!items.isArray()) {
+					continue;
+				}
+				for (JsonNode item : items) {
+					String title = text(item, spec.title());
+					String link = text(item, spec.link());
+					if (title.equals(UNDEFINED) || link.equals(UNDEFINED)) {
+						continue;
+					}
+					JobsOffers offer = new JobsOffers();
+					offer.setTitle(title);
+					offer.setCompany(company);
+					offer.setCity(text(item, spec.city()));
+					offer.setCountry(text(item, spec.country()));
+					offer.setContractType(text(item, spec.contractType()));
+					offer.setPublishDate(text(item, spec.publishDate()));
+					offer.setUrl(link.startsWith("http") ? link : spec.linkPrefix() + link);
+					offers.add(offer);
+				}
+			} catch (Exception e) {
+				logger.log(Level.INFO, "Unreadable listing payload from " + response.url() + ": " + e.getMessage());
+			}
+		}
+		return offers;
+	}
+
+	/*
+	 * Arrays (several locations for one job) are joined with ", " like the DOM collectors do with multi-line cells.
+	 * */
+	private static String text(JsonNode item, String pointer) {
+		if (pointer.isBlank()) {
+			return UNDEFINED;
+		}
+		JsonNode node = item.at(pointer);
+		String value;
+		if (node.isArray()) {
+			List<String> parts = new ArrayList<>();
+			node.forEach(part -> parts.add(part.asText().strip()));
+			value = String.join(", ", parts);
+		} else {
+			value = node.isMissingNode() || node.isNull() ? "" : node.asText().strip();
+		}
+		return value.isEmpty() ? UNDEFINED : value;
+	}
+}
@@ -0,0 +1,79 @@
+package com.websolutions.companies.collection.browser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openqa.selenium.devtools.DevTools;
+import org.openqa.selenium.devtools.v137.network.Network;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+/*
+ * The collectors only read text from the pages, but every driver.get() downloads the whole marketing page :
+ * hero images, videos, web fonts and a handful of trackers. When network-filter.enabled is true, those requests are
+ * blocked inside the browser through the Chrome DevTools Protocol (Network.setBlockedURLs), before they leave the
+ * Selenium node.
+ *
+ * Some sites break without a resource (a layout relying on a font, a button drawn by an svg...). For those, the
+ * patterns listed in network-filter.allow.<company> are removed from the blocked list, and "*" turns the filter off
+ * for that company. Example : network-filter.allow.Stellantis=*.svg
+ * */
+@Service
+public class NetworkFilter {
+
+	public static final List<String> DEFAULT_BLOCKED_PATTERNS = List.of(
+			/* images */
+			"*.png", "*.jpg", "*.jpeg", "*.gif", "*.webp", "*.avif", "*.svg", "*.ico",
+			/* media */
+			"*.mp4", "*.webm", "*.mp3", "*.m3u8",
+			/* fonts */
+			"*.woff", "*.woff2", "*.ttf", "*.otf", "*.eot", "*fonts.googleapis.com*", "*fonts.gstatic.com*",
+			/* analytics and ads */
+			"*google-analytics.com*", "*googletagmanager.com*", "*doubleclick.net*", "*connect.facebook.net*",
+			"*hotjar.com*", "*clarity.ms*", "*snap.licdn.com*", "*px.ads.linkedin.com*", "*bat.bing.com*");
+
+	private final boolean enabled;
+	private final List<String> blockedPatterns;
+	private final Environment environment;
+
+	public NetworkFilter(@Value("${network-filter.enabled:false}") boolean enabled,
+			@Value("${network-filter.blocked-patterns:}") String blockedPatterns, Environment environment) {
+		this.enabled = enabled;
+		this.blockedPatterns = blockedPatterns.isBlank() ? DEFAULT_BLOCKED_PATTERNS : split(blockedPatterns);
+		this.environment = environment;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * The patterns to block for one company, once its allowlist is applied.
+	 */
+	public List<String> blockedPatternsFor(String site) {
+		String allowed = site == null ? null : environment.getProperty("network-filter.allow." + site);
+		if (allowed == null || allowed.isBlank()) {
+			return blockedPatterns;
+		}
+		List<String> allowList = split(allowed);
+		if (allowList.contains("*")) {
+			return List.of();
+		}
+		List<String> patterns = new ArrayList<>(blockedPatterns);
+		patterns.removeAll(allowList);
+		return patterns;
+	}
+
+	/**
+	 * Replaces the blocked URL list of the session with the one of the given company.
+	 */
+	public void apply(DevTools devTools, String site) {
+		devTools.send(Network.setBlockedURLs(blockedPatternsFor(site)));
+	}
+
+	private static List<String> split(String value) {
+		return Arrays.stream(value.split(",")).map(String::strip).filter(s -> !s.isEmpty()).toList();
+	}
+}
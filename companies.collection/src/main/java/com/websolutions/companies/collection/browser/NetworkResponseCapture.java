@@ -0,0 +1,137 @@
+package com.websolutions.companies.collection.browser;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.devtools.DevTools;
+import org.openqa.selenium.devtools.v137.network.Network;
+import org.openqa.selenium.devtools.v137.network.model.RequestId;
+import org.openqa.selenium.devtools.v137.network.model.Response;
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.replay.PageRecorder;
+
+/*
+ * Several career sites build their job list in the browser from a JSON API (XHR/fetch). Reading the rendered list
+ * costs one Grid round trip per findElement/getText, so a page of 50 jobs easily needs 300 calls.
+ * Instead, we listen to the network events of the session through DevTools and keep the JSON responses of the
+ * listing API : the whole page of jobs comes back in one payload.
+ * When pages are recorded (see PageRecorder), the payloads go to the fixture archive of the crawl as well.
+ * */
+@Service
+public class NetworkResponseCapture {
+
+	private static final Logger logger = Logger.getLogger(NetworkResponseCapture.class.getName());
+
+	public record CapturedResponse(String url, int status, String body) {}
+
+	private final WebDriverPool webDriverPool;
+	private final PageRecorder pageRecorder;
+
+	public NetworkResponseCapture(WebDriverPool webDriverPool, PageRecorder pageRecorder) {
+		this.webDriverPool = webDriverPool;
+		this.pageRecorder = pageRecorder;
+	}
+
+	/**
+	 * Starts recording the JSON responses whose URL contains the given text. Must be called before the navigation
+	 * or the click that triggers the API call. Empty when the session has no DevTools, the caller then reads the DOM.
+	 */
+	public Optional<Recorder> record(WebDriver driver, String urlContains) {
+		return webDriverPool.devTools(driver)
+				.map(devTools -> new Recorder(webDriverPool, driver, devTools, urlContains, pageRecorder));
+	}
+
+	public static final class Recorder implements AutoCloseable {
+
+		private record Finished(RequestId requestId, Response response) {}
+
+		private final DevTools devTools;
+		private final PageRecorder pageRecorder;
+		private final Map<RequestId, Response> pending = new ConcurrentHashMap<>();
+		private final BlockingQueue<Finished> finished = new LinkedBlockingQueue<>();
+		private final List<Runnable> listenerRemovals = new ArrayList<>();
+
+		/*
+		 * responseReceived only gives the headers, the body is complete once loadingFinished arrives for the same
+		 * request id. The bodies are fetched later from the collector thread, not inside the listeners.
+		 * The listeners go through the pool, so close() removes these two and leaves the others of the session.
+		 * */
+		private Recorder(WebDriverPool webDriverPool, WebDriver driver, DevTools devTools, String urlContains,
+				PageRecorder pageRecorder) {
+			this.devTools = devTools;
+			this.pageRecorder = pageRecorder;
+			webDriverPool.addDevToolsListener(driver, Network.responseReceived(), event -> {
+				Response response = event.getResponse();
+				if (response.getUrl().contains(urlContains) && response.getMimeType().contains("json")) {
+					pending.put(event.getRequestId(), response);
+				}
+			}).ifPresent(listenerRemovals::add);
+			webDriverPool.addDevToolsListener(driver, Network.loadingFinished(), event -> {
+				Response response = pending.remove(event.getRequestId());
+				if (response != null) {
+					finished.add(new Finished(event.getRequestId(), response));
+				}
+			}).ifPresent(listenerRemovals::add);
+		}
+
+		/**
+		 * Waits for the first matching response (up to the timeout), then returns it with every other response
+		 * already finished. Each response is returned only once, so calling this after each "next page" click
+		 * gives the payload of that page. Returns an empty list when nothing came.
+		 */
+		public List<CapturedResponse> awaitResponses(Duration timeout) throws InterruptedException {
+			Finished first = finished.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+			if (first == null) {
+				return List.of();
+			}
+			List<Finished> ready = new ArrayList<>();
+			ready.add(first);
+			finished.drainTo(ready);
+
+			List<CapturedResponse> responses = new ArrayList<>();
+			for (Finished item : ready) {
+				try {
+					Network.GetResponseBodyResponse body = devTools.send(Network.getResponseBody(item.requestId()));
+					String text = Boolean.TRUE.equals(body.getBase64Encoded())
+							? new String(Base64.getDecoder().decode(body.getBody()), StandardCharsets.UTF_8)
+							: body.getBody();
+					responses.add(new CapturedResponse(item.response().getUrl(), item.response().getStatus(), text));
+					pageRecorder.record(item.response().getUrl(), item.response().getStatus(), "application/json", text);
+				} catch (Exception e) {
+					logger.log(Level.FINE, "Response body not available for " + item.response().getUrl(), e);
+				}
+			}
+			return responses;
+		}
+
+		/**
+		 * Drops the responses already received or in flight.
+		 */
+		public void clear() {
+			pending.clear();
+			finished.clear();
+		}
+
+		/**
+		 * Removes the listeners of this recorder only, the other listeners of the session keep running.
+		 */
+		@Override
+		public void close() {
+			listenerRemovals.forEach(Runnable::run);
+			clear();
+		}
+	}
+}
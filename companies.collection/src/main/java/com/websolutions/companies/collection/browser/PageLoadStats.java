@@ -0,0 +1,126 @@
+package com.websolutions.companies.collection.browser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+import com.websolutions.companies.collection.ratelimit.HostRateLimiter;
+
+/*
+ * How long the pages of each host take to load : every driver.get of a browser session, listing and detail pages
+ * (timed by the WebDriverPool listener), and the download of a page over plain HTTP (HttpPageFetcher). The time waited for the rate limit
+ * is not included, HostRateLimiter counts it on its own.
+ *
+ * A median and a 99th percentile say more than an average here, a few pages timing out hide behind a good average.
+ * Each host keeps its last SAMPLES load times only, so the memory stays the same however long the application runs.
+ * Every load is also recorded in the collector.page.load timer of the collector (see CollectorMetrics).
+ * */
+@Service
+public class PageLoadStats {
+
+	private static final Logger logger = Logger.getLogger(PageLoadStats.class.getName());
+
+	private static final int SAMPLES = 10_000;
+
+	public record PageLoadStat(String host, long count, long p50Millis, long p99Millis, long maxMillis) {
+
+		@Override
+		public String toString() {
+			return String.format("%-40s %6d pages, p50 %dms, p99 %dms, max %dms", host, count, p50Millis, p99Millis,
+					maxMillis);
+		}
+	}
+
+	/* The last SAMPLES load times of one host, in a ring */
+	private static final class Samples {
+		private final long[] nanos = new long[SAMPLES];
+		private long count;
+
+		synchronized void add(long value) {
+			nanos[(int) (count % SAMPLES)] = value;
+			count++;
+		}
+
+		synchronized long[] snapshot() {
+			return Arrays.copyOf(nanos, (int) Math.min(count, SAMPLES));
+		}
+
+		synchronized long count() {
+			return count;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Samples> hosts = new ConcurrentHashMap<>();
+	private final CollectorMetrics collectorMetrics;
+
+	public PageLoadStats(CollectorMetrics collectorMetrics) {
+		this.collectorMetrics = collectorMetrics;
+	}
+
+	/**
+	 * One page loaded, fetch is "browser" or "http".
+	 */
+	public void record(String url, String fetch, long nanos) {
+		hosts.computeIfAbsent(HostRateLimiter.hostOf(url), host -> new Samples()).add(nanos);
+		collectorMetrics.pageLoaded(fetch, nanos);
+	}
+
+	public List<PageLoadStat> stats() {
+		List<PageLoadStat> stats = new ArrayList<>();
+		hosts.forEach((host, samples) -> stats.add(stat(host, samples.count(), samples.snapshot())));
+		stats.sort(Comparator.comparing(PageLoadStat::host));
+		return stats;
+	}
+
+	/**
+	 * Every host together, the percentiles are computed on the samples of all of them.
+	 */
+	public PageLoadStat overall() {
+		long count = 0;
+		long[] all = new long[0];
+		for (Samples samples : hosts.values()) {
+			count += samples.count();
+			long[] snapshot = samples.snapshot();
+			int from = all.length;
+			all = Arrays.copyOf(all, from + snapshot.length);
+			System.arraycopy(snapshot, 0, all, from, snapshot.length);
+		}
+		return stat("all hosts", count, all);
+	}
+
+	private static PageLoadStat stat(String host, long count, long[] nanos) {
+		if (nanos.length == 0) {
+			return new PageLoadStat(host, count, 0, 0, 0);
+		}
+		Arrays.sort(nanos);
+		return new PageLoadStat(host, count, millis(percentile(nanos, 0.50)), millis(percentile(nanos, 0.99)),
+				millis(nanos[nanos.length - 1]));
+	}
+
+	private static long percentile(long[] sorted, double rank) {
+		int index = (int) Math.ceil(rank * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	public void logStats() {
+		if (hosts.isEmpty()) {
+			return;
+		}
+		StringBuilder summary = new StringBuilder("Page loads:");
+		for (PageLoadStat stat : stats()) {
+			summary.append("\n  ").append(stat);
+		}
+		logger.info(summary.toString());
+	}
+}
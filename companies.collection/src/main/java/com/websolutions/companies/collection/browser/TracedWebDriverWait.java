@@ -0,0 +1,35 @@
+package com.websolutions.companies.collection.browser;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+import com.websolutions.companies.collection.jfr.BrowserWaitEvent;
+
+/*
+ * The WebDriverWait of the collectors : the same waits, each until() also emits a BrowserWaitEvent (Java Flight
+ * Recorder) with the condition and whether it was met or timed out, so a recording shows which waits of which site
+ * the crawls spend their time in.
+ * */
+public class TracedWebDriverWait extends WebDriverWait {
+
+	public TracedWebDriverWait(WebDriver driver, Duration timeout) {
+		super(driver, timeout);
+	}
+
+	@Override
+	public <V> V until(Function<? super WebDriver, V> isTrue) {
+		BrowserWaitEvent event = BrowserWaitEvent.start();
+		Throwable failure = null;
+		try {
+			return super.until(isTrue);
+		} catch (RuntimeException | Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			event.end(isTrue, failure);
+		}
+	}
+}
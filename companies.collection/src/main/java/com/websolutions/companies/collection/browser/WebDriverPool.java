@@ -0,0 +1,558 @@
+package com.websolutions.companies.collection.browser;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.devtools.DevTools;
+import org.openqa.selenium.devtools.Event;
+import org.openqa.selenium.devtools.HasDevTools;
+import org.openqa.selenium.devtools.v137.network.Network;
+import org.openqa.selenium.remote.Augmenter;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.support.decorators.Decorated;
+import org.openqa.selenium.support.events.EventFiringDecorator;
+import org.openqa.selenium.support.events.WebDriverListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.jfr.PageLoadEvent;
+import com.websolutions.companies.collection.ratelimit.HostRateLimiter;
+import com.websolutions.companies.collection.replay.ReplayServer;
+
+import jakarta.annotation.PreDestroy;
+
+@Service
+public class WebDriverPool {
+
+	private static final Logger logger = Logger.getLogger(WebDriverPool.class.getName());
+
+	private final URL seleniumUrl;
+	private final int maxSessions;
+	private final int maxPageLoads;
+	private final Duration borrowTimeout;
+	private final NetworkFilter networkFilter;
+	private final HostRateLimiter hostRateLimiter;
+	private final PageLoadStats pageLoadStats;
+	private final String replayServeFrom;
+
+	/*
+	 * One permit per browser session a collector may hold at the same time.
+	 * Idle sessions don't hold a permit, but they still occupy a slot on the Grid, so the total number of live sessions
+	 * (idle + borrowed) is also kept under maxSessions, see createSession().
+	 * */
+	private final Semaphore permits;
+	private final Map<BrowserProfile, Deque<PooledSession>> idle = new EnumMap<>(BrowserProfile.class);
+	private final Map<WebDriver, PooledSession> borrowed = Collections.synchronizedMap(new IdentityHashMap<>());
+	/* WebDriver calls made by every session, each one is a round trip to the Grid */
+	private final LongAdder commands = new LongAdder();
+	private int liveSessions = 0;
+
+	/*
+	 * A RemoteWebDriver session together with the bookkeeping the pool needs.
+	 * The collectors receive the "decorated" driver: it behaves like the real one, but every page load goes through
+	 * our listener so we know when the session has loaded enough pages to be recycled, and how many calls it sent.
+	 * Every page load first takes its turn from HostRateLimiter, so the listing walks and the detail loops of every
+	 * collector share the request budget of the site with the other workers. The listener also emits a PageLoadEvent
+	 * (Java Flight Recorder) around every page load and times it in PageLoadStats (collector.page.load).
+	 * When replay.serve-from is set, the decorator sends every page load to the ReplayServer instead of the site : the
+	 * collector and the listener still see the URL of the site.
+	 * */
+	private static final class PooledSession {
+		final RemoteWebDriver raw;
+		final WebDriver decorated;
+		final BrowserProfile profile;
+		final AtomicInteger pageLoads = new AtomicInteger();
+		volatile String site;
+		/* A lock and not synchronized : a virtual thread blocked on I/O inside synchronized holds its carrier thread */
+		final ReentrantLock devToolsLock = new ReentrantLock();
+		DevTools devTools;
+		boolean devToolsTried;
+		/* The listeners added through addDevToolsListener, by event method, behind one DevTools listener per event */
+		final Map<String, List<Consumer<Object>>> devToolsListeners = new HashMap<>();
+
+		PooledSession(RemoteWebDriver raw, BrowserProfile profile, LongAdder commands, HostRateLimiter hostRateLimiter,
+				PageLoadStats pageLoadStats, String replayServeFrom) {
+			this.raw = raw;
+			this.profile = profile;
+			SessionListener listener = new SessionListener(pageLoads, commands, hostRateLimiter, pageLoadStats);
+			this.decorated = new ReplayingDecorator(replayServeFrom, listener).decorate(raw);
+		}
+	}
+
+	/*
+	 * The listener of one session. EventFiringDecorator calls beforeGet, afterGet... by reflection, which only works
+	 * on a public class : the methods of an anonymous class fail with an IllegalAccessException that Selenium only
+	 * logs, and beforeAnyCall (called directly) is the only one that runs.
+	 * */
+	public static final class SessionListener implements WebDriverListener {
+
+		private final AtomicInteger pageLoads;
+		private final LongAdder commands;
+		private final HostRateLimiter hostRateLimiter;
+		private final PageLoadStats pageLoadStats;
+		/* The page load in progress, a session is used by one thread at a time */
+		private PageLoadEvent pageLoad;
+		private String pageLoadUrl;
+		private long pageLoadStart;
+
+		SessionListener(AtomicInteger pageLoads, LongAdder commands, HostRateLimiter hostRateLimiter,
+				PageLoadStats pageLoadStats) {
+			this.pageLoads = pageLoads;
+			this.commands = commands;
+			this.hostRateLimiter = hostRateLimiter;
+			this.pageLoadStats = pageLoadStats;
+		}
+
+		@Override
+		public void beforeAnyCall(Object target, Method method, Object[] args) {
+			commands.increment();
+		}
+
+		@Override
+		public void beforeGet(WebDriver driver, String url) {
+			beforeLoad(url);
+		}
+
+		@Override
+		public void afterGet(WebDriver driver, String url) {
+			pageLoads.incrementAndGet();
+			endPageLoad(null);
+		}
+
+		@Override
+		public void beforeTo(WebDriver.Navigation navigation, String url) {
+			beforeLoad(url);
+		}
+
+		@Override
+		public void afterTo(WebDriver.Navigation navigation, String url) {
+			pageLoads.incrementAndGet();
+			endPageLoad(null);
+		}
+
+		@Override
+		public void onError(Object target, Method method, Object[] args, InvocationTargetException e) {
+			endPageLoad(e.getTargetException());
+		}
+
+		private void beforeLoad(String url) {
+			try {
+				hostRateLimiter.acquire(url);
+			} catch (InterruptedException e) {
+				/* The load still happens, the collector sees the interrupt on its next wait */
+				Thread.currentThread().interrupt();
+			}
+			pageLoadUrl = url;
+			pageLoadStart = System.nanoTime();
+			pageLoad = PageLoadEvent.start(url);
+		}
+
+		/* Only the loads that succeeded are timed, a failed one says nothing about the speed of the site */
+		private void endPageLoad(Throwable failure) {
+			PageLoadEvent event = pageLoad;
+			if (event != null) {
+				pageLoad = null;
+				event.end(failure);
+				if (failure == null) {
+					pageLoadStats.record(pageLoadUrl, "browser", System.nanoTime() - pageLoadStart);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Rewrites the URL of driver.get and navigate().to to its address on the ReplayServer at replayServeFrom (nothing
+	 * when it is empty). The listener is called with the arguments of the collector, before and after the rewriting.
+	 * */
+	private static final class ReplayingDecorator extends EventFiringDecorator<WebDriver> {
+
+		private final String replayServeFrom;
+
+		ReplayingDecorator(String replayServeFrom, WebDriverListener listener) {
+			super(listener);
+			this.replayServeFrom = replayServeFrom;
+		}
+
+		@Override
+		public Object call(Decorated<?> target, Method method, Object[] args) throws Throwable {
+			boolean pageLoad = (target.getOriginal() instanceof WebDriver && method.getName().equals("get"))
+					|| (target.getOriginal() instanceof WebDriver.Navigation && method.getName().equals("to"));
+			if (!replayServeFrom.isEmpty() && pageLoad && args != null && args.length == 1
+					&& args[0] instanceof String url) {
+				return super.call(target, method, new Object[] { ReplayServer.localUrl(replayServeFrom, url) });
+			}
+			return super.call(target, method, args);
+		}
+	}
+
+	/*
+	 * - selenium.url : the Selenium Grid (or standalone) address.
+	 * - selenium.pool.max-sessions : sessions the Grid accepts at the same time.
+	 * - selenium.pool.max-page-loads : a session is closed and replaced after this many page loads, long lived browsers
+	 *   slowly leak memory.
+	 * - selenium.pool.borrow-timeout-seconds : how long a collector waits for a free session before failing.
+	 * - replay.serve-from : base URL of a ReplayServer the browsers load their pages from, empty for the live sites.
+	 * */
+	public WebDriverPool(@Value("${selenium.url:http://selenium:4444}") String seleniumUrl,
+			@Value("${selenium.pool.max-sessions:1}") int maxSessions,
+			@Value("${selenium.pool.max-page-loads:300}") int maxPageLoads,
+			@Value("${selenium.pool.borrow-timeout-seconds:600}") long borrowTimeoutSeconds,
+			NetworkFilter networkFilter, HostRateLimiter hostRateLimiter, PageLoadStats pageLoadStats,
+			@Value("${replay.serve-from:}") String replayServeFrom) throws MalformedURLException {
+		this.seleniumUrl = URI.create(seleniumUrl).toURL();
+		this.maxSessions = Math.max(1, maxSessions);
+		this.maxPageLoads = maxPageLoads;
+		this.borrowTimeout = Duration.ofSeconds(borrowTimeoutSeconds);
+		this.networkFilter = networkFilter;
+		this.hostRateLimiter = hostRateLimiter;
+		this.pageLoadStats = pageLoadStats;
+		this.replayServeFrom = replayServeFrom.strip();
+		this.permits = new Semaphore(this.maxSessions, true);
+		for (BrowserProfile profile : BrowserProfile.values()) {
+			idle.put(profile, new ArrayDeque<>());
+		}
+	}
+
+	/**
+	 * Borrows a headless browser session for the given company, waiting until one is free.
+	 * The company name selects the network filter allowlist of the site.
+	 * The driver must be given back with {@link #release(WebDriver)}, never with quit().
+	 */
+	public WebDriver borrow(String site) {
+		return borrow(BrowserProfile.HEADLESS, site);
+	}
+
+	public WebDriver borrow(BrowserProfile profile, String site) {
+		try {
+			return tryBorrow(profile, site, borrowTimeout).orElseThrow(() -> new IllegalStateException(
+					"No browser session available after " + borrowTimeout.toSeconds() + "s (max sessions: " + maxSessions + ")"));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a browser session", e);
+		}
+	}
+
+	/**
+	 * Borrows a session only if one becomes free within the given time, used when an extra session is nice to have
+	 * but not required.
+	 */
+	public Optional<WebDriver> tryBorrow(BrowserProfile profile, String site, Duration timeout) throws InterruptedException {
+		if (!permits.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+			return Optional.empty();
+		}
+		try {
+			PooledSession session = takeHealthyIdle(profile);
+			if (session == null) {
+				session = createSession(profile);
+			}
+			session.site = site;
+			applyNetworkFilter(session);
+			borrowed.put(session.decorated, session);
+			return Optional.of(session.decorated);
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Borrows another session with the same profile and site as a driver the caller already holds.
+	 */
+	public Optional<WebDriver> tryBorrowSimilar(WebDriver driver, Duration timeout) throws InterruptedException {
+		PooledSession session = borrowed.get(driver);
+		if (session == null) {
+			return Optional.empty();
+		}
+		return tryBorrow(session.profile, session.site, timeout);
+	}
+
+	/**
+	 * The company a borrowed driver is working for, "unknown" for a driver that is not borrowed from the pool.
+	 */
+	public String siteOf(WebDriver driver) {
+		PooledSession session = borrowed.get(driver);
+		return session == null || session.site == null ? "unknown" : session.site;
+	}
+
+	/**
+	 * Gives a session back to the pool. The session is cleaned (default frame, cookies, blank page) so the next
+	 * collector starts from a neutral state, or closed if it is broken or has loaded too many pages.
+	 */
+	public void release(WebDriver driver) {
+		PooledSession session = borrowed.remove(driver);
+		if (session == null) {
+			logger.warning("Released a driver that doesn't belong to the pool, closing it");
+			quietQuit(driver);
+			return;
+		}
+		try {
+			if (session.pageLoads.get() >= maxPageLoads) {
+				logger.info("Recycling browser session after " + session.pageLoads.get() + " page loads");
+				discard(session);
+			} else if (reset(session)) {
+				synchronized (this) {
+					idle.get(session.profile).push(session);
+				}
+			} else {
+				discard(session);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	public int getMaxSessions() {
+		return maxSessions;
+	}
+
+	/**
+	 * WebDriver calls sent by all the sessions since the start, driver, navigation and element calls alike.
+	 */
+	public long getCommandCount() {
+		return commands.sum();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		List<PooledSession> toClose = new ArrayList<>();
+		synchronized (this) {
+			idle.values().forEach(toClose::addAll);
+			idle.values().forEach(Deque::clear);
+		}
+		synchronized (borrowed) {
+			toClose.addAll(borrowed.values());
+			borrowed.clear();
+		}
+		toClose.forEach(this::discard);
+	}
+
+	/*
+	 * Returns an idle session of the requested profile that still answers, closing the dead ones on the way.
+	 * The health check is a single cheap call (the current window handle).
+	 * */
+	private PooledSession takeHealthyIdle(BrowserProfile profile) {
+		while (true) {
+			PooledSession session;
+			synchronized (this) {
+				session = idle.get(profile).poll();
+			}
+			if (session == null) {
+				return null;
+			}
+			if (isHealthy(session)) {
+				return session;
+			}
+			logger.info("Discarding a dead browser session");
+			discard(session);
+		}
+	}
+
+	/*
+	 * Before opening a new session we make room on the Grid: if the live sessions already reach the limit,
+	 * the idle ones belong to another profile and one of them is closed.
+	 * */
+	private PooledSession createSession(BrowserProfile profile) {
+		PooledSession evicted = null;
+		synchronized (this) {
+			if (liveSessions >= maxSessions) {
+				for (Deque<PooledSession> sessions : idle.values()) {
+					if (!sessions.isEmpty()) {
+						evicted = sessions.pollLast();
+						break;
+					}
+				}
+			}
+			liveSessions++;
+		}
+		if (evicted != null) {
+			discard(evicted);
+		}
+
+		try {
+			long start = System.nanoTime();
+			RemoteWebDriver raw = new RemoteWebDriver(seleniumUrl, profile.toOptions());
+			logger.info("Opened a new " + profile + " browser session in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+			return new PooledSession(raw, profile, commands, hostRateLimiter, pageLoadStats, replayServeFrom);
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				liveSessions--;
+			}
+			throw e;
+		}
+	}
+
+	/*
+	 * The DevTools connection is opened the first time the filter is needed and kept with the session.
+	 * The blocked list is sent on every borrow because the same session may serve another company next time.
+	 * */
+	private void applyNetworkFilter(PooledSession session) {
+		if (!networkFilter.isEnabled()) {
+			return;
+		}
+		DevTools devTools = devToolsOf(session);
+		if (devTools != null) {
+			try {
+				networkFilter.apply(devTools, session.site);
+			} catch (Exception e) {
+				logger.log(Level.WARNING, "Unable to apply the network filter for " + session.site + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * The DevTools connection of a borrowed driver, opened on first use and kept for the life of the session.
+	 * Empty when the Grid or the browser doesn't support the Chrome DevTools Protocol.
+	 */
+	public Optional<DevTools> devTools(WebDriver driver) {
+		PooledSession session = borrowed.get(driver);
+		return session == null ? Optional.empty() : Optional.ofNullable(devToolsOf(session));
+	}
+
+	/**
+	 * Adds a listener for a DevTools event of a borrowed driver and returns what removes it, so a component can stop
+	 * listening without touching the listeners of the others. DevTools itself can only clear every listener of the
+	 * session at once : the pool registers one DevTools listener per event, which forwards to the listeners added here.
+	 * Empty when the session has no DevTools.
+	 */
+	@SuppressWarnings("unchecked")
+	public <X> Optional<Runnable> addDevToolsListener(WebDriver driver, Event<X> event, Consumer<X> listener) {
+		PooledSession session = borrowed.get(driver);
+		DevTools devTools = session == null ? null : devToolsOf(session);
+		if (devTools == null) {
+			return Optional.empty();
+		}
+		Consumer<Object> registered = value -> listener.accept((X) value);
+		List<Consumer<Object>> listeners;
+		session.devToolsLock.lock();
+		try {
+			listeners = session.devToolsListeners.get(event.getMethod());
+			if (listeners == null) {
+				List<Consumer<Object>> forwardedTo = new CopyOnWriteArrayList<>();
+				devTools.addListener(event, value -> forwardedTo.forEach(forwarded -> forwarded.accept(value)));
+				session.devToolsListeners.put(event.getMethod(), forwardedTo);
+				listeners = forwardedTo;
+			}
+			listeners.add(registered);
+		} finally {
+			session.devToolsLock.unlock();
+		}
+		List<Consumer<Object>> addedTo = listeners;
+		return Optional.of(() -> addedTo.remove(registered));
+	}
+
+	/*
+	 * RemoteWebDriver doesn't expose DevTools by itself, the Augmenter adds it when the Grid advertises se:cdp.
+	 * The attempt is made once per session, a failure is not retried on every borrow.
+	 * */
+	private DevTools devToolsOf(PooledSession session) {
+		session.devToolsLock.lock();
+		try {
+			if (!session.devToolsTried) {
+				session.devToolsTried = true;
+				try {
+					WebDriver augmented = new Augmenter().augment(session.raw);
+					if (augmented instanceof HasDevTools hasDevTools) {
+						DevTools devTools = hasDevTools.getDevTools();
+						devTools.createSessionIfThereIsNotOne();
+						devTools.send(Network.enable(Optional.empty(), Optional.empty(), Optional.empty()));
+						session.devTools = devTools;
+					} else {
+						logger.warning("The browser session doesn't expose DevTools");
+					}
+				} catch (Exception e) {
+					logger.log(Level.WARNING, "Unable to open a DevTools session: " + e.getMessage());
+				}
+			}
+			return session.devTools;
+		} finally {
+			session.devToolsLock.unlock();
+		}
+	}
+
+	private boolean isHealthy(PooledSession session) {
+		try {
+			session.raw.getWindowHandle();
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	private boolean reset(PooledSession session) {
+		try {
+			RemoteWebDriver raw = session.raw;
+			if (session.devTools != null) {
+				session.devToolsLock.lock();
+				try {
+					session.devTools.clearListeners();
+					session.devToolsListeners.clear();
+				} finally {
+					session.devToolsLock.unlock();
+				}
+			}
+			raw.switchTo().defaultContent();
+			String mainWindow = raw.getWindowHandles().iterator().next();
+			if (raw.getWindowHandles().size() > 1) {
+				for (String handle : raw.getWindowHandles()) {
+					if (!handle.equals(mainWindow)) {
+						raw.switchTo().window(handle).close();
+					}
+				}
+				raw.switchTo().window(mainWindow);
+			}
+			raw.manage().deleteAllCookies();
+			raw.get("about:blank");
+			return true;
+		} catch (Exception e) {
+			logger.log(Level.INFO, "Browser session could not be reset: " + e.getMessage());
+			return false;
+		}
+	}
+
+	private void discard(PooledSession session) {
+		if (session.devTools != null) {
+			try {
+				session.devTools.close();
+			} catch (Exception e) {
+				logger.log(Level.FINE, "Error while closing a DevTools connection", e);
+			}
+		}
+		quietQuit(session.raw);
+		synchronized (this) {
+			liveSessions--;
+		}
+	}
+
+	private void quietQuit(WebDriver driver) {
+		try {
+			driver.quit();
+		} catch (Exception e) {
+			logger.log(Level.FINE, "Error while closing a browser session", e);
+		}
+	}
+}
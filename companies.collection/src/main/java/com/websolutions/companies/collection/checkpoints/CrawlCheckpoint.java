@@ -0,0 +1,213 @@
+package com.websolutions.companies.collection.checkpoints;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.websolutions.companies.collection.entites.JobsOffers;
+import com.websolutions.companies.collection.services.CrawlMode;
+
+/*
+ * The progress of one collector run, saved by CrawlCheckpointStore after every step :
+ * - the crawl mode of the run and when the state was saved, a run in another mode or a checkpoint older than
+ *   checkpoints.max-age is not resumed (see CrawlCheckpointStore.resume),
+ * - the listing pages already read, with the cards found on them (id_jobInfo / jobsLinks of the collector),
+ * - whether the whole listing was read,
+ * - the detail pages whose offer is already written to jobs_offers.
+ * A detail page is only marked done once its offer is in the database (see JobOffersBatch.onStored), an offer
+ * still waiting in a batch when the crawl crashed is collected again on restart.
+ * The state is copied under a lock and written to the file outside it, so a detail thread never waits for the disk
+ * while holding the state. The copies are numbered and a copy older than the one already written is dropped : two
+ * detail threads never write an older state over a newer one.
+ *
+ *   CrawlCheckpoint checkpoint = crawlCheckpointStore.resume(getName(), crawlMode);
+ *   boolean isFinalPageReached = checkpoint.restoreListing(id_jobInfo, jobsLinks);
+ *   ... after each listing page : checkpoint.pageRead(page, id_jobInfo, jobsLinks);
+ *   ... after the last one : checkpoint.listingRead(id_jobInfo, jobsLinks);
+ *   ... detail pages : skip checkpoint.isStored(link)
+ *   ... at the end of a successful run : checkpoint.finish();
+ * */
+public class CrawlCheckpoint {
+
+	/* What is written to the JSON file */
+	record State(CrawlMode mode, long savedAtMillis, int pagesRead, boolean listingComplete,
+			Map<Integer, List<String>> jobInfo, Map<Integer, String> jobsLinks, Set<String> storedLinks) {
+	}
+
+	/* A copy of the state, numbered in the order the changes were made */
+	private record Snapshot(long version, State state) {
+	}
+
+	private final CrawlCheckpointStore store;
+	private final String collector;
+	private final CrawlMode mode;
+	private int pagesRead;
+	private boolean listingComplete;
+	private final Map<Integer, List<String>> jobInfo = new HashMap<>();
+	private final Map<Integer, String> jobsLinks = new HashMap<>();
+	private final Set<String> storedLinks = new HashSet<>();
+	/* Locks and not synchronized : a virtual thread blocked on I/O inside synchronized holds its carrier thread */
+	private final ReentrantLock stateLock = new ReentrantLock();
+	private final ReentrantLock saveLock = new ReentrantLock();
+	/* Guarded by stateLock */
+	private long version;
+	/* Guarded by saveLock */
+	private long savedVersion;
+
+	CrawlCheckpoint(CrawlCheckpointStore store, String collector, CrawlMode mode, State state) {
+		this.store = store;
+		this.collector = collector;
+		this.mode = mode;
+		if (state != null) {
+			this.pagesRead = state.pagesRead();
+			this.listingComplete = state.listingComplete();
+			if (state.jobInfo() != null) {
+				this.jobInfo.putAll(state.jobInfo());
+			}
+			if (state.jobsLinks() != null) {
+				this.jobsLinks.putAll(state.jobsLinks());
+			}
+			if (state.storedLinks() != null) {
+				this.storedLinks.addAll(state.storedLinks());
+			}
+		}
+	}
+
+	/**
+	 * Copies the cards saved by the previous run into the collector maps and returns true when that run had read
+	 * the whole listing, in which case the listing doesn't need to be read again.
+	 */
+	public boolean restoreListing(Map<Integer, List<String>> id_jobInfo, Map<Integer, String> jobsLinks) {
+		stateLock.lock();
+		try {
+			id_jobInfo.putAll(this.jobInfo);
+			jobsLinks.putAll(this.jobsLinks);
+			return listingComplete;
+		} finally {
+			stateLock.unlock();
+		}
+	}
+
+	/**
+	 * Number of listing pages the previous run read, their cards are restored by restoreListing().
+	 */
+	public int pagesRead() {
+		stateLock.lock();
+		try {
+			return pagesRead;
+		} finally {
+			stateLock.unlock();
+		}
+	}
+
+	/**
+	 * Records the cards found so far, once the given page (counted from 1) has been read.
+	 */
+	public void pageRead(int page, Map<Integer, List<String>> id_jobInfo, Map<Integer, String> jobsLinks) {
+		Snapshot snapshot;
+		stateLock.lock();
+		try {
+			pagesRead = Math.max(pagesRead, page);
+			this.jobInfo.putAll(id_jobInfo);
+			this.jobsLinks.putAll(jobsLinks);
+			snapshot = snapshot();
+		} finally {
+			stateLock.unlock();
+		}
+		save(snapshot);
+	}
+
+	/**
+	 * Records that the whole listing was read : a restart goes straight to the detail pages.
+	 */
+	public void listingRead(Map<Integer, List<String>> id_jobInfo, Map<Integer, String> jobsLinks) {
+		Snapshot snapshot;
+		stateLock.lock();
+		try {
+			listingComplete = true;
+			this.jobInfo.putAll(id_jobInfo);
+			this.jobsLinks.putAll(jobsLinks);
+			snapshot = snapshot();
+		} finally {
+			stateLock.unlock();
+		}
+		save(snapshot);
+	}
+
+	/**
+	 * Marks the detail pages of offers just written to the database as done.
+	 */
+	public void stored(List<JobsOffers> offers) {
+		Snapshot snapshot;
+		stateLock.lock();
+		try {
+			for (JobsOffers offer : offers) {
+				if (offer.getSourceUrl() != null) {
+					storedLinks.add(offer.getSourceUrl());
+				}
+			}
+			snapshot = snapshot();
+		} finally {
+			stateLock.unlock();
+		}
+		save(snapshot);
+	}
+
+	/**
+	 * True when the offer of this detail page was written by the previous run (or earlier in this one).
+	 */
+	public boolean isStored(String link) {
+		stateLock.lock();
+		try {
+			return storedLinks.contains(link);
+		} finally {
+			stateLock.unlock();
+		}
+	}
+
+	/**
+	 * Called at the end of a successful run : the checkpoint is deleted and the next run starts from page 1.
+	 */
+	public void finish() {
+		store.delete(collector);
+	}
+
+	/*
+	 * Called with stateLock held : the collections are copied, the file is written from the copy after the lock is
+	 * released while other threads keep changing the originals.
+	 * */
+	private Snapshot snapshot() {
+		return new Snapshot(++version, new State(mode, System.currentTimeMillis(), pagesRead, listingComplete,
+				new HashMap<>(jobInfo), new HashMap<>(jobsLinks), new HashSet<>(storedLinks)));
+	}
+
+	/*
+	 * Two threads can reach this with their copies in any order : one file write at a time, and a copy older than the
+	 * one already written is dropped, it holds nothing the newer one doesn't.
+	 * */
+	private void save(Snapshot snapshot) {
+		saveLock.lock();
+		try {
+			if (snapshot.version() > savedVersion) {
+				store.save(collector, snapshot.state());
+				savedVersion = snapshot.version();
+			}
+		} finally {
+			saveLock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		stateLock.lock();
+		try {
+			return pagesRead + " listing pages read" + (listingComplete ? " (complete)" : "") + ", " + jobsLinks.size()
+					+ " cards, " + storedLinks.size() + " offers stored";
+		} finally {
+			stateLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.websolutions.companies.collection.checkpoints;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.websolutions.companies.collection.services.CrawlMode;
+
+/*
+ * Keeps one JSON file per collector in checkpoints.directory while it runs, so a crawl that crashed halfway
+ * (browser session lost, timeout, application stopped) resumes where it stopped instead of starting from page 1.
+ *
+ * A file only exists between the start of a run and its successful end : finish() deletes it, so the next normal run
+ * starts from scratch. A checkpoint is a help, never a reason to fail : a file that can't be read or written is logged
+ * and the crawl continues without it.
+ * A checkpoint is only resumed by a run in the same crawl mode (a RECENT run that read one page must not turn the
+ * next FULL run into a one page crawl) and while it is younger than checkpoints.max-age, otherwise it is deleted
+ * and the run starts over.
+ * */
+@Service
+public class CrawlCheckpointStore {
+
+	private static final Logger logger = Logger.getLogger(CrawlCheckpointStore.class.getName());
+
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	private final Path directory;
+	private final boolean enabled;
+	private final Duration maxAge;
+
+	public CrawlCheckpointStore(@Value("${checkpoints.directory:checkpoints}") String directory,
+			@Value("${checkpoints.enabled:true}") boolean enabled,
+			@Value("${checkpoints.max-age:1d}") Duration maxAge) {
+		this.directory = Paths.get(directory);
+		this.enabled = enabled;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Returns the checkpoint a previous, unfinished run of this collector in the same crawl mode left, or an empty one.
+	 */
+	public CrawlCheckpoint resume(String collector, CrawlMode mode) {
+		Path file = fileOf(collector);
+		if (enabled && Files.exists(file)) {
+			try {
+				CrawlCheckpoint.State state = MAPPER.readValue(file.toFile(), CrawlCheckpoint.State.class);
+				String stale = staleReason(state, mode);
+				if (stale == null) {
+					CrawlCheckpoint checkpoint = new CrawlCheckpoint(this, collector, mode, state);
+					logger.info("[" + collector + "] resuming an unfinished crawl : " + checkpoint);
+					return checkpoint;
+				}
+				logger.info("[" + collector + "] ignoring its checkpoint, " + stale + ", starting over");
+				delete(collector);
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "[" + collector + "] unreadable checkpoint " + file + ", starting over", e);
+			}
+		}
+		return new CrawlCheckpoint(this, collector, mode, null);
+	}
+
+	/*
+	 * Why the saved state can't be resumed by a run in this mode, null when it can.
+	 * */
+	private String staleReason(CrawlCheckpoint.State state, CrawlMode mode) {
+		if (state.mode() != mode) {
+			return "it was left by a " + state.mode() + " crawl and this one is " + mode;
+		}
+		Duration age = Duration.ofMillis(System.currentTimeMillis() - state.savedAtMillis());
+		if (age.compareTo(maxAge) > 0) {
+			return "it is " + age.toHours() + "h old (checkpoints.max-age " + maxAge + ")";
+		}
+		return null;
+	}
+
+	/*
+	 * The state is written to a temporary file first and then moved over the old one, so a crash in the middle
+	 * of a write leaves the previous checkpoint and not half a JSON document.
+	 * */
+	void save(String collector, CrawlCheckpoint.State state) {
+		if (!enabled) {
+			return;
+		}
+		Path file = fileOf(collector);
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			Files.createDirectories(directory);
+			MAPPER.writeValue(temporary.toFile(), state);
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "[" + collector + "] could not write checkpoint " + file, e);
+		}
+	}
+
+	void delete(String collector) {
+		try {
+			Files.deleteIfExists(fileOf(collector));
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "[" + collector + "] could not delete its checkpoint", e);
+		}
+	}
+
+	private Path fileOf(String collector) {
+		return directory.resolve(collector + ".json");
+	}
+}
@@ -1,28 +1,35 @@
 package com.websolutions.companies.collection.entites;
 
 import java.time.LocalDateTime;
+import java.util.UUID;
+
+import com.websolutions.companies.collection.utils.OfferFingerprint;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.Table;
-import jakarta.persistence.UniqueConstraint;
 
 
 /*
  * @Entity marks the class as a database entity so Spring Data JPA can persist it, 
  * @Table lets us customize how it maps to the database, such as giving the table a specific name. 
- * In our case, the table is called jobs_offers, and the uniqueConstraints ensure that no two rows can have 
- * the same combination of title, company, location, and url. 
+ * In our case, the table is called jobs_offers, and the unique index on fingerprint ensures that no two rows can have 
+ * the same combination of title, company, city, country, and url : the fingerprint is a hash of those five values
+ * (see OfferFingerprint), so the check is a probe on a 16 bytes key instead of a comparison of five long strings.
  * This way, every time we collect and insert jobs, the database itself enforces uniqueness and prevents 
- * duplicate job offers, acting as an extra safety net on top of our Java checks.
+ * duplicate job offers. JobOffersIngestionService relies on this index for its INSERT ... ON CONFLICT upsert.
+ * The second index, on source_url, is not unique : it answers KnownOffersFilter when it checks whether the detail page
+ * of a job card was already visited by a previous crawl.
  * */
 @Entity
-@Table(name = "jobs_offers", uniqueConstraints = {
-		@UniqueConstraint(columnNames = {"title", "company", "location", "url"})
+@Table(name = "jobs_offers", indexes = {
+		@Index(name = "ux_jobs_offers_fingerprint", columnList = "fingerprint", unique = true),
+		@Index(name = "ix_jobs_offers_source_url", columnList = "source_url")
 })
 public class JobsOffers {
 	
@@ -59,14 +66,24 @@ public class JobsOffers {
     @Column (name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
     
+    private UUID fingerprint;
+    
+    /*
+     * The detail page the offer was read from. It's known as soon as the job card is found on the listing,
+     * before the page is visited, unlike url which is often the apply link found on the detail page.
+     * */
+    @Column(name = "source_url", columnDefinition = "TEXT")
+    private String sourceUrl;
+    
     /*
      * @PrePersist is a special JPA annotation that runs automatically before the entity is inserted into the database.
-     * It sets createdAt to the current time when the record is created.
+     * It sets createdAt to the current time when the record is created, and computes the fingerprint.
      * We don’t need to manually set it in our code — it happens automatically when we call save().
      * */
     @PrePersist
     protected void onCreate() {
         this.createdAt = LocalDateTime.now();
+        this.fingerprint = OfferFingerprint.of(this);
     }
 
     public JobsOffers() {
@@ -180,4 +197,16 @@ public class JobsOffers {
 	public LocalDateTime getCreatedAt() {
         return createdAt;
     }
+
+	public UUID getFingerprint() {
+		return fingerprint;
+	}
+
+	public String getSourceUrl() {
+		return sourceUrl;
+	}
+
+	public void setSourceUrl(String sourceUrl) {
+		this.sourceUrl = sourceUrl;
+	}
 }
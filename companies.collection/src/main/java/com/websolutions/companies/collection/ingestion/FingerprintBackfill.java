@@ -0,0 +1,114 @@
+package com.websolutions.companies.collection.ingestion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.utils.OfferFingerprint;
+
+/*
+ * Fills the fingerprint column of the rows stored before it existed.
+ * Hibernate adds the column (empty) and its unique index on startup, this step then computes the missing values
+ * in Java, with the same normalization as the ingestion, walking the table by id so each row is read once.
+ *
+ * Two old rows can differ only by case or spacing ("Paris" / "paris ") and so share a fingerprint.
+ * Only the first one (the oldest, lowest id) gets it, the others are duplicates of it and are deleted : left without
+ * a fingerprint, they would be read again and reported on every startup.
+ *
+ * It also drops uk_jobs_offers_identity, the unique constraint on the five columns that the fingerprint replaced.
+ * ddl-auto=update never drops a constraint, and it would keep rejecting rows the upsert accepts.
+ * */
+@Service
+public class FingerprintBackfill {
+
+	private static final Logger logger = Logger.getLogger(FingerprintBackfill.class.getName());
+
+	private static final String MISSING_SQL = """
+			SELECT id, title, company, city, country, url FROM jobs_offers
+			WHERE fingerprint IS NULL AND id > ?
+			ORDER BY id
+			LIMIT ?
+			""";
+
+	private static final String UPDATE_SQL = """
+			UPDATE jobs_offers SET fingerprint = ?
+			WHERE id = ? AND NOT EXISTS (SELECT 1 FROM jobs_offers WHERE fingerprint = ?)
+			""";
+
+	private static final String DROP_IDENTITY_CONSTRAINT_SQL = """
+			ALTER TABLE jobs_offers DROP CONSTRAINT IF EXISTS uk_jobs_offers_identity
+			""";
+
+	private static final String DELETE_DUPLICATE_SQL = """
+			DELETE FROM jobs_offers WHERE id = ? AND fingerprint IS NULL
+			""";
+
+	private record MissingFingerprint(long id, UUID fingerprint) {
+	}
+
+	private final JdbcTemplate jdbcTemplate;
+	private final int batchSize;
+
+	public FingerprintBackfill(JdbcTemplate jdbcTemplate, @Value("${ingestion.batch-size:500}") int batchSize) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Computes the fingerprint of every row that has none yet, deletes the duplicates, and returns the number of rows
+	 * updated. Safe to run on every startup : once done there is nothing left to read.
+	 */
+	public int backfill() {
+		jdbcTemplate.execute(DROP_IDENTITY_CONSTRAINT_SQL);
+
+		long lastId = 0;
+		int updated = 0;
+		int duplicates = 0;
+		while (true) {
+			List<MissingFingerprint> rows = jdbcTemplate.query(MISSING_SQL,
+					(resultSet, rowNum) -> new MissingFingerprint(resultSet.getLong("id"),
+							OfferFingerprint.of(resultSet.getString("title"), resultSet.getString("company"),
+									resultSet.getString("city"), resultSet.getString("country"),
+									resultSet.getString("url"))),
+					lastId, batchSize);
+			if (rows.isEmpty()) {
+				break;
+			}
+			lastId = rows.getLast().id();
+
+			int[][] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, rows, rows.size(), (statement, row) -> {
+				statement.setObject(1, row.fingerprint());
+				statement.setLong(2, row.id());
+				statement.setObject(3, row.fingerprint());
+			});
+			List<MissingFingerprint> duplicateRows = new ArrayList<>();
+			int index = 0;
+			for (int[] chunkCounts : counts) {
+				for (int count : chunkCounts) {
+					if (count > 0) {
+						updated++;
+					} else {
+						duplicateRows.add(rows.get(index));
+					}
+					index++;
+				}
+			}
+			if (!duplicateRows.isEmpty()) {
+				jdbcTemplate.batchUpdate(DELETE_DUPLICATE_SQL, duplicateRows, duplicateRows.size(),
+						(statement, duplicate) -> statement.setLong(1, duplicate.id()));
+				duplicates += duplicateRows.size();
+			}
+		}
+
+		if (updated > 0 || duplicates > 0) {
+			logger.info("Fingerprint backfill : " + updated + " rows updated, " + duplicates
+					+ " duplicate rows deleted");
+		}
+		return updated;
+	}
+}
@@ -0,0 +1,394 @@
+package com.websolutions.companies.collection.ingestion;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.entites.JobsOffers;
+import com.websolutions.companies.collection.jfr.DbWriteEvent;
+import com.websolutions.companies.collection.locations.DetectCities;
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+import com.websolutions.companies.collection.modelAI.PredictTitle;
+import com.websolutions.companies.collection.orchestration.CollectorContext;
+import com.websolutions.companies.collection.utils.CountryNormalizer;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Takes the offers out of the collectors threads, so a browser session goes on loading pages while the offers
+ * it already read are processed :
+ *
+ *   collector --> normalize --> classify --> write
+ *
+ * - normalize : strips the text fields and resolves the country from the city when the collector doesn't know it.
+ *   The lookup may call Nominatim (about one request per second), so it runs on its own virtual thread : the offers
+ *   of an unknown city wait for their country while the others go on, and one lookup answers every offer of a city.
+ * - classify : predicts the job field of the offers that come without one, a chunk of titles at a time.
+ * - write : one JobOffersIngestionService.ingest() per chunk of ingestion.batch-size offers of the same crawl.
+ *
+ * Each stage is one virtual thread reading a bounded queue. When a stage can't keep up its queue fills, and the
+ * stage before it (in the end the collector calling JobOffersBatch.add) waits for room : memory stays bounded
+ * whatever the speed of the database. The offers waiting for a country are bounded the same way.
+ * A stage that fails on a chunk passes it on as it is (a failed classification leaves the job field empty), so every
+ * offer a collector added is accounted for and JobOffersBatch.flush() always returns.
+ * stats() gives the offers processed, the queue depth and the busy time of every stage, the same numbers are
+ * published as ingestion.stage.* metrics, with the classification and write times (see CollectorMetrics).
+ * */
+@Service
+public class IngestionPipeline {
+
+	private static final Logger logger = Logger.getLogger(IngestionPipeline.class.getName());
+
+	private static final String UNDEFINED = "Undefined";
+
+	/* Titles classified in one call to the model */
+	private static final int CLASSIFY_CHUNK = 256;
+
+	record Item(JobOffersBatch batch, JobsOffers offer) {
+	}
+
+	/**
+	 * The counters of one stage. Busy time is the time spent working, the rest of the run the stage was waiting
+	 * for offers : a stage busy all along with a full queue is the bottleneck.
+	 */
+	public record StageStats(String stage, long processed, int queued, int capacity, long busyMillis) {
+
+		@Override
+		public String toString() {
+			return stage + ": " + processed + " offers, queue " + queued + "/" + capacity + ", busy " + busyMillis
+					+ " ms";
+		}
+	}
+
+	/*
+	 * Takes one item, then whatever else is already queued up to maxChunk. The write stage also waits up to lingerMs
+	 * for more offers, so a slow collector still gets multi-row statements instead of one statement per offer.
+	 * */
+	private final class Stage implements Runnable {
+
+		private final String name;
+		private final BlockingQueue<Item> input;
+		private final int maxChunk;
+		private final long lingerMs;
+		private final Consumer<List<Item>> work;
+		private final Consumer<List<Item>> onFailure;
+		private final AtomicLong processed = new AtomicLong();
+		private final AtomicLong busyNanos = new AtomicLong();
+
+		Stage(String name, int capacity, int maxChunk, long lingerMs, Consumer<List<Item>> work,
+				Consumer<List<Item>> onFailure) {
+			this.name = name;
+			this.input = new ArrayBlockingQueue<>(capacity);
+			this.maxChunk = maxChunk;
+			this.lingerMs = lingerMs;
+			this.work = work;
+			this.onFailure = onFailure;
+		}
+
+		@Override
+		public void run() {
+			while (!Thread.currentThread().isInterrupted()) {
+				try {
+					List<Item> chunk = new ArrayList<>();
+					chunk.add(input.take());
+					input.drainTo(chunk, maxChunk - chunk.size());
+					long lingerUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+					while (chunk.size() < maxChunk && System.nanoTime() < lingerUntil) {
+						Item next = input.poll(lingerUntil - System.nanoTime(), TimeUnit.NANOSECONDS);
+						if (next == null) {
+							break;
+						}
+						chunk.add(next);
+						input.drainTo(chunk, maxChunk - chunk.size());
+					}
+
+					long start = System.nanoTime();
+					try {
+						work.accept(chunk);
+					} catch (RuntimeException e) {
+						logger.log(Level.WARNING, "Ingestion stage " + name + " failed on " + chunk.size() + " offers", e);
+						onFailure.accept(chunk);
+					}
+					busyNanos.addAndGet(System.nanoTime() - start);
+					processed.addAndGet(chunk.size());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		StageStats stats() {
+			return new StageStats(name, processed.get(), input.size(), input.size() + input.remainingCapacity(),
+					TimeUnit.NANOSECONDS.toMillis(busyNanos.get()));
+		}
+	}
+
+	private final JobOffersIngestionService ingestionService;
+	private final PredictTitle predictTitle;
+	private final DetectCities detectCities;
+	private final CountryNormalizer countryNormalizer;
+	private final CollectorMetrics collectorMetrics;
+
+	/* Cities Nominatim doesn't know, asked only once per run of the application */
+	private final Set<String> unresolvedCities = ConcurrentHashMap.newKeySet();
+
+	/* One lookup in flight per city, the offers of that city wait for it without holding up the others */
+	private final ConcurrentHashMap<String, CompletableFuture<Optional<String>>> pendingLookups = new ConcurrentHashMap<>();
+	private final ExecutorService lookups = Executors.newThreadPerTaskExecutor(
+			Thread.ofVirtual().name("ingestion-geo-", 1).factory());
+	/* Offers waiting for their country, at most one queue capacity */
+	private final Semaphore waitingForCountry;
+
+	private final Stage normalizeStage;
+	private final Stage classifyStage;
+	private final Stage writeStage;
+	private final List<Thread> threads = new ArrayList<>();
+
+	public IngestionPipeline(JobOffersIngestionService ingestionService, PredictTitle predictTitle,
+			DetectCities detectCities, CountryNormalizer countryNormalizer, CollectorMetrics collectorMetrics,
+			@Value("${ingestion.pipeline.queue-capacity:1000}") int queueCapacity,
+			@Value("${ingestion.pipeline.write-linger-ms:200}") long writeLingerMs) {
+		this.ingestionService = ingestionService;
+		this.predictTitle = predictTitle;
+		this.detectCities = detectCities;
+		this.countryNormalizer = countryNormalizer;
+		this.collectorMetrics = collectorMetrics;
+
+		int capacity = Math.max(1, queueCapacity);
+		this.waitingForCountry = new Semaphore(capacity);
+		/* write() completes its offers itself, whatever happens to them */
+		this.writeStage = new Stage("write", capacity, ingestionService.getBatchSize(), Math.max(0, writeLingerMs),
+				this::write, IngestionPipeline::release);
+		this.classifyStage = new Stage("classify", capacity, CLASSIFY_CHUNK, 0,
+				chunk -> forward(classify(chunk), writeStage), chunk -> forward(chunk, writeStage));
+		this.normalizeStage = new Stage("normalize", capacity, CLASSIFY_CHUNK, 0,
+				chunk -> forward(normalize(chunk), classifyStage), chunk -> forward(chunk, classifyStage));
+
+		for (Stage stage : List.of(normalizeStage, classifyStage, writeStage)) {
+			collectorMetrics.stage(stage.name, stage.input::size, stage.processed::get);
+			threads.add(Thread.ofVirtual().name("ingestion-" + stage.name).start(stage));
+		}
+	}
+
+	/**
+	 * Opens the buffer a collector adds its offers to for one crawl (see JobOffersBatch).
+	 */
+	public JobOffersBatch openBatch(String company) {
+		return new JobOffersBatch(this, company);
+	}
+
+	/*
+	 * Waits for room in the first queue when the pipeline is full : this is the backpressure on the collectors.
+	 * */
+	void submit(JobOffersBatch batch, JobsOffers offer) throws InterruptedException {
+		normalizeStage.input.put(new Item(batch, offer));
+	}
+
+	private static void forward(List<Item> chunk, Stage next) {
+		for (Item item : chunk) {
+			try {
+				next.input.put(item);
+			} catch (InterruptedException e) {
+				/* The application is stopping : the offers left are released so no collector waits for them */
+				Thread.currentThread().interrupt();
+				item.batch().completed(1);
+			}
+		}
+	}
+
+	private static void release(List<Item> chunk) {
+		chunk.forEach(item -> item.batch().completed(1));
+	}
+
+	/*
+	 * Returns the offers ready for the classify stage. The ones waiting for a country lookup are forwarded by the
+	 * lookup when it completes. An offer that can't be normalized goes on as it is.
+	 * */
+	private List<Item> normalize(List<Item> chunk) {
+		List<Item> ready = new ArrayList<>(chunk.size());
+		for (Item item : chunk) {
+			try {
+				JobsOffers offer = item.offer();
+				offer.setTitle(strip(offer.getTitle()));
+				offer.setCity(strip(offer.getCity()));
+				if (isUndefined(offer.getCountry()) && !isUndefined(offer.getCity())
+						&& !unresolvedCities.contains(offer.getCity().toLowerCase(Locale.ROOT))) {
+					if (awaitCountry(item)) {
+						continue;
+					}
+					offer.setCountry(UNDEFINED);
+				}
+			} catch (RuntimeException e) {
+				logger.log(Level.WARNING, "Could not normalize the offer " + item.offer().getUrl(), e);
+			}
+			ready.add(item);
+		}
+		return ready;
+	}
+
+	/*
+	 * Hands the offer to the lookup of its city, false when it could not be (the application is stopping).
+	 * */
+	private boolean awaitCountry(Item item) {
+		try {
+			waitingForCountry.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		String city = item.offer().getCity();
+		String key = city.toLowerCase(Locale.ROOT);
+		CompletableFuture<Optional<String>> lookup;
+		try {
+			lookup = pendingLookups.computeIfAbsent(key,
+					k -> CompletableFuture.supplyAsync(() -> resolveCountry(item.batch().collector(), city), lookups));
+		} catch (RejectedExecutionException e) {
+			waitingForCountry.release();
+			return false;
+		}
+		lookup.whenComplete((country, failure) -> {
+			pendingLookups.remove(key, lookup);
+			item.offer().setCountry(country == null ? UNDEFINED : country.orElse(UNDEFINED));
+			waitingForCountry.release();
+			forward(List.of(item), classifyStage);
+		});
+		return true;
+	}
+
+	/* The lookup is counted for the collector of the first offer that asked for this city */
+	private Optional<String> resolveCountry(String collector, String city) {
+		String key = city.toLowerCase(Locale.ROOT);
+		if (unresolvedCities.contains(key)) {
+			return Optional.empty();
+		}
+		try (CollectorContext.Scope scope = CollectorContext.enter(collector)) {
+			Optional<String> country = detectCities.getCountryForCity(city).map(detected -> {
+				String normalizedCountry = countryNormalizer.find(detected.toLowerCase());
+				return normalizedCountry.equals("NOT FOUND") ? detected : normalizedCountry;
+			});
+			if (country.isEmpty()) {
+				unresolvedCities.add(key);
+			}
+			return country;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Optional.empty();
+		} catch (Exception e) {
+			logger.fine("Country lookup failed for " + city + ": " + e.getMessage());
+			return Optional.empty();
+		}
+	}
+
+	/*
+	 * The offers of each collector in the chunk are classified together, so the timings are counted for their
+	 * collector. A chunk usually holds the offers of one or two crawls.
+	 * */
+	private List<Item> classify(List<Item> chunk) {
+		Map<String, List<JobsOffers>> unclassified = new LinkedHashMap<>();
+		for (Item item : chunk) {
+			if (item.offer().getJobField() == null) {
+				unclassified.computeIfAbsent(item.batch().collector(), collector -> new ArrayList<>()).add(item.offer());
+			}
+		}
+		unclassified.forEach((collector, offers) -> {
+			try (CollectorContext.Scope scope = CollectorContext.enter(collector)) {
+				long start = System.nanoTime();
+				List<String> fields = predictTitle.predictFields(offers.stream().map(JobsOffers::getTitle).toList());
+				collectorMetrics.classified(System.nanoTime() - start);
+				for (int i = 0; i < offers.size(); i++) {
+					offers.get(i).setJobField(fields.get(i).replace(" / ", " - "));
+				}
+			}
+		});
+		return chunk;
+	}
+
+	/*
+	 * The chunk may hold offers of several collectors running at the same time, each crawl is written on its own
+	 * so its counters and its checkpoint only see its offers.
+	 * */
+	private void write(List<Item> chunk) {
+		Map<JobOffersBatch, List<JobsOffers>> byBatch = new LinkedHashMap<>();
+		for (Item item : chunk) {
+			byBatch.computeIfAbsent(item.batch(), batch -> new ArrayList<>()).add(item.offer());
+		}
+		for (Map.Entry<JobOffersBatch, List<JobsOffers>> entry : byBatch.entrySet()) {
+			JobOffersBatch batch = entry.getKey();
+			List<JobsOffers> offers = entry.getValue();
+			try {
+				List<JobsOffers> unique = batch.firstSeen(offers);
+				JobOffersIngestionService.IngestionResult result = unique.isEmpty()
+						? JobOffersIngestionService.IngestionResult.EMPTY
+						: ingest(batch.collector(), unique);
+				batch.written(unique, result);
+			} catch (RuntimeException e) {
+				logger.log(Level.WARNING, "Could not write " + offers.size() + " offers", e);
+			} finally {
+				batch.completed(offers.size());
+			}
+		}
+	}
+
+	/*
+	 * One write to the database, timed for CollectorMetrics and traced as a DbWriteEvent (Java Flight Recorder).
+	 * */
+	private JobOffersIngestionService.IngestionResult ingest(String collector, List<JobsOffers> offers) {
+		long start = System.nanoTime();
+		DbWriteEvent event = DbWriteEvent.start(collector, offers.size());
+		try {
+			JobOffersIngestionService.IngestionResult result = ingestionService.ingest(offers);
+			collectorMetrics.written(collector, result.inserted(), result.updated(), System.nanoTime() - start);
+			event.end(result.inserted(), result.updated(), null);
+			return result;
+		} catch (RuntimeException e) {
+			event.end(0, 0, e);
+			throw e;
+		}
+	}
+
+	private static String strip(String value) {
+		return value == null ? null : value.strip();
+	}
+
+	private static boolean isUndefined(String value) {
+		return value == null || value.isBlank() || value.equalsIgnoreCase(UNDEFINED);
+	}
+
+	public List<StageStats> stats() {
+		return List.of(normalizeStage.stats(), classifyStage.stats(), writeStage.stats());
+	}
+
+	public void logStats() {
+		StringBuilder summary = new StringBuilder("Ingestion pipeline:");
+		for (StageStats stage : stats()) {
+			summary.append("\n  ").append(stage);
+		}
+		logger.info(summary.toString());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		threads.forEach(Thread::interrupt);
+		lookups.shutdownNow();
+	}
+}
@@ -0,0 +1,134 @@
+package com.websolutions.companies.collection.ingestion;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import com.websolutions.companies.collection.entites.JobsOffers;
+import com.websolutions.companies.collection.orchestration.CollectorContext;
+import com.websolutions.companies.collection.utils.OfferFingerprint;
+
+/*
+ * The offers of one crawl on their way through IngestionPipeline.
+ * Detail pages are visited by several threads (DetailPageFetcher, HttpPageFetcher), so add() can be called
+ * concurrently. add() only waits when the pipeline is full, the offers are normalized, classified and written by
+ * the pipeline threads while the collector goes on. An offer seen earlier in the same crawl is dropped before
+ * the write, once its country is resolved. close() waits until every offer added is written.
+ *
+ *   try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
+ *       ...
+ *       offersBatch.add(jobOffer);
+ *   }
+ * */
+public class JobOffersBatch implements AutoCloseable {
+
+	private static final Logger logger = Logger.getLogger(JobOffersBatch.class.getName());
+
+	private final IngestionPipeline pipeline;
+	private final String company;
+	/* The collector that opened the batch, the pipeline threads tag the metrics of its offers with it */
+	private final String collector;
+	private final Set<UUID> seen = new HashSet<>();
+	/* A lock and not wait()/notify() : a virtual thread waiting in Object.wait() keeps its carrier thread */
+	private final ReentrantLock progress = new ReentrantLock();
+	private final Condition allCompleted = progress.newCondition();
+	private int submitted = 0;
+	private int completed = 0;
+	private int added = 0;
+	private JobOffersIngestionService.IngestionResult stored = JobOffersIngestionService.IngestionResult.EMPTY;
+	private volatile Consumer<List<JobsOffers>> storedListener = offers -> {};
+
+	JobOffersBatch(IngestionPipeline pipeline, String company) {
+		this.pipeline = pipeline;
+		this.company = company;
+		this.collector = CollectorContext.current().orElse(company);
+	}
+
+	String collector() {
+		return collector;
+	}
+
+	/**
+	 * Calls the listener with every chunk of offers once it is written to the database (used by CrawlCheckpoint).
+	 */
+	public void onStored(Consumer<List<JobsOffers>> listener) {
+		this.storedListener = listener;
+	}
+
+	public void add(JobsOffers offer) {
+		progress.lock();
+		try {
+			submitted++;
+		} finally {
+			progress.unlock();
+		}
+		try {
+			pipeline.submit(this, offer);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			completed(1);
+		}
+	}
+
+	/**
+	 * Waits until the offers added so far are written.
+	 */
+	public void flush() {
+		progress.lock();
+		try {
+			while (completed < submitted) {
+				allCompleted.await();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			progress.unlock();
+		}
+	}
+
+	/* Called by the write stage, which is the only thread reading seen */
+	synchronized List<JobsOffers> firstSeen(List<JobsOffers> offers) {
+		List<JobsOffers> unique = new ArrayList<>();
+		for (JobsOffers offer : offers) {
+			if (seen.add(OfferFingerprint.of(offer))) {
+				unique.add(offer);
+			}
+		}
+		added += unique.size();
+		return unique;
+	}
+
+	void written(List<JobsOffers> offers, JobOffersIngestionService.IngestionResult result) {
+		synchronized (this) {
+			stored = stored.plus(result);
+		}
+		if (!offers.isEmpty()) {
+			storedListener.accept(offers);
+		}
+	}
+
+	void completed(int offers) {
+		progress.lock();
+		try {
+			completed += offers;
+			allCompleted.signalAll();
+		} finally {
+			progress.unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		flush();
+		synchronized (this) {
+			logger.info(company + " : " + added + " offers collected, " + stored.inserted() + " new, " + stored.updated()
+					+ " updated");
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package com.websolutions.companies.collection.ingestion;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.websolutions.companies.collection.entites.JobsOffers;
+import com.websolutions.companies.collection.utils.OfferFingerprint;
+
+/*
+ * Writes the offers of a crawl to jobs_offers with a few set-based statements instead of
+ * existsBy...() + save() for every offer.
+ *
+ * For every chunk of ingestion.batch-size offers, duplicates inside the chunk are first dropped in memory. Then,
+ * depending on ingestion.mode :
+ * - upsert : one multi-row INSERT ... ON CONFLICT on the unique fingerprint index (see OfferFingerprint).
+ *   The existence check and the write are the same atomic statement, so two collectors can't race between them.
+ *   With ingestion.on-conflict=update, an offer already stored gets its details (post, contract type...) refreshed
+ *   when they changed, with nothing it's left untouched.
+ * - batch : one SELECT ... WHERE fingerprint = ANY(?) finds the offers already stored, and the new ones are sent as
+ *   one JDBC batch. With reWriteBatchedInserts=true on the datasource URL, the PostgreSQL driver turns the batch into
+ *   multi-row INSERT statements. Useful on a database where the unique index could not be created.
+ *
+ * JobsOffers uses an IDENTITY id, which stops Hibernate from batching inserts, so the rows are written with
+ * JdbcTemplate. The id, created_at and fingerprint are filled the same way as with save() : id by the database,
+ * created_at with the current time, fingerprint with OfferFingerprint.
+ * */
+@Service
+public class JobOffersIngestionService {
+
+	private static final Logger logger = Logger.getLogger(JobOffersIngestionService.class.getName());
+
+	private static final String EXISTING_FINGERPRINTS_SQL = """
+			SELECT fingerprint FROM jobs_offers WHERE fingerprint = ANY(?)
+			""";
+
+	private static final String INSERT_COLUMNS = """
+			INSERT INTO jobs_offers (title, company, city, country, url, contract_type, work_mode, publish_date,
+			                         job_field, post, created_at, fingerprint, source_url)
+			VALUES
+			""";
+
+	private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final int COLUMNS_PER_ROW = 13;
+
+	/*
+	 * PostgreSQL accepts at most 65535 parameters in one statement, which caps the rows of one multi-row upsert.
+	 * */
+	private static final int MAX_UPSERT_ROWS = 65535 / COLUMNS_PER_ROW;
+
+	/*
+	 * xmax is 0 on a row version created by an INSERT, and set on the version written by ON CONFLICT DO UPDATE.
+	 * The WHERE clause skips the update (and the new row version) when nothing changed, such rows are not returned.
+	 * */
+	private static final String ON_CONFLICT_UPDATE = """
+			ON CONFLICT (fingerprint) DO UPDATE SET
+			    contract_type = EXCLUDED.contract_type,
+			    work_mode = EXCLUDED.work_mode,
+			    publish_date = EXCLUDED.publish_date,
+			    job_field = EXCLUDED.job_field,
+			    post = EXCLUDED.post,
+			    source_url = COALESCE(EXCLUDED.source_url, jobs_offers.source_url)
+			WHERE (jobs_offers.contract_type, jobs_offers.work_mode, jobs_offers.publish_date, jobs_offers.job_field,
+			       jobs_offers.post, jobs_offers.source_url)
+			      IS DISTINCT FROM
+			      (EXCLUDED.contract_type, EXCLUDED.work_mode, EXCLUDED.publish_date, EXCLUDED.job_field, EXCLUDED.post,
+			       COALESCE(EXCLUDED.source_url, jobs_offers.source_url))
+			RETURNING (xmax = 0) AS inserted
+			""";
+
+	private static final String ON_CONFLICT_NOTHING = """
+			ON CONFLICT (fingerprint) DO NOTHING
+			RETURNING true AS inserted
+			""";
+
+	private static final String INSERT_SQL = INSERT_COLUMNS + ROW_PLACEHOLDERS;
+
+	/**
+	 * What one ingest() call did : rows inserted, and rows already stored whose details were updated.
+	 * Offers that were already stored unchanged are in neither count.
+	 */
+	public record IngestionResult(int inserted, int updated) {
+
+		public static final IngestionResult EMPTY = new IngestionResult(0, 0);
+
+		public IngestionResult plus(IngestionResult other) {
+			return new IngestionResult(inserted + other.inserted, updated + other.updated);
+		}
+	}
+
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+	private final KnownOffersFilter knownOffersFilter;
+	private final int batchSize;
+	private final boolean upsert;
+	private final boolean updateOnConflict;
+
+	public JobOffersIngestionService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+			KnownOffersFilter knownOffersFilter,
+			@Value("${ingestion.batch-size:500}") int batchSize,
+			@Value("${ingestion.mode:upsert}") String mode,
+			@Value("${ingestion.on-conflict:update}") String onConflict) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.knownOffersFilter = knownOffersFilter;
+		this.upsert = mode.strip().equalsIgnoreCase("upsert");
+		this.updateOnConflict = onConflict.strip().equalsIgnoreCase("update");
+		this.batchSize = Math.max(1, upsert ? Math.min(batchSize, MAX_UPSERT_ROWS) : batchSize);
+	}
+
+	/**
+	 * Rows written by one statement, the write stage of IngestionPipeline gathers chunks of this size.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Stores the offers that are not in the table yet (and, in upsert mode, refreshes the ones that changed).
+	 */
+	public IngestionResult ingest(Collection<JobsOffers> offers) {
+		List<JobsOffers> unique = new ArrayList<>(deduplicate(offers).values());
+		IngestionResult result = IngestionResult.EMPTY;
+		for (int from = 0; from < unique.size(); from += batchSize) {
+			List<JobsOffers> chunk = unique.subList(from, Math.min(from + batchSize, unique.size()));
+			result = result.plus(upsert ? upsertChunk(chunk) : new IngestionResult(insertNewOffers(chunk), 0));
+			chunk.forEach(offer -> knownOffersFilter.add(offer.getSourceUrl()));
+		}
+		return result;
+	}
+
+	/*
+	 * One statement for the whole chunk. RETURNING gives one row per inserted or updated offer.
+	 * */
+	private IngestionResult upsertChunk(List<JobsOffers> chunk) {
+		StringBuilder sql = new StringBuilder(INSERT_COLUMNS);
+		for (int i = 0; i < chunk.size(); i++) {
+			sql.append(i == 0 ? "" : ",\n").append(ROW_PLACEHOLDERS);
+		}
+		sql.append('\n').append(updateOnConflict ? ON_CONFLICT_UPDATE : ON_CONFLICT_NOTHING);
+
+		LocalDateTime now = LocalDateTime.now();
+		int[] counts = new int[2];
+		jdbcTemplate.query(sql.toString(), statement -> {
+			int index = 1;
+			for (JobsOffers offer : chunk) {
+				index = bindOffer(statement, index, offer, now);
+			}
+		}, resultSet -> {
+			counts[resultSet.getBoolean("inserted") ? 0 : 1]++;
+		});
+		return new IngestionResult(counts[0], counts[1]);
+	}
+
+	private int insertNewOffers(List<JobsOffers> chunk) {
+		Set<UUID> existing = existingFingerprints(chunk.stream().map(OfferFingerprint::of).toList());
+		List<JobsOffers> newOffers = chunk.stream()
+				.filter(offer -> !existing.contains(OfferFingerprint.of(offer)))
+				.toList();
+		if (newOffers.isEmpty()) {
+			return 0;
+		}
+
+		try {
+			/* One transaction for the whole batch : if one row breaks the unique constraint, none is kept */
+			transactionTemplate.executeWithoutResult(status -> insertAll(newOffers));
+			return newOffers.size();
+		} catch (DataIntegrityViolationException e) {
+			/* Another process inserted some of these offers since the SELECT, fall back to one row at a time */
+			return insertOneByOne(newOffers);
+		}
+	}
+
+	private static Map<UUID, JobsOffers> deduplicate(Collection<JobsOffers> offers) {
+		Map<UUID, JobsOffers> unique = new LinkedHashMap<>();
+		for (JobsOffers offer : offers) {
+			unique.putIfAbsent(OfferFingerprint.of(offer), offer);
+		}
+		return unique;
+	}
+
+	/**
+	 * Returns the fingerprints of the list that are already stored, with one probe of the unique index per value.
+	 */
+	public Set<UUID> existingFingerprints(Collection<UUID> fingerprints) {
+		Set<UUID> existing = new HashSet<>();
+		if (fingerprints.isEmpty()) {
+			return existing;
+		}
+		Object[] values = fingerprints.toArray();
+		jdbcTemplate.query(connection -> {
+			PreparedStatement statement = connection.prepareStatement(EXISTING_FINGERPRINTS_SQL);
+			Array fingerprintArray = connection.createArrayOf("uuid", values);
+			statement.setArray(1, fingerprintArray);
+			return statement;
+		}, resultSet -> {
+			existing.add(resultSet.getObject("fingerprint", UUID.class));
+		});
+		return existing;
+	}
+
+	private void insertAll(List<JobsOffers> offers) {
+		LocalDateTime now = LocalDateTime.now();
+		jdbcTemplate.batchUpdate(INSERT_SQL, offers, offers.size(),
+				(statement, offer) -> bindOffer(statement, 1, offer, now));
+	}
+
+	/*
+	 * Binds the columns of one offer, in INSERT order, starting at the given parameter index.
+	 * Returns the index of the next free parameter.
+	 * */
+	private static int bindOffer(PreparedStatement statement, int index, JobsOffers offer, LocalDateTime createdAt)
+			throws SQLException {
+		statement.setString(index++, offer.getTitle());
+		statement.setString(index++, offer.getCompany());
+		statement.setString(index++, offer.getCity());
+		statement.setString(index++, offer.getCountry());
+		statement.setString(index++, offer.getUrl());
+		statement.setString(index++, offer.getContractType());
+		statement.setString(index++, offer.getWorkMode());
+		statement.setString(index++, offer.getPublishDate());
+		statement.setString(index++, offer.getJobField());
+		statement.setString(index++, offer.getPost());
+		statement.setObject(index++, createdAt);
+		statement.setObject(index++, OfferFingerprint.of(offer));
+		statement.setString(index++, offer.getSourceUrl());
+		return index;
+	}
+
+	private int insertOneByOne(List<JobsOffers> offers) {
+		int inserted = 0;
+		for (JobsOffers offer : offers) {
+			try {
+				insertAll(List.of(offer));
+				inserted++;
+			} catch (DataIntegrityViolationException e) {
+				logger.info("Duplicate detected: " + offer.getTitle() + " @ " + offer.getUrl());
+			}
+		}
+		return inserted;
+	}
+}
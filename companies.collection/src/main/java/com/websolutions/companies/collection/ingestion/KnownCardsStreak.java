@@ -0,0 +1,46 @@
+package com.websolutions.companies.collection.ingestion;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/*
+ * Counts the consecutive cards of a listing whose offer is already stored, to stop an incremental crawl.
+ * The collectors keep their cards in a map from card position to detail page link (jobsLinks), and call
+ * reachedWith() once per listing page : only the cards added since the previous call are looked up, with one query.
+ *
+ * A disabled streak (threshold 0, every crawl mode except incremental) never stops the listing and costs nothing.
+ * */
+public class KnownCardsStreak {
+
+	private final KnownOffersFilter knownOffersFilter;
+	private final int threshold;
+	private int checkedCards = 0;
+	private int consecutiveKnown = 0;
+
+	KnownCardsStreak(KnownOffersFilter knownOffersFilter, int threshold) {
+		this.knownOffersFilter = knownOffersFilter;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * True once threshold cards in a row, in listing order, are already stored.
+	 */
+	public boolean reachedWith(Map<Integer, String> jobsLinks) {
+		if (threshold <= 0 || checkedCards >= jobsLinks.size()) {
+			return false;
+		}
+		List<String> pageLinks = IntStream.range(checkedCards, jobsLinks.size()).mapToObj(jobsLinks::get).toList();
+		checkedCards = jobsLinks.size();
+
+		Set<String> known = knownOffersFilter.knownLinks(pageLinks);
+		for (String link : pageLinks) {
+			consecutiveKnown = known.contains(link) ? consecutiveKnown + 1 : 0;
+			if (consecutiveKnown >= threshold) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
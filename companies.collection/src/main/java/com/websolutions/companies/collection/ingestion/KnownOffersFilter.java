@@ -0,0 +1,207 @@
+package com.websolutions.companies.collection.ingestion;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/*
+ * Tells which job cards were already stored by a previous crawl, so the detail page (the slow part of a crawl)
+ * of those cards is skipped.
+ * The check is made once, by DetailPageFetcher and HttpPageFetcher in visitAll() : a collector that hands its links
+ * to a fetcher doesn't call knownLinks() itself. Only a collector loading its detail pages on its own would.
+ *
+ * On a re-crawl most cards are already known, and asking PostgreSQL about each of them one by one is wasteful.
+ * At the start of a run, the source_url of every stored offer is streamed into a Bloom filter : a bit array
+ * where each URL sets a few bits. A URL whose bits are not all set was never stored, and that answer costs no query.
+ * A URL whose bits are all set is only "maybe known" (another URL may have set the same bits), so these candidates
+ * are confirmed with one SELECT ... WHERE source_url = ANY(?) per listing.
+ *
+ * The key is the detail page URL and not the fingerprint : the fingerprint needs the apply link (and for some sites
+ * the city) which are only read on the detail page, while the detail page URL is on the card itself.
+ * */
+@Service
+public class KnownOffersFilter {
+
+	private static final Logger logger = Logger.getLogger(KnownOffersFilter.class.getName());
+
+	private static final String COUNT_SQL = "SELECT count(*) FROM jobs_offers WHERE source_url IS NOT NULL";
+
+	private static final String SOURCE_URLS_SQL = "SELECT source_url FROM jobs_offers WHERE source_url IS NOT NULL";
+
+	private static final String EXISTING_SOURCE_URLS_SQL = """
+			SELECT DISTINCT source_url FROM jobs_offers WHERE source_url = ANY(?)
+			""";
+
+	private static final int FETCH_SIZE = 10_000;
+
+	/*
+	 * The filter is sized for twice the stored offers, so the new offers added during the crawl don't raise
+	 * the false positive rate above the configured one. A small table still gets a filter of a useful size.
+	 * */
+	private static final long MIN_CAPACITY = 10_000;
+
+	/*
+	 * A fixed size bit array with k bit positions per URL, derived from one 128 bit hash (double hashing).
+	 * The bits live in an AtomicLongArray so collectors running in parallel can add URLs without a lock.
+	 * */
+	static final class BloomFilter {
+
+		private final AtomicLongArray words;
+		private final long bitCount;
+		private final int hashCount;
+
+		BloomFilter(long expectedEntries, double falsePositiveRate) {
+			long bits = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+			int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) / 64));
+			this.words = new AtomicLongArray(wordCount);
+			this.bitCount = (long) wordCount * 64;
+			this.hashCount = (int) Math.max(1, Math.round((double) bitCount / expectedEntries * Math.log(2)));
+		}
+
+		void add(String key) {
+			UUID hash = hash(key);
+			long combined = hash.getMostSignificantBits();
+			for (int i = 0; i < hashCount; i++) {
+				long bit = Math.floorMod(combined, bitCount);
+				words.getAndUpdate((int) (bit >>> 6), word -> word | (1L << bit));
+				combined += hash.getLeastSignificantBits();
+			}
+		}
+
+		boolean mightContain(String key) {
+			UUID hash = hash(key);
+			long combined = hash.getMostSignificantBits();
+			for (int i = 0; i < hashCount; i++) {
+				long bit = Math.floorMod(combined, bitCount);
+				if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+					return false;
+				}
+				combined += hash.getLeastSignificantBits();
+			}
+			return true;
+		}
+
+		long sizeInBytes() {
+			return bitCount / 8;
+		}
+
+		private static UUID hash(String key) {
+			return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate readOnlyTransaction;
+	private final boolean enabled;
+	private final double falsePositiveRate;
+	private final int incrementalStopAfter;
+
+	/* Null until preload() ran : every card is then treated as new, like before this filter existed */
+	private volatile BloomFilter filter;
+
+	public KnownOffersFilter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+			@Value("${known-offers.enabled:true}") boolean enabled,
+			@Value("${known-offers.false-positive-rate:0.01}") double falsePositiveRate,
+			@Value("${known-offers.incremental-stop-after:20}") int incrementalStopAfter) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+		this.enabled = enabled;
+		this.falsePositiveRate = Math.min(0.5, Math.max(1e-6, falsePositiveRate));
+		this.incrementalStopAfter = Math.max(1, incrementalStopAfter);
+	}
+
+	/**
+	 * Builds the filter from the source URLs already stored. The rows are streamed with a cursor (PostgreSQL only
+	 * uses one inside a transaction), so the URLs are never all in memory at the same time.
+	 */
+	public void preload() {
+		if (!enabled) {
+			return;
+		}
+		long start = System.nanoTime();
+		Long stored = jdbcTemplate.queryForObject(COUNT_SQL, Long.class);
+		BloomFilter loading = new BloomFilter(Math.max(MIN_CAPACITY, 2 * (stored == null ? 0 : stored)),
+				falsePositiveRate);
+
+		readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+			PreparedStatement statement = connection.prepareStatement(SOURCE_URLS_SQL);
+			statement.setFetchSize(FETCH_SIZE);
+			return statement;
+		}, resultSet -> {
+			loading.add(resultSet.getString(1));
+		}));
+
+		filter = loading;
+		logger.info("Known offers filter loaded with " + stored + " source URLs (" + loading.sizeInBytes() / 1024
+				+ " KB) in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+	}
+
+	/**
+	 * Records the source URL of an offer just stored, so a later listing of the same run (another collector,
+	 * another country page) skips it too.
+	 */
+	public void add(String sourceUrl) {
+		BloomFilter current = filter;
+		if (current != null && sourceUrl != null) {
+			current.add(sourceUrl);
+		}
+	}
+
+	/**
+	 * Returns the links of the list whose offer is already stored. Only the links the filter can't rule out
+	 * are looked up in the database, with a single query.
+	 */
+	public Set<String> knownLinks(Collection<String> links) {
+		Set<String> known = new HashSet<>();
+		BloomFilter current = filter;
+		if (current == null || links.isEmpty()) {
+			return known;
+		}
+
+		Set<String> candidates = new LinkedHashSet<>();
+		for (String link : links) {
+			if (link != null && current.mightContain(link)) {
+				candidates.add(link);
+			}
+		}
+		if (candidates.isEmpty()) {
+			return known;
+		}
+
+		Object[] values = candidates.toArray();
+		jdbcTemplate.query(connection -> {
+			PreparedStatement statement = connection.prepareStatement(EXISTING_SOURCE_URLS_SQL);
+			Array linkArray = connection.createArrayOf("text", values);
+			statement.setArray(1, linkArray);
+			return statement;
+		}, resultSet -> {
+			known.add(resultSet.getString("source_url"));
+		});
+
+		logger.fine(links.size() + " links, " + candidates.size() + " possibly known, "
+				+ (candidates.size() - known.size()) + " false positives");
+		return known;
+	}
+
+	/**
+	 * Starts counting the known cards of one listing walk. Only an incremental crawl stops on them, after
+	 * known-offers.incremental-stop-after consecutive known cards, for the other modes the streak never stops.
+	 */
+	public KnownCardsStreak startStreak(boolean incremental) {
+		return new KnownCardsStreak(this, incremental && enabled ? incrementalStopAfter : 0);
+	}
+}
@@ -0,0 +1,48 @@
+package com.websolutions.companies.collection.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One WebDriverWait.until of a collector, the condition is the description Selenium gives of it.
+ */
+@Name("com.websolutions.BrowserWait")
+@Label("Browser Wait")
+@Category({ CrawlEvents.CATEGORY, "Browser" })
+@Description("WebDriverWait.until in a collector, until the condition is met or the wait times out")
+@StackTrace(false)
+public class BrowserWaitEvent extends Event {
+
+	@Label("Collector")
+	String collector;
+
+	@Label("Host")
+	String host;
+
+	@Label("Condition")
+	String condition;
+
+	@Label("Outcome")
+	String outcome;
+
+	public static BrowserWaitEvent start() {
+		BrowserWaitEvent event = new BrowserWaitEvent();
+		event.begin();
+		return event;
+	}
+
+	public void end(Object condition, Throwable failure) {
+		end();
+		if (shouldCommit()) {
+			this.collector = CrawlEvents.collector();
+			this.host = CrawlEvents.currentHost();
+			this.condition = String.valueOf(condition);
+			this.outcome = CrawlEvents.outcome(failure);
+			commit();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.websolutions.companies.collection.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The job field prediction of one title (predictField) or of a list of titles (predictFields).
+ */
+@Name("com.websolutions.Classification")
+@Label("Job Field Classification")
+@Category({ CrawlEvents.CATEGORY, "Ingestion" })
+@Description("Job field predicted by the model for one or more titles")
+@StackTrace(false)
+public class ClassificationEvent extends Event {
+
+	@Label("Collector")
+	String collector;
+
+	@Label("Titles")
+	int titles;
+
+	@Label("Outcome")
+	String outcome;
+
+	public static ClassificationEvent start(int titles) {
+		ClassificationEvent event = new ClassificationEvent();
+		event.titles = titles;
+		event.begin();
+		return event;
+	}
+
+	public void end(Throwable failure) {
+		end();
+		if (shouldCommit()) {
+			collector = CrawlEvents.collector();
+			outcome = CrawlEvents.outcome(failure);
+			commit();
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.websolutions.companies.collection.jfr;
+
+import com.websolutions.companies.collection.orchestration.CollectorContext;
+import com.websolutions.companies.collection.ratelimit.HostRateLimiter;
+
+/*
+ * Java Flight Recorder events of the crawls, to find which site and which stage made a run slow from a recording
+ * taken in production, without attaching a profiler :
+ *
+ *   PageLoadEvent        every driver.get / navigate().to of a browser session
+ *   BrowserWaitEvent     every WebDriverWait.until of the collectors (TracedWebDriverWait)
+ *   ClassificationEvent  PredictTitle.predictField / predictFields
+ *   GeoLookupEvent       DetectCities.getCountryForCity
+ *   DbWriteEvent         one write of a chunk of offers by the ingestion pipeline
+ *
+ * They carry the collector (CollectorContext), the host of the URL when there is one and an outcome
+ * ("success", "timeout" or the exception class). The events are enabled in every recording, with no threshold and
+ * no stack trace, so a continuous recording (see the Dockerfile) keeps all of them for little overhead.
+ * Open the recording in JDK Mission Control and group the events by collector or host, or use
+ *   jfr print --events com.websolutions.PageLoad recording.jfr
+ * */
+public final class CrawlEvents {
+
+	static final String CATEGORY = "Job Offers Collector";
+
+	static final String SUCCESS = "success";
+
+	private static final String NO_COLLECTOR = "none";
+
+	/* Host of the last page loaded by this thread, the waits that follow are about that page */
+	private static final ThreadLocal<String> CURRENT_HOST = new ThreadLocal<>();
+
+	private CrawlEvents() {
+	}
+
+	static String collector() {
+		return CollectorContext.current().orElse(NO_COLLECTOR);
+	}
+
+	static String hostOf(String url) {
+		return url == null ? "" : HostRateLimiter.hostOf(url);
+	}
+
+	static String currentHost() {
+		String host = CURRENT_HOST.get();
+		return host == null ? "" : host;
+	}
+
+	static void pageLoading(String url) {
+		CURRENT_HOST.set(hostOf(url));
+	}
+
+	static String outcome(Throwable failure) {
+		if (failure == null) {
+			return SUCCESS;
+		}
+		return failure instanceof org.openqa.selenium.TimeoutException ? "timeout" : failure.getClass().getSimpleName();
+	}
+}
@@ -0,0 +1,52 @@
+package com.websolutions.companies.collection.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One write of a chunk of offers to the database by the ingestion pipeline.
+ */
+@Name("com.websolutions.DbWrite")
+@Label("Offers Write")
+@Category({ CrawlEvents.CATEGORY, "Ingestion" })
+@Description("JobOffersIngestionService.ingest of a chunk of offers of one crawl")
+@StackTrace(false)
+public class DbWriteEvent extends Event {
+
+	@Label("Collector")
+	String collector;
+
+	@Label("Offers")
+	int offers;
+
+	@Label("Inserted")
+	int inserted;
+
+	@Label("Updated")
+	int updated;
+
+	@Label("Outcome")
+	String outcome;
+
+	public static DbWriteEvent start(String collector, int offers) {
+		DbWriteEvent event = new DbWriteEvent();
+		event.collector = collector;
+		event.offers = offers;
+		event.begin();
+		return event;
+	}
+
+	public void end(int inserted, int updated, Throwable failure) {
+		end();
+		if (shouldCommit()) {
+			this.inserted = inserted;
+			this.updated = updated;
+			this.outcome = CrawlEvents.outcome(failure);
+			commit();
+		}
+	}
+}
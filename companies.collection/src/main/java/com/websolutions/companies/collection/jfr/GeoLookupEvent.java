@@ -0,0 +1,56 @@
+package com.websolutions.companies.collection.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One city to country lookup. The source tells where the answer came from (cache, local, api or miss), the host is
+ * the one of the geocoding API when it was called.
+ */
+@Name("com.websolutions.GeoLookup")
+@Label("Geo Lookup")
+@Category({ CrawlEvents.CATEGORY, "Ingestion" })
+@Description("DetectCities.getCountryForCity, from the cache, the local file or Nominatim")
+@StackTrace(false)
+public class GeoLookupEvent extends Event {
+
+	@Label("Collector")
+	String collector;
+
+	@Label("Host")
+	String host;
+
+	@Label("City")
+	String city;
+
+	@Label("Source")
+	String source;
+
+	@Label("Outcome")
+	String outcome;
+
+	public static GeoLookupEvent start(String city) {
+		GeoLookupEvent event = new GeoLookupEvent();
+		event.city = city;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends the event, apiUrl is the address of the API when it was called and null otherwise.
+	 */
+	public void end(String source, String apiUrl, Throwable failure) {
+		end();
+		if (shouldCommit()) {
+			this.collector = CrawlEvents.collector();
+			this.host = CrawlEvents.hostOf(apiUrl);
+			this.source = source;
+			this.outcome = CrawlEvents.outcome(failure);
+			commit();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.websolutions.companies.collection.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One page loaded by a browser session, from driver.get (or navigate().to) until it returns.
+ */
+@Name("com.websolutions.PageLoad")
+@Label("Page Load")
+@Category({ CrawlEvents.CATEGORY, "Browser" })
+@Description("driver.get of a collector browser session")
+@StackTrace(false)
+public class PageLoadEvent extends Event {
+
+	@Label("Collector")
+	String collector;
+
+	@Label("Host")
+	String host;
+
+	@Label("URL")
+	String url;
+
+	@Label("Outcome")
+	String outcome;
+
+	/**
+	 * Starts the event of a page load on this thread.
+	 */
+	public static PageLoadEvent start(String url) {
+		CrawlEvents.pageLoading(url);
+		PageLoadEvent event = new PageLoadEvent();
+		event.url = url;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends the event, failure is null when the page loaded.
+	 */
+	public void end(Throwable failure) {
+		end();
+		if (shouldCommit()) {
+			collector = CrawlEvents.collector();
+			host = CrawlEvents.hostOf(url);
+			outcome = CrawlEvents.outcome(failure);
+			commit();
+		}
+	}
+}
@@ -5,7 +5,8 @@ import java.io.IOException;
 import java.nio.file.*;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
@@ -15,6 +16,10 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import com.websolutions.companies.collection.jfr.GeoLookupEvent;
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+import com.websolutions.companies.collection.ratelimit.HostRateLimiter;
+
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -53,10 +58,30 @@ public class DetectCities {
      * These structures store city and country information in memory. 
      * The cache keeps quick lookups for the current runtime, while the two other maps hold the JSON file data and an 
      * index for fast city-to-country searches.
+     * Lookups may come from several threads at the same time (the ingestion pipeline, virtual threads of the collectors),
+     * so the cache and the index are concurrent maps, and the JSON file is only read or written under STORE_LOCK.
+     * STORE_LOCK is a ReentrantLock and not synchronized : a virtual thread doing file I/O inside synchronized
+     * would hold its carrier thread.
+     * */
+    private static final Map<String, String> CACHE_CITY_TO_COUNTRY = new ConcurrentHashMap<>();
+    private static volatile Map<String, List<String>> COUNTRY_TO_CITIES = null;
+    private static volatile Map<String, String> CITY_TO_COUNTRY_INDEX = null; 
+    private static final ReentrantLock STORE_LOCK = new ReentrantLock();
+
+    /*
+     * Nominatim accepts at most one request per second from a client. Every request takes its turn from
+     * HostRateLimiter (rate-limit.hosts.nominatim.openstreetmap.org.*), so however many threads look up cities,
+     * they never go over that rate, and a lookup after a quiet period doesn't wait at all.
      * */
-    private static final Map<String, String> CACHE_CITY_TO_COUNTRY = new HashMap<>();
-    private static Map<String, List<String>> COUNTRY_TO_CITIES = null;
-    private static Map<String, String> CITY_TO_COUNTRY_INDEX = null; 
+    private final HostRateLimiter hostRateLimiter;
+
+    /* Each lookup is counted by where its answer came from : cache, local, api or miss */
+    private final CollectorMetrics collectorMetrics;
+
+    public DetectCities(HostRateLimiter hostRateLimiter, CollectorMetrics collectorMetrics) {
+        this.hostRateLimiter = hostRateLimiter;
+        this.collectorMetrics = collectorMetrics;
+    }
 
     /**
      * Orchestrator:
@@ -77,6 +102,8 @@ public class DetectCities {
 
         /* System.out.println("\n🔎 Looking up city: " + city); */
         String lower = city.toLowerCase(Locale.ROOT);
+        long start = System.nanoTime();
+        GeoLookupEvent event = GeoLookupEvent.start(city);
 
         /*
          * This checks whether the requested city already exists in the program’s in-memory cache, 
@@ -84,6 +111,7 @@ public class DetectCities {
          * */
         if (CACHE_CITY_TO_COUNTRY.containsKey(lower)) {
         	/* System.out.println("✅ Found in in-memory cache."); */
+            lookedUp(event, "cache", start, null);
             return Optional.ofNullable(CACHE_CITY_TO_COUNTRY.get(lower));
         }
 
@@ -98,6 +126,7 @@ public class DetectCities {
         if (local.isPresent()) {
             String country = local.get();
             CACHE_CITY_TO_COUNTRY.put(lower, country);
+            lookedUp(event, "local", start, null);
             return local;
         }
 
@@ -108,15 +137,31 @@ public class DetectCities {
          * and adds it to the local JSON file with addCityToLocalStore(city, country) so it’s saved permanently. 
          * 	Finally, it returns the API result.
          * */
-        Optional<String> api = fetchCountryFromApi(city);
+        Optional<String> api;
+        try {
+            api = fetchCountryFromApi(city);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            lookedUp(event, "api", start, e);
+            throw e;
+        }
         if (api.isPresent()) {
             String country = api.get();
             CACHE_CITY_TO_COUNTRY.put(lower, country);
             addCityToLocalStore(city, country);
         }
+        lookedUp(event, api.isPresent() ? "api" : "miss", start, null);
         return api;
     }
 
+    /*
+     * The lookup timer of CollectorMetrics and the GeoLookupEvent of Java Flight Recorder, by source of the answer.
+     * */
+    private void lookedUp(GeoLookupEvent event, String source, long start, Exception failure) {
+        collectorMetrics.geoLookup(source, System.nanoTime() - start);
+        boolean calledApi = "api".equals(source) || "miss".equals(source);
+        event.end(source, calledApi ? NOMINATIM_BASE : null, failure);
+    }
+
     /**
      * NEW: Check only the JSON file for the city (case-insensitive).
      * No network call. Returns Optional.of(country) if found.
@@ -142,12 +187,12 @@ public class DetectCities {
      * NEW: Query only the Nominatim API for the city (no JSON write).
      * Returns Optional.of(country) if API finds it.
      */
-    public static Optional<String> fetchCountryFromApi(String userCity) throws IOException, InterruptedException {
+    public Optional<String> fetchCountryFromApi(String userCity) throws IOException, InterruptedException {
         String city = normalizeCity(userCity);
         if (city.isEmpty()) return Optional.empty();
 
         /* System.out.println("🌐 Querying Nominatim for: " + city); */
-        TimeUnit.MILLISECONDS.sleep(1100);
+        hostRateLimiter.acquire(NOMINATIM_BASE);
 
         HttpUrl url = HttpUrl.parse(NOMINATIM_BASE).newBuilder()
                 .addQueryParameter("q", city)
@@ -205,16 +250,24 @@ public class DetectCities {
      * 	 Now, if we ask for "Lyon", it can instantly find "France" from this map, without searching the whole file.
      * 
      * */
-    private static synchronized void ensureIndexLoaded() throws IOException {
-        if (COUNTRY_TO_CITIES == null) {
-            /* System.out.println("📂 Loading local JSON file..."); */
-            COUNTRY_TO_CITIES = readCountryCitiesFile(JSON_FILE);
-            /* System.out.println("✅ Loaded " + COUNTRY_TO_CITIES.size() + " countries."); */
+    private static void ensureIndexLoaded() throws IOException {
+        if (CITY_TO_COUNTRY_INDEX != null) {
+            return;
         }
-        if (CITY_TO_COUNTRY_INDEX == null) {
-            /* System.out.println("🧠 Building in-memory index..."); */
-            CITY_TO_COUNTRY_INDEX = buildCityToCountryIndex(COUNTRY_TO_CITIES);
-            /* System.out.println("✅ Indexed " + CITY_TO_COUNTRY_INDEX.size() + " cities."); */
+        STORE_LOCK.lock();
+        try {
+            if (COUNTRY_TO_CITIES == null) {
+                /* System.out.println("📂 Loading local JSON file..."); */
+                COUNTRY_TO_CITIES = readCountryCitiesFile(JSON_FILE);
+                /* System.out.println("✅ Loaded " + COUNTRY_TO_CITIES.size() + " countries."); */
+            }
+            if (CITY_TO_COUNTRY_INDEX == null) {
+                /* System.out.println("🧠 Building in-memory index..."); */
+                CITY_TO_COUNTRY_INDEX = buildCityToCountryIndex(COUNTRY_TO_CITIES);
+                /* System.out.println("✅ Indexed " + CITY_TO_COUNTRY_INDEX.size() + " cities."); */
+            }
+        } finally {
+            STORE_LOCK.unlock();
         }
     }
 
@@ -272,7 +325,7 @@ public class DetectCities {
         return countryToCities.entrySet().stream()
                 .flatMap(e -> e.getValue().stream().filter(Objects::nonNull)
                         .map(city -> Map.entry(city.toLowerCase(Locale.ROOT), e.getKey())))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+                .collect(Collectors.toConcurrentMap(Map.Entry::getKey, Map.Entry::getValue));
     }
 
     
@@ -286,24 +339,29 @@ public class DetectCities {
      * and saves the updated data back to the JSON file. 
      * If the city already exists, it simply prints a message and makes no changes.
      * */
-    private static synchronized void addCityToLocalStore(String city, String country) throws IOException {
+    private static void addCityToLocalStore(String city, String country) throws IOException {
         ensureIndexLoaded();
 
-        COUNTRY_TO_CITIES.computeIfAbsent(country, k -> new ArrayList<>());
-        List<String> cities = COUNTRY_TO_CITIES.get(country);
-        boolean exists = cities.stream().anyMatch(c -> c.equalsIgnoreCase(city));
+        STORE_LOCK.lock();
+        try {
+            COUNTRY_TO_CITIES.computeIfAbsent(country, k -> new ArrayList<>());
+            List<String> cities = COUNTRY_TO_CITIES.get(country);
+            boolean exists = cities.stream().anyMatch(c -> c.equalsIgnoreCase(city));
 
-        if (!exists) {
-            cities.add(city);
-            cities.sort(String.CASE_INSENSITIVE_ORDER);
-            CITY_TO_COUNTRY_INDEX.put(city.toLowerCase(Locale.ROOT), country);
+            if (!exists) {
+                cities.add(city);
+                cities.sort(String.CASE_INSENSITIVE_ORDER);
+                CITY_TO_COUNTRY_INDEX.put(city.toLowerCase(Locale.ROOT), country);
 
-            ensureParentDir(JSON_FILE);
-            MAPPER.writerWithDefaultPrettyPrinter().writeValue(JSON_FILE.toFile(), COUNTRY_TO_CITIES);
+                ensureParentDir(JSON_FILE);
+                MAPPER.writerWithDefaultPrettyPrinter().writeValue(JSON_FILE.toFile(), COUNTRY_TO_CITIES);
 
-            /* System.out.println("💾 Persisted to JSON: \"" + city + "\" under \"" + country + "\"."); */
-        } else {
-            /* System.out.println("ℹ️ City already exists under " + country + " in JSON."); */
+                /* System.out.println("💾 Persisted to JSON: \"" + city + "\" under \"" + country + "\"."); */
+            } else {
+                /* System.out.println("ℹ️ City already exists under " + country + " in JSON."); */
+            }
+        } finally {
+            STORE_LOCK.unlock();
         }
     }
 
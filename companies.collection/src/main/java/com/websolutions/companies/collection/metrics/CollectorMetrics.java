@@ -0,0 +1,116 @@
+package com.websolutions.companies.collection.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.orchestration.CollectorContext;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/*
+ * The numbers of the crawls, one place for every meter name and tag :
+ *
+ *   collector.run                  timer    collector, outcome          a whole crawl
+ *   collector.page.load            timer    collector, fetch            driver.get of a browser session (browser) or HTTP download (http)
+ *   collector.detail.fetch         timer    collector, fetch, outcome   load + extraction of a detail page
+ *   collector.extraction.failures  counter  collector, stage            pages whose content could not be read
+ *   collector.wait                 timer    collector, kind             browser waits (click-settle, listing-change) and rate limit waits
+ *   collector.click.failures       counter  collector                   clicks of BrowserInteractions.safeClick that failed
+ *   collector.db.write             timer    collector                   one write of a chunk of offers
+ *   collector.offers.stored        counter  collector, result           inserted / updated rows
+ *   ingestion.classification       timer    collector                   one chunk of titles classified by the model
+ *   ingestion.stage.queued         gauge    stage                       offers waiting in front of a pipeline stage
+ *   ingestion.stage.processed      counter  stage
+ *   geo.lookups                    timer    collector, source           city to country lookups : cache, local, api, miss
+ *
+ * The collector tag comes from CollectorContext (the ingestion pipeline enters the one of the offers it works on),
+ * the meters recorded outside of a crawl get "none".
+ * Micrometer keeps its meters, so looking one up for every event costs a map lookup and no allocation of a new meter.
+ * */
+@Service
+public class CollectorMetrics {
+
+	private static final String NO_COLLECTOR = "none";
+
+	private final MeterRegistry registry;
+
+	public CollectorMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	private static String collector() {
+		return CollectorContext.current().orElse(NO_COLLECTOR);
+	}
+
+	private static String outcome(boolean succeeded) {
+		return succeeded ? "success" : "failure";
+	}
+
+	public void collectorRun(String collector, Duration duration, boolean succeeded) {
+		registry.timer("collector.run", "collector", collector, "outcome", outcome(succeeded)).record(duration);
+	}
+
+	/**
+	 * One page loaded by a crawl, fetch is "browser" or "http".
+	 */
+	public void pageLoaded(String fetch, long nanos) {
+		registry.timer("collector.page.load", "collector", collector(), "fetch", fetch)
+				.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void detailFetched(String fetch, long nanos, boolean succeeded) {
+		registry.timer("collector.detail.fetch", "collector", collector(), "fetch", fetch, "outcome", outcome(succeeded))
+				.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void extractionFailed(String stage) {
+		registry.counter("collector.extraction.failures", "collector", collector(), "stage", stage).increment();
+	}
+
+	public void waited(String kind, long nanos) {
+		registry.timer("collector.wait", "collector", collector(), "kind", kind).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void clickFailed() {
+		registry.counter("collector.click.failures", "collector", collector()).increment();
+	}
+
+	/* Called by the write stage, which has no collector context : the batch knows its collector */
+	public void written(String collector, int inserted, int updated, long nanos) {
+		registry.timer("collector.db.write", "collector", collector).record(nanos, TimeUnit.NANOSECONDS);
+		storedCounter(collector, "inserted").increment(inserted);
+		storedCounter(collector, "updated").increment(updated);
+	}
+
+	private Counter storedCounter(String collector, String result) {
+		return registry.counter("collector.offers.stored", "collector", collector, "result", result);
+	}
+
+	public void classified(long nanos) {
+		registry.timer("ingestion.classification", "collector", collector()).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * One city to country lookup, source is where the answer came from : cache, local (the JSON file), api (Nominatim)
+	 * or miss (nowhere).
+	 */
+	public void geoLookup(String source, long nanos) {
+		registry.timer("geo.lookups", "collector", collector(), "source", source).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Reads the queue depth and the offers processed of a pipeline stage whenever the metrics are scraped.
+	 */
+	public void stage(String stage, Supplier<Number> queued, Supplier<Number> processed) {
+		Gauge.builder("ingestion.stage.queued", queued).tag("stage", stage).register(registry);
+		FunctionCounter.builder("ingestion.stage.processed", processed, supplier -> supplier.get().doubleValue())
+				.tag("stage", stage)
+				.register(registry);
+	}
+}
@@ -0,0 +1,97 @@
+package com.websolutions.companies.collection.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Serves the metrics in Prometheus text format on http://<metrics.prometheus.host>:<metrics.prometheus.port>/metrics.
+ * The page is not authenticated, so it only listens on the loopback interface unless another host is configured.
+ * The application runs without a web server (spring.main.web-application-type=none), starting one for a single
+ * read-only page would be a lot : the JDK HTTP server answers the scrapes on a virtual thread each.
+ * */
+@Service
+public class PrometheusEndpoint {
+
+	private static final Logger logger = Logger.getLogger(PrometheusEndpoint.class.getName());
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	/* Missing when the Prometheus export is turned off (management.prometheus.metrics.export.enabled, tests) */
+	private final PrometheusMeterRegistry registry;
+	private final boolean enabled;
+	private final String host;
+	private final int port;
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private HttpServer server;
+
+	public PrometheusEndpoint(ObjectProvider<PrometheusMeterRegistry> registry,
+			@Value("${metrics.prometheus.enabled:false}") boolean enabled,
+			@Value("${metrics.prometheus.host:127.0.0.1}") String host,
+			@Value("${metrics.prometheus.port:9464}") int port) {
+		this.registry = registry.getIfAvailable();
+		this.enabled = enabled;
+		this.host = host;
+		this.port = port;
+	}
+
+	@PostConstruct
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		if (registry == null) {
+			logger.info("No Prometheus registry, the metrics are not served");
+			return;
+		}
+		try {
+			server = HttpServer.create(new InetSocketAddress(host, port), 0);
+			server.setExecutor(executor);
+			server.createContext("/metrics", this::scrape);
+			server.start();
+			logger.info("Prometheus metrics on http://" + host + ":" + port + "/metrics");
+		} catch (IOException e) {
+			/* The crawls don't need the endpoint, a port already taken only loses the metrics */
+			logger.log(Level.WARNING, "Could not serve the metrics on " + host + ":" + port, e);
+		}
+	}
+
+	private void scrape(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			if (!exchange.getRequestMethod().equals("GET")) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (server != null) {
+			server.stop(0);
+		}
+		executor.close();
+	}
+}
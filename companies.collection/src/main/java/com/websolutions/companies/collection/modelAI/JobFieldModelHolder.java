@@ -0,0 +1,82 @@
+package com.websolutions.companies.collection.modelAI;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.springframework.stereotype.Service;
+import org.tribuo.Model;
+import org.tribuo.classification.Label;
+
+@Service
+public class JobFieldModelHolder {
+
+	private static final Logger logger = Logger.getLogger(JobFieldModelHolder.class.getName());
+	public static final Path MODEL_PATH = Paths.get("models", "jobFieldModel.tribuo");
+
+	/*
+	 * How often (in milliseconds) we look at the model file on disk to see if it was replaced.
+	 * Checking the modification time is cheap, but there is no reason to do it for every title,
+	 * so we only do it once in a while.
+	 */
+	private static final long FILE_CHECK_INTERVAL_MS = 30_000;
+
+	/*
+	 * The loaded model together with the modification time of the file it came from.
+	 * Both values are kept in one immutable object so a reader never sees a new model with an old timestamp.
+	 */
+	private record LoadedModel(Model<Label> model, FileTime loadedFrom) {}
+
+	/*
+	 * AtomicReference lets many collector threads read the current model without locking,
+	 * and lets a reload replace it in one single step : a thread is either using the old model or the new one,
+	 * never a half loaded one.
+	 */
+	private final AtomicReference<LoadedModel> current = new AtomicReference<>();
+	private volatile long lastFileCheck = 0;
+
+	/**
+	 * Returns the current model, loading it from disk the first time it is needed.
+	 * If the model file was replaced on disk since the last load, the new file is loaded and swapped in.
+	 */
+	public Model<Label> get() throws IOException, ClassNotFoundException {
+		LoadedModel loaded = current.get();
+		if (loaded == null) {
+			return reload();
+		}
+
+		long now = System.currentTimeMillis();
+		if (now - lastFileCheck > FILE_CHECK_INTERVAL_MS) {
+			lastFileCheck = now;
+			if (Files.exists(MODEL_PATH) && !Files.getLastModifiedTime(MODEL_PATH).equals(loaded.loadedFrom())) {
+				return reload();
+			}
+		}
+		return loaded.model();
+	}
+
+	/**
+	 * Deserializes the model file and atomically publishes it to every thread using this holder.
+	 * Called by TrainAndSave right after a new model is written to disk.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized Model<Label> reload() throws IOException, ClassNotFoundException {
+		FileTime modified = Files.getLastModifiedTime(MODEL_PATH);
+
+		/* Another thread may have reloaded the same file while we were waiting for the lock */
+		LoadedModel loaded = current.get();
+		if (loaded != null && loaded.loadedFrom().equals(modified)) {
+			return loaded.model();
+		}
+
+		Model<Label> model = (Model<Label>) Model.deserializeFromFile(MODEL_PATH);
+		current.set(new LoadedModel(model, modified));
+		lastFileCheck = System.currentTimeMillis();
+		logger.info("Loaded job field model from " + MODEL_PATH + " (" + modified + ")");
+		return model;
+	}
+}
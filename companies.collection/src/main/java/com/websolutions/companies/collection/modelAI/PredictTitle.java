@@ -1,65 +1,86 @@
 package com.websolutions.companies.collection.modelAI;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 import org.springframework.stereotype.Service;
+import org.tribuo.Example;
+import org.tribuo.ImmutableFeatureMap;
 import org.tribuo.Model;
 import org.tribuo.Prediction;
 import org.tribuo.classification.Label;
 import org.tribuo.impl.ArrayExample;
 
+import com.websolutions.companies.collection.jfr.ClassificationEvent;
+
 @Service
 public class PredictTitle {
 
-    @SuppressWarnings("unchecked")
-    public String predictField(String jobTitle) throws Exception {
+    private static final String OTHERS = "Others";
 
-    	Path modelPath = Paths.get("models", "jobFieldModel.tribuo");
-        
-        /*
-         * This loads our logistic regression model that you trained and saved in TrainAndSave.
-         * After this line, loaded is ready to make predictions.
-         * */
-        Model<Label> loadedModel = (Model<Label>) Model.deserializeFromFile(Paths.get(modelPath.toString()));
+    /*
+     * The tokenizer pattern is compiled once, String.split(regex) would compile it again for every title.
+     * It splits on anything that's not [a-z0-9+].
+     * */
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^a-z0-9+]+");
 
-        
-        /*
-         * This creates an empty example with output = null.
-         * Why null? Because at prediction time we don't know the “correct answer” yet. 
-         * We're asking the model to guess.
-         * */
-        ArrayExample<Label> example = new ArrayExample<>((Label) null);
+    /*
+     * Job titles are built from a small vocabulary ("engineer", "java", "manager"...), so the same feature names
+     * come back again and again. We keep one shared String per feature name instead of building "tok=" + token
+     * for every title. The map is capped so an unusual crawl full of random tokens can't make it grow forever.
+     * */
+    private static final int MAX_INTERNED_FEATURES = 50_000;
+    private static final ConcurrentHashMap<String, String> FEATURE_NAMES = new ConcurrentHashMap<>();
+
+    /*
+     * Below this number of titles, splitting the work between cores costs more than it saves.
+     * */
+    private static final int PARALLEL_THRESHOLD = 512;
+    private static final int CHUNK_SIZE = 256;
+
+    private final JobFieldModelHolder modelHolder;
+
+    public PredictTitle(JobFieldModelHolder modelHolder) {
+        this.modelHolder = modelHolder;
+    }
+
+    /*
+     * Both predictions emit a ClassificationEvent (Java Flight Recorder) with the number of titles.
+     * */
+    public String predictField(String jobTitle) throws Exception {
+        ClassificationEvent event = ClassificationEvent.start(1);
+        Throwable failure = null;
+        try {
+            return classify(jobTitle);
+        } catch (Exception | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            event.end(failure);
+        }
+    }
+
+    private String classify(String jobTitle) throws Exception {
 
-        
         /*
-         * FEATURE EXTRACTION STEP 
-         * Tokenize the string into words, lowercase, and add features
-         * IMPORTANT: The feature naming scheme "tok=" must match training logic!
+         * This gets our logistic regression model that you trained and saved in TrainAndSave.
+         * The model is deserialized only once and then shared by every collector through JobFieldModelHolder,
+         * instead of reading the .tribuo file again for each job offer.
          * */
-        String[] tokens = jobTitle
-                .toLowerCase(Locale.ROOT)
-                .split("[^a-z0-9+]+"); // split on anything that's not [a-z0-9+]
+        Model<Label> loadedModel = modelHolder.get();
 
-        for (String tok : tokens) {
-            if (tok == null || tok.isEmpty()) continue;
-            example.add("tok=" + tok, 1.0);
-        }
-        
-        if (example.size() == 0) {
-            return "Others";
+        ArrayExample<Label> example = buildExample(jobTitle, loadedModel.getFeatureIDMap());
+        if (example == null) {
+            return OTHERS;
         }
 
         /* Running the prediction */
-        
-        try {
-            Prediction<Label> prediction = loadedModel.predict(example);
-            return prediction.getOutput().getLabel();
-        } catch (IllegalArgumentException e) {
-            /* This happens when none of the features exist in the model */
-            return "Others";
-        }
+        Prediction<Label> prediction = loadedModel.predict(example);
+        return prediction.getOutput().getLabel();
 
         /*
         System.out.println("Input title: " + jobTitle);
@@ -67,4 +88,114 @@ public class PredictTitle {
         System.out.println("Class probabilities: " + prediction.getOutputScores());
         */
     }
+
+    /**
+     * Classifies a whole list of titles in one pass and returns the fields in the same order.
+     * The model is fetched once for the batch, and titles are sent to Tribuo in chunks instead of one by one.
+     * Large batches (a full crawl) are split between the available cores.
+     */
+    public List<String> predictFields(List<String> jobTitles) {
+        if (jobTitles.isEmpty()) {
+            return List.of();
+        }
+        ClassificationEvent event = ClassificationEvent.start(jobTitles.size());
+        Throwable failure = null;
+        try {
+            return classifyAll(jobTitles);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            event.end(failure);
+        }
+    }
+
+    private List<String> classifyAll(List<String> jobTitles) {
+
+        Model<Label> loadedModel;
+        try {
+            loadedModel = modelHolder.get();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to load the job field model from " + JobFieldModelHolder.MODEL_PATH, e);
+        }
+
+        String[] fields = new String[jobTitles.size()];
+        int chunks = (jobTitles.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream chunkIndexes = IntStream.range(0, chunks);
+        if (jobTitles.size() >= PARALLEL_THRESHOLD) {
+            chunkIndexes = chunkIndexes.parallel();
+        }
+        chunkIndexes.forEach(chunk -> {
+            int from = chunk * CHUNK_SIZE;
+            int to = Math.min(from + CHUNK_SIZE, jobTitles.size());
+            predictChunk(loadedModel, jobTitles, from, to, fields);
+        });
+        return List.of(fields);
+    }
+
+    /*
+     * Each chunk writes to its own slice of the fields array, so chunks running on different threads never touch
+     * the same cell. Titles with no known token get "Others" directly and are not sent to the model.
+     * */
+    private void predictChunk(Model<Label> loadedModel, List<String> jobTitles, int from, int to, String[] fields) {
+        ImmutableFeatureMap featureMap = loadedModel.getFeatureIDMap();
+        List<Example<Label>> examples = new ArrayList<>(to - from);
+        List<Integer> positions = new ArrayList<>(to - from);
+
+        for (int i = from; i < to; i++) {
+            ArrayExample<Label> example = buildExample(jobTitles.get(i), featureMap);
+            if (example == null) {
+                fields[i] = OTHERS;
+            } else {
+                examples.add(example);
+                positions.add(i);
+            }
+        }
+
+        if (examples.isEmpty()) {
+            return;
+        }
+        List<Prediction<Label>> predictions = loadedModel.predict(examples);
+        for (int j = 0; j < predictions.size(); j++) {
+            fields[positions.get(j)] = predictions.get(j).getOutput().getLabel();
+        }
+    }
+
+    /*
+     * FEATURE EXTRACTION STEP
+     * Tokenize the string into words, lowercase, and add features.
+     * IMPORTANT: The feature naming scheme "tok=" must match training logic!
+     *
+     * The example is created with output = null, because at prediction time we don't know the “correct answer” yet.
+     * Tokens the model never saw during training are skipped: the model ignores them anyway, and when none are left
+     * Tribuo would throw an IllegalArgumentException, so we return null and the caller answers "Others".
+     * */
+    private static ArrayExample<Label> buildExample(String jobTitle, ImmutableFeatureMap featureMap) {
+        if (jobTitle == null) {
+            return null;
+        }
+        ArrayExample<Label> example = new ArrayExample<>((Label) null);
+        String[] tokens = TOKEN_SEPARATOR.split(jobTitle.toLowerCase(Locale.ROOT));
+
+        for (String tok : tokens) {
+            if (tok.isEmpty()) continue;
+            String featureName = featureName(tok);
+            if (featureMap.getID(featureName) < 0) continue;
+            example.add(featureName, 1.0);
+        }
+
+        return example.size() == 0 ? null : example;
+    }
+
+    private static String featureName(String token) {
+        String name = FEATURE_NAMES.get(token);
+        if (name != null) {
+            return name;
+        }
+        name = "tok=" + token;
+        if (FEATURE_NAMES.size() < MAX_INTERNED_FEATURES) {
+            FEATURE_NAMES.putIfAbsent(token, name);
+        }
+        return name;
+    }
 }
@@ -27,6 +27,12 @@ import java.nio.file.Files;
 @Service
 public class TrainAndSave {
 
+    private final JobFieldModelHolder modelHolder;
+
+    public TrainAndSave(JobFieldModelHolder modelHolder) {
+        this.modelHolder = modelHolder;
+    }
+
     public void trainData() throws Exception {
 
         /*
@@ -263,10 +269,13 @@ public class TrainAndSave {
         model.serializeToFile(modelPath);
         model.serializeToFile(Paths.get(modelPath.toString()));
         System.out.println("Saved model to " + modelPath);
+
+        /* Swap the freshly trained model in, so PredictTitle uses it right away without a restart */
+        modelHolder.reload();
     }
     
     public static void main(String[] args) throws Exception {
-		TrainAndSave trainAndSave = new TrainAndSave();
+		TrainAndSave trainAndSave = new TrainAndSave(new JobFieldModelHolder());
 		trainAndSave.trainData();
 	}
 }
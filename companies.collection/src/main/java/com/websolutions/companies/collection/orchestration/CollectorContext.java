@@ -0,0 +1,42 @@
+package com.websolutions.companies.collection.orchestration;
+
+import java.util.Optional;
+
+/*
+ * The name of the collector whose crawl runs on the current thread. CollectorOrchestrator enters it around each crawl,
+ * and it is inherited by the threads the crawl starts (the virtual threads of the detail pages), so the page
+ * recordings and the metrics know which collector a page load belongs to without passing the name everywhere.
+ * The ingestion pipeline threads are started before any crawl and don't have one.
+ * */
+public final class CollectorContext {
+
+	private static final InheritableThreadLocal<String> CURRENT = new InheritableThreadLocal<>();
+
+	/**
+	 * Leaves the collector context when closed, restoring the one of the caller.
+	 */
+	public interface Scope extends AutoCloseable {
+
+		@Override
+		void close();
+	}
+
+	private CollectorContext() {
+	}
+
+	public static Optional<String> current() {
+		return Optional.ofNullable(CURRENT.get());
+	}
+
+	public static Scope enter(String collector) {
+		String previous = CURRENT.get();
+		CURRENT.set(collector);
+		return () -> {
+			if (previous == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		};
+	}
+}
@@ -0,0 +1,208 @@
+package com.websolutions.companies.collection.orchestration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.browser.BrowserInteractions;
+import com.websolutions.companies.collection.browser.PageLoadStats;
+import com.websolutions.companies.collection.ingestion.IngestionPipeline;
+import com.websolutions.companies.collection.ingestion.KnownOffersFilter;
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+import com.websolutions.companies.collection.ratelimit.HostRateLimiter;
+import com.websolutions.companies.collection.replay.PageRecorder;
+import com.websolutions.companies.collection.repositories.JobsOffersRepository;
+import com.websolutions.companies.collection.services.CrawlMode;
+import com.websolutions.companies.collection.services.JobCollector;
+
+@Service
+public class CollectorOrchestrator {
+
+	private static final Logger logger = Logger.getLogger(CollectorOrchestrator.class.getName());
+
+	private final List<JobCollector> collectors;
+	private final JobsOffersRepository jobsOffersRepository;
+	private final int parallelism;
+	private final Set<String> enabledCollectors;
+	private final BrowserInteractions browserInteractions;
+	private final KnownOffersFilter knownOffersFilter;
+	private final IngestionPipeline ingestionPipeline;
+	private final HostRateLimiter hostRateLimiter;
+	private final PageRecorder pageRecorder;
+	private final PageLoadStats pageLoadStats;
+	private final CollectorMetrics collectorMetrics;
+
+	/* Shared by runAll() and the scheduled runs, so together they never hold more sessions than the Grid accepts */
+	private final Semaphore slots;
+	/* Names of the collectors running right now, a collector is never run twice at the same time */
+	private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+	/*
+	 * Spring injects every bean implementing JobCollector, so a new collector added to the services package
+	 * is picked up automatically.
+	 * - collectors.parallelism is the number of collectors running at the same time. Each collector holds one
+	 *   browser session, so it should match the number of sessions the Selenium Grid accepts.
+	 * - collectors.enabled optionally restricts the run to some collectors (comma separated class names),
+	 *   an empty value means all of them.
+	 * */
+	public CollectorOrchestrator(List<JobCollector> collectors, JobsOffersRepository jobsOffersRepository,
+			@Value("${collectors.parallelism:1}") int parallelism,
+			@Value("${collectors.enabled:}") String enabledCollectors, BrowserInteractions browserInteractions,
+			KnownOffersFilter knownOffersFilter, IngestionPipeline ingestionPipeline, HostRateLimiter hostRateLimiter,
+			PageRecorder pageRecorder, PageLoadStats pageLoadStats, CollectorMetrics collectorMetrics) {
+		this.collectors = collectors;
+		this.jobsOffersRepository = jobsOffersRepository;
+		this.parallelism = Math.max(1, parallelism);
+		this.slots = new Semaphore(this.parallelism, true);
+		this.enabledCollectors = Arrays.stream(enabledCollectors.split(","))
+				.map(String::strip)
+				.filter(name -> !name.isEmpty())
+				.collect(Collectors.toSet());
+		this.browserInteractions = browserInteractions;
+		this.knownOffersFilter = knownOffersFilter;
+		this.ingestionPipeline = ingestionPipeline;
+		this.hostRateLimiter = hostRateLimiter;
+		this.pageRecorder = pageRecorder;
+		this.pageLoadStats = pageLoadStats;
+		this.collectorMetrics = collectorMetrics;
+	}
+
+	public List<JobCollector> getCollectors() {
+		return collectors.stream()
+				.filter(collector -> enabledCollectors.isEmpty() || enabledCollectors.contains(collector.getName()))
+				.toList();
+	}
+
+	/**
+	 * Runs every enabled collector, at most collectors.parallelism at a time, waits for all of them and returns
+	 * one report per collector. A failing collector never stops the others.
+	 */
+	public List<CollectorRunReport> runAll(CrawlMode crawlMode) throws InterruptedException {
+		List<JobCollector> toRun = getCollectors();
+		logger.info("Starting " + toRun.size() + " collectors with parallelism " + parallelism + ", crawl mode "
+				+ crawlMode);
+		long start = System.nanoTime();
+
+		/* Loaded once per run, so the offers stored by the previous run are skipped by this one */
+		knownOffersFilter.preload();
+
+		/*
+		 * Every collector gets its own virtual thread : a crawl mostly waits for the Grid, the sites and the database,
+		 * and a waiting virtual thread holds no platform thread. The number of crawls at the same time is bounded by
+		 * the slots, not by a thread pool. The executor is closed at the end of the block, so no collector
+		 * task outlives the run.
+		 * */
+		List<CollectorRunReport> reports = new ArrayList<>();
+		try (ExecutorService executor = Executors.newThreadPerTaskExecutor(
+				Thread.ofVirtual().name("collector-", 1).factory())) {
+			List<Future<CollectorRunReport>> futures = new ArrayList<>();
+			for (JobCollector collector : toRun) {
+				futures.add(executor.submit(() -> run(collector, crawlMode)));
+			}
+			try {
+				for (Future<CollectorRunReport> future : futures) {
+					try {
+						reports.add(future.get());
+					} catch (ExecutionException e) {
+						/* runOne already catches everything, this only happens on an unexpected Error */
+						logger.log(Level.SEVERE, "Collector task crashed", e.getCause());
+					}
+				}
+			} catch (InterruptedException e) {
+				/* The collectors still running are interrupted, close() then waits for them to stop */
+				executor.shutdownNow();
+				throw e;
+			}
+		}
+
+		Duration total = Duration.ofNanos(System.nanoTime() - start);
+		logSummary(reports, total);
+		browserInteractions.logWaitStats();
+		ingestionPipeline.logStats();
+		hostRateLimiter.logStats();
+		pageLoadStats.logStats();
+		return reports;
+	}
+
+	/**
+	 * Runs one collector as soon as a slot is free (see collectors.parallelism), the scheduler runs the collectors
+	 * through this method. The known offers filter is not reloaded here, the caller loads it once
+	 * (see KnownOffersFilter.preload).
+	 */
+	public CollectorRunReport run(JobCollector collector, CrawlMode crawlMode) throws InterruptedException {
+		slots.acquire();
+		try {
+			return runOne(collector, crawlMode);
+		} finally {
+			slots.release();
+		}
+	}
+
+	private CollectorRunReport runOne(JobCollector collector, CrawlMode crawlMode) {
+		String name = collector.getName();
+		String company = collector.getCompanyName();
+		if (!running.add(name)) {
+			logger.info("[" + name + "] is still running, this run is skipped");
+			return new CollectorRunReport(name, company, Duration.ZERO, 0, false, "already running");
+		}
+		/* The recording (when replay.record is on) covers the whole crawl, it is closed before the next run may start */
+		try (CollectorContext.Scope scope = CollectorContext.enter(name);
+				PageRecorder.Recording recording = pageRecorder.start(name)) {
+			return collect(collector, crawlMode);
+		} finally {
+			running.remove(name);
+		}
+	}
+
+	private CollectorRunReport collect(JobCollector collector, CrawlMode crawlMode) {
+		String name = collector.getName();
+		String company = collector.getCompanyName();
+		long rowsBefore = jobsOffersRepository.countByCompany(company);
+		long start = System.nanoTime();
+		logger.info("[" + name + "] started");
+
+		boolean succeeded = true;
+		String error = null;
+		try {
+			collector.collect(crawlMode);
+		} catch (Exception e) {
+			succeeded = false;
+			error = (e.getMessage() != null) ? e.getMessage().split("\n")[0] : e.getClass().getSimpleName();
+			logger.log(Level.WARNING, "[" + name + "] failed: " + error, e);
+		}
+
+		Duration duration = Duration.ofNanos(System.nanoTime() - start);
+		collectorMetrics.collectorRun(name, duration, succeeded);
+		long rowsAdded = jobsOffersRepository.countByCompany(company) - rowsBefore;
+		logger.info("[" + name + "] finished in " + duration.toSeconds() + "s, " + rowsAdded + " new rows");
+		return new CollectorRunReport(name, company, duration, rowsAdded, succeeded, error);
+	}
+
+	/*
+	 * The sum of the collectors durations compared to the wall clock time shows how much the parallel run saved.
+	 * */
+	private void logSummary(List<CollectorRunReport> reports, Duration total) {
+		Duration sequential = reports.stream().map(CollectorRunReport::duration).reduce(Duration.ZERO, Duration::plus);
+		StringBuilder summary = new StringBuilder("Collectors run summary:");
+		for (CollectorRunReport report : reports) {
+			summary.append("\n  ").append(report);
+		}
+		summary.append(String.format("%n  Wall clock: %ds, sum of collector durations: %ds", total.toSeconds(),
+				sequential.toSeconds()));
+		logger.info(summary.toString());
+	}
+}
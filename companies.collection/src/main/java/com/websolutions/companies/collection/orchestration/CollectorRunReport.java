@@ -0,0 +1,18 @@
+package com.websolutions.companies.collection.orchestration;
+
+import java.time.Duration;
+
+/*
+ * Outcome of one collector inside an orchestrated run.
+ * rowsAdded is the difference between the number of offers stored for the company before and after the run.
+ * */
+public record CollectorRunReport(String collector, String company, Duration duration, long rowsAdded, boolean succeeded,
+		String error) {
+
+	@Override
+	public String toString() {
+		String status = succeeded ? "OK" : "FAILED (" + error + ")";
+		return String.format("%-34s %-22s %8.1fs %6d new rows  %s", collector, company, duration.toMillis() / 1000.0,
+				rowsAdded, status);
+	}
+}
@@ -0,0 +1,112 @@
+package com.websolutions.companies.collection.ratelimit;
+
+import java.net.URI;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+
+/*
+ * The request budget of every external host, shared by everything that calls them : every page load of the browser
+ * sessions (listing and detail pages, see WebDriverPool), the plain HTTP downloads (HttpPageFetcher) and the Nominatim
+ * lookups (DetectCities).
+ * Before sending a request, a worker calls acquire(url), which returns at once while the host is under its rate
+ * and otherwise sleeps until the next request is allowed.
+ *
+ * Each host has a token bucket (see TokenBucket) :
+ *   rate-limit.hosts.<host>.requests-per-second   (rate-limit.default.requests-per-second when not set)
+ *   rate-limit.hosts.<host>.burst                 (rate-limit.default.burst when not set)
+ * so the parallelism of a crawl can be raised freely, the load on each site stays what it tolerates.
+ * A rate of 0 or less means no limit for that host.
+ * */
+@Service
+public class HostRateLimiter {
+
+	private static final Logger logger = Logger.getLogger(HostRateLimiter.class.getName());
+
+	/* The bucket of one host (null when it has no limit) and how much its requests waited */
+	private static final class HostBudget {
+		final TokenBucket bucket;
+		final LongAdder requests = new LongAdder();
+		final LongAdder waitedNanos = new LongAdder();
+
+		HostBudget(TokenBucket bucket) {
+			this.bucket = bucket;
+		}
+	}
+
+	private final Environment environment;
+	private final double defaultRequestsPerSecond;
+	private final double defaultBurst;
+	private final ConcurrentHashMap<String, HostBudget> budgets = new ConcurrentHashMap<>();
+	private final CollectorMetrics collectorMetrics;
+
+	public HostRateLimiter(Environment environment,
+			@Value("${rate-limit.default.requests-per-second:2}") double defaultRequestsPerSecond,
+			@Value("${rate-limit.default.burst:1}") double defaultBurst, CollectorMetrics collectorMetrics) {
+		this.environment = environment;
+		this.collectorMetrics = collectorMetrics;
+		this.defaultRequestsPerSecond = defaultRequestsPerSecond;
+		this.defaultBurst = defaultBurst;
+	}
+
+	/**
+	 * Waits until a request to the host of this URL is allowed.
+	 */
+	public void acquire(String url) throws InterruptedException {
+		HostBudget budget = budgets.computeIfAbsent(hostOf(url), this::budgetOf);
+		budget.requests.increment();
+		if (budget.bucket == null) {
+			return;
+		}
+		long wait = budget.bucket.reserve();
+		if (wait > 0) {
+			budget.waitedNanos.add(wait);
+			collectorMetrics.waited("rate-limit", wait);
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	private HostBudget budgetOf(String host) {
+		String prefix = "rate-limit.hosts." + host + ".";
+		double requestsPerSecond = environment.getProperty(prefix + "requests-per-second", Double.class,
+				defaultRequestsPerSecond);
+		double burst = environment.getProperty(prefix + "burst", Double.class, defaultBurst);
+		if (requestsPerSecond <= 0) {
+			logger.info("No rate limit for " + host);
+			return new HostBudget(null);
+		}
+		TokenBucket bucket = new TokenBucket(requestsPerSecond, burst);
+		logger.info("Rate limit for " + host + ": " + requestsPerSecond + " requests/s, burst " + bucket.burst());
+		return new HostBudget(bucket);
+	}
+
+	/*
+	 * The time a host made its callers wait shows whether its rate is the bottleneck of a crawl.
+	 * */
+	public void logStats() {
+		if (budgets.isEmpty()) {
+			return;
+		}
+		StringBuilder summary = new StringBuilder("Host rate limits:");
+		new TreeMap<>(budgets).forEach((host, budget) -> summary.append(String.format("%n  %-40s %6d requests, waited %ds",
+				host, budget.requests.sum(), TimeUnit.NANOSECONDS.toSeconds(budget.waitedNanos.sum()))));
+		logger.info(summary.toString());
+	}
+
+	public static String hostOf(String url) {
+		try {
+			String host = URI.create(url).getHost();
+			return host == null ? url : host;
+		} catch (IllegalArgumentException e) {
+			return url;
+		}
+	}
+}
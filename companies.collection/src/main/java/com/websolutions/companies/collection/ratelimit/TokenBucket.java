@@ -0,0 +1,45 @@
+package com.websolutions.companies.collection.ratelimit;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * A token bucket : tokens come back at requestsPerSecond, up to burst tokens, and every request takes one.
+ * A request finding the bucket empty still takes its token, the count goes below zero and the request waits
+ * until its token has come back. The reservation is made under the lock and the wait outside of it,
+ * so the waiting threads are served in the order they asked, and each one waits only as long as needed.
+ * */
+final class TokenBucket {
+
+	private final double tokensPerNano;
+	private final double burst;
+	private final ReentrantLock lock = new ReentrantLock();
+	private double tokens;
+	private long lastRefill;
+
+	TokenBucket(double requestsPerSecond, double burst) {
+		this.tokensPerNano = requestsPerSecond / 1_000_000_000d;
+		this.burst = Math.max(1, burst);
+		this.tokens = this.burst;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Takes one token and returns how long the caller must wait before using it, in nanoseconds.
+	 */
+	long reserve() {
+		lock.lock();
+		try {
+			long now = System.nanoTime();
+			tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+			lastRefill = now;
+			tokens -= 1;
+			return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	double burst() {
+		return burst;
+	}
+}
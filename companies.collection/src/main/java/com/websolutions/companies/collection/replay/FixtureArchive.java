@@ -0,0 +1,163 @@
+package com.websolutions.companies.collection.replay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * The pages of one recorded crawl, in one zip file per collector :
+ *
+ *   index.json          [ { "url" : "https://...", "status" : 200, "contentType" : "text/html", "entry" : "pages/1.html" }, ... ]
+ *   pages/1.html        the body exactly as the site sent it (HTML page, or JSON payload of a listing API)
+ *   pages/2.json
+ *   ...
+ *
+ * A zip keeps thousands of small pages in one file that is easy to copy around, and compresses HTML well.
+ * The index is written last, when the archive is closed, so an archive whose recording crashed can't be read.
+ * */
+public final class FixtureArchive {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final String INDEX = "index.json";
+
+	/** One recorded response */
+	public record Fixture(String url, int status, String contentType, byte[] body) {
+
+		public String text() {
+			return new String(body, StandardCharsets.UTF_8);
+		}
+	}
+
+	/* One line of index.json */
+	record IndexEntry(String url, int status, String contentType, String entry) {
+	}
+
+	private final Map<String, Fixture> fixtures;
+
+	private FixtureArchive(Map<String, Fixture> fixtures) {
+		this.fixtures = fixtures;
+	}
+
+	/**
+	 * Reads a whole archive in memory. When a URL was recorded twice, the last response wins.
+	 */
+	public static FixtureArchive read(Path file) throws IOException {
+		Map<String, byte[]> bodies = new LinkedHashMap<>();
+		List<IndexEntry> index = null;
+		try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(file))) {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				byte[] content = zip.readAllBytes();
+				if (entry.getName().equals(INDEX)) {
+					index = MAPPER.readValue(content, new TypeReference<List<IndexEntry>>() {});
+				} else {
+					bodies.put(entry.getName(), content);
+				}
+			}
+		}
+		if (index == null) {
+			throw new IOException("No " + INDEX + " in " + file + ", the recording didn't finish");
+		}
+
+		Map<String, Fixture> fixtures = new LinkedHashMap<>();
+		for (IndexEntry entry : index) {
+			byte[] body = bodies.get(entry.entry());
+			if (body != null) {
+				fixtures.put(entry.url(), new Fixture(entry.url(), entry.status(), entry.contentType(), body));
+			}
+		}
+		return new FixtureArchive(fixtures);
+	}
+
+	/**
+	 * Reads an archive from the classpath (src/test/resources for the tests), or empty when there is none.
+	 */
+	public static Optional<FixtureArchive> readResource(String resource) throws IOException {
+		try (InputStream in = FixtureArchive.class.getClassLoader().getResourceAsStream(resource)) {
+			if (in == null) {
+				return Optional.empty();
+			}
+			Path copy = Files.createTempFile("fixtures", ".zip");
+			try {
+				Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+				return Optional.of(read(copy));
+			} finally {
+				Files.deleteIfExists(copy);
+			}
+		}
+	}
+
+	public Optional<Fixture> find(String url) {
+		return Optional.ofNullable(fixtures.get(url));
+	}
+
+	public Collection<Fixture> fixtures() {
+		return fixtures.values();
+	}
+
+	public int size() {
+		return fixtures.size();
+	}
+
+	/**
+	 * Starts a new archive, replacing the file if it exists.
+	 */
+	public static Writer create(Path file) throws IOException {
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		return new Writer(Files.newOutputStream(file));
+	}
+
+	/*
+	 * The bodies are streamed to the zip as they come, only the index stays in memory until close().
+	 * Detail pages are recorded by several threads at once, so add() is synchronized.
+	 * */
+	public static final class Writer implements AutoCloseable {
+
+		private final ZipOutputStream zip;
+		private final List<IndexEntry> index = new ArrayList<>();
+
+		private Writer(OutputStream out) {
+			this.zip = new ZipOutputStream(out);
+		}
+
+		public synchronized void add(String url, int status, String contentType, byte[] body) throws IOException {
+			String extension = contentType != null && contentType.contains("json") ? ".json" : ".html";
+			String entry = "pages/" + (index.size() + 1) + extension;
+			zip.putNextEntry(new ZipEntry(entry));
+			zip.write(body);
+			zip.closeEntry();
+			index.add(new IndexEntry(url, status, contentType, entry));
+		}
+
+		public synchronized int size() {
+			return index.size();
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			zip.putNextEntry(new ZipEntry(INDEX));
+			zip.write(MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(index));
+			zip.closeEntry();
+			zip.close();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.websolutions.companies.collection.replay;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.orchestration.CollectorContext;
+
+/*
+ * Records the pages a collector reads into replay.directory/<collector>.zip (see FixtureArchive) when
+ * replay.record is true : the HTML downloaded by HttpPageFetcher, the detail pages loaded by DetailPageFetcher
+ * and the JSON listing payloads caught by NetworkResponseCapture.
+ *
+ * CollectorOrchestrator opens a recording around each crawl. The pages are added to the archive of the collector
+ * of the thread (see CollectorContext), so the virtual threads a collector starts for its detail pages record into
+ * the same archive.
+ * The archives are then served by ReplayServer, to run the parsers and measure a crawl without the network.
+ * */
+@Service
+public class PageRecorder {
+
+	private static final Logger logger = Logger.getLogger(PageRecorder.class.getName());
+
+	/**
+	 * Ends the recording of one crawl when closed, and writes its archive.
+	 */
+	public interface Recording extends AutoCloseable {
+
+		@Override
+		void close();
+	}
+
+	private static final Recording NOT_RECORDING = () -> {
+	};
+
+	private final boolean enabled;
+	private final Path directory;
+	private final ConcurrentHashMap<String, FixtureArchive.Writer> writers = new ConcurrentHashMap<>();
+
+	public PageRecorder(@Value("${replay.record:false}") boolean enabled,
+			@Value("${replay.directory:fixtures}") String directory) {
+		this.enabled = enabled;
+		this.directory = Paths.get(directory);
+	}
+
+	public boolean isRecording() {
+		return enabled && CollectorContext.current().isPresent();
+	}
+
+	/**
+	 * Starts recording the pages read by the crawl of the collector into its archive, replacing the archive of its
+	 * previous recording.
+	 */
+	public Recording start(String collector) {
+		if (!enabled) {
+			return NOT_RECORDING;
+		}
+		Path file = directory.resolve(collector + ".zip");
+		try {
+			writers.put(collector, FixtureArchive.create(file));
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Could not create the fixture archive " + file, e);
+			return NOT_RECORDING;
+		}
+		logger.info("[" + collector + "] recording pages into " + file);
+		return () -> {
+			FixtureArchive.Writer writer = writers.remove(collector);
+			try {
+				int pages = writer.size();
+				writer.close();
+				logger.info("[" + collector + "] recorded " + pages + " pages into " + file);
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Could not finish the fixture archive " + file, e);
+			}
+		};
+	}
+
+	public void record(String url, int status, String contentType, String body) {
+		if (body != null) {
+			record(url, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Adds one response to the archive of the crawl running on this thread, does nothing when none is recorded.
+	 * A page that can't be written is logged, the crawl goes on.
+	 */
+	public void record(String url, int status, String contentType, byte[] body) {
+		String collector = enabled ? CollectorContext.current().orElse(null) : null;
+		if (collector == null) {
+			return;
+		}
+		FixtureArchive.Writer writer = writers.get(collector);
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.add(url, status, contentType, body);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "[" + collector + "] could not record " + url, e);
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package com.websolutions.companies.collection.replay;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * A local HTTP server standing in for the career sites : it answers with the pages of a FixtureArchive, so a
+ * collector in http mode, a parser or a benchmark runs the same code as in production without the network.
+ *
+ * A recorded URL is served under its host name :
+ *   https://careers.example.com/jobs?page=2   -->   http://127.0.0.1:<port>/careers.example.com/jobs?page=2
+ * localUrl() does this rewriting, HttpPageFetcher applies it to every download and WebDriverPool to every browser
+ * page load when replay.serve-from is set. A URL that was not recorded gets a 404, like a page removed from the site.
+ * A link the browser resolved against the replay address (a relative href, /jobs/42 on the page of
+ * careers.example.com) has lost its host : it is looked up under every host of the archive.
+ *
+ * start(archive) listens on the loopback address. A browser of a Selenium Grid in another container can't reach it,
+ * start(archive, bindAddress, advertisedHost) listens on another address (0.0.0.0 for all of them) and gives out
+ * URLs with a host name the Grid can resolve (host.docker.internal, the address of the machine...).
+ *
+ * The JDK server needs no dependency, and every exchange runs on its own virtual thread. Closing it frees the port.
+ * */
+public final class ReplayServer implements AutoCloseable {
+
+	/*
+	 * Without TCP_NODELAY the small responses wait for the delayed ACK of the client, about 40 ms per page on
+	 * localhost, which would hide the time the collector itself spends on a page. Read once by the JDK server.
+	 * */
+	static {
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final FixtureArchive archive;
+	private final List<String> authorities;
+	private final HttpServer server;
+	private final String advertisedHost;
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final LongAdder served = new LongAdder();
+	private final LongAdder missing = new LongAdder();
+
+	private ReplayServer(FixtureArchive archive, InetSocketAddress bindAddress, String advertisedHost)
+			throws IOException {
+		this.archive = archive;
+		this.authorities = archive.fixtures().stream()
+				.map(fixture -> URI.create(fixture.url()).getRawAuthority())
+				.distinct()
+				.toList();
+		this.server = HttpServer.create(bindAddress, 0);
+		this.server.setExecutor(executor);
+		this.server.createContext("/", this::handle);
+		if (advertisedHost != null && !advertisedHost.isBlank()) {
+			this.advertisedHost = advertisedHost.strip();
+		} else if (server.getAddress().getAddress().isAnyLocalAddress()) {
+			this.advertisedHost = InetAddress.getLocalHost().getHostAddress();
+		} else {
+			this.advertisedHost = server.getAddress().getHostString();
+		}
+	}
+
+	/**
+	 * Starts serving the archive on a free port of the loopback address.
+	 */
+	public static ReplayServer start(FixtureArchive archive) throws IOException {
+		return start(archive, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), null);
+	}
+
+	/**
+	 * Starts serving the archive on the given address (port 0 for a free one). The base URL uses advertisedHost, or
+	 * the address of this machine when it is null and the server listens on every address.
+	 */
+	public static ReplayServer start(FixtureArchive archive, InetSocketAddress bindAddress, String advertisedHost)
+			throws IOException {
+		ReplayServer replayServer = new ReplayServer(archive, bindAddress, advertisedHost);
+		replayServer.server.start();
+		return replayServer;
+	}
+
+	public String baseUrl() {
+		return "http://" + advertisedHost + ":" + server.getAddress().getPort();
+	}
+
+	public String localUrl(String url) {
+		return localUrl(baseUrl(), url);
+	}
+
+	/**
+	 * The address of a recorded URL on the replay server at baseUrl. A URL already on the replay server is kept.
+	 */
+	public static String localUrl(String baseUrl, String url) {
+		String base = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+		if (url.startsWith(base + "/") || url.equals(base)) {
+			return url;
+		}
+		URI uri = URI.create(url);
+		String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+		String query = uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery();
+		return base + "/" + uri.getRawAuthority() + path + query;
+	}
+
+	/* Responses served from the archive, and requests for URLs it doesn't have */
+	public long servedRequests() {
+		return served.sum();
+	}
+
+	public long missingRequests() {
+		return missing.sum();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			Optional<FixtureArchive.Fixture> fixture = originalUrls(exchange.getRequestURI(), authorities).stream()
+					.map(archive::find)
+					.flatMap(Optional::stream)
+					.findFirst();
+			if (fixture.isEmpty()) {
+				missing.increment();
+				byte[] body = ("Not recorded: " + exchange.getRequestURI()).getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(404, body.length);
+				exchange.getResponseBody().write(body);
+				return;
+			}
+			served.increment();
+			FixtureArchive.Fixture page = fixture.get();
+			String contentType = page.contentType() == null ? "text/html" : page.contentType();
+			exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+			exchange.sendResponseHeaders(page.status(), page.body().length == 0 ? -1 : page.body().length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(page.body());
+			}
+		}
+	}
+
+	/*
+	 * The archive doesn't say whether a site was served over https or http, https is tried first.
+	 * A home page may have been recorded with or without its trailing slash.
+	 * When the first segment is not a recorded host, the whole path is looked up under each recorded host.
+	 * */
+	private static List<String> originalUrls(URI requestUri, List<String> authorities) {
+		String rawPath = requestUri.getRawPath();
+		String withoutSlash = rawPath.startsWith("/") ? rawPath.substring(1) : rawPath;
+		int slash = withoutSlash.indexOf('/');
+		String authority = slash < 0 ? withoutSlash : withoutSlash.substring(0, slash);
+		String query = requestUri.getRawQuery() == null ? "" : "?" + requestUri.getRawQuery();
+		List<String> urls = new ArrayList<>();
+		if (authorities.contains(authority)) {
+			addUrls(urls, authority, slash < 0 ? "/" : withoutSlash.substring(slash), query);
+		} else {
+			for (String recorded : authorities) {
+				addUrls(urls, recorded, "/" + withoutSlash, query);
+			}
+		}
+		return urls;
+	}
+
+	private static void addUrls(List<String> urls, String authority, String path, String query) {
+		for (String scheme : List.of("https://", "http://")) {
+			urls.add(scheme + authority + path + query);
+			if (path.equals("/")) {
+				urls.add(scheme + authority + query);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.close();
+	}
+}
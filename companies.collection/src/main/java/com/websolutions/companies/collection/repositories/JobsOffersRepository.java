@@ -10,4 +10,6 @@ public interface JobsOffersRepository extends JpaRepository<JobsOffers, Long>{
 	
 	boolean existsByTitleAndCompanyAndCityAndCountryAndUrl(String title, String company, String city, String country, String url);
 	
+	long countByCompany(String company);
+	
 }
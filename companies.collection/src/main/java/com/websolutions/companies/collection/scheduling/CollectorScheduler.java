@@ -0,0 +1,154 @@
+package com.websolutions.companies.collection.scheduling;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import com.websolutions.companies.collection.ingestion.KnownOffersFilter;
+import com.websolutions.companies.collection.orchestration.CollectorOrchestrator;
+import com.websolutions.companies.collection.orchestration.CollectorRunReport;
+import com.websolutions.companies.collection.services.CrawlMode;
+import com.websolutions.companies.collection.services.JobCollector;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Runs every enabled collector again and again, each on its own cadence, for as long as the application runs.
+ *
+ * - The interval and the crawl mode are set per collector :
+ *     scheduler.collector.AltenJobCollector.interval=1h
+ *     scheduler.collector.AltenJobCollector.mode=incremental
+ *   a collector without its own values uses scheduler.default-interval and scheduler.default-mode.
+ * - Each start is delayed by a random time between 0 and scheduler.jitter, so collectors with the same interval
+ *   don't all ask the Grid for a session at the same second.
+ * - A collector is never started while its previous run is still going (see CollectorOrchestrator.run), and runs
+ *   share the collectors.parallelism slots with runAll().
+ * - The start time of every successful run is saved by LastRunStore. After a restart, a collector first runs when
+ *   its interval since that time is over, a restart doesn't start every crawl at once.
+ *
+ * The timer is one platform thread, which keeps the application alive, the runs themselves are virtual threads.
+ * */
+@Service
+public class CollectorScheduler {
+
+	private static final Logger logger = Logger.getLogger(CollectorScheduler.class.getName());
+
+	/* A collector with its cadence, read again before each run so a changed property applies to the next one */
+	record Schedule(JobCollector collector, Duration interval, CrawlMode crawlMode) {
+	}
+
+	private final CollectorOrchestrator collectorOrchestrator;
+	private final KnownOffersFilter knownOffersFilter;
+	private final LastRunStore lastRunStore;
+	private final Environment environment;
+	private final Duration defaultInterval;
+	private final CrawlMode defaultMode;
+	private final Duration jitter;
+
+	/* Created by start() only : a non daemon thread would keep an application that doesn't schedule anything alive */
+	private ScheduledExecutorService timer;
+
+	public CollectorScheduler(CollectorOrchestrator collectorOrchestrator, KnownOffersFilter knownOffersFilter,
+			LastRunStore lastRunStore, Environment environment,
+			@Value("${scheduler.default-interval:6h}") Duration defaultInterval,
+			@Value("${scheduler.default-mode:recent}") CrawlMode defaultMode,
+			@Value("${scheduler.jitter:5m}") Duration jitter) {
+		this.collectorOrchestrator = collectorOrchestrator;
+		this.knownOffersFilter = knownOffersFilter;
+		this.lastRunStore = lastRunStore;
+		this.environment = environment;
+		this.defaultInterval = defaultInterval;
+		this.defaultMode = defaultMode;
+		this.jitter = jitter.isNegative() ? Duration.ZERO : jitter;
+	}
+
+	/**
+	 * Plans the first run of every enabled collector and returns, the runs then go on in the background
+	 * until the application stops.
+	 */
+	public synchronized void start() {
+		if (timer != null) {
+			return;
+		}
+		timer = Executors.newSingleThreadScheduledExecutor(
+				Thread.ofPlatform().name("collector-scheduler").daemon(false).factory());
+
+		/* Loaded once, the offers stored by the scheduled runs are added to it as they are written */
+		knownOffersFilter.preload();
+
+		Instant now = Instant.now();
+		for (JobCollector collector : collectorOrchestrator.getCollectors()) {
+			Schedule schedule = scheduleOf(collector);
+			Duration wait = lastRunStore.lastRun(collector.getName())
+					.map(lastRun -> Duration.between(now, lastRun.plus(schedule.interval())))
+					.filter(remaining -> !remaining.isNegative())
+					.orElse(Duration.ZERO);
+			plan(schedule, wait);
+		}
+	}
+
+	private Schedule scheduleOf(JobCollector collector) {
+		String prefix = "scheduler.collector." + collector.getName() + ".";
+		Duration interval = environment.getProperty(prefix + "interval", Duration.class, defaultInterval);
+		CrawlMode crawlMode = environment.getProperty(prefix + "mode", CrawlMode.class, defaultMode);
+		if (interval.isNegative() || interval.isZero()) {
+			logger.warning("[" + collector.getName() + "] invalid interval " + interval + ", using " + defaultInterval);
+			interval = defaultInterval;
+		}
+		return new Schedule(collector, interval, crawlMode);
+	}
+
+	private synchronized void plan(Schedule schedule, Duration wait) {
+		if (timer.isShutdown()) {
+			return;
+		}
+		Duration delay = wait.plus(randomJitter());
+		logger.info("[" + schedule.collector().getName() + "] next " + schedule.crawlMode() + " run in "
+				+ delay.toMinutes() + " min, then every " + schedule.interval());
+		timer.schedule(() -> Thread.ofVirtual().name("scheduled-" + schedule.collector().getName())
+				.start(() -> runAndPlanNext(schedule)), delay.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	private void runAndPlanNext(Schedule schedule) {
+		String name = schedule.collector().getName();
+		Instant startedAt = Instant.now();
+		try {
+			CollectorRunReport report = collectorOrchestrator.run(schedule.collector(), schedule.crawlMode());
+			logger.info("Scheduled run: " + report);
+			if (report.succeeded()) {
+				lastRunStore.record(name, startedAt);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (RuntimeException e) {
+			logger.log(Level.WARNING, "[" + name + "] scheduled run failed", e);
+		}
+
+		/* The interval counts from the start of this run, a long crawl doesn't push the next ones later and later */
+		Duration elapsed = Duration.between(startedAt, Instant.now());
+		Duration wait = schedule.interval().minus(elapsed);
+		plan(scheduleOf(schedule.collector()), wait.isNegative() ? Duration.ZERO : wait);
+	}
+
+	private Duration randomJitter() {
+		long maxMillis = jitter.toMillis();
+		return maxMillis <= 0 ? Duration.ZERO : Duration.ofMillis(ThreadLocalRandom.current().nextLong(maxMillis + 1));
+	}
+
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (timer != null) {
+			timer.shutdownNow();
+		}
+	}
+}
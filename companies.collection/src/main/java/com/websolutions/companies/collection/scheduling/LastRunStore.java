@@ -0,0 +1,88 @@
+package com.websolutions.companies.collection.scheduling;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Remembers when each collector last ran successfully, in one small JSON file :
+ *
+ *   { "AltenJobCollector" : "2025-09-01T08:00:00Z", "HirschmannAutomotiveJobCollector" : "2025-08-31T22:14:05Z" }
+ *
+ * The scheduler reads it at start-up, so a restart only runs the collectors that are due instead of all of them.
+ * Like the crawl checkpoints, a file that can't be read or written is logged and the scheduler goes on without it.
+ * */
+@Service
+public class LastRunStore {
+
+	private static final Logger logger = Logger.getLogger(LastRunStore.class.getName());
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final Path file;
+	private final Map<String, Instant> lastRuns = new HashMap<>();
+
+	public LastRunStore(@Value("${scheduler.state-file:scheduler/last-runs.json}") String file) {
+		this.file = Paths.get(file);
+		load();
+	}
+
+	public synchronized Optional<Instant> lastRun(String collector) {
+		return Optional.ofNullable(lastRuns.get(collector));
+	}
+
+	/**
+	 * Records a successful run started at the given time and rewrites the file.
+	 */
+	public synchronized void record(String collector, Instant startedAt) {
+		lastRuns.put(collector, startedAt);
+		Map<String, String> content = new TreeMap<>();
+		lastRuns.forEach((name, time) -> content.put(name, time.toString()));
+
+		/* Written to a temporary file and moved, so a crash never leaves half a file */
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			if (file.getParent() != null) {
+				Files.createDirectories(file.getParent());
+			}
+			MAPPER.writerWithDefaultPrettyPrinter().writeValue(temporary.toFile(), content);
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Could not write the last run times to " + file, e);
+		}
+	}
+
+	private void load() {
+		if (!Files.exists(file)) {
+			return;
+		}
+		try {
+			Map<String, String> content = MAPPER.readValue(file.toFile(), new TypeReference<Map<String, String>>() {});
+			content.forEach((name, time) -> {
+				try {
+					lastRuns.put(name, Instant.parse(time));
+				} catch (DateTimeParseException e) {
+					logger.warning("Ignoring the last run of " + name + ", unreadable time " + time);
+				}
+			});
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unreadable last run times " + file + ", every collector is due", e);
+		}
+	}
+}
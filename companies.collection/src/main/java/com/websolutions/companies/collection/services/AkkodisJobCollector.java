@@ -3,7 +3,6 @@ package com.websolutions.companies.collection.services;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
-import java.net.URI;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -12,223 +11,256 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Optional;
-import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import org.openqa.selenium.By;
-import org.openqa.selenium.ElementClickInterceptedException;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.edge.EdgeOptions;
-import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.websolutions.companies.collection.browser.BrowserInteractions;
+import com.websolutions.companies.collection.browser.DetailPageFetcher;
+import com.websolutions.companies.collection.browser.JsonListingMapper.ListingCapture;
+import com.websolutions.companies.collection.browser.JsonListingMapper;
+import com.websolutions.companies.collection.browser.TracedWebDriverWait;
+import com.websolutions.companies.collection.browser.WebDriverPool;
 import com.websolutions.companies.collection.entites.JobsOffers;
-import com.websolutions.companies.collection.locations.DetectCities;
+import com.websolutions.companies.collection.ingestion.IngestionPipeline;
+import com.websolutions.companies.collection.ingestion.JobOffersBatch;
 import com.websolutions.companies.collection.modelAI.PredictTitle;
-import com.websolutions.companies.collection.repositories.JobsOffersRepository;
-import com.websolutions.companies.collection.utils.CountryNormalizer;
 
 @Service
-public class AkkodisJobCollector {
-
-	private static final Logger logger = Logger.getLogger(ExpleoJobCollector.class.getName());
-	private final HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
-	private final HashMap<Integer, String> jobsLinks = new HashMap<>();
-	private final JobsOffersRepository jobsOffersRepository;
-	private EdgeOptions options;
-	private WebDriver driver;
-	private boolean isFinalPageReached = false;
-	private int maxNumberOfPagesClicked = 3;
+public class AkkodisJobCollector implements JobCollector {
+
+	private final IngestionPipeline ingestionPipeline;
+	private final WebDriverPool webDriverPool;
+	private final BrowserInteractions browserInteractions;
+	private final JsonListingMapper jsonListingMapper;
+	private final DetailPageFetcher detailPageFetcher;
+	private static final String JOB_LIST_ITEM = "div.JobSearchResults_filter-container__jj_1I > div:nth-child(3) ul[class*='JobSearchResults_filter'] li";
 	private String AkkodisLink = "https://www.akkodis.com/en-us/careers/job-results";
-	private final DetectCities detectCities;
-	private CountryNormalizer countryNormalizer;
 	private PredictTitle predictTitle;
 
-	public AkkodisJobCollector(JobsOffersRepository jobsOffersRepository, DetectCities detectCities,
-			CountryNormalizer countryNormalizer, PredictTitle predictTitle) {
+	public AkkodisJobCollector(IngestionPipeline ingestionPipeline, PredictTitle predictTitle, WebDriverPool webDriverPool,
+			DetailPageFetcher detailPageFetcher, JsonListingMapper jsonListingMapper,
+			BrowserInteractions browserInteractions) {
 		super();
-		this.jobsOffersRepository = jobsOffersRepository;
-		this.detectCities = detectCities;
-		this.countryNormalizer = countryNormalizer;
+		this.webDriverPool = webDriverPool;
+		this.browserInteractions = browserInteractions;
+		this.jsonListingMapper = jsonListingMapper;
+		this.detailPageFetcher = detailPageFetcher;
+		this.ingestionPipeline = ingestionPipeline;
 		this.predictTitle = predictTitle;
 	}
 
+	@Override
+	public String getCompanyName() {
+		return "Akkodis";
+	}
+
+	@Override
+	public void collect(boolean isFullJobsCollection) throws Exception {
+		getFulljobs(isFullJobsCollection);
+	}
+
 	public void getFulljobs(boolean isFullJobsCollection) throws Exception {
 		int page_index = 1;
 		int jobIndex = 0;
 
-		options = new EdgeOptions();
-		options.addArguments("--no-sandbox");
-		options.addArguments("--headless=new");
-		options.addArguments("--disable-dev-shm-usage");
-		options.addArguments("--lang=en-US");
-		options.addArguments("--disable-gpu");
-		options.addArguments("--disable-notifications");
-		options.addArguments("--window-size=1920,1080");
-
-		driver = new RemoteWebDriver(URI.create("http://selenium:4444").toURL(), options);
-
-		WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(20));
-
-		driver.get(AkkodisLink);
-
-		boolean popupAppearedAndClosed = false;
-		if (!popupAppearedAndClosed) {
-			/* Check if popup cookies is appearing */
-			try {
-				WebElement popupAcceptBtn = wait
-						.until(ExpectedConditions.elementToBeClickable(By.id("onetrust-accept-btn-handler")));
-				safeClick(driver, popupAcceptBtn);
-			} catch (TimeoutException e) {
-				// Popup didn't appear, continue
-			}
-			popupAppearedAndClosed = true;
-		}
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		boolean isFinalPageReached = false;
+		int maxNumberOfPagesClicked = 3;
 
-		List<WebElement> chatbot_iframe = wait
-				.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.id("__sense-widget")));
-		if (chatbot_iframe.size() > 0) {
-			((JavascriptExecutor) driver)
-					.executeScript("document.getElementById('__sense-widget').style.display='none';");
-			((JavascriptExecutor) driver)
-					.executeScript("document.getElementById('__sense-widget-button').style.display='none';");
-		}
+		WebDriver driver = webDriverPool.borrow(getCompanyName());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
 
-		while (!isFinalPageReached) {
-			List<WebElement> jobs = wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector(
-					"div.JobSearchResults_filter-container__jj_1I > div:nth-child(3) ul[class*='JobSearchResults_filter'] li")));
-			for (int i = 0; i < jobs.size(); i++) {
-				try {
-					jobs = driver.findElements(By.cssSelector(
-							"div.JobSearchResults_filter-container__jj_1I > div:nth-child(3) ul[class*='JobSearchResults_filter'] li"));
-					WebElement job = jobs.get(i);
-					String job_title = job.findElement(By.cssSelector("h3")).getText();
-					String contract_type = job
-							.findElement(By.cssSelector("a > div:nth-child(3) > div:nth-child(1) span:nth-child(2)"))
-							.getText();
-					String location = job
-							.findElement(By.cssSelector("a > div:nth-child(3) > div:nth-child(2) span:nth-child(2)"))
-							.getText();
-					String publish_date = job
-							.findElement(By.cssSelector("a > div:nth-child(3) > div:nth-child(3) span:nth-child(2)"))
-							.getText();
-					String job_link = "https://www.akkodis.com"
-							+ job.findElement(By.tagName("a")).getDomAttribute("href");
-
-					String city = location.strip();
-					String country = "Undefined";
-					Optional<String> detectedCountry = detectCities.getCountryForCity(city);
-					if (detectedCountry.isPresent()) {
-						country = detectedCountry.get();
-
-						String normalizedCountry = countryNormalizer.find(country.toLowerCase());
-						if (!normalizedCountry.equals("NOT FOUND")) {
-							country = normalizedCountry;
-						}
-					}
+			WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(20));
+
+			/*
+			 * The result list is rendered from a search API call, with a JSON mapping configured each page is read
+			 * from the API payload, otherwise (or if nothing usable was captured) from the list items.
+			 * */
+			try (ListingCapture listingCapture = jsonListingMapper.capture(driver, getCompanyName()).orElse(null)) {
+				driver.get(AkkodisLink);
 
-					publish_date = date_formatter(publish_date);
-					if (dateCheckValabilityStatus(publish_date)) {
-						List<String> infos = new ArrayList<>();
-						infos.add(job_title.strip());
-						infos.add(city);
-						infos.add(country);
-						infos.add(publish_date);
-						infos.add(contract_type);
-
-						id_jobInfo.put(jobIndex, infos);
-						jobsLinks.put(jobIndex, job_link);
-						jobIndex++;
+				boolean popupAppearedAndClosed = false;
+				if (!popupAppearedAndClosed) {
+					/* Check if popup cookies is appearing */
+					try {
+						WebElement popupAcceptBtn = wait
+								.until(ExpectedConditions.elementToBeClickable(By.id("onetrust-accept-btn-handler")));
+						browserInteractions.safeClick(driver, popupAcceptBtn);
+					} catch (TimeoutException e) {
+						// Popup didn't appear, continue
 					}
-				} catch (Exception e) {
-					e.printStackTrace();
-					continue;
+					popupAppearedAndClosed = true;
 				}
 
-			}
-
-			try {
-				int maxPagesNumber = 20;
-				try {
-					maxPagesNumber = Integer
-							.parseInt(driver.findElements(By.cssSelector("ul[class*='pagination_pagination-list'] li"))
-									.getLast().getText());
-				} catch (Exception e) {
-
+				List<WebElement> chatbot_iframe = wait
+						.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.id("__sense-widget")));
+				if (chatbot_iframe.size() > 0) {
+					((JavascriptExecutor) driver)
+							.executeScript("document.getElementById('__sense-widget').style.display='none';");
+					((JavascriptExecutor) driver)
+							.executeScript("document.getElementById('__sense-widget-button').style.display='none';");
 				}
 
-				List<WebElement> nextPageBtn = driver
-						.findElements(By.cssSelector("span[class*='pagination-right-arrow'] span"));
-
-				if (nextPageBtn.isEmpty()) {
-					isFinalPageReached = true;
-				} else {
-					String cssClass = nextPageBtn.getFirst().getDomAttribute("class");
-					if (!cssClass.contains("pe-none") && page_index < maxPagesNumber) {
-						safeClick(driver, nextPageBtn.getFirst());
-						page_index++;
-						maxNumberOfPagesClicked--;
-						if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
-							isFinalPageReached = true;
+				while (!isFinalPageReached) {
+					List<JobsOffers> capturedJobs = listingCapture == null ? List.of()
+							: listingCapture.nextPage(Duration.ofSeconds(10));
+					if (!capturedJobs.isEmpty()) {
+						for (JobsOffers capturedJob : capturedJobs) {
+							try {
+								String city = capturedJob.getCity();
+								String country = "Undefined";
+
+								/* The API gives ISO dates ("2025-08-01T09:30:00Z"), the list shows "1 Aug 2025" */
+								String publish_date = capturedJob.getPublishDate();
+								if (publish_date.length() >= 10 && publish_date.charAt(4) == '-') {
+									publish_date = publish_date.substring(0, 10);
+								} else {
+									publish_date = date_formatter(publish_date);
+								}
+								if (dateCheckValabilityStatus(publish_date)) {
+									List<String> infos = new ArrayList<>();
+									infos.add(capturedJob.getTitle());
+									infos.add(city);
+									infos.add(country);
+									infos.add(publish_date);
+									infos.add(capturedJob.getContractType());
+
+									id_jobInfo.put(jobIndex, infos);
+									jobsLinks.put(jobIndex, capturedJob.getUrl());
+									jobIndex++;
+								}
+							} catch (Exception e) {
+								e.printStackTrace();
+							}
 						}
 					} else {
-						isFinalPageReached = true;
+						List<WebElement> jobs = wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector(JOB_LIST_ITEM)));
+						for (int i = 0; i < jobs.size(); i++) {
+							try {
+								jobs = driver.findElements(By.cssSelector(JOB_LIST_ITEM));
+								WebElement job = jobs.get(i);
+								String job_title = job.findElement(By.cssSelector("h3")).getText();
+								String contract_type = job
+										.findElement(By.cssSelector("a > div:nth-child(3) > div:nth-child(1) span:nth-child(2)"))
+										.getText();
+								String location = job
+										.findElement(By.cssSelector("a > div:nth-child(3) > div:nth-child(2) span:nth-child(2)"))
+										.getText();
+								String publish_date = job
+										.findElement(By.cssSelector("a > div:nth-child(3) > div:nth-child(3) span:nth-child(2)"))
+										.getText();
+								String job_link = "https://www.akkodis.com"
+										+ job.findElement(By.tagName("a")).getDomAttribute("href");
+
+								String city = location.strip();
+								String country = "Undefined";
+
+								publish_date = date_formatter(publish_date);
+								if (dateCheckValabilityStatus(publish_date)) {
+									List<String> infos = new ArrayList<>();
+									infos.add(job_title.strip());
+									infos.add(city);
+									infos.add(country);
+									infos.add(publish_date);
+									infos.add(contract_type);
+
+									id_jobInfo.put(jobIndex, infos);
+									jobsLinks.put(jobIndex, job_link);
+									jobIndex++;
+								}
+							} catch (Exception e) {
+								e.printStackTrace();
+								continue;
+							}
+
+						}
 					}
 
-				}
-			} catch (Exception e) {
-				isFinalPageReached = true;
-			}
-		}
+					try {
+						int maxPagesNumber = 20;
+						try {
+							maxPagesNumber = Integer
+									.parseInt(driver.findElements(By.cssSelector("ul[class*='pagination_pagination-list'] li"))
+											.getLast().getText());
+						} catch (Exception e) {
 
-		for (int id = 0; id < jobsLinks.size(); id++) {
-			try {
-				driver.get(jobsLinks.get(id));
-				String innerHTML = "";
-				WebElement innerHTMLElement = wait.until(ExpectedConditions
-						.presenceOfElementLocated(By.cssSelector("div[class*='JobDescription_job-description-body']")));
-				innerHTML = innerHTMLElement.getDomProperty("innerHTML").replace("\n", "")
-						.replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>", "");
-
-				String apply_link = "https://www.akkodis.com" + driver
-						.findElement(By.cssSelector(
-								"div[class*='JobDescription_mobile-job-details'] a[class*='apply-now-button']"))
-						.getDomAttribute("href");
-
-				JobsOffers jobOffer = new JobsOffers();
-				jobOffer.setTitle(id_jobInfo.get(id).getFirst());
-				jobOffer.setCompany("Akkodis");
-				jobOffer.setCity(id_jobInfo.get(id).get(1));
-				jobOffer.setCountry(id_jobInfo.get(id).get(2));
-				jobOffer.setUrl(apply_link);
-				jobOffer.setContractType(id_jobInfo.get(id).get(4));
-				jobOffer.setWorkMode("Undefined");
-				jobOffer.setPublishDate(id_jobInfo.get(id).get(3));
-				jobOffer.setJobField(predictTitle.predictField(id_jobInfo.get(id).getFirst()).replace(" / ", " - "));
-				jobOffer.setPost(innerHTML);
-				if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(id_jobInfo.get(id).getFirst(),
-						"Akkodis", id_jobInfo.get(id).get(1), id_jobInfo.get(id).get(2), apply_link)) {
+						}
 
-					try {
-						jobsOffersRepository.save(jobOffer);
-					} catch (DataIntegrityViolationException e) {
-						logger.info("Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
+						List<WebElement> nextPageBtn = driver
+								.findElements(By.cssSelector("span[class*='pagination-right-arrow'] span"));
+
+						if (nextPageBtn.isEmpty()) {
+							isFinalPageReached = true;
+						} else {
+							String cssClass = nextPageBtn.getFirst().getDomAttribute("class");
+							if (!cssClass.contains("pe-none") && page_index < maxPagesNumber) {
+								String listingBefore = browserInteractions.listingSignature(driver, JOB_LIST_ITEM);
+								browserInteractions.safeClick(driver, nextPageBtn.getFirst());
+								browserInteractions.awaitListingChange(driver, JOB_LIST_ITEM, listingBefore);
+								page_index++;
+								maxNumberOfPagesClicked--;
+								if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+									isFinalPageReached = true;
+								}
+							} else {
+								isFinalPageReached = true;
+							}
+
+						}
+					} catch (Exception e) {
+						isFinalPageReached = true;
 					}
 				}
-			} catch (Exception e) {
-				System.out.println(
-						"⚠️ Unexpected error at job " + id + " (" + jobsLinks.get(id) + "): " + e.getMessage());
-				continue;
 			}
 
+			List<String> jobFields = predictTitle.predictFields(
+					IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+			detailPageFetcher.visitAll(driver,
+					IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (detailDriver, id) -> {
+				WebDriverWait detailWait = new TracedWebDriverWait(detailDriver, Duration.ofSeconds(20));
+				try {
+					String innerHTML = "";
+					WebElement innerHTMLElement = detailWait.until(ExpectedConditions
+							.presenceOfElementLocated(By.cssSelector("div[class*='JobDescription_job-description-body']")));
+					innerHTML = innerHTMLElement.getDomProperty("innerHTML").replace("\n", "")
+							.replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>", "");
+
+					String apply_link = "https://www.akkodis.com" + detailDriver
+							.findElement(By.cssSelector(
+									"div[class*='JobDescription_mobile-job-details'] a[class*='apply-now-button']"))
+							.getDomAttribute("href");
+
+					JobsOffers jobOffer = new JobsOffers();
+					jobOffer.setTitle(id_jobInfo.get(id).getFirst());
+					jobOffer.setCompany("Akkodis");
+					jobOffer.setCity(id_jobInfo.get(id).get(1));
+					jobOffer.setCountry(id_jobInfo.get(id).get(2));
+					jobOffer.setUrl(apply_link);
+					jobOffer.setSourceUrl(jobsLinks.get(id));
+					jobOffer.setContractType(id_jobInfo.get(id).get(4));
+					jobOffer.setWorkMode("Undefined");
+					jobOffer.setPublishDate(id_jobInfo.get(id).get(3));
+					jobOffer.setJobField(jobFields.get(id).replace(" / ", " - "));
+					jobOffer.setPost(innerHTML);
+					offersBatch.add(jobOffer);
+				} catch (Exception e) {
+					System.out.println(
+							"⚠️ Unexpected error at job " + id + " (" + jobsLinks.get(id) + "): " + e.getMessage());
+				}
+
+			});
+		} finally {
+			webDriverPool.release(driver);
 		}
-		closeDriver();
 		
 		File file = new File("checker/Collector-checker.txt");
 		file.getParentFile().mkdirs();
@@ -240,9 +272,6 @@ public class AkkodisJobCollector {
 		}
 	}
 
-	private void closeDriver() {
-		driver.quit();
-	}
 
 	private String date_formatter(String input_date) {
 		DateTimeFormatter inputFormatter = DateTimeFormatter.ofPattern("d MMM yyyy", Locale.ENGLISH);
@@ -268,17 +297,4 @@ public class AkkodisJobCollector {
 			return false;
 		}
 	}
-
-	public void safeClick(WebDriver driver, WebElement element) {
-		try {
-			((JavascriptExecutor) driver)
-					.executeScript("arguments[0].scrollIntoView({block: 'center', inline: 'center'});", element);
-			Thread.sleep(500);
-			element.click();
-		} catch (ElementClickInterceptedException e) {
-			((JavascriptExecutor) driver).executeScript("arguments[0].click();", element);
-		} catch (Exception ex) {
-			System.out.println("Error clicking element: " + ex.getMessage());
-		}
-	}
 }
@@ -1,7 +1,6 @@
 package com.websolutions.companies.collection.services;
 
 import java.net.MalformedURLException;
-import java.net.URI;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -12,66 +11,118 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import org.openqa.selenium.By;
-import org.openqa.selenium.ElementClickInterceptedException;
-import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.NoSuchElementException;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.edge.EdgeOptions;
-import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.FluentWait;
 import org.openqa.selenium.support.ui.Wait;
 import org.openqa.selenium.support.ui.WebDriverWait;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.websolutions.companies.collection.browser.BrowserInteractions;
+import com.websolutions.companies.collection.browser.CardExtractor;
+import com.websolutions.companies.collection.browser.CardSpec;
+import com.websolutions.companies.collection.browser.DetailPageFetcher;
+import com.websolutions.companies.collection.browser.TracedWebDriverWait;
+import com.websolutions.companies.collection.browser.WebDriverPool;
 import com.websolutions.companies.collection.entites.JobsOffers;
+import com.websolutions.companies.collection.ingestion.IngestionPipeline;
+import com.websolutions.companies.collection.ingestion.JobOffersBatch;
+import com.websolutions.companies.collection.ingestion.KnownCardsStreak;
+import com.websolutions.companies.collection.ingestion.KnownOffersFilter;
 import com.websolutions.companies.collection.modelAI.PredictTitle;
-import com.websolutions.companies.collection.repositories.JobsOffersRepository;
 
 @Service
-public class AltenJobCollector {
+public class AltenJobCollector implements JobCollector {
 
-	private final JobsOffersRepository jobsOffersRepository;
+	private final IngestionPipeline ingestionPipeline;
 	private static final Logger logger = Logger.getLogger(AltenJobCollector.class.getName());
 	private String AltenLink = "https://www.alten.com/careers/job-offers/";
-	private WebDriver driver;
-	private EdgeOptions options;
-	private final Map<String, String> ALTEN_COUNTRIES_LINK = new HashMap<String, String>();
+	private final Map<String, String> ALTEN_COUNTRIES_LINK = new ConcurrentHashMap<String, String>();
 	private PredictTitle predictTitle;
 
-	WebDriverWait wait;
-	WebDriverWait fishingPopupWait;
+	/*
+	 * The job cards of the foreign countries pages (getForeignJobs_1).
+	 * */
+	private static final CardSpec FOREIGN_JOB_CARD = CardSpec
+			.of("div.wp-block-jobboard-loop div.is-style-card-default.wp-block-webfactory-card")
+			.text("title", "a")
+			.attribute("link", "a", "href")
+			.text("location", "div.col-md-3.order-2.px-1.px-md-2.py-2.d-flex.card-location "
+					+ "span.location-list.ms-2.d-flex.flex-column")
+			.text("publishDate", "div.col-md-2.order-3.px-1.px-md-2.py-2.card-date span.mx-2");
+
+	/*
+	 * The job cards of the second group of foreign countries (getForeignJobs_2), everything is inside the card link.
+	 * */
+	private static final CardSpec FOREIGN_JOB_CARD_2 = CardSpec
+			.of("div.openings-body.js-openings ul.opening-jobs li.opening-job")
+			.text("title", "a.link--block.details h4.details-title")
+			.attribute("link", "a.link--block.details", "href")
+			.text("location", "a.link--block.details ul.job-list li:nth-of-type(1)")
+			.text("contractType", "a.link--block.details ul.job-list li:nth-of-type(2)");
 
-	public AltenJobCollector(JobsOffersRepository jobsOffersRepository, PredictTitle predictTitle) {
-		this.jobsOffersRepository = jobsOffersRepository;
+	/*
+	 * The job cards of the Moroccan site (getMoroccanJobs).
+	 * */
+	private static final CardSpec MOROCCAN_JOB_CARD = CardSpec
+			.of("#jobboard-jobboard-0 .col-lg-9.wp-block-bootstrap-column .wp-block-jobboard-loop .card-inner")
+			.text("title", ".card-title")
+			.attribute("link", ".card-title", "href")
+			.text("location", ".card-location .location-list")
+			.text("publishDate", ".card-date .mx-2");
+	private final WebDriverPool webDriverPool;
+	private final KnownOffersFilter knownOffersFilter;
+	private final BrowserInteractions browserInteractions;
+	private final DetailPageFetcher detailPageFetcher;
+
+	public AltenJobCollector(IngestionPipeline ingestionPipeline, PredictTitle predictTitle,
+			WebDriverPool webDriverPool,
+			DetailPageFetcher detailPageFetcher, BrowserInteractions browserInteractions,
+			KnownOffersFilter knownOffersFilter) {
+		this.ingestionPipeline = ingestionPipeline;
 		this.predictTitle = predictTitle;
+		this.webDriverPool = webDriverPool;
+		this.knownOffersFilter = knownOffersFilter;
+		this.browserInteractions = browserInteractions;
+		this.detailPageFetcher = detailPageFetcher;
 	}
 
-	public void closeDriver() {
-		driver.quit();
+	@Override
+	public String getCompanyName() {
+		return "Alten";
 	}
 
-	public void setupDriver() throws MalformedURLException {
-		options = new EdgeOptions();
-		options.addArguments("--no-sandbox");
-		options.addArguments("--headless=new");
-		options.addArguments("--disable-dev-shm-usage");
-		options.addArguments("--lang=en-US");
-		options.addArguments("--disable-gpu");
-		options.addArguments("--disable-notifications");
-		options.addArguments("--window-size=1920,1080");
-
-		driver = new RemoteWebDriver(URI.create("http://selenium:4444").toURL(), options);
+	@Override
+	public void collect(boolean isFullJobsCollection) throws Exception {
+		collect(CrawlMode.of(isFullJobsCollection));
+	}
 
-		wait = new WebDriverWait(driver, Duration.ofSeconds(5));
-		fishingPopupWait = new WebDriverWait(driver, Duration.ofSeconds(4));
+	/*
+	 * Alten is split by country groups, each group having its own page layout,
+	 * so a full collection borrows one browser session and walks through all of them.
+	 * The incremental mode only shortens the groups listed by date (getForeignJobs_1 and getMoroccanJobs).
+	 */
+	@Override
+	public void collect(CrawlMode crawlMode) throws Exception {
+		WebDriver driver = webDriverPool.borrow(getCompanyName());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
+			getCountries(driver);
+			getForeignJobs_1(driver, offersBatch, crawlMode);
+			getForeignJobs_2(driver, offersBatch);
+			getForeignJobs_3(driver, offersBatch);
+			getMoroccanJobs(driver, offersBatch, crawlMode);
+		} finally {
+			webDriverPool.release(driver);
+		}
 	}
 
 	/*
@@ -84,16 +135,17 @@ public class AltenJobCollector {
 	 * input so the 'countriesDivList' element appears in the DOM. - After
 	 * collecting the list of countries, we add them to ALTEN_COUNTRIES.
 	 */
-	public void getCountries() throws MalformedURLException {
+	public void getCountries(WebDriver driver) throws MalformedURLException {
+		WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(5));
 		try {
 			driver.get(AltenLink);
 			WebElement cookieAcceptBtn = wait
 					.until(ExpectedConditions.visibilityOfElementLocated(By.id("tarteaucitronPersonalize2")));
-			safeClick(driver, cookieAcceptBtn);
+			browserInteractions.safeClick(driver, cookieAcceptBtn);
 
 			WebElement countriesInput = wait.until(ExpectedConditions
 					.visibilityOfElementLocated(By.cssSelector("div.entry-content div.container-text div.item")));
-			safeClick(driver, countriesInput);
+			browserInteractions.safeClick(driver, countriesInput);
 
 			WebElement countriesDivList = wait.until(ExpectedConditions.visibilityOfElementLocated(
 					By.cssSelector("div.selectize-dropdown.single.form-control div.selectize-dropdown-content")));
@@ -111,7 +163,9 @@ public class AltenJobCollector {
 
 	}
 
-	public void getForeignJobs_1(boolean isFullJobsCollection) {
+	public void getForeignJobs_1(WebDriver driver, JobOffersBatch offersBatch, CrawlMode crawlMode) {
+		WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(5));
+		WebDriverWait fishingPopupWait = new TracedWebDriverWait(driver, Duration.ofSeconds(4));
 		Set<String> foreign_countries = ALTEN_COUNTRIES_LINK.keySet();
 		String[] countries_set1 = { "UNITED KINGDOM", "SWEDEN", "PORTUGAL", "FINLAND", "SPAIN", "NETHERLANDS",
 				"GERMANY", "SWITZERLAND", "FRANCE", "BELGIUM", "ITALY" };
@@ -123,6 +177,7 @@ public class AltenJobCollector {
 					boolean isFinalPageReached = false;
 					HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
 					HashMap<Integer, String> jobsLinks = new HashMap<>();
+					KnownCardsStreak knownCards = knownOffersFilter.startStreak(crawlMode == CrawlMode.INCREMENTAL);
 					driver.get(ALTEN_COUNTRIES_LINK.get(country));
 					while (!isFinalPageReached) {
 						boolean popupAppearedAndClosed = false;
@@ -131,7 +186,7 @@ public class AltenJobCollector {
 							try {
 								WebElement popupAcceptBtn = wait.until(
 										ExpectedConditions.elementToBeClickable(By.id("tarteaucitronPersonalize2")));
-								safeClick(driver, popupAcceptBtn);
+								browserInteractions.safeClick(driver, popupAcceptBtn);
 							} catch (TimeoutException e) {
 								// Popup didn't appear, continue
 							}
@@ -145,7 +200,7 @@ public class AltenJobCollector {
 										.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector(
 												"div.modal-dialog.modal-dialog-centered.modal-lg div div.modal-header button")));
 								if (!fishingPopupCloseBtn.isEmpty()) {
-									safeClick(driver, fishingPopupCloseBtn.getFirst());
+									browserInteractions.safeClick(driver, fishingPopupCloseBtn.getFirst());
 								}
 								fishingPopupClosed = true;
 							} catch (Exception e) {
@@ -153,28 +208,20 @@ public class AltenJobCollector {
 							}
 						}
 
-						List<WebElement> jobs = wait
-								.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector(
-										"div.wp-block-jobboard-loop div.is-style-card-default.wp-block-webfactory-card")));
+						wait.until(ExpectedConditions
+								.presenceOfAllElementsLocatedBy(By.cssSelector(FOREIGN_JOB_CARD.getCardSelector())));
 
-						for (WebElement job : jobs) {
+						/* All the cards of the page are read in one browser call, see FOREIGN_JOB_CARD */
+						for (Map<String, String> job : CardExtractor.extract(driver, FOREIGN_JOB_CARD)) {
 							try {
-								WebElement job_title_element = job.findElement(By.tagName("a"));
-								String job_title = job_title_element.getText();
-								String job_link = job_title_element.getDomAttribute("href");
-
-								WebElement location_element = job.findElement(
-										By.cssSelector("div.col-md-3.order-2.px-1.px-md-2.py-2.d-flex.card-location "
-												+ "span.location-list.ms-2.d-flex.flex-column"));
-								String city = location_element.getText().strip().replace("\n", ", ");
+								String job_title = job.get("title");
+								String job_link = job.get("link");
+								String city = job.get("location").replace("\n", ", ");
 								String formattedCountry = "Undefined";
 								formattedCountry = country.substring(0, 1).toUpperCase()
 										+ country.substring(1).toLowerCase();
 
-								WebElement publish_date_element = job.findElement(
-										By.cssSelector("div.col-md-2.order-3.px-1.px-md-2.py-2.card-date span.mx-2"));
-
-								String publish_date = publish_date_element.getText();
+								String publish_date = job.get("publishDate");
 								if (dateCheckValabilityStatus(publish_date)) {
 									List<String> infos = new ArrayList<>();
 									infos.add(job_title.strip());
@@ -201,6 +248,11 @@ public class AltenJobCollector {
 							}
 						}
 
+						/* Incremental crawl : the listing is sorted by date, after a run of known cards everything is older */
+						if (knownCards.reachedWith(jobsLinks)) {
+							break;
+						}
+
 						try {
 							List<WebElement> btnList = driver.findElements(
 									By.cssSelector("div.col-lg-8.wp-block-bootstrap-column div nav ul li"));
@@ -215,9 +267,11 @@ public class AltenJobCollector {
 									if (cssClass.contains("active")) {
 										if (i + 1 < btnList.size()) {
 											WebElement nextBtn = btnList.get(i + 1);
-											safeClick(driver, nextBtn);
+											String listingBefore = browserInteractions.listingSignature(driver, FOREIGN_JOB_CARD.getCardSelector());
+											browserInteractions.safeClick(driver, nextBtn);
+											browserInteractions.awaitListingChange(driver, FOREIGN_JOB_CARD.getCardSelector(), listingBefore);
 											maxNumberOfPagesClicked--;
-											if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+											if (crawlMode == CrawlMode.RECENT && maxNumberOfPagesClicked == 0) {
 												isFinalPageReached = true;
 											}
 
@@ -236,19 +290,22 @@ public class AltenJobCollector {
 					}
 
 					try {
-						for (int id = 0; id < id_jobInfo.size(); id++) {
-							driver.get(jobsLinks.get(id));
+						List<String> jobFields = predictTitle.predictFields(
+								IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+						detailPageFetcher.visitAll(driver,
+								IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (detailDriver, id) -> {
+							WebDriverWait detailWait = new TracedWebDriverWait(detailDriver, Duration.ofSeconds(4));
 
-							Wait<WebDriver> fluentWait = new FluentWait<>(driver).withTimeout(Duration.ofSeconds(10))
+							Wait<WebDriver> fluentWait = new FluentWait<>(detailDriver).withTimeout(Duration.ofSeconds(10))
 									.pollingEvery(Duration.ofMillis(500)).ignoring(NoSuchElementException.class);
 
-							List<WebElement> divPost = fluentWait.until(driver -> {
-								List<WebElement> elements = driver
+							List<WebElement> divPost = fluentWait.until(d -> {
+								List<WebElement> elements = d
 										.findElements(By.cssSelector(".mb-5.wp-block-jobboard-offer-meta"));
 								if (!elements.isEmpty()) {
 									return elements;
 								}
-								elements = driver.findElements(By.cssSelector(".my-0.wp-block-jobboard-offer-meta"));
+								elements = d.findElements(By.cssSelector(".my-0.wp-block-jobboard-offer-meta"));
 								if (!elements.isEmpty()) {
 									return elements.subList(1, 3);
 								}
@@ -263,7 +320,7 @@ public class AltenJobCollector {
 							innerHTML = innerHTML.replaceAll("\\s{2,}", " ")
 									.replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");;
 
-							WebElement applyBtn = wait.until(ExpectedConditions.presenceOfElementLocated(By
+							WebElement applyBtn = detailWait.until(ExpectedConditions.presenceOfElementLocated(By
 									.cssSelector("div.mx-md-2.is-style-button-blue.wp-block-jobboard-offer-action a")));
 							String applyLink = applyBtn.getDomAttribute("href");
 
@@ -273,24 +330,16 @@ public class AltenJobCollector {
 							jobOffer.setCity(id_jobInfo.get(id).get(1));
 							jobOffer.setCountry(id_jobInfo.get(id).get(2));
 							jobOffer.setUrl(applyLink);
+							jobOffer.setSourceUrl(jobsLinks.get(id));
 							jobOffer.setContractType(id_jobInfo.get(id).get(3));
 							jobOffer.setWorkMode(id_jobInfo.get(id).get(4));
 							jobOffer.setPublishDate(id_jobInfo.get(id).get(5));
 							jobOffer.setJobField(
-									predictTitle.predictField(id_jobInfo.get(id).getFirst()).replace(" / ", " - "));
+									jobFields.get(id).replace(" / ", " - "));
 							jobOffer.setPost(innerHTML);
 
-							if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(
-									id_jobInfo.get(id).getFirst(), "Alten", id_jobInfo.get(id).get(1),
-									id_jobInfo.get(id).get(2), applyLink)) {
-								try {
-									jobsOffersRepository.save(jobOffer);
-								} catch (DataIntegrityViolationException e) {
-									logger.info(
-											"Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
-								}
-							}
-						}
+							offersBatch.add(jobOffer);
+						});
 					} catch (Exception e) {
 						e.printStackTrace();
 					}
@@ -308,7 +357,8 @@ public class AltenJobCollector {
 		}
 	}
 
-	public void getForeignJobs_2() {
+	public void getForeignJobs_2(WebDriver driver, JobOffersBatch offersBatch) {
+		WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(5));
 		Set<String> foreign_countries = ALTEN_COUNTRIES_LINK.keySet();
 		String[] countries_set2 = { "AUSTRIA" };
 		for (String country : foreign_countries) {
@@ -318,59 +368,51 @@ public class AltenJobCollector {
 					HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
 					HashMap<Integer, String> jobsLinks = new HashMap<>();
 					driver.get(ALTEN_COUNTRIES_LINK.get(country));
-					List<WebElement> jobs = wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(
-							By.cssSelector("div.openings-body.js-openings ul.opening-jobs li.opening-job")));
-
-					for (WebElement job : jobs) {
-						try {
-							WebElement linkElement = job.findElement(By.cssSelector("a.link--block.details"));
-							String job_title = linkElement.findElement(By.cssSelector("h4.details-title")).getText();
-							String job_link = job.findElement(By.cssSelector("a.link--block.details"))
-									.getDomAttribute("href");
-							String location = linkElement.findElement(By.cssSelector("ul.job-list li:nth-of-type(1)"))
-									.getText().trim();
-							String contract_type = linkElement
-									.findElement(By.cssSelector("ul.job-list li:nth-of-type(2)")).getText().trim();
-
-							String city = location.strip().replace("\n", ", ");
-							String formattedCountry = "Undefined";
-							formattedCountry = country.substring(0, 1).toUpperCase()
-									+ country.substring(1).toLowerCase();
-
-							List<String> infos = new ArrayList<>();
-							infos.add(job_title.strip());
-							infos.add(city);
-							infos.add(formattedCountry);
-							infos.add(contract_type.strip());
-							infos.add("Undefined");
-							infos.add("Undefined");
-
-							id_jobInfo.put(jobIndex, infos);
-							jobsLinks.put(jobIndex, job_link);
-							jobIndex++;
-
-						} catch (Exception e) {
-							e.printStackTrace();
-							logger.log(Level.WARNING,
-									"[" + AltenJobCollector.class.getName() + "]" + e.getMessage().split("\n")[0]);
-							continue;
-						}
+					wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(
+							By.cssSelector(FOREIGN_JOB_CARD_2.getCardSelector())));
+
+					/* All the cards of the page are read in one browser call, see FOREIGN_JOB_CARD_2 */
+					for (Map<String, String> job : CardExtractor.extract(driver, FOREIGN_JOB_CARD_2)) {
+						String job_title = job.get("title");
+						String job_link = job.get("link");
+						String location = job.get("location");
+						String contract_type = job.get("contractType");
+
+						String city = location.strip().replace("\n", ", ");
+						String formattedCountry = "Undefined";
+						formattedCountry = country.substring(0, 1).toUpperCase()
+								+ country.substring(1).toLowerCase();
+
+						List<String> infos = new ArrayList<>();
+						infos.add(job_title.strip());
+						infos.add(city);
+						infos.add(formattedCountry);
+						infos.add(contract_type.strip());
+						infos.add("Undefined");
+						infos.add("Undefined");
+
+						id_jobInfo.put(jobIndex, infos);
+						jobsLinks.put(jobIndex, job_link);
+						jobIndex++;
 					}
 
-					for (int id = 0; id < jobsLinks.size(); id++) {
-						driver.get(jobsLinks.get(id));
+					List<String> jobFields = predictTitle.predictFields(
+							IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+					detailPageFetcher.visitAll(driver,
+							IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (detailDriver, id) -> {
+						WebDriverWait detailWait = new TracedWebDriverWait(detailDriver, Duration.ofSeconds(5));
 						String jobPostInnerHTML = "";
-						WebElement jobDescription = wait
+						WebElement jobDescription = detailWait
 								.until(ExpectedConditions.presenceOfElementLocated(By.id("st-jobDescription")));
 						jobPostInnerHTML = jobPostInnerHTML + jobDescription.getDomProperty("innerHTML");
 
-						WebElement jobQualification = wait
+						WebElement jobQualification = detailWait
 								.until(ExpectedConditions.presenceOfElementLocated(By.id("st-qualifications")));
 						jobPostInnerHTML = jobPostInnerHTML + jobQualification.getDomProperty("innerHTML")
 							.replace("\n", "")
 							.replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");;
 
-						WebElement applyBtn = wait.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector(
+						WebElement applyBtn = detailWait.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector(
 								"main.jobad-main.job section.job-apply.print-hidden a.button.button--primary.button--huge.js-oneclick.job-button")));
 						String applyLink = applyBtn.getDomAttribute("href");
 
@@ -380,22 +422,15 @@ public class AltenJobCollector {
 						jobOffer.setCity(id_jobInfo.get(id).get(1));
 						jobOffer.setCountry(id_jobInfo.get(id).get(2));
 						jobOffer.setUrl(applyLink);
+						jobOffer.setSourceUrl(jobsLinks.get(id));
 						jobOffer.setContractType(id_jobInfo.get(id).get(3));
 						jobOffer.setWorkMode(id_jobInfo.get(id).get(4));
 						jobOffer.setPublishDate(id_jobInfo.get(id).get(5));
-						jobOffer.setJobField(predictTitle.predictField(id_jobInfo.get(id).getFirst()).replace(" / ", " - "));
+						jobOffer.setJobField(jobFields.get(id).replace(" / ", " - "));
 						jobOffer.setPost(jobPostInnerHTML);
 
-						if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(
-								id_jobInfo.get(id).getFirst(), "Alten", id_jobInfo.get(id).get(1),
-								id_jobInfo.get(id).get(2), applyLink)) {
-							try {
-								jobsOffersRepository.save(jobOffer);
-							} catch (DataIntegrityViolationException e) {
-								logger.info("Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
-							}
-						}
-					}
+						offersBatch.add(jobOffer);
+					});
 
 				} catch (Exception e) {
 					String message = (e.getMessage() != null) ? e.getMessage().split("\n")[0] : "No message";
@@ -409,7 +444,9 @@ public class AltenJobCollector {
 		}
 	}
 
-	public void getForeignJobs_3() {
+	public void getForeignJobs_3(WebDriver driver, JobOffersBatch offersBatch) {
+		WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(5));
+		WebDriverWait fishingPopupWait = new TracedWebDriverWait(driver, Duration.ofSeconds(4));
 		Set<String> foreign_countries = ALTEN_COUNTRIES_LINK.keySet();
 		String[] countries_set2 = { "INDIA" };
 		for (String country : foreign_countries) {
@@ -418,14 +455,14 @@ public class AltenJobCollector {
 					driver.get(ALTEN_COUNTRIES_LINK.get(country));
 					WebElement careersLink = wait.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector(
 							"#join-us div.row.row-cols-1.row-cols-md-2.justify-content-center.wp-block-bootstrap-row a.card-inner.text-decoration-none")));
-					safeClick(driver, careersLink);
+					browserInteractions.safeClick(driver, careersLink);
 					boolean popupAppearedAndClosed = false;
 					if (!popupAppearedAndClosed) {
 						/* Check if popup cookies is appearing */
 						try {
 							WebElement popupAcceptBtn = wait
 									.until(ExpectedConditions.elementToBeClickable(By.id("tarteaucitronPersonalize2")));
-							safeClick(driver, popupAcceptBtn);
+							browserInteractions.safeClick(driver, popupAcceptBtn);
 						} catch (TimeoutException e) {
 							// Popup didn't appear, continue
 						}
@@ -439,7 +476,7 @@ public class AltenJobCollector {
 									.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector(
 											"div.modal-dialog.modal-dialog-centered.modal-lg div div.modal-header button")));
 							if (!fishingPopupCloseBtn.isEmpty()) {
-								safeClick(driver, fishingPopupCloseBtn.getFirst());
+								browserInteractions.safeClick(driver, fishingPopupCloseBtn.getFirst());
 							}
 							fishingPopupClosed = true;
 						} catch (Exception e) {
@@ -453,7 +490,7 @@ public class AltenJobCollector {
 					for (WebElement job : jobs) {
 						try {
 
-							safeClick(driver, job);
+							browserInteractions.safeClick(driver, job);
 							WebElement title = job.findElement(By.cssSelector("header span"));
 
 							WebElement post = wait.until(ExpectedConditions.presenceOfNestedElementLocatedBy(job,
@@ -472,18 +509,10 @@ public class AltenJobCollector {
 							jobOffer.setContractType("Undefined");
 							jobOffer.setWorkMode("Undefined");
 							jobOffer.setPublishDate("Undefined");
-							jobOffer.setJobField(predictTitle.predictField(job_title.replace(" / ", " - ")));
+							/* No job field : the classify stage of IngestionPipeline predicts it with the other titles */
 							jobOffer.setPost(jobPostInnerHTML);
 
-							if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(job_title, "Alten",
-									"Undefined", "India", "Undefined")) {
-								try {
-									jobsOffersRepository.save(jobOffer);
-								} catch (DataIntegrityViolationException e) {
-									logger.info(
-											"Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
-								}
-							}
+							offersBatch.add(jobOffer);
 
 						} catch (Exception e) {
 							e.printStackTrace();
@@ -505,7 +534,8 @@ public class AltenJobCollector {
 		}
 	}
 
-	public void getMoroccanJobs(boolean isFullJobsCollection) {
+	public void getMoroccanJobs(WebDriver driver, JobOffersBatch offersBatch, CrawlMode crawlMode) {
+		WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(5));
 		Set<String> list_countries = ALTEN_COUNTRIES_LINK.keySet();
 		String[] countries_set = { "MOROCCO" };
 
@@ -516,6 +546,7 @@ public class AltenJobCollector {
 				boolean isFinalPageReached = false;
 				HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
 				HashMap<Integer, String> jobsLinks = new HashMap<>();
+				KnownCardsStreak knownCards = knownOffersFilter.startStreak(crawlMode == CrawlMode.INCREMENTAL);
 				try {
 					driver.get("https://www.alten.ma/rejoignez-nous/#rejoignez-nous");
 					boolean popupAppearedAndClosed = false;
@@ -524,7 +555,7 @@ public class AltenJobCollector {
 						try {
 							WebElement popupAcceptBtn = wait
 									.until(ExpectedConditions.elementToBeClickable(By.id("tarteaucitronPersonalize2")));
-							safeClick(driver, popupAcceptBtn);
+							browserInteractions.safeClick(driver, popupAcceptBtn);
 						} catch (TimeoutException e) {
 							// Popup didn't appear, continue
 						}
@@ -532,16 +563,12 @@ public class AltenJobCollector {
 					}
 
 					while (!isFinalPageReached) {
-						List<WebElement> jobs = driver.findElements(By.cssSelector(
-								"#jobboard-jobboard-0 .col-lg-9.wp-block-bootstrap-column .wp-block-jobboard-loop .card-inner"));
-						for (WebElement element : jobs) {
-							String job_title = element.findElement(By.cssSelector(".card-title")).getText();
-							String job_link = element.findElement(By.cssSelector(".card-title"))
-									.getDomAttribute("href");
-							String location = element.findElement(By.cssSelector(".card-location .location-list"))
-									.getText();
-							String publish_date = element.findElement(By.cssSelector(".card-date .mx-2")).getText()
-									.strip();
+						/* All the cards of the page are read in one browser call, see MOROCCAN_JOB_CARD */
+						for (Map<String, String> job : CardExtractor.extract(driver, MOROCCAN_JOB_CARD)) {
+							String job_title = job.get("title");
+							String job_link = job.get("link");
+							String location = job.get("location");
+							String publish_date = job.get("publishDate");
 
 							String city = location.strip().replace("\n", ", ");
 							String formattedCountry = "Undefined";
@@ -562,6 +589,11 @@ public class AltenJobCollector {
 								jobIndex++;
 							}
 						}
+						/* Incremental crawl : the listing is sorted by date, after a run of known cards everything is older */
+						if (knownCards.reachedWith(jobsLinks)) {
+							break;
+						}
+
 						List<WebElement> btnList = driver.findElements(By.cssSelector(
 								"div.row.gx-2.wp-block-bootstrap-row div.wp-block-jobboard-pagination nav ul.pagination li"));
 
@@ -574,12 +606,13 @@ public class AltenJobCollector {
 								if (cssClass.contains("active")) {
 									if (i + 1 < btnList.size()) {
 										WebElement nextBtn = btnList.get(i + 1);
-										safeClick(driver, nextBtn);
+										String listingBefore = browserInteractions.listingSignature(driver, MOROCCAN_JOB_CARD.getCardSelector());
+										browserInteractions.safeClick(driver, nextBtn);
+										browserInteractions.awaitListingChange(driver, MOROCCAN_JOB_CARD.getCardSelector(), listingBefore);
 										maxNumberOfPagesClicked--;
-										if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+										if (crawlMode == CrawlMode.RECENT && maxNumberOfPagesClicked == 0) {
 											isFinalPageReached = true;
 										}
-										wait.until(ExpectedConditions.stalenessOf(jobs.getFirst()));
 									} else {
 										isFinalPageReached = true;
 									}
@@ -589,10 +622,13 @@ public class AltenJobCollector {
 						}
 					}
 
-					for (int id = 0; id < jobsLinks.size(); id++) {
-						driver.get(jobsLinks.get(id));
+					List<String> jobFields = predictTitle.predictFields(
+							IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+					detailPageFetcher.visitAll(driver,
+							IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (detailDriver, id) -> {
+						WebDriverWait detailWait = new TracedWebDriverWait(detailDriver, Duration.ofSeconds(5));
 						String innerHTML = "";
-						List<WebElement> jobPostMissions = wait.until(ExpectedConditions
+						List<WebElement> jobPostMissions = detailWait.until(ExpectedConditions
 								.presenceOfAllElementsLocatedBy(By.cssSelector(".mb-5.wp-block-jobboard-offer-meta")));
 						for (WebElement element : jobPostMissions) {
 							innerHTML = innerHTML + element.getDomProperty("innerHTML")
@@ -600,7 +636,7 @@ public class AltenJobCollector {
 								.replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");;
 						}
 
-						String apply_link = driver
+						String apply_link = detailDriver
 								.findElement(By
 										.cssSelector(".mx-md-2.is-style-button-blue.wp-block-jobboard-offer-action a"))
 								.getDomAttribute("href");
@@ -611,23 +647,16 @@ public class AltenJobCollector {
 						jobOffer.setCity(id_jobInfo.get(id).get(1));
 						jobOffer.setCountry(id_jobInfo.get(id).get(2));
 						jobOffer.setUrl(apply_link);
+						jobOffer.setSourceUrl(jobsLinks.get(id));
 						jobOffer.setContractType(id_jobInfo.get(id).get(3));
 						jobOffer.setWorkMode(id_jobInfo.get(id).get(4));
 						jobOffer.setPublishDate(id_jobInfo.get(id).get(5));
 						jobOffer.setJobField(
-								predictTitle.predictField(id_jobInfo.get(id).getFirst()).replace(" / ", " - "));
+								jobFields.get(id).replace(" / ", " - "));
 						jobOffer.setPost(innerHTML);
 
-						if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(
-								id_jobInfo.get(id).getFirst(), "Alten", id_jobInfo.get(id).get(1),
-								id_jobInfo.get(id).get(2), apply_link)) {
-							try {
-								jobsOffersRepository.save(jobOffer);
-							} catch (DataIntegrityViolationException e) {
-								logger.info("Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
-							}
-						}
-					}
+						offersBatch.add(jobOffer);
+					});
 
 				} catch (Exception e) {
 					String message = (e.getMessage() != null) ? e.getMessage().split("\n")[0] : "No message";
@@ -641,26 +670,6 @@ public class AltenJobCollector {
 		}
 	}
 
-	/*
-	 * Sometimes the jobs section are not in the center of the page, this will
-	 * result a problem because the element is in the html page but not clickable,
-	 * to solve this we need to perform a scroll.
-	 */
-	public void safeClick(WebDriver driver, WebElement element) {
-		try {
-			((JavascriptExecutor) driver).executeScript("arguments[0].scrollIntoView({block: 'center'});", element);
-			Thread.sleep(500);
-			element.click();
-		} catch (ElementClickInterceptedException e) {
-			/*
-			 * If there is a problem in the scroll, we can't perform a click with Selenium
-			 * we click the element using javascript
-			 */
-			((JavascriptExecutor) driver).executeScript("arguments[0].click();", element);
-		} catch (Exception ex) {
-		}
-	}
-
 	public boolean dateCheckValabilityStatus(String date_to_check) {
 		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 		DateTimeFormatter formatter2 = DateTimeFormatter.ISO_LOCAL_DATE;
@@ -4,7 +4,6 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.net.URI;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -12,246 +11,233 @@ import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
-import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import org.openqa.selenium.By;
-import org.openqa.selenium.ElementClickInterceptedException;
-import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.edge.EdgeOptions;
-import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.websolutions.companies.collection.browser.BrowserInteractions;
+import com.websolutions.companies.collection.browser.DetailPageFetcher;
+import com.websolutions.companies.collection.browser.TracedWebDriverWait;
+import com.websolutions.companies.collection.browser.WebDriverPool;
 import com.websolutions.companies.collection.entites.JobsOffers;
-import com.websolutions.companies.collection.locations.DetectCities;
+import com.websolutions.companies.collection.ingestion.IngestionPipeline;
+import com.websolutions.companies.collection.ingestion.JobOffersBatch;
 import com.websolutions.companies.collection.modelAI.PredictTitle;
-import com.websolutions.companies.collection.repositories.JobsOffersRepository;
-import com.websolutions.companies.collection.utils.CountryNormalizer;
 
 @Service
-public class ApsideJobCollector {
+public class ApsideJobCollector implements JobCollector {
 	
-	private static final Logger logger = Logger.getLogger(ExpleoJobCollector.class.getName());
-    private final HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
-    private final HashMap<Integer, String> jobsLinks = new HashMap<>();
-    private final JobsOffersRepository jobsOffersRepository;
-    private EdgeOptions options;
+    private final IngestionPipeline ingestionPipeline;
+    private final WebDriverPool webDriverPool;
+    private final BrowserInteractions browserInteractions;
+    private final DetailPageFetcher detailPageFetcher;
     private String ApsideLink = "https://www.apside.com/fr/nos-offres-emploi/";
-    private int maxNumberOfPagesClicked = 3;
-    boolean isFinalPageReached = false;
-    private final DetectCities detectCities;
-    private CountryNormalizer countryNormalizer;
+    private static final String JOB_LIST_ITEM = "main.main section[class*='joboffergrid'] div.bp12-joboffergrid__posts div.card-list__item";
     private PredictTitle predictTitle;
 	
-	public ApsideJobCollector(JobsOffersRepository jobsOffersRepository, DetectCities detectCities, CountryNormalizer countryNormalizer, PredictTitle predictTitle) {
+	public ApsideJobCollector(IngestionPipeline ingestionPipeline, PredictTitle predictTitle, WebDriverPool webDriverPool,
+			DetailPageFetcher detailPageFetcher, BrowserInteractions browserInteractions) {
 		super();
-		this.jobsOffersRepository = jobsOffersRepository;
-		this.detectCities = detectCities;
-		this.countryNormalizer = countryNormalizer;
+		this.webDriverPool = webDriverPool;
+		this.browserInteractions = browserInteractions;
+		this.detailPageFetcher = detailPageFetcher;
+		this.ingestionPipeline = ingestionPipeline;
         this.predictTitle = predictTitle;
 	}
 	
+	@Override
+	public String getCompanyName() {
+		return "Apside";
+	}
+
+	@Override
+	public void collect(boolean isFullJobsCollection) throws Exception {
+		getFulljobs(isFullJobsCollection);
+	}
+
 	public void getFulljobs(boolean isFullJobsCollection) throws IOException, InterruptedException {
 		int jobIndex = 0;
 		
-		options = new EdgeOptions();
-        options.addArguments("--no-sandbox");
-        options.addArguments("--headless=new");
-		options.addArguments("--disable-dev-shm-usage");
-		options.addArguments("--lang=en-US");
-        options.addArguments("--disable-gpu");
-        options.addArguments("--disable-notifications");
-        options.addArguments("--window-size=1920,1080");
-		
-        WebDriver driver = new RemoteWebDriver(
-        		URI.create("http://selenium:4444").toURL(),
-        	    options
-        	);
-		WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(15));
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		int maxNumberOfPagesClicked = 3;
+		boolean isFinalPageReached = false;
 
-		driver.get(ApsideLink);
+		WebDriver driver = webDriverPool.borrow(getCompanyName());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
+			WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(15));
+
+			driver.get(ApsideLink);
 		
-		boolean popupAppearedAndClosed = false;
-		if (!popupAppearedAndClosed) {
-			/* Check if popup cookies is appearing */
-			try {
-				 WebElement closeBtn = wait.until(ExpectedConditions.presenceOfElementLocated(By.id("tarteaucitronPersonalize2")));
-				 safeClick(driver, closeBtn);
-			} catch (TimeoutException e) {
-				e.printStackTrace();
+			boolean popupAppearedAndClosed = false;
+			if (!popupAppearedAndClosed) {
+				/* Check if popup cookies is appearing */
+				try {
+					 WebElement closeBtn = wait.until(ExpectedConditions.presenceOfElementLocated(By.id("tarteaucitronPersonalize2")));
+					 browserInteractions.safeClick(driver, closeBtn);
+				} catch (TimeoutException e) {
+					e.printStackTrace();
+				}
+				popupAppearedAndClosed = true;
 			}
-			popupAppearedAndClosed = true;
-		}
 		
-		boolean isFirstPageReloaded = false;
-		if (!isFirstPageReloaded) {
-			try {
-				WebElement reloadFirstPage = wait.until(ExpectedConditions.elementToBeClickable(
-						By.cssSelector("span.facetwp-page.first-page.active"))
-					);
-				safeClick(driver, reloadFirstPage);
-			} catch (TimeoutException e) {
-				e.printStackTrace();
+			boolean isFirstPageReloaded = false;
+			if (!isFirstPageReloaded) {
+				try {
+					WebElement reloadFirstPage = wait.until(ExpectedConditions.elementToBeClickable(
+							By.cssSelector("span.facetwp-page.first-page.active"))
+						);
+					WebElement firstCard = wait.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector(JOB_LIST_ITEM)));
+					browserInteractions.safeClick(driver, reloadFirstPage);
+					/* The same cards come back, only their elements are replaced */
+					wait.until(ExpectedConditions.stalenessOf(firstCard));
+				} catch (TimeoutException e) {
+					e.printStackTrace();
+				}
+				isFirstPageReloaded = true;
 			}
-			isFirstPageReloaded = true;
-		}
 		
 		
 		
-		while (!isFinalPageReached) {
-			wait.until(ExpectedConditions.stalenessOf(driver.findElement(By.cssSelector("main.main section[class*='joboffergrid'] div.bp12-joboffergrid__posts div.card-list__item"))));
-			List<WebElement> jobs = wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(
-					By.cssSelector("main.main section[class*='joboffergrid'] div.bp12-joboffergrid__posts div.card-list__item"))
-				);
+			while (!isFinalPageReached) {
+				List<WebElement> jobs = wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(
+						By.cssSelector(JOB_LIST_ITEM))
+					);
 			
-			for(WebElement job : jobs) {
-				String job_title = job.findElement(
-						By.cssSelector("div.card-job-offer__content h3.card-job-offer__title"))
-						  .getText();
+				for(WebElement job : jobs) {
+					String job_title = job.findElement(
+							By.cssSelector("div.card-job-offer__content h3.card-job-offer__title"))
+							  .getText();
 				
-				List<WebElement> span_infos = job.findElements(By.cssSelector("div.card-job-offer__content div.card-job-offer__tags > span"));
+					List<WebElement> span_infos = job.findElements(By.cssSelector("div.card-job-offer__content div.card-job-offer__tags > span"));
 				
-				String publish_date = span_infos.getFirst().getText();
-				String contract_type= "Undefined";
-				String location = "Undefined";
-				for(int j=1; j<span_infos.size(); j++) {
-					String text = span_infos.get(j).getText().toUpperCase();
-					if(text.contains("TEMPS PLEIN") || 
-							text.contains("FULLTIME") || 
-							text.contains("CDI") || 
-							text.contains("PARTTIME") || 
-							text.contains("FREELANCE")) {
-						contract_type = text;
-					}else {
-						location = text;
+					String publish_date = span_infos.getFirst().getText();
+					String contract_type= "Undefined";
+					String location = "Undefined";
+					for(int j=1; j<span_infos.size(); j++) {
+						String text = span_infos.get(j).getText().toUpperCase();
+						if(text.contains("TEMPS PLEIN") || 
+								text.contains("FULLTIME") || 
+								text.contains("CDI") || 
+								text.contains("PARTTIME") || 
+								text.contains("FREELANCE")) {
+							contract_type = text;
+						}else {
+							location = text;
+						}
 					}
-				}
 				
-				String city = "Undefined";
-				String country = "Undefined";
-				if(!location.equals("Undefined")) {
-					city = location;
-					Optional<String> detectedCountry = detectCities.getCountryForCity(city);
-					if(detectedCountry.isPresent()) {
-						country = detectedCountry.get();
-						
-						String normalizedCountry = countryNormalizer.find(country.toLowerCase());
-						if(!normalizedCountry.equals("NOT FOUND")) {
-							country = normalizedCountry;
-						}
+					String city = "Undefined";
+					String country = "Undefined";
+					if(!location.equals("Undefined")) {
+						city = location;
 					}
-				}
 				
-				String job_link = job.findElement(By.tagName("a")).getDomAttribute("href");			
-				if(dateCheckValabilityStatus(publish_date)) {
-					List<String> infos = new ArrayList<>();
-					infos.add(job_title.strip());
-					infos.add(contract_type.strip());
-					infos.add(publish_date.strip());
-					infos.add(city);
-					infos.add(country);
+					String job_link = job.findElement(By.tagName("a")).getDomAttribute("href");			
+					if(dateCheckValabilityStatus(publish_date)) {
+						List<String> infos = new ArrayList<>();
+						infos.add(job_title.strip());
+						infos.add(contract_type.strip());
+						infos.add(publish_date.strip());
+						infos.add(city);
+						infos.add(country);
 		
-					id_jobInfo.put(jobIndex, infos);
-					jobsLinks.put(jobIndex, job_link);
-					jobIndex++;
-				}
+						id_jobInfo.put(jobIndex, infos);
+						jobsLinks.put(jobIndex, job_link);
+						jobIndex++;
+					}
 				
 					
 				
-			}
+				}
 		
-			try {
-				List<WebElement> btnList = driver.findElements(
-						By.cssSelector("div.facetwp-pager span")
-					); 
+				try {
+					List<WebElement> btnList = driver.findElements(
+							By.cssSelector("div.facetwp-pager span")
+						); 
 				
-				if (btnList.isEmpty()) {
-					isFinalPageReached = true;
-				}else {
-					btnList.removeLast();
-					btnList.removeFirst();
-					for (int i = 0; i < btnList.size(); i++) {
-						WebElement btn = btnList.get(i);
-						String cssClass = btn.getDomAttribute("class");
+					if (btnList.isEmpty()) {
+						isFinalPageReached = true;
+					}else {
+						btnList.removeLast();
+						btnList.removeFirst();
+						for (int i = 0; i < btnList.size(); i++) {
+							WebElement btn = btnList.get(i);
+							String cssClass = btn.getDomAttribute("class");
 
-						if (cssClass.contains("active")) {
-							if (i + 1 < btnList.size()) {
-								WebElement nextBtn = btnList.get(i + 1);
-								safeClick(driver, nextBtn);
-								maxNumberOfPagesClicked--;
-								if(isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+							if (cssClass.contains("active")) {
+								if (i + 1 < btnList.size()) {
+									WebElement nextBtn = btnList.get(i + 1);
+									String listingBefore = browserInteractions.listingSignature(driver, JOB_LIST_ITEM);
+									browserInteractions.safeClick(driver, nextBtn);
+									browserInteractions.awaitListingChange(driver, JOB_LIST_ITEM, listingBefore);
+									maxNumberOfPagesClicked--;
+									if(isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+										isFinalPageReached = true;
+									}
+								} else {
 									isFinalPageReached = true;
 								}
-							} else {
-								isFinalPageReached = true;
+								break;
 							}
-							break;
 						}
 					}
-				}
-	         } catch (Exception e) {
-	             isFinalPageReached = true;
-	         }
-		}
+		         } catch (Exception e) {
+		             isFinalPageReached = true;
+		         }
+			}
 		
 		
 		
-		for(int id=0; id<jobsLinks.size(); id++) {
-			try {
-				driver.get(jobsLinks.get(id));
+			List<String> jobFields = predictTitle.predictFields(
+					IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+			detailPageFetcher.visitAll(driver,
+					IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (detailDriver, id) -> {
+				WebDriverWait detailWait = new TracedWebDriverWait(detailDriver, Duration.ofSeconds(15));
+				try {
 				
-				String innerHTMLMissions = wait.until(ExpectedConditions.presenceOfElementLocated(
-						By.cssSelector("div[class*='jobmaindesc__text']")))
-						  .getDomProperty("innerHTML").replace("\n", "")
-						  .replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
+					String innerHTMLMissions = detailWait.until(ExpectedConditions.presenceOfElementLocated(
+							By.cssSelector("div[class*='jobmaindesc__text']")))
+							  .getDomProperty("innerHTML").replace("\n", "")
+							  .replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
 				
-				String innerHTMLQualifications = wait.until(ExpectedConditions.presenceOfElementLocated(
-						By.cssSelector("div[class*='jobrequirements__content']")))
-						  .getDomProperty("innerHTML").replace("\n", "")
-						  .replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
+					String innerHTMLQualifications = detailWait.until(ExpectedConditions.presenceOfElementLocated(
+							By.cssSelector("div[class*='jobrequirements__content']")))
+							  .getDomProperty("innerHTML").replace("\n", "")
+							  .replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
 				
-				String innerHTML = innerHTMLMissions + innerHTMLQualifications;				
+					String innerHTML = innerHTMLMissions + innerHTMLQualifications;				
 			
-				String apply_link = jobsLinks.get(id);
+					String apply_link = jobsLinks.get(id);
 					
-				JobsOffers jobOffer = new JobsOffers();
-                jobOffer.setTitle(id_jobInfo.get(id).getFirst());
-                jobOffer.setCompany("Apside");
-                jobOffer.setCity(id_jobInfo.get(id).get(3));
-                jobOffer.setCountry(id_jobInfo.get(id).get(4));
-                jobOffer.setUrl(apply_link);
-                jobOffer.setContractType(id_jobInfo.get(id).get(1));
-                jobOffer.setWorkMode("Undefined");
-                jobOffer.setPublishDate(id_jobInfo.get(id).get(2));
-                jobOffer.setJobField(predictTitle.predictField(id_jobInfo.get(id).getFirst()).replace(" / ", " - "));
-                jobOffer.setPost(innerHTML);
-                if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(
-                		id_jobInfo.get(id).getFirst(), 
-                		"Apside", 
-                		id_jobInfo.get(id).get(3), 
-                		id_jobInfo.get(id).get(4), 
-                		apply_link)){
-                	
-                	try {
-                		jobsOffersRepository.save(jobOffer);
-					} catch (DataIntegrityViolationException e) {
-						logger.info("Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
-					}
-                }
-			} catch (Exception e) {
-				System.out.println("⚠️ Unexpected error at job " + id + " (" + jobsLinks.get(id) + "): " + e.getMessage());
-		        continue;
-			}
+					JobsOffers jobOffer = new JobsOffers();
+	                jobOffer.setTitle(id_jobInfo.get(id).getFirst());
+	                jobOffer.setCompany("Apside");
+	                jobOffer.setCity(id_jobInfo.get(id).get(3));
+	                jobOffer.setCountry(id_jobInfo.get(id).get(4));
+	                jobOffer.setUrl(apply_link);
+	                jobOffer.setSourceUrl(jobsLinks.get(id));
+	                jobOffer.setContractType(id_jobInfo.get(id).get(1));
+	                jobOffer.setWorkMode("Undefined");
+	                jobOffer.setPublishDate(id_jobInfo.get(id).get(2));
+	                jobOffer.setJobField(jobFields.get(id).replace(" / ", " - "));
+	                jobOffer.setPost(innerHTML);
+	                offersBatch.add(jobOffer);
+				} catch (Exception e) {
+					System.out.println("⚠️ Unexpected error at job " + id + " (" + jobsLinks.get(id) + "): " + e.getMessage());
+				}
 			
-		}
+			});
 		
-		driver.quit();
+		} finally {
+			webDriverPool.release(driver);
+		}
 		File file = new File("Collector-checker.txt");
 		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
 		    if (file.length() > 0) {
@@ -279,16 +265,4 @@ public class ApsideJobCollector {
 			return false;
 		}
 	}
-	
-	public void safeClick(WebDriver driver, WebElement element) {
-		try {
-			((JavascriptExecutor) driver).executeScript("arguments[0].scrollIntoView({block: 'center'});", element);
-			Thread.sleep(500);
-			element.click();
-		} catch (ElementClickInterceptedException e) {
-			((JavascriptExecutor) driver).executeScript("arguments[0].click();", element);
-		} catch (Exception ex) {
-			 System.out.println("Error clicking element: " + ex.getMessage());
-		}
 	}
-}
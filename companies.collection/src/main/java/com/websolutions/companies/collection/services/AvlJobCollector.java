@@ -1,7 +1,6 @@
 package com.websolutions.companies.collection.services;
 
 import java.io.IOException;
-import java.net.URI;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -10,234 +9,306 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Optional;
-import java.util.logging.Logger;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
 import org.openqa.selenium.By;
-import org.openqa.selenium.ElementClickInterceptedException;
-import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.edge.EdgeOptions;
-import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.websolutions.companies.collection.browser.BrowserInteractions;
+import com.websolutions.companies.collection.browser.CardSpec;
+import com.websolutions.companies.collection.browser.DetailPageFetcher;
+import com.websolutions.companies.collection.browser.HtmlCardExtractor;
+import com.websolutions.companies.collection.browser.HttpPageFetcher;
+import com.websolutions.companies.collection.browser.TracedWebDriverWait;
+import com.websolutions.companies.collection.browser.WebDriverPool;
 import com.websolutions.companies.collection.entites.JobsOffers;
-import com.websolutions.companies.collection.locations.DetectCities;
+import com.websolutions.companies.collection.ingestion.IngestionPipeline;
+import com.websolutions.companies.collection.ingestion.JobOffersBatch;
 import com.websolutions.companies.collection.modelAI.PredictTitle;
-import com.websolutions.companies.collection.repositories.JobsOffersRepository;
-import com.websolutions.companies.collection.utils.CountryNormalizer;
 
 @Service
-public class AvlJobCollector {
+public class AvlJobCollector implements JobCollector {
 	
-	private static final Logger logger = Logger.getLogger(ExpleoJobCollector.class.getName());
-    private final HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
-    private final HashMap<Integer, String> jobsLinks = new HashMap<>();
-    private final JobsOffersRepository jobsOffersRepository;
-    private final DetectCities detectCities;
-    private WebDriver driver;
-    private EdgeOptions options;
-    private int maxNumberOfPagesClicked = 3;
-    private boolean isFinalPageReached = false;
+	private static final Pattern CITY_WITH_REGION = Pattern.compile("^(.+?),\\s*[A-Z]{2}$");
+    private final IngestionPipeline ingestionPipeline;
+    private final WebDriverPool webDriverPool;
+    private final HttpPageFetcher httpPageFetcher;
+    private final BrowserInteractions browserInteractions;
+    private final DetailPageFetcher detailPageFetcher;
     private String AvlLink = "https://jobs.avl.com/search/?createNewAlert=false&q=&locationsearch=";
-    private CountryNormalizer countryNormalizer;
+
+    /* The same selectors as the browser path, used when the site is crawled over plain HTTP */
+    private static final CardSpec JOB_ROW = CardSpec.of("#searchresults tr.data-row")
+    		.text("title", "td.colTitle span.jobTitle")
+    		.text("domain", "td.colShifttype span.jobShifttype")
+    		.text("location", "td.colLocation span.jobLocation")
+    		.text("date", "td.colDate span.jobDate")
+    		.attribute("link", "td.colTitle span.jobTitle a", "href");
+    private static final CardSpec JOB_DETAIL = CardSpec.of("body")
+    		.html("post", "span.jobdescription")
+    		.text("contractType", "div.jobColumnTwo div.joblayouttoken", 3, "div.row span:nth-child(2)")
+    		.attribute("applyLink", "div.jobTitle div.btn-social-apply .btn-primary", "href");
     private PredictTitle predictTitle;
     
-	public AvlJobCollector(JobsOffersRepository jobsOffersRepository, DetectCities detectCities, CountryNormalizer countryNormalizer, PredictTitle predictTitle) {
-        this.jobsOffersRepository = jobsOffersRepository;
-        this.detectCities = detectCities;
-        this.countryNormalizer = countryNormalizer;
+	public AvlJobCollector(IngestionPipeline ingestionPipeline, PredictTitle predictTitle, WebDriverPool webDriverPool,
+			DetailPageFetcher detailPageFetcher, BrowserInteractions browserInteractions,
+			HttpPageFetcher httpPageFetcher) {
+		this.webDriverPool = webDriverPool;
+		this.httpPageFetcher = httpPageFetcher;
+		this.browserInteractions = browserInteractions;
+		this.detailPageFetcher = detailPageFetcher;
+        this.ingestionPipeline = ingestionPipeline;
         this.predictTitle = predictTitle;
     }
 	
+	@Override
+	public String getCompanyName() {
+		return "AVL";
+	}
+
+	@Override
+	public void collect(boolean isFullJobsCollection) throws Exception {
+		getFulljobs(isFullJobsCollection);
+	}
+
 	public void getFulljobs(boolean isFullJobsCollection) throws IOException, InterruptedException {
+		if (httpPageFetcher.isHttpMode(getCompanyName())) {
+			getFulljobsOverHttp(isFullJobsCollection);
+			return;
+		}
+
 		int jobIndex = 0;
-		options = new EdgeOptions();
-        options.addArguments("--no-sandbox");
-        options.addArguments("--headless=new");
-		options.addArguments("--disable-dev-shm-usage");
-		options.addArguments("--lang=en-US");
-        options.addArguments("--disable-gpu");
-        options.addArguments("--disable-notifications");
-        options.addArguments("--window-size=1920,1080");
-		
-        driver = new RemoteWebDriver(
-        		URI.create("http://selenium:4444").toURL(),
-        	    options
-        	);
-		WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(5));
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		int maxNumberOfPagesClicked = 3;
+		boolean isFinalPageReached = false;
+
+		WebDriver driver = webDriverPool.borrow(getCompanyName());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
+			WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(5));
 
-		driver.get(AvlLink);
+			driver.get(AvlLink);
 		
-		boolean popupAppearedAndClosed = false;
-		if (!popupAppearedAndClosed) {
-			/* Check if popup cookies is appearing */
-			try {
-				WebElement popupAcceptBtn = wait
-						.until(ExpectedConditions.elementToBeClickable(By.id("cookie-accept")));
-				safeClick(driver, popupAcceptBtn);
-			} catch (TimeoutException e) {
-				// Popup didn't appear, continue
+			boolean popupAppearedAndClosed = false;
+			if (!popupAppearedAndClosed) {
+				/* Check if popup cookies is appearing */
+				try {
+					WebElement popupAcceptBtn = wait
+							.until(ExpectedConditions.elementToBeClickable(By.id("cookie-accept")));
+					browserInteractions.safeClick(driver, popupAcceptBtn);
+				} catch (TimeoutException e) {
+					// Popup didn't appear, continue
+				}
+				popupAppearedAndClosed = true;
 			}
-			popupAppearedAndClosed = true;
-		}
 		
-		while (!isFinalPageReached) {
-			List<WebElement> jobs = wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(
-					By.cssSelector("#searchresults tr.data-row"))
-				);
-			for(WebElement job : jobs) {
-				String job_title = job.findElement(By.cssSelector("td.colTitle span.jobTitle")).getText();
-				String job_domain = job.findElement(By.cssSelector("td.colShifttype span.jobShifttype")).getText();
-				String location = job.findElement(By.cssSelector("td.colLocation span.jobLocation")).getText();
-				String publish_date = job.findElement(By.cssSelector("td.colDate span.jobDate")).getText();	
-				String job_link = "https://jobs.avl.com/" + 
-						   job.findElement(By.cssSelector("td.colTitle span.jobTitle a"))
-						   .getDomAttribute("href");
-				
-				String city = "Undefined";
-				String country = "Undefined";
-				Pattern pattern = Pattern.compile("^(.+?),\\s*[A-Z]{2}$");
-				Matcher matcher = pattern.matcher(location);
-				if(matcher.find()) {
-					city = matcher.group(1).strip();
-					Optional<String> detectedCountry = detectCities.getCountryForCity(city);
-					if(detectedCountry.isPresent()) {
-						country = detectedCountry.get();
-						
-						String normalizedCountry = countryNormalizer.find(country.toLowerCase());
-						if(!normalizedCountry.equals("NOT FOUND")) {
-							country = normalizedCountry;
-						}
+			while (!isFinalPageReached) {
+				List<WebElement> jobs = wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(
+						By.cssSelector("#searchresults tr.data-row"))
+					);
+				for(WebElement job : jobs) {
+					String job_title = job.findElement(By.cssSelector("td.colTitle span.jobTitle")).getText();
+					String job_domain = job.findElement(By.cssSelector("td.colShifttype span.jobShifttype")).getText();
+					String location = job.findElement(By.cssSelector("td.colLocation span.jobLocation")).getText();
+					String publish_date = job.findElement(By.cssSelector("td.colDate span.jobDate")).getText();	
+					String job_link = "https://jobs.avl.com/" + 
+							   job.findElement(By.cssSelector("td.colTitle span.jobTitle a"))
+							   .getDomAttribute("href");
+
+					List<String> infos = jobInfo(job_title, job_domain, location, publish_date);
+					if (infos != null) {
+						id_jobInfo.put(jobIndex, infos);
+						jobsLinks.put(jobIndex, job_link);
+						jobIndex++;
 					}
 				}
-				
-				if(dateCheckValabilityStatus(date_formatter(publish_date))) {
-					List<String> infos = new ArrayList<>();
-					infos.add(job_title.strip() + " - " + job_domain.strip());
-					infos.add(city);
-					infos.add(country);
-					infos.add(date_formatter(publish_date));
-		
-					id_jobInfo.put(jobIndex, infos);
-					jobsLinks.put(jobIndex, job_link);
-					jobIndex++;
-				}
-			}
 			
-			try {
-				List<WebElement> btnList = driver.findElements(
-						By.cssSelector("div.pagination-well ul.pagination li")
-					);
+				try {
+					List<WebElement> btnList = driver.findElements(
+							By.cssSelector("div.pagination-well ul.pagination li")
+						);
 				
-				if (btnList.isEmpty()) {
-					isFinalPageReached = true;
-				} else {
-					btnList.remove(btnList.size()-1);
-					btnList.remove(0);
-					for (int i = 0; i < btnList.size(); i++) {
-						String cssClass = btnList.get(i).getDomAttribute("class");
+					if (btnList.isEmpty()) {
+						isFinalPageReached = true;
+					} else {
+						btnList.remove(btnList.size()-1);
+						btnList.remove(0);
+						for (int i = 0; i < btnList.size(); i++) {
+							String cssClass = btnList.get(i).getDomAttribute("class");
 						
-						if (cssClass.contains("active")) {
-							if (i + 1 < btnList.size()) {
-								WebElement nextBtn = btnList.get(i + 1).findElement(By.tagName("a"));
-								safeClick(driver, nextBtn);
-								maxNumberOfPagesClicked--;
-								if(isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+							if (cssClass.contains("active")) {
+								if (i + 1 < btnList.size()) {
+									WebElement nextBtn = btnList.get(i + 1).findElement(By.tagName("a"));
+									String listingBefore = browserInteractions.listingSignature(driver, JOB_ROW.getCardSelector());
+									browserInteractions.safeClick(driver, nextBtn);
+									browserInteractions.awaitListingChange(driver, JOB_ROW.getCardSelector(), listingBefore);
+									maxNumberOfPagesClicked--;
+									if(isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+										isFinalPageReached = true;
+									}
+								} else {
 									isFinalPageReached = true;
 								}
-
-			                    wait.until(ExpectedConditions.stalenessOf(jobs.getFirst()));
-							} else {
-								isFinalPageReached = true;
+								break;
 							}
-							break;
 						}
 					}
-				}
-	         } catch (Exception e) {
-	             isFinalPageReached = true;
-	         }
-		}
+		         } catch (Exception e) {
+		             isFinalPageReached = true;
+		         }
+			}
 		
 		
 		
-		for(int id=0; id<jobsLinks.size(); id++) {
-			try {
-				driver.get(jobsLinks.get(id));
-				String innerHTML = "";
-				WebElement innerHTMLContainer = wait.until(ExpectedConditions.presenceOfElementLocated(
-						By.cssSelector("span.jobdescription")
-					));
-				innerHTML = innerHTMLContainer.getDomProperty("innerHTML")
-						.replace("\n", "")
-						.replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
-				
-				List<WebElement> extraInfosContainer = driver.findElements(By.cssSelector("div.jobColumnTwo div.joblayouttoken"));
-				//String job_domain = extraInfosContainer.get(2).findElement(By.cssSelector("div.row span:nth-child(2)")).getText();
-				String contract_type = extraInfosContainer.get(3).findElement(By.cssSelector("div.row span:nth-child(2)")).getText();
-				if(contract_type.isBlank()) {
-					contract_type = "Undefined";
-				}
+			List<String> jobFields = predictTitle.predictFields(
+					IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+			detailPageFetcher.visitAll(driver,
+					IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (detailDriver, id) -> {
+				WebDriverWait detailWait = new TracedWebDriverWait(detailDriver, Duration.ofSeconds(5));
+				try {
+					String innerHTML = "";
+					WebElement innerHTMLContainer = detailWait.until(ExpectedConditions.presenceOfElementLocated(
+							By.cssSelector("span.jobdescription")
+						));
+					innerHTML = innerHTMLContainer.getDomProperty("innerHTML");
 				
-				String apply_link = "https://jobs.avl.com" + driver.findElement(
-						By.cssSelector("div.jobTitle div.btn-social-apply .btn-primary"))
-						.getDomAttribute("href");
+					List<WebElement> extraInfosContainer = detailDriver.findElements(By.cssSelector("div.jobColumnTwo div.joblayouttoken"));
+					//String job_domain = extraInfosContainer.get(2).findElement(By.cssSelector("div.row span:nth-child(2)")).getText();
+					String contract_type = extraInfosContainer.get(3).findElement(By.cssSelector("div.row span:nth-child(2)")).getText();
+					if(contract_type.isBlank()) {
+						contract_type = "Undefined";
+					}
 				
+					String apply_link = "https://jobs.avl.com" + detailDriver.findElement(
+							By.cssSelector("div.jobTitle div.btn-social-apply .btn-primary"))
+							.getDomAttribute("href");
 				
-				JobsOffers jobOffer = new JobsOffers();
-                jobOffer.setTitle(id_jobInfo.get(id).getFirst());
-                jobOffer.setCompany("AVL");
-                jobOffer.setCity(id_jobInfo.get(id).get(1));
-                jobOffer.setCountry(id_jobInfo.get(id).get(2));
-                jobOffer.setUrl(apply_link);
-                jobOffer.setContractType(contract_type);
-                jobOffer.setWorkMode("Undefined");
-                jobOffer.setPublishDate(id_jobInfo.get(id).get(3));
-                jobOffer.setJobField(predictTitle.predictField(id_jobInfo.get(id).getFirst()).replace(" / ", " - "));
-                jobOffer.setPost(innerHTML);
-                if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(
-                		id_jobInfo.get(id).getFirst(), 
-                		"AVL", 
-                		id_jobInfo.get(id).get(1),
-                		id_jobInfo.get(id).get(2),
-                		apply_link)){
-                	try {
-                		jobsOffersRepository.save(jobOffer);
-					} catch (DataIntegrityViolationException e) {
-						logger.info("Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
-					}
-                }
-			} catch (Exception e) {
-				System.out.println("⚠️ Unexpected error at job " + id + " (" + jobsLinks.get(id) + "): " + e.getMessage());
-		        continue;
-			}
+					saveJobOffer(offersBatch, jobsLinks.get(id), id_jobInfo.get(id), jobFields.get(id), contract_type,
+							apply_link, innerHTML);
+				} catch (Exception e) {
+					System.out.println("⚠️ Unexpected error at job " + id + " (" + jobsLinks.get(id) + "): " + e.getMessage());
+				}
 			
+			});
+		} finally {
+			webDriverPool.release(driver);
 		}
-		closeDriver();
 		
 	}
 	
-	
-	private void safeClick(WebDriver driver, WebElement element) {
-		try {
-			((JavascriptExecutor) driver).executeScript("arguments[0].scrollIntoView({block: 'center'});", element);
-			Thread.sleep(500);
-			element.click();
-		} catch (ElementClickInterceptedException e) {
-			((JavascriptExecutor) driver).executeScript("arguments[0].click();", element);
-		} catch (Exception ex) {
-			 System.out.println("Error clicking element: " + ex.getMessage());
+		
+	/*
+	 * Same crawl as getFulljobs, but every page is downloaded with HttpPageFetcher and read with jsoup.
+	 * The next page is the link of the pagination item that follows the active one.
+	 * */
+	private void getFulljobsOverHttp(boolean isFullJobsCollection) throws IOException, InterruptedException {
+		int jobIndex = 0;
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		int maxNumberOfPagesClicked = 3;
+
+		String pageLink = AvlLink;
+		while (pageLink != null) {
+			Document page = httpPageFetcher.fetch(pageLink);
+			for (Map<String, String> job : HtmlCardExtractor.extract(page, JOB_ROW)) {
+				List<String> infos = jobInfo(job.get("title"), job.get("domain"), job.get("location"), job.get("date"));
+				if (infos != null) {
+					id_jobInfo.put(jobIndex, infos);
+					jobsLinks.put(jobIndex, "https://jobs.avl.com/" + job.get("link"));
+					jobIndex++;
+				}
+			}
+
+			pageLink = nextPageLink(page);
+			maxNumberOfPagesClicked--;
+			if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+				pageLink = null;
+			}
+		}
+
+		List<String> jobFields = predictTitle.predictFields(
+				IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
+			httpPageFetcher.visitAll(IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (page, id) -> {
+				List<Map<String, String>> details = HtmlCardExtractor.extract(page, JOB_DETAIL);
+				if (details.isEmpty()) {
+					throw new IllegalStateException("job description not found");
+				}
+				Map<String, String> detail = details.getFirst();
+				String contract_type = detail.get("contractType").isBlank() ? "Undefined" : detail.get("contractType");
+				saveJobOffer(offersBatch, jobsLinks.get(id), id_jobInfo.get(id), jobFields.get(id), contract_type,
+						"https://jobs.avl.com" + detail.get("applyLink"), detail.get("post"));
+			});
 		}
 	}
-	
+
+	private String nextPageLink(Document page) {
+		Elements btnList = page.select("div.pagination-well ul.pagination li");
+		if (btnList.size() < 2) {
+			return null;
+		}
+		List<Element> pageBtns = btnList.subList(1, btnList.size() - 1);
+		for (int i = 0; i < pageBtns.size(); i++) {
+			if (pageBtns.get(i).className().contains("active")) {
+				Element nextBtn = i + 1 < pageBtns.size() ? pageBtns.get(i + 1).selectFirst("a") : null;
+				return nextBtn == null ? null : nextBtn.absUrl("href");
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Builds the listing infos of one job (title - domain, city, country, publish date),
+	 * or returns null when the offer is older than two months.
+	 * */
+	private List<String> jobInfo(String job_title, String job_domain, String location, String publish_date)
+			throws IOException, InterruptedException {
+		String city = "Undefined";
+		String country = "Undefined";
+		Matcher matcher = CITY_WITH_REGION.matcher(location);
+		if(matcher.find()) {
+			city = matcher.group(1).strip();
+		}
+
+		if(!dateCheckValabilityStatus(date_formatter(publish_date))) {
+			return null;
+		}
+		List<String> infos = new ArrayList<>();
+		infos.add(job_title.strip() + " - " + job_domain.strip());
+		infos.add(city);
+		infos.add(country);
+		infos.add(date_formatter(publish_date));
+		return infos;
+	}
+
+	private void saveJobOffer(JobOffersBatch offersBatch, String sourceUrl, List<String> jobInfo, String jobField,
+			String contract_type, String apply_link, String innerHTML) {
+		JobsOffers jobOffer = new JobsOffers();
+        jobOffer.setTitle(jobInfo.getFirst());
+        jobOffer.setCompany("AVL");
+        jobOffer.setCity(jobInfo.get(1));
+        jobOffer.setCountry(jobInfo.get(2));
+        jobOffer.setUrl(apply_link);
+        jobOffer.setSourceUrl(sourceUrl);
+        jobOffer.setContractType(contract_type);
+        jobOffer.setWorkMode("Undefined");
+        jobOffer.setPublishDate(jobInfo.get(3));
+        jobOffer.setJobField(jobField.replace(" / ", " - "));
+        jobOffer.setPost(innerHTML.replace("\n", "").replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>",""));
+        offersBatch.add(jobOffer);
+	}
+
 	private String date_formatter(String input_date) {
 		 DateTimeFormatter inputFormatter = DateTimeFormatter.ofPattern("MMM d, yyyy", Locale.ENGLISH);
 		 LocalDate date = LocalDate.parse(input_date.trim(), inputFormatter);
@@ -269,7 +340,4 @@ public class AvlJobCollector {
 		}
 	}
 	
-	private void closeDriver(){
-        driver.quit();
-    }
 }
@@ -1,197 +1,187 @@
 package com.websolutions.companies.collection.services;
 
-import java.net.URI;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
-import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import org.openqa.selenium.By;
-import org.openqa.selenium.ElementClickInterceptedException;
-import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.edge.EdgeOptions;
-import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.websolutions.companies.collection.browser.BrowserInteractions;
+import com.websolutions.companies.collection.browser.DetailPageFetcher;
+import com.websolutions.companies.collection.browser.TracedWebDriverWait;
+import com.websolutions.companies.collection.browser.WebDriverPool;
 import com.websolutions.companies.collection.entites.JobsOffers;
-import com.websolutions.companies.collection.locations.DetectCities;
+import com.websolutions.companies.collection.ingestion.IngestionPipeline;
+import com.websolutions.companies.collection.ingestion.JobOffersBatch;
+import com.websolutions.companies.collection.ingestion.KnownCardsStreak;
+import com.websolutions.companies.collection.ingestion.KnownOffersFilter;
 import com.websolutions.companies.collection.modelAI.PredictTitle;
-import com.websolutions.companies.collection.repositories.JobsOffersRepository;
-import com.websolutions.companies.collection.utils.CountryNormalizer;
 
 @Service
-public class CapgeminiEngineeringJobCollector {
-
-	private static final Logger logger = Logger.getLogger(ExpleoJobCollector.class.getName());
-	private final HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
-	private final HashMap<Integer, String> jobsLinks = new HashMap<>();
-	private final JobsOffersRepository jobsOffersRepository;
-	private EdgeOptions options;
+public class CapgeminiEngineeringJobCollector implements JobCollector {
+
+	private final IngestionPipeline ingestionPipeline;
+	private final WebDriverPool webDriverPool;
+	private final KnownOffersFilter knownOffersFilter;
+	private final DetailPageFetcher detailPageFetcher;
+	private final BrowserInteractions browserInteractions;
+	private static final String JOB_LIST_ITEM = "#job-list-section ul li a";
 	private String CapgeminiEngineeringLink = "https://www.capgemini.com/ma-en/job-search/?page=1&size=11&country_code=ma-en";
-	private int maxNumberOfPagesClicked = 3;
-	boolean isFinalPageReached = false;
-	private final DetectCities detectCities;
-	private CountryNormalizer countryNormalizer;
     private PredictTitle predictTitle;
 
-	public CapgeminiEngineeringJobCollector(JobsOffersRepository jobsOffersRepository, DetectCities detectCities, CountryNormalizer countryNormalizer, PredictTitle predictTitle) {
+	public CapgeminiEngineeringJobCollector(IngestionPipeline ingestionPipeline, PredictTitle predictTitle, WebDriverPool webDriverPool,
+			BrowserInteractions browserInteractions, KnownOffersFilter knownOffersFilter,
+			DetailPageFetcher detailPageFetcher) {
 		super();
-		this.jobsOffersRepository = jobsOffersRepository;
-		this.detectCities = detectCities;
-		this.countryNormalizer = countryNormalizer;
+		this.webDriverPool = webDriverPool;
+		this.knownOffersFilter = knownOffersFilter;
+		this.detailPageFetcher = detailPageFetcher;
+		this.browserInteractions = browserInteractions;
+		this.ingestionPipeline = ingestionPipeline;
         this.predictTitle = predictTitle;
 	}
 
-	public void getMoroccanJobs(boolean isFullJobsCollection) throws Exception {
-		int jobIndex = 0;
+	@Override
+	public String getCompanyName() {
+		return "Capgemini Engineering";
+	}
 
-		options = new EdgeOptions();
-		options.addArguments("--no-sandbox");
-		options.addArguments("--headless=new");
-		options.addArguments("--disable-dev-shm-usage");
-		options.addArguments("--lang=en-US");
-		options.addArguments("--disable-gpu");
-		options.addArguments("--disable-notifications");
-		options.addArguments("--window-size=1920,1080");
-
-		WebDriver driver = new RemoteWebDriver(URI.create("http://selenium:4444").toURL(), options);
-		WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(10));
-
-		driver.get(CapgeminiEngineeringLink);
-
-		boolean popupAppearedAndClosed = false;
-		if (!popupAppearedAndClosed) {
-			/* Check if popup cookies is appearing */
-			try {
-				WebElement popupAcceptBtn = wait
-						.until(ExpectedConditions.elementToBeClickable(By.id("truste-consent-button")));
-				safeClick(driver, popupAcceptBtn);
-			} catch (TimeoutException e) {
-				// Popup didn't appear, continue
-			}
-			popupAppearedAndClosed = true;
-		}
+	@Override
+	public void collect(boolean isFullJobsCollection) throws Exception {
+		collect(CrawlMode.of(isFullJobsCollection));
+	}
 
-		while (!isFinalPageReached) {
-			List<WebElement> jobs = wait.until(
-					ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector("#job-list-section ul li a")));
-
-			for (WebElement element : jobs) {
-				String job_title = element.findElement(By.cssSelector("div[class*='title']")).getText();
-				String location = element.findElement(By.cssSelector("div[class*='location']")).getText();
-				String contract_type = element.findElement(By.cssSelector("ul li[class*='contract-type']")).getText();
-				String job_link = element.getDomAttribute("href");
-
-				String city = "Undefined";
-				String country = "Undefined";
-				city = location.strip().replace("\n", ", ");
-				Optional<String> detectedCountry = detectCities.getCountryForCity(city);
-				if(detectedCountry.isPresent()) {
-					country = detectedCountry.get();
-					
-					String normalizedCountry = countryNormalizer.find(country.toLowerCase());
-					if(!normalizedCountry.equals("NOT FOUND")) {
-						country = normalizedCountry;
-					}
+	@Override
+	public void collect(CrawlMode crawlMode) throws Exception {
+		getMoroccanJobs(crawlMode);
+	}
+
+	public void getMoroccanJobs(CrawlMode crawlMode) throws Exception {
+		int jobIndex = 0;
+
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		int maxNumberOfPagesClicked = 3;
+		boolean isFinalPageReached = false;
+
+		WebDriver driver = webDriverPool.borrow(getCompanyName());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
+			WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(10));
+
+			driver.get(CapgeminiEngineeringLink);
+
+			boolean popupAppearedAndClosed = false;
+			if (!popupAppearedAndClosed) {
+				/* Check if popup cookies is appearing */
+				try {
+					WebElement popupAcceptBtn = wait
+							.until(ExpectedConditions.elementToBeClickable(By.id("truste-consent-button")));
+					browserInteractions.safeClick(driver, popupAcceptBtn);
+				} catch (TimeoutException e) {
+					// Popup didn't appear, continue
 				}
-				
-				List<String> infos = new ArrayList<>();
-				infos.add(job_title.strip());
-				infos.add(city);
-				infos.add(country);
-				infos.add(contract_type.strip());
-				infos.add("Undefined");
-				infos.add("Undefined");
-
-				id_jobInfo.put(jobIndex, infos);
-				jobsLinks.put(jobIndex, job_link);
-				jobIndex++;
+				popupAppearedAndClosed = true;
 			}
 
-			try {
-				WebElement nextButton = wait.until(ExpectedConditions.elementToBeClickable(By.cssSelector(
-						"button.Pagination-module__next___sD4Yg.Pagination-module__arrow-button___I3AgN")));
+			KnownCardsStreak knownCards = knownOffersFilter.startStreak(crawlMode == CrawlMode.INCREMENTAL);
+			while (!isFinalPageReached) {
+				List<WebElement> jobs = wait.until(
+						ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector(JOB_LIST_ITEM)));
 
-				/*
-				 * Here we check if next button is invisible, if yes then we reached the final
-				 * page.
-				 */
-				String disabled = nextButton.getDomAttribute("disabled");
-				if (disabled != null) {
-					isFinalPageReached = true;
+				for (WebElement element : jobs) {
+					String job_title = element.findElement(By.cssSelector("div[class*='title']")).getText();
+					String location = element.findElement(By.cssSelector("div[class*='location']")).getText();
+					String contract_type = element.findElement(By.cssSelector("ul li[class*='contract-type']")).getText();
+					String job_link = element.getDomAttribute("href");
+
+					String city = "Undefined";
+					String country = "Undefined";
+					city = location.strip().replace("\n", ", ");
+				
+					List<String> infos = new ArrayList<>();
+					infos.add(job_title.strip());
+					infos.add(city);
+					infos.add(country);
+					infos.add(contract_type.strip());
+					infos.add("Undefined");
+					infos.add("Undefined");
+
+					id_jobInfo.put(jobIndex, infos);
+					jobsLinks.put(jobIndex, "https://www.capgemini.com" + job_link);
+					jobIndex++;
+				}
+
+				/* Incremental crawl : the listing is sorted by date, after a run of known cards everything is older */
+				if (knownCards.reachedWith(jobsLinks)) {
 					break;
 				}
-				safeClick(driver, nextButton);
-				maxNumberOfPagesClicked--;
-				if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+
+				try {
+					WebElement nextButton = wait.until(ExpectedConditions.elementToBeClickable(By.cssSelector(
+							"button.Pagination-module__next___sD4Yg.Pagination-module__arrow-button___I3AgN")));
+
+					/*
+					 * Here we check if next button is invisible, if yes then we reached the final
+					 * page.
+					 */
+					String disabled = nextButton.getDomAttribute("disabled");
+					if (disabled != null) {
+						isFinalPageReached = true;
+						break;
+					}
+					String listingBefore = browserInteractions.listingSignature(driver, JOB_LIST_ITEM);
+					browserInteractions.safeClick(driver, nextButton);
+					browserInteractions.awaitListingChange(driver, JOB_LIST_ITEM, listingBefore);
+					maxNumberOfPagesClicked--;
+					if (crawlMode == CrawlMode.RECENT && maxNumberOfPagesClicked == 0) {
+						isFinalPageReached = true;
+					}
+				} catch (Exception e) {
 					isFinalPageReached = true;
 				}
-
-				wait.until(ExpectedConditions.stalenessOf(jobs.getFirst()));
-			} catch (Exception e) {
-				isFinalPageReached = true;
 			}
-		}
-
-		for (int id = 0; id < jobsLinks.size(); id++) {
-			driver.get("https://www.capgemini.com" + jobsLinks.get(id));
-			String innerHTML = "";
-			innerHTML = wait
-					.until(ExpectedConditions.presenceOfElementLocated(
-							By.cssSelector("#detail-container div[class*='SingleJobDescription']")))
-					.getDomProperty("innerHTML")
-					.replace("\n", "")
-					.replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
 
-			String apply_link = driver.findElement(By.cssSelector("#sticky-header a[class*='Header-module__apply']"))
-					.getDomAttribute("href");
+			List<String> jobFields = predictTitle.predictFields(
+					IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+			detailPageFetcher.visitAll(driver,
+					IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (detailDriver, id) -> {
+				WebDriverWait detailWait = new TracedWebDriverWait(detailDriver, Duration.ofSeconds(10));
+				String innerHTML = "";
+				innerHTML = detailWait
+						.until(ExpectedConditions.presenceOfElementLocated(
+								By.cssSelector("#detail-container div[class*='SingleJobDescription']")))
+						.getDomProperty("innerHTML")
+						.replace("\n", "")
+						.replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
+
+				String apply_link = detailDriver.findElement(By.cssSelector("#sticky-header a[class*='Header-module__apply']"))
+						.getDomAttribute("href");
 
 			
-			JobsOffers jobOffer = new JobsOffers();
-            jobOffer.setTitle(id_jobInfo.get(id).getFirst());
-            jobOffer.setCompany("Capgemini Engineering");
-            jobOffer.setCity(id_jobInfo.get(id).get(1));
-            jobOffer.setCountry(id_jobInfo.get(id).get(2));
-            jobOffer.setUrl(apply_link);
-            jobOffer.setContractType(id_jobInfo.get(id).get(3));
-            jobOffer.setWorkMode("Undefined");
-            jobOffer.setPublishDate("Undefined");
-            jobOffer.setJobField(predictTitle.predictField(id_jobInfo.get(id).getFirst()).replace(" / ", " - "));
-            jobOffer.setPost(innerHTML);
-            if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(
-            		id_jobInfo.get(id).getFirst(), 
-            		"Capgemini Engineering", 
-            		id_jobInfo.get(id).get(1),
-            		id_jobInfo.get(id).get(2),
-            		apply_link)){
-            	
-            	try {
-            		jobsOffersRepository.save(jobOffer);
-				} catch (DataIntegrityViolationException e) {
-					logger.info("Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
-				}
-            }
-		}
-		driver.quit();
-	}
-
-	public void safeClick(WebDriver driver, WebElement element) {
-		try {
-			((JavascriptExecutor) driver).executeScript("arguments[0].scrollIntoView({block: 'center'});", element);
-			Thread.sleep(500);
-			element.click();
-		} catch (ElementClickInterceptedException e) {
-			((JavascriptExecutor) driver).executeScript("arguments[0].click();", element);
-		} catch (Exception ex) {
-			System.out.println("Error clicking element: " + ex.getMessage());
+				JobsOffers jobOffer = new JobsOffers();
+	            jobOffer.setTitle(id_jobInfo.get(id).getFirst());
+	            jobOffer.setCompany("Capgemini Engineering");
+	            jobOffer.setCity(id_jobInfo.get(id).get(1));
+	            jobOffer.setCountry(id_jobInfo.get(id).get(2));
+	            jobOffer.setUrl(apply_link);
+	            jobOffer.setSourceUrl(jobsLinks.get(id));
+	            jobOffer.setContractType(id_jobInfo.get(id).get(3));
+	            jobOffer.setWorkMode("Undefined");
+	            jobOffer.setPublishDate("Undefined");
+	            jobOffer.setJobField(jobFields.get(id).replace(" / ", " - "));
+	            jobOffer.setPost(innerHTML);
+	            offersBatch.add(jobOffer);
+			});
+		} finally {
+			webDriverPool.release(driver);
 		}
 	}
 }
@@ -0,0 +1,19 @@
+package com.websolutions.companies.collection.services;
+
+/*
+ * How much of a career site a collector walks through.
+ * - RECENT : only the first pages of the listing, the quick daily run (isFullJobsCollection = false).
+ * - FULL : every page of the listing (isFullJobsCollection = true).
+ * - INCREMENTAL : every page until a run of cards already stored is found. On the sites listing their offers
+ *   newest first (Alten, Capgemini Engineering, Scalian, Expleo), everything after that run was collected by a
+ *   previous crawl. The other collectors run it as FULL, their known cards being skipped before the detail page
+ *   anyway (the Capgemini job search has no pages to stop : the whole list comes in one page load).
+ * */
+public enum CrawlMode {
+
+	RECENT, FULL, INCREMENTAL;
+
+	public static CrawlMode of(boolean isFullJobsCollection) {
+		return isFullJobsCollection ? FULL : RECENT;
+	}
+}
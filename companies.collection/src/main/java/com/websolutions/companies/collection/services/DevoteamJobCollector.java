@@ -1,215 +1,286 @@
 package com.websolutions.companies.collection.services;
 
-import java.net.MalformedURLException;
-import java.net.URI;
+import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.logging.Logger;
+import java.util.Map;
+import java.util.stream.IntStream;
 
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 import org.openqa.selenium.By;
-import org.openqa.selenium.ElementClickInterceptedException;
-import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.edge.EdgeOptions;
-import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.websolutions.companies.collection.browser.BrowserInteractions;
+import com.websolutions.companies.collection.browser.CardExtractor;
+import com.websolutions.companies.collection.browser.CardSpec;
+import com.websolutions.companies.collection.browser.DetailPageFetcher;
+import com.websolutions.companies.collection.browser.HtmlCardExtractor;
+import com.websolutions.companies.collection.browser.HttpPageFetcher;
+import com.websolutions.companies.collection.browser.TracedWebDriverWait;
+import com.websolutions.companies.collection.browser.WebDriverPool;
 import com.websolutions.companies.collection.entites.JobsOffers;
+import com.websolutions.companies.collection.ingestion.IngestionPipeline;
+import com.websolutions.companies.collection.ingestion.JobOffersBatch;
 import com.websolutions.companies.collection.modelAI.PredictTitle;
-import com.websolutions.companies.collection.repositories.JobsOffersRepository;
 import com.websolutions.companies.collection.utils.CountryNormalizer;
 
 @Service
-public class DevoteamJobCollector {
-	private static final Logger logger = Logger.getLogger(ExpleoJobCollector.class.getName());
-	private final HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
-	private final HashMap<Integer, String> jobsLinks = new HashMap<>();
-	private final JobsOffersRepository jobsOffersRepository;
-	private WebDriver driver;
-	private EdgeOptions options;
+public class DevoteamJobCollector implements JobCollector {
+	private final IngestionPipeline ingestionPipeline;
+	private final WebDriverPool webDriverPool;
+	private final DetailPageFetcher detailPageFetcher;
+	private final HttpPageFetcher httpPageFetcher;
+	private final BrowserInteractions browserInteractions;
 	private String DevoteamLink = "https://www.devoteam.com/fr/jobs/";
-	private int maxNumberOfPagesClicked = 1;
-	boolean isFinalPageReached = false;
+
+	/* The job cards, read in the browser (CardExtractor) or from the downloaded page when crawled over plain HTTP */
+	private static final CardSpec JOB_CARD = CardSpec.of("div.jobs-list div.container")
+			.text("titleContract", "div.wrapper a h2.title")
+			.attribute("link", "div.wrapper a", "href");
 	private CountryNormalizer countryNormalizer;
 	private PredictTitle predictTitle;
 
-	public DevoteamJobCollector(JobsOffersRepository jobsOffersRepository, CountryNormalizer countryNormalizer,
-			PredictTitle predictTitle) {
+	public DevoteamJobCollector(IngestionPipeline ingestionPipeline, CountryNormalizer countryNormalizer,
+			PredictTitle predictTitle, WebDriverPool webDriverPool, BrowserInteractions browserInteractions,
+			HttpPageFetcher httpPageFetcher, DetailPageFetcher detailPageFetcher) {
 		super();
-		this.jobsOffersRepository = jobsOffersRepository;
+		this.webDriverPool = webDriverPool;
+		this.detailPageFetcher = detailPageFetcher;
+		this.httpPageFetcher = httpPageFetcher;
+		this.browserInteractions = browserInteractions;
+		this.ingestionPipeline = ingestionPipeline;
 		this.countryNormalizer = countryNormalizer;
 		this.predictTitle = predictTitle;
 	}
 
-	public void getFulljobs(boolean isFullJobsCollection) throws MalformedURLException {
-		int jobIndex = 0;
-
-		options = new EdgeOptions();
-		options.addArguments("--no-sandbox");
-		options.addArguments("--headless=new");
-		options.addArguments("--disable-dev-shm-usage");
-		options.addArguments("--lang=en-US");
-		options.addArguments("--disable-gpu");
-		options.addArguments("--disable-notifications");
-		options.addArguments("--window-size=1920,1080");
-
-		driver = new RemoteWebDriver(URI.create("http://selenium:4444").toURL(), options);
+	@Override
+	public String getCompanyName() {
+		return "Devoteam";
+	}
 
-		WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(15));
+	@Override
+	public void collect(boolean isFullJobsCollection) throws Exception {
+		getFulljobs(isFullJobsCollection);
+	}
 
-		driver.get(DevoteamLink);
+	public void getFulljobs(boolean isFullJobsCollection) throws IOException, InterruptedException {
+		if (httpPageFetcher.isHttpMode(getCompanyName())) {
+			getFulljobsOverHttp(isFullJobsCollection);
+			return;
+		}
 
-		boolean popupAppearedAndClosed = false;
-		if (!popupAppearedAndClosed) {
-			try {
-				WebElement acceptBtn = wait
-						.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector("button.button-accept-all")));
+		int jobIndex = 0;
 
-				safeClick(driver, acceptBtn);
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		int maxNumberOfPagesClicked = 1;
+		boolean isFinalPageReached = false;
 
-			} catch (TimeoutException e) {
-				e.printStackTrace();
-			}
-			popupAppearedAndClosed = true;
-		}
+		WebDriver driver = webDriverPool.borrow(getCompanyName());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
 
-		while (!isFinalPageReached) {
-			try {
-				List<WebElement> jobs = wait.until(ExpectedConditions
-						.presenceOfAllElementsLocatedBy(By.cssSelector("div.jobs-list div.container")));
-				for (WebElement job : jobs) {
-
-					String job_title = "";
-					String contract_type = "";
-					String job_title_contract = job.findElement(By.cssSelector("div.wrapper a h2.title")).getText();
-					int lastComma = job_title_contract.lastIndexOf(",");
-					if (lastComma != -1) {
-						job_title = job_title_contract.substring(0, lastComma).trim();
-						contract_type = job_title_contract.substring(lastComma + 1).trim();
-					}
+			WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(15));
 
-					String job_link = job.findElement(By.cssSelector("div.wrapper a")).getDomAttribute("href");
+			driver.get(DevoteamLink);
 
-					List<String> infos = new ArrayList<>();
-					infos.add(job_title.strip());
-					infos.add(contract_type.strip());
+			boolean popupAppearedAndClosed = false;
+			if (!popupAppearedAndClosed) {
+				try {
+					WebElement acceptBtn = wait
+							.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector("button.button-accept-all")));
 
-					id_jobInfo.put(jobIndex, infos);
-					jobsLinks.put(jobIndex, job_link);
-					jobIndex++;
+					browserInteractions.safeClick(driver, acceptBtn);
 
+				} catch (TimeoutException e) {
+					e.printStackTrace();
 				}
+				popupAppearedAndClosed = true;
+			}
 
+			while (!isFinalPageReached) {
 				try {
+					wait.until(ExpectedConditions
+							.presenceOfAllElementsLocatedBy(By.cssSelector(JOB_CARD.getCardSelector())));
+					/* All the cards of the page are read in one browser call, see JOB_CARD */
+					for (Map<String, String> job : CardExtractor.extract(driver, JOB_CARD)) {
+						id_jobInfo.put(jobIndex, jobInfo(job.get("titleContract")));
+						jobsLinks.put(jobIndex, job.get("link"));
+						jobIndex++;
+					}
 
-					WebElement nextPageButton = driver.findElements(By.cssSelector("div.pagination-wrapper a"))
-							.getLast();
-					String className = nextPageButton.getDomAttribute("class");
-					if (className.contains("active")) {
-						safeClick(driver, nextPageButton);
-						maxNumberOfPagesClicked--;
-						if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
-							isFinalPageReached = true;
+					try {
 
+						WebElement nextPageButton = driver.findElements(By.cssSelector("div.pagination-wrapper a"))
+								.getLast();
+						String className = nextPageButton.getDomAttribute("class");
+						if (className.contains("active")) {
+							String listingBefore = browserInteractions.listingSignature(driver, JOB_CARD.getCardSelector());
+							browserInteractions.safeClick(driver, nextPageButton);
+							browserInteractions.awaitListingChange(driver, JOB_CARD.getCardSelector(), listingBefore);
+							maxNumberOfPagesClicked--;
+							if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+								isFinalPageReached = true;
+
+							}
+						} else {
+							isFinalPageReached = true;
 						}
-					} else {
+
+					} catch (Exception e) {
 						isFinalPageReached = true;
 					}
 
 				} catch (Exception e) {
-					isFinalPageReached = true;
+					e.printStackTrace();
+					WebElement closeAd = driver.findElement(By.id("interactive-close-button-container"));
+					browserInteractions.safeClick(driver, closeAd);
+					continue;
 				}
-
-			} catch (Exception e) {
-				e.printStackTrace();
-				WebElement closeAd = driver.findElement(By.id("interactive-close-button-container"));
-				safeClick(driver, closeAd);
-				continue;
 			}
-		}
 
-		for (int id = 0; id < jobsLinks.size(); id++) {
-			try {
-				driver.get(jobsLinks.get(id));
+			List<String> jobFields = predictTitle.predictFields(
+					IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+			detailPageFetcher.visitAll(driver,
+					IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (detailDriver, id) -> {
+				WebDriverWait detailWait = new TracedWebDriverWait(detailDriver, Duration.ofSeconds(15));
 
-				String location = wait.until(ExpectedConditions
+				String location = detailWait.until(ExpectedConditions
 						.presenceOfElementLocated(By.cssSelector("div.wp-block-acf-post-header div.wp-block-group p")))
 						.getText().strip();
 
-				String city = "Undefined";
-				String country = "Undefined";
-
-				String[] splitLocation = location.split("•");
-				if (splitLocation.length >= 2) {
-					city = splitLocation[0].strip();
-					country = splitLocation[1].strip();
-
-					String normalizedCountry = countryNormalizer.find(country.toLowerCase());
-					if (!normalizedCountry.equals("NOT FOUND")) {
-						country = normalizedCountry;
-					}
-				}
-				List<WebElement> innerHTMLPostElements = driver
+				List<WebElement> innerHTMLPostElements = detailDriver
 						.findElements(By.cssSelector("div.entry-content.wp-block-post-content div.description"));
 				String innerHTML = "";
 				for (WebElement element : innerHTMLPostElements) {
-					innerHTML = innerHTML + element.getDomProperty("innerHTML")
-						.replace("\n", "")
-						.replaceAll("<img[^>]*>", "")
-						.replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
+					innerHTML = innerHTML + element.getDomProperty("innerHTML");
 				}
 
-				String apply_link = driver
+				String apply_link = detailDriver
 						.findElements(By.cssSelector("div.entry-content.wp-block-post-content div.wp-block-buttons a"))
 						.getFirst().getDomAttribute("href");
 
-				JobsOffers jobOffer = new JobsOffers();
-				jobOffer.setTitle(id_jobInfo.get(id).getFirst());
-				jobOffer.setCompany("Devoteam");
-				jobOffer.setCity(city);
-				jobOffer.setCountry(country);
-				jobOffer.setUrl(apply_link);
-				jobOffer.setContractType(id_jobInfo.get(id).get(1));
-				jobOffer.setWorkMode("Undefined");
-				jobOffer.setPublishDate("Undefined");
-				jobOffer.setJobField(predictTitle.predictField(id_jobInfo.get(id).getFirst()).replace(" / ", " - "));
-				jobOffer.setPost(innerHTML);
-				if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(id_jobInfo.get(id).getFirst(),
-						"Devoteam", city, country, apply_link)) {
+				saveJobOffer(offersBatch, jobsLinks.get(id), id_jobInfo.get(id), jobFields.get(id), location,
+						apply_link, innerHTML);
+			});
+		} finally {
+			webDriverPool.release(driver);
+		}
 
-					try {
-						jobsOffersRepository.save(jobOffer);
-					} catch (DataIntegrityViolationException e) {
-						logger.info("Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
-					}
+	}
+
+	/*
+	 * Same crawl as getFulljobs, but every page is downloaded with HttpPageFetcher and read with jsoup.
+	 * There is no cookie banner or ad to close here, the HTML already contains the list.
+	 * */
+	private void getFulljobsOverHttp(boolean isFullJobsCollection) throws IOException, InterruptedException {
+		int jobIndex = 0;
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		int maxNumberOfPagesClicked = 1;
+
+		String pageLink = DevoteamLink;
+		while (pageLink != null) {
+			Document page = httpPageFetcher.fetch(pageLink);
+			for (Map<String, String> job : HtmlCardExtractor.extract(page, JOB_CARD)) {
+				id_jobInfo.put(jobIndex, jobInfo(job.get("titleContract")));
+				jobsLinks.put(jobIndex, job.get("link"));
+				jobIndex++;
+			}
+
+			/* The last pagination link is the "next" arrow, it only has the "active" class when there is a next page */
+			Element nextPageButton = page.select("div.pagination-wrapper a").last();
+			pageLink = null;
+			if (nextPageButton != null && nextPageButton.className().contains("active")) {
+				pageLink = nextPageButton.absUrl("href");
+				maxNumberOfPagesClicked--;
+				if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+					pageLink = null;
 				}
-			} catch (Exception e) {
-				System.out.println(
-						"⚠️ Unexpected error at job " + id + " (" + jobsLinks.get(id) + "): " + e.getMessage());
-				continue;
 			}
+		}
 
+		List<String> jobFields = predictTitle.predictFields(
+				IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
+			httpPageFetcher.visitAll(IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (page, id) -> {
+				Element locationElement = page.selectFirst("div.wp-block-acf-post-header div.wp-block-group p");
+				if (locationElement == null) {
+					throw new IllegalStateException("job location not found");
+				}
+
+				String innerHTML = "";
+				for (Element element : page.select("div.entry-content.wp-block-post-content div.description")) {
+					innerHTML = innerHTML + element.html();
+				}
+
+				Element applyButton = page.selectFirst("div.entry-content.wp-block-post-content div.wp-block-buttons a");
+				if (applyButton == null) {
+					throw new IllegalStateException("apply link not found");
+				}
+
+				saveJobOffer(offersBatch, jobsLinks.get(id), id_jobInfo.get(id), jobFields.get(id),
+						locationElement.text().strip(), applyButton.attr("href"), innerHTML);
+			});
 		}
-		driver.quit();
+	}
 
+	/*
+	 * The card title is "<job title>, <contract type>", the contract type is after the last comma.
+	 * */
+	private List<String> jobInfo(String job_title_contract) {
+		String job_title = "";
+		String contract_type = "";
+		int lastComma = job_title_contract.lastIndexOf(",");
+		if (lastComma != -1) {
+			job_title = job_title_contract.substring(0, lastComma).trim();
+			contract_type = job_title_contract.substring(lastComma + 1).trim();
+		}
+
+		List<String> infos = new ArrayList<>();
+		infos.add(job_title.strip());
+		infos.add(contract_type.strip());
+		return infos;
 	}
 
-	public void safeClick(WebDriver driver, WebElement element) {
-		try {
-			((JavascriptExecutor) driver).executeScript("arguments[0].scrollIntoView({block: 'center'});", element);
-			Thread.sleep(500);
-			element.click();
-		} catch (ElementClickInterceptedException e) {
-			((JavascriptExecutor) driver).executeScript("arguments[0].click();", element);
-		} catch (Exception ex) {
-			System.out.println("Error clicking element: " + ex.getMessage());
+	private void saveJobOffer(JobOffersBatch offersBatch, String sourceUrl, List<String> jobInfo, String jobField,
+			String location, String apply_link, String innerHTML) {
+		String city = "Undefined";
+		String country = "Undefined";
+
+		String[] splitLocation = location.split("•");
+		if (splitLocation.length >= 2) {
+			city = splitLocation[0].strip();
+			country = splitLocation[1].strip();
+
+			String normalizedCountry = countryNormalizer.find(country.toLowerCase());
+			if (!normalizedCountry.equals("NOT FOUND")) {
+				country = normalizedCountry;
+			}
 		}
+
+		JobsOffers jobOffer = new JobsOffers();
+		jobOffer.setTitle(jobInfo.getFirst());
+		jobOffer.setCompany("Devoteam");
+		jobOffer.setCity(city);
+		jobOffer.setCountry(country);
+		jobOffer.setUrl(apply_link);
+		jobOffer.setSourceUrl(sourceUrl);
+		jobOffer.setContractType(jobInfo.get(1));
+		jobOffer.setWorkMode("Undefined");
+		jobOffer.setPublishDate("Undefined");
+		jobOffer.setJobField(jobField.replace(" / ", " - "));
+		jobOffer.setPost(innerHTML
+				.replace("\n", "")
+				.replaceAll("<img[^>]*>", "")
+				.replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>",""));
+		offersBatch.add(jobOffer);
 	}
 }
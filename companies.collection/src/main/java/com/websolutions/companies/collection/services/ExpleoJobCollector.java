@@ -1,77 +1,111 @@
 package com.websolutions.companies.collection.services;
 
 import java.net.MalformedURLException;
-import java.net.URI;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
-import java.util.logging.Level;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
 import org.openqa.selenium.By;
-import org.openqa.selenium.ElementClickInterceptedException;
-import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.edge.EdgeOptions;
-import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.websolutions.companies.collection.browser.BrowserInteractions;
+import com.websolutions.companies.collection.browser.CardExtractor;
+import com.websolutions.companies.collection.browser.CardSpec;
+import com.websolutions.companies.collection.browser.DetailPageFetcher;
+import com.websolutions.companies.collection.browser.TracedWebDriverWait;
+import com.websolutions.companies.collection.browser.WebDriverPool;
+import com.websolutions.companies.collection.checkpoints.CrawlCheckpoint;
+import com.websolutions.companies.collection.checkpoints.CrawlCheckpointStore;
 import com.websolutions.companies.collection.entites.JobsOffers;
-import com.websolutions.companies.collection.locations.DetectCities;
+import com.websolutions.companies.collection.ingestion.IngestionPipeline;
+import com.websolutions.companies.collection.ingestion.JobOffersBatch;
+import com.websolutions.companies.collection.ingestion.KnownCardsStreak;
+import com.websolutions.companies.collection.ingestion.KnownOffersFilter;
 import com.websolutions.companies.collection.modelAI.PredictTitle;
-import com.websolutions.companies.collection.repositories.JobsOffersRepository;
-import com.websolutions.companies.collection.utils.CountryNormalizer;
 
 @Service
-public class ExpleoJobCollector {
+public class ExpleoJobCollector implements JobCollector {
 
 	private static final Logger logger = Logger.getLogger(ExpleoJobCollector.class.getName());
-	private final HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
-	private final HashMap<Integer, String> jobsLinks = new HashMap<>();
-	private final JobsOffersRepository jobsOffersRepository;
-	private boolean isFinalPageReached = false;
-	private int maxNumberOfPagesClicked = 1;
-	private EdgeOptions options;
-	private final DetectCities detectCities;
-	private CountryNormalizer countryNormalizer;
+	private final IngestionPipeline ingestionPipeline;
+	private final WebDriverPool webDriverPool;
+	private final CrawlCheckpointStore crawlCheckpointStore;
+	private final KnownOffersFilter knownOffersFilter;
+	private final DetailPageFetcher detailPageFetcher;
+	private final BrowserInteractions browserInteractions;
 	private PredictTitle predictTitle;
 
+	private static final String JOB_TABLE = "div.container-fluid.iCIMS_JobsTable";
+	/* The rows of the job table, inside the iCIMS iframe */
+	private static final CardSpec JOB_ROW = CardSpec.of(JOB_TABLE + " .row")
+			.text("title", "div.col-xs-12.title a.iCIMS_Anchor h3")
+			.attribute("link", "div.col-xs-12.title a.iCIMS_Anchor", "href")
+			.text("publishDate", "div.col-xs-6.header.right > span:nth-of-type(2)")
+			.optionalHtml("headerGroup", "div.col-xs-12.additionalFields dl.iCIMS_JobHeaderGroup");
 	private String ExpleoLink = "https://expleo-jobs-fr-fr.icims.com/jobs/search?ss=1";
 
-	public ExpleoJobCollector(JobsOffersRepository jobsOffersRepository, DetectCities detectCities,
-			CountryNormalizer countryNormalizer, PredictTitle predictTitle) {
-		this.jobsOffersRepository = jobsOffersRepository;
-		this.detectCities = detectCities;
-		this.countryNormalizer = countryNormalizer;
+	public ExpleoJobCollector(IngestionPipeline ingestionPipeline, PredictTitle predictTitle, WebDriverPool webDriverPool,
+			BrowserInteractions browserInteractions, KnownOffersFilter knownOffersFilter,
+			DetailPageFetcher detailPageFetcher, CrawlCheckpointStore crawlCheckpointStore) {
+		this.webDriverPool = webDriverPool;
+		this.crawlCheckpointStore = crawlCheckpointStore;
+		this.knownOffersFilter = knownOffersFilter;
+		this.detailPageFetcher = detailPageFetcher;
+		this.browserInteractions = browserInteractions;
+		this.ingestionPipeline = ingestionPipeline;
 		this.predictTitle = predictTitle;
 	}
 
-	public void getFullFranceJobs(boolean isFullJobsCollection) throws MalformedURLException {
-		options = new EdgeOptions();
-		options.addArguments("--no-sandbox");
-		options.addArguments("--headless=new");
-		options.addArguments("--disable-dev-shm-usage");
-		options.addArguments("--lang=en-US");
-		options.addArguments("--disable-gpu");
-		options.addArguments("--disable-notifications");
-		options.addArguments("--window-size=1920,1080");
-
-		WebDriver driver = new RemoteWebDriver(URI.create("http://selenium:4444").toURL(), options);
-		try {
+	@Override
+	public String getCompanyName() {
+		return "Expleo Group";
+	}
+
+	@Override
+	public void collect(boolean isFullJobsCollection) throws Exception {
+		collect(CrawlMode.of(isFullJobsCollection));
+	}
+
+	@Override
+	public void collect(CrawlMode crawlMode) throws Exception {
+		getFullFranceJobs(crawlMode);
+	}
+
+	public void getFullFranceJobs(CrawlMode crawlMode) throws MalformedURLException {
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		boolean isFinalPageReached = false;
+		int maxNumberOfPagesClicked = 1;
+
+		CrawlCheckpoint checkpoint = crawlCheckpointStore.resume(getName(), crawlMode);
+		WebDriver driver = webDriverPool.borrow(getCompanyName());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
+			offersBatch.onStored(checkpoint::stored);
 			driver.get(ExpleoLink);
 
-			WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(15));
+			WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(15));
 
-			int globalIndex = 0;
+			/*
+			 * A run that crashed left its cards in the checkpoint. If it had read the whole listing we go straight to
+			 * the detail pages, otherwise the pages it read are only clicked through, their rows are not read again.
+			 * */
+			isFinalPageReached = checkpoint.restoreListing(id_jobInfo, jobsLinks);
+			int pagesToSkip = checkpoint.pagesRead();
+			int globalIndex = jobsLinks.size();
 			int pageCount = 1;
 			boolean popupAppearedAndClosed = false;
 
@@ -80,15 +114,17 @@ public class ExpleoJobCollector {
 				try {
 					WebElement popupAcceptBtn = wait
 							.until(ExpectedConditions.elementToBeClickable(By.id("onetrust-accept-btn-handler")));
-					safeClick(driver, popupAcceptBtn);
+					browserInteractions.safeClick(driver, popupAcceptBtn);
 				} catch (TimeoutException e) {
 					/* Popup didn't appear, continue */
 				}
 				popupAppearedAndClosed = true;
 			}
 
+			KnownCardsStreak knownCards = knownOffersFilter.startStreak(crawlMode == CrawlMode.INCREMENTAL);
 			while (!isFinalPageReached) {
-				logger.info("Scraping page " + pageCount++);
+				int page = pageCount++;
+				logger.info((page <= pagesToSkip ? "Skipping page " : "Scraping page ") + page);
 
 				/*
 				 * Here we list all the iframes and we switch to the one with the name
@@ -103,57 +139,48 @@ public class ExpleoJobCollector {
 					}
 				}
 
-				WebElement jobTable;
-				jobTable = wait.until(ExpectedConditions
-						.visibilityOfElementLocated(By.cssSelector("div.container-fluid.iCIMS_JobsTable")));
-
-				List<WebElement> rows = jobTable.findElements(By.className("row"));
-				for (WebElement row : rows) {
-					WebElement link = row.findElement(By.cssSelector("div.col-xs-12.title a.iCIMS_Anchor"));
-					WebElement job = row.findElement(By.cssSelector("div.col-xs-12.title a.iCIMS_Anchor h3"));
+				wait.until(ExpectedConditions
+						.visibilityOfElementLocated(By.cssSelector(JOB_TABLE)));
 
-					String jobLink = link.getDomAttribute("href");
-					String jobTitle = job.getText();
+				/* All the rows of the page are read in one browser call, see JOB_ROW */
+				List<Map<String, String>> rowsToRead = page <= pagesToSkip ? List.of()
+						: CardExtractor.extract(driver, JOB_ROW);
+				for (Map<String, String> row : rowsToRead) {
+					String jobLink = row.get("link");
+					String jobTitle = row.get("title");
 
 					/* Here we extract the date of the job publication */
-					WebElement date_element = row
-							.findElement(By.cssSelector("div.col-xs-6.header.right > span:nth-of-type(2)"));
-					String publishDate = date_element.getText().replaceAll("\\(.*\\)", "").replaceAll("\\n", "");
+					String publishDate = row.get("publishDate").replaceAll("\\(.*\\)", "").replaceAll("\\n", "");
 
 					/*
-					 * Each job bloc contains a DIV which has infos such "Location", "work mode",
-					 * "contract type" We get that block which we named as "InfosDivs", after this,
-					 * we iterate over its DIVs. Each DIV has two child tags <dt> and <dd>.
+					 * Each job bloc contains a DL which has infos such "Location", "work mode",
+					 * "contract type" in DIVs, each DIV has two child tags <dt> and <dd>. Their order changes
+					 * from a job to another, so the DL is read as HTML and its DIVs are matched on the <dt> name.
 					 */
-					List<WebElement> InfosDivs = row
-							.findElements(By.cssSelector("div.col-xs-12.additionalFields dl.iCIMS_JobHeaderGroup div"));
 					String city = "Undefined";
 					String country = "Undefined";
 					String contractType = "";
 					String workMode = "";
 
 					Pattern pattern = Pattern.compile("^[A-Z]{2}-\\d{2}-(.+)$");
-					for (WebElement element : InfosDivs) {
-						WebElement dt_element = element.findElement(By.tagName("dt"));
-						WebElement dd_element = element.findElement(By.tagName("dd"));
+					String headerGroup = row.get("headerGroup");
+					Elements infosDivs = headerGroup == null ? new Elements()
+							: Jsoup.parseBodyFragment(headerGroup).select("div");
+					for (Element element : infosDivs) {
+						Element dt_element = element.selectFirst("dt");
+						Element dd_element = element.selectFirst("dd");
+						if (dt_element == null || dd_element == null) {
+							continue;
+						}
 
-						String name = dt_element.getText();
-						String value = dd_element.getText();
+						String name = dt_element.text();
+						String value = dd_element.text();
 
 						switch (name.toLowerCase().stripLeading().stripTrailing()) {
 						case "job locations":
 							Matcher matcher = pattern.matcher(value);
 							if (matcher.find()) {
 								city = matcher.group(1).strip();
-								Optional<String> detectedCountry = detectCities.getCountryForCity(city);
-								if (detectedCountry.isPresent()) {
-									country = detectedCountry.get();
-
-									String normalizedCountry = countryNormalizer.find(country.toLowerCase());
-									if (!normalizedCountry.equals("NOT FOUND")) {
-										country = normalizedCountry;
-									}
-								}
 							}
 							break;
 						case "type d’emploi":
@@ -180,6 +207,14 @@ public class ExpleoJobCollector {
 					globalIndex++;
 
 				}
+				if (page > pagesToSkip) {
+					checkpoint.pageRead(page, id_jobInfo, jobsLinks);
+				}
+
+				/* Incremental crawl : the listing is sorted by date, after a run of known cards everything is older */
+				if (knownCards.reachedWith(jobsLinks)) {
+					break;
+				}
 
 				/*
 				 * Here in this section, we will try to find and click the nextPage button.
@@ -200,114 +235,85 @@ public class ExpleoJobCollector {
 						isFinalPageReached = true;
 						break;
 					}
-					WebElement firstRow = rows.getFirst();
-					safeClick(driver, nextButton);
+					String listingBefore = browserInteractions.listingSignature(driver, JOB_ROW.getCardSelector());
+					browserInteractions.safeClick(driver, nextButton);
+					browserInteractions.awaitListingChange(driver, JOB_ROW.getCardSelector(), listingBefore);
 					maxNumberOfPagesClicked--;
-					if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+					if (crawlMode == CrawlMode.RECENT && maxNumberOfPagesClicked == 0) {
 						isFinalPageReached = true;
 					}
-
-					wait.until(ExpectedConditions.stalenessOf(firstRow));
 				} catch (Exception e) {
 					logger.info("No more pages available");
 					isFinalPageReached = true;
 				}
 			}
 
-			for (int i = 0; i < jobsLinks.size(); i++) {
-				driver.get(jobsLinks.get(i));
-				try {
-					wait = new WebDriverWait(driver, Duration.ofSeconds(15));
-					WebElement iframe = driver.findElement(By.id("icims_content_iframe"));
-					driver.switchTo().frame(iframe);
-
-					try {
-						List<WebElement> headers = wait.until(ExpectedConditions.visibilityOfAllElementsLocatedBy(
-								By.cssSelector("h2.iCIMS_InfoMsg.iCIMS_InfoField_Job")));
-
-						List<WebElement> contents = wait.until(ExpectedConditions.visibilityOfAllElementsLocatedBy(
-								By.cssSelector("div.iCIMS_InfoMsg.iCIMS_InfoMsg_Job")));
-
-						String innerHTML = "";
-						if (headers.size() >= 3 && contents.size() >= 3) {
-							if (!contents.getLast().getText().replace(" ", "").isEmpty()) {
-								innerHTML = headers.get(1).getDomProperty("outerHTML")
-										+ contents.get(1).getDomProperty("outerHTML")
-										+ headers.get(2).getDomProperty("outerHTML")
-										+ contents.get(2).getDomProperty("outerHTML");
-							} else {
-								innerHTML = headers.getFirst().getDomProperty("outerHTML")
-										+ contents.getFirst().getDomProperty("outerHTML");
-							}
-
-						} else if (headers.size() == 1 && contents.size() == 1) {
-							innerHTML = headers.getFirst().getDomProperty("outerHTML")
-									+ contents.getFirst().getDomProperty("outerHTML");
-						}
-						innerHTML = innerHTML.replace("\n", "").replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
-
-						WebElement applyButton = driver.findElements(By.cssSelector("a.iCIMS_ApplyOnlineButton"))
-								.getFirst();
-						String applyLink = applyButton.getDomAttribute("href");
-
-						JobsOffers jobOffer = new JobsOffers();
-						jobOffer.setTitle(id_jobInfo.get(i).getFirst());
-						jobOffer.setCompany("Expleo Group");
-						jobOffer.setCity(id_jobInfo.get(i).get(1));
-						jobOffer.setCountry(id_jobInfo.get(i).get(2));
-						jobOffer.setUrl(applyLink);
-						jobOffer.setContractType(id_jobInfo.get(i).get(3));
-						jobOffer.setWorkMode(id_jobInfo.get(i).get(4));
-						jobOffer.setPublishDate(id_jobInfo.get(i).get(5));
-						jobOffer.setJobField(
-								predictTitle.predictField(id_jobInfo.get(i).getFirst()).replace(" / ", " - "));
-						jobOffer.setPost(innerHTML);
-						if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(
-								id_jobInfo.get(i).getFirst(), "Expleo Group", id_jobInfo.get(i).get(1),
-								id_jobInfo.get(i).get(2), applyLink)) {
-
-							try {
-								jobsOffersRepository.save(jobOffer);
-							} catch (DataIntegrityViolationException e) {
-								logger.info("Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
-							}
-						}
-
-					} catch (Exception e) {
-						logger.log(Level.WARNING, "Error processing job row " + i, e);
+			checkpoint.listingRead(id_jobInfo, jobsLinks);
+
+			List<String> jobFields = predictTitle.predictFields(
+					IntStream.range(0, id_jobInfo.size()).mapToObj(i -> id_jobInfo.get(i).getFirst()).toList());
+			/* The offers stored before the crash are not visited again, the visitor maps its index back to the card id */
+			List<Integer> pendingIds = IntStream.range(0, jobsLinks.size())
+					.filter(i -> !checkpoint.isStored(jobsLinks.get(i))).boxed().toList();
+			detailPageFetcher.visitAll(driver, pendingIds.stream().map(jobsLinks::get).toList(), (detailDriver, index) -> {
+				int i = pendingIds.get(index);
+				WebDriverWait detailWait = new TracedWebDriverWait(detailDriver, Duration.ofSeconds(15));
+				WebElement iframe = detailDriver.findElement(By.id("icims_content_iframe"));
+				detailDriver.switchTo().frame(iframe);
+
+				List<WebElement> headers = detailWait.until(ExpectedConditions.visibilityOfAllElementsLocatedBy(
+						By.cssSelector("h2.iCIMS_InfoMsg.iCIMS_InfoField_Job")));
+
+				List<WebElement> contents = detailWait.until(ExpectedConditions.visibilityOfAllElementsLocatedBy(
+						By.cssSelector("div.iCIMS_InfoMsg.iCIMS_InfoMsg_Job")));
+
+				String innerHTML = "";
+				if (headers.size() >= 3 && contents.size() >= 3) {
+					if (!contents.getLast().getText().replace(" ", "").isEmpty()) {
+						innerHTML = headers.get(1).getDomProperty("outerHTML")
+								+ contents.get(1).getDomProperty("outerHTML")
+								+ headers.get(2).getDomProperty("outerHTML")
+								+ contents.get(2).getDomProperty("outerHTML");
+					} else {
+						innerHTML = headers.getFirst().getDomProperty("outerHTML")
+								+ contents.getFirst().getDomProperty("outerHTML");
 					}
-				} catch (Exception e) {
-					System.out.println("Error: " + e.getMessage());
+
+				} else if (headers.size() == 1 && contents.size() == 1) {
+					innerHTML = headers.getFirst().getDomProperty("outerHTML")
+							+ contents.getFirst().getDomProperty("outerHTML");
 				}
-			}
+				innerHTML = innerHTML.replace("\n", "").replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
+
+				WebElement applyButton = detailDriver.findElements(By.cssSelector("a.iCIMS_ApplyOnlineButton"))
+						.getFirst();
+				String applyLink = applyButton.getDomAttribute("href");
+
+				JobsOffers jobOffer = new JobsOffers();
+				jobOffer.setTitle(id_jobInfo.get(i).getFirst());
+				jobOffer.setCompany("Expleo Group");
+				jobOffer.setCity(id_jobInfo.get(i).get(1));
+				jobOffer.setCountry(id_jobInfo.get(i).get(2));
+				jobOffer.setUrl(applyLink);
+				jobOffer.setSourceUrl(jobsLinks.get(i));
+				jobOffer.setContractType(id_jobInfo.get(i).get(3));
+				jobOffer.setWorkMode(id_jobInfo.get(i).get(4));
+				jobOffer.setPublishDate(id_jobInfo.get(i).get(5));
+				jobOffer.setJobField(
+						jobFields.get(i).replace(" / ", " - "));
+				jobOffer.setPost(innerHTML);
+				offersBatch.add(jobOffer);
+			});
+
+			/* Everything is written, the next run starts from page 1 again */
+			offersBatch.flush();
+			checkpoint.finish();
 
 		} catch (Exception e) {
 			System.out.println("Error: " + e.getMessage());
 
 		} finally {
-			driver.quit();
-		}
-	}
-
-	/*
-	 * Sometimes the jobs section are not in the center of the page, this will
-	 * result a problem because the element is in the html page but not clickable,
-	 * to solve this we need to perform a scroll.
-	 */
-	private void safeClick(WebDriver driver, WebElement element) {
-		try {
-			((JavascriptExecutor) driver).executeScript("arguments[0].scrollIntoView({block: 'center'});", element);
-			Thread.sleep(500);
-			element.click();
-		} catch (ElementClickInterceptedException e) {
-			System.out.println("Click intercepted, using JavaScript click instead.");
-			/*
-			 * If there is a problem in the scroll, we can't perform a click with Selenium
-			 * we click the element using javascript
-			 */
-			((JavascriptExecutor) driver).executeScript("arguments[0].click();", element);
-		} catch (Exception ex) {
-			System.out.println("Error clicking element: " + ex.getMessage());
+			webDriverPool.release(driver);
 		}
 	}
 }
@@ -0,0 +1,27 @@
+package com.websolutions.companies.collection.services;
+
+/*
+ * Common contract of every job source in this package.
+ * It lets the CollectorOrchestrator discover all the collectors as Spring beans and run them the same way,
+ * whatever the entry method of each site is (getFulljobs, getMoroccanJobs, getFullFranceJobs...).
+ * */
+public interface JobCollector {
+
+	/* The company name written in the "company" column of jobs_offers by this collector */
+	String getCompanyName();
+
+	/* Runs a complete collection for this source */
+	void collect(boolean isFullJobsCollection) throws Exception;
+
+	/*
+	 * Runs a collection in the given mode. Only the collectors of sites listing their offers newest first
+	 * override it to support INCREMENTAL, the others run it as a FULL collection.
+	 * */
+	default void collect(CrawlMode crawlMode) throws Exception {
+		collect(crawlMode != CrawlMode.RECENT);
+	}
+
+	default String getName() {
+		return getClass().getSimpleName();
+	}
+}
@@ -1,152 +1,181 @@
 package com.websolutions.companies.collection.services;
 
-import java.net.MalformedURLException;
-import java.net.URI;
+import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.logging.Logger;
+import java.util.Map;
+import java.util.stream.IntStream;
 
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
 import org.openqa.selenium.By;
-import org.openqa.selenium.ElementClickInterceptedException;
-import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.edge.EdgeOptions;
-import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.websolutions.companies.collection.browser.BrowserInteractions;
+import com.websolutions.companies.collection.browser.CardSpec;
+import com.websolutions.companies.collection.browser.DetailPageFetcher;
+import com.websolutions.companies.collection.browser.HtmlCardExtractor;
+import com.websolutions.companies.collection.browser.HttpPageFetcher;
+import com.websolutions.companies.collection.browser.TracedWebDriverWait;
+import com.websolutions.companies.collection.browser.WebDriverPool;
 import com.websolutions.companies.collection.entites.JobsOffers;
+import com.websolutions.companies.collection.ingestion.IngestionPipeline;
+import com.websolutions.companies.collection.ingestion.JobOffersBatch;
 import com.websolutions.companies.collection.locations.DetectCities;
 import com.websolutions.companies.collection.modelAI.PredictTitle;
-import com.websolutions.companies.collection.repositories.JobsOffersRepository;
 import com.websolutions.companies.collection.utils.CountryNormalizer;
 
 @Service
-public class LearJobCollection {
-
-	private static final Logger logger = Logger.getLogger(ExpleoJobCollector.class.getName());
-	private final HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
-	private final HashMap<Integer, String> jobsLinks = new HashMap<>();
-	private final JobsOffersRepository jobsOffersRepository;
-	private WebDriver driver;
-	private EdgeOptions options;
-	private boolean isFinalPageReached = false;
-	private int maxNumberOfPagesClicked = 3;
+public class LearJobCollection implements JobCollector {
+
+	private final IngestionPipeline ingestionPipeline;
+	private final WebDriverPool webDriverPool;
+	private final DetailPageFetcher detailPageFetcher;
+	private final HttpPageFetcher httpPageFetcher;
+	private final BrowserInteractions browserInteractions;
 	private String LearLink = "https://jobs.lear.com/search/";
+
+	/* The same selectors as the browser path, used when the site is crawled over plain HTTP */
+	private static final CardSpec JOB_ROW = CardSpec.of("#searchresults tr.data-row")
+			.text("title", "td.colTitle span.jobTitle")
+			.text("domain", "td.colDepartment span.jobDepartment")
+			.attribute("link", "td.colTitle span.jobTitle a", "href");
+	private static final CardSpec JOB_DETAIL = CardSpec.of("body")
+			.html("post", "div.content div.job div.joblayouttoken", 6, "div.row")
+			.text("city", "div.content div.job div.joblayouttoken", 1, "div.row span:nth-child(2)")
+			.text("country", "div.content div.job div.joblayouttoken", 2, "div.row span:nth-child(2)")
+			.attribute("applyLink", "div.applylink a.btn-primary", "href");
 	private CountryNormalizer countryNormalizer;
 	private PredictTitle predictTitle;
 
-	public LearJobCollection(JobsOffersRepository jobsOffersRepository, DetectCities detectCities,
-			CountryNormalizer countryNormalizer, PredictTitle predictTitle) {
+	public LearJobCollection(IngestionPipeline ingestionPipeline, DetectCities detectCities,
+			CountryNormalizer countryNormalizer, PredictTitle predictTitle, WebDriverPool webDriverPool,
+			BrowserInteractions browserInteractions, HttpPageFetcher httpPageFetcher,
+			DetailPageFetcher detailPageFetcher) {
 		super();
-		this.jobsOffersRepository = jobsOffersRepository;
+		this.webDriverPool = webDriverPool;
+		this.detailPageFetcher = detailPageFetcher;
+		this.httpPageFetcher = httpPageFetcher;
+		this.browserInteractions = browserInteractions;
+		this.ingestionPipeline = ingestionPipeline;
 		this.countryNormalizer = countryNormalizer;
 		this.predictTitle = predictTitle;
 	}
 
-	public void getFulljobs(boolean isFullJobsCollection) throws MalformedURLException {
-		int jobIndex = 0;
-		options = new EdgeOptions();
-		options.addArguments("--no-sandbox");
-		options.addArguments("--headless=new");
-		options.addArguments("--disable-dev-shm-usage");
-		options.addArguments("--lang=en-US");
-		options.addArguments("--disable-gpu");
-		options.addArguments("--disable-notifications");
-		options.addArguments("--window-size=1920,1080");
-
-		driver = new RemoteWebDriver(URI.create("http://selenium:4444").toURL(), options);
-		WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(5));
-
-		driver.get(LearLink);
-
-		boolean popupAppearedAndClosed = false;
-		if (!popupAppearedAndClosed) {
-			/* Check if popup cookies is appearing */
-			try {
-				WebElement popupAcceptBtn = wait.until(ExpectedConditions.elementToBeClickable(By.id("cookie-accept")));
-				safeClick(driver, popupAcceptBtn);
-			} catch (TimeoutException e) {
-				// Popup didn't appear, continue
-			}
-			popupAppearedAndClosed = true;
+	@Override
+	public String getCompanyName() {
+		return "LEAR";
+	}
+
+	@Override
+	public void collect(boolean isFullJobsCollection) throws Exception {
+		getFulljobs(isFullJobsCollection);
+	}
+
+	public void getFulljobs(boolean isFullJobsCollection) throws IOException, InterruptedException {
+		if (httpPageFetcher.isHttpMode(getCompanyName())) {
+			getFulljobsOverHttp(isFullJobsCollection);
+			return;
 		}
 
-		while (!isFinalPageReached) {
-			List<WebElement> jobs = wait.until(
-					ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector("#searchresults tr.data-row")));
-			for (WebElement job : jobs) {
-				String job_title = job.findElement(By.cssSelector("td.colTitle span.jobTitle")).getText();
-				String job_domain = job.findElement(By.cssSelector("td.colDepartment span.jobDepartment")).getText();
-				String job_link = "https://jobs.lear.com"
-						+ job.findElement(By.cssSelector("td.colTitle span.jobTitle a")).getDomAttribute("href");
+		int jobIndex = 0;
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		boolean isFinalPageReached = false;
+		int maxNumberOfPagesClicked = 3;
 
-				List<String> infos = new ArrayList<>();
-				infos.add(job_title.strip() + " - " + job_domain.strip());
+		WebDriver driver = webDriverPool.borrow(getCompanyName());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
+			WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(5));
 
-				id_jobInfo.put(jobIndex, infos);
-				jobsLinks.put(jobIndex, job_link);
-				jobIndex++;
+			driver.get(LearLink);
 
+			boolean popupAppearedAndClosed = false;
+			if (!popupAppearedAndClosed) {
+				/* Check if popup cookies is appearing */
+				try {
+					WebElement popupAcceptBtn = wait.until(ExpectedConditions.elementToBeClickable(By.id("cookie-accept")));
+					browserInteractions.safeClick(driver, popupAcceptBtn);
+				} catch (TimeoutException e) {
+					// Popup didn't appear, continue
+				}
+				popupAppearedAndClosed = true;
 			}
 
-			try {
-				List<WebElement> btnList = driver.findElements(By.cssSelector("div.pagination-well ul.pagination li"));
+			while (!isFinalPageReached) {
+				List<WebElement> jobs = wait.until(
+						ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector("#searchresults tr.data-row")));
+				for (WebElement job : jobs) {
+					String job_title = job.findElement(By.cssSelector("td.colTitle span.jobTitle")).getText();
+					String job_domain = job.findElement(By.cssSelector("td.colDepartment span.jobDepartment")).getText();
+					String job_link = "https://jobs.lear.com"
+							+ job.findElement(By.cssSelector("td.colTitle span.jobTitle a")).getDomAttribute("href");
 
-				if (btnList.isEmpty()) {
-					isFinalPageReached = true;
-				} else {
-					btnList.remove(btnList.size() - 1);
-					btnList.remove(0);
-					for (int i = 0; i < btnList.size(); i++) {
-						String cssClass = btnList.get(i).getDomAttribute("class");
-
-						if (cssClass.contains("active")) {
-							if (i + 1 < btnList.size()) {
-								WebElement nextBtn = btnList.get(i + 1).findElement(By.tagName("a"));
-								safeClick(driver, nextBtn);
-								maxNumberOfPagesClicked--;
-								if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+					List<String> infos = new ArrayList<>();
+					infos.add(job_title.strip() + " - " + job_domain.strip());
+
+					id_jobInfo.put(jobIndex, infos);
+					jobsLinks.put(jobIndex, job_link);
+					jobIndex++;
+
+				}
+
+				try {
+					List<WebElement> btnList = driver.findElements(By.cssSelector("div.pagination-well ul.pagination li"));
+
+					if (btnList.isEmpty()) {
+						isFinalPageReached = true;
+					} else {
+						btnList.remove(btnList.size() - 1);
+						btnList.remove(0);
+						for (int i = 0; i < btnList.size(); i++) {
+							String cssClass = btnList.get(i).getDomAttribute("class");
+
+							if (cssClass.contains("active")) {
+								if (i + 1 < btnList.size()) {
+									WebElement nextBtn = btnList.get(i + 1).findElement(By.tagName("a"));
+									String listingBefore = browserInteractions.listingSignature(driver, JOB_ROW.getCardSelector());
+									browserInteractions.safeClick(driver, nextBtn);
+									browserInteractions.awaitListingChange(driver, JOB_ROW.getCardSelector(), listingBefore);
+									maxNumberOfPagesClicked--;
+									if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+										isFinalPageReached = true;
+									}
+								} else {
 									isFinalPageReached = true;
 								}
-								wait.until(ExpectedConditions.stalenessOf(jobs.getFirst()));
-							} else {
-								isFinalPageReached = true;
+								break;
 							}
-							break;
 						}
 					}
+				} catch (Exception e) {
+					isFinalPageReached = true;
 				}
-			} catch (Exception e) {
-				isFinalPageReached = true;
 			}
-		}
 
-		for (int id = 0; id < jobsLinks.size(); id++) {
-			try {
-				driver.get(jobsLinks.get(id));
+			List<String> jobFields = predictTitle.predictFields(
+					IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+			detailPageFetcher.visitAll(driver,
+					IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (detailDriver, id) -> {
 				String innerHTML = "";
-				List<WebElement> extraInfosContainer = driver
+				List<WebElement> extraInfosContainer = detailDriver
 						.findElements(By.cssSelector("div.content div.job div.joblayouttoken"));
 
 				WebElement innerHTMLElement = extraInfosContainer.get(6).findElement(By.cssSelector("div.row"));
-				innerHTML = innerHTMLElement.getDomProperty("innerHTML").replace("\n", "").replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
+				innerHTML = innerHTMLElement.getDomProperty("innerHTML");
 
 				String city = extraInfosContainer.get(1).findElement(By.cssSelector("div.row span:nth-child(2)"))
 						.getText();
 				String country = extraInfosContainer.get(2).findElement(By.cssSelector("div.row span:nth-child(2)"))
 						.getText();
-				String normalizedCountry = countryNormalizer.find(country.toLowerCase());
-				if (!normalizedCountry.equals("NOT FOUND")) {
-					country = normalizedCountry;
-				}
-
 				String[] splitedCity = city.split(city);
 				if (splitedCity.length >= 1) {
 					city = splitedCity[0].strip();
@@ -158,51 +187,96 @@ public class LearJobCollection {
 				 */
 
 				String apply_link = "https://jobs.lear.com"
-						+ driver.findElement(By.cssSelector("div.applylink a.btn-primary")).getDomAttribute("href");
-
-				JobsOffers jobOffer = new JobsOffers();
-				jobOffer.setTitle(id_jobInfo.get(id).getFirst());
-				jobOffer.setCompany("LEAR");
-				jobOffer.setCity(city);
-				jobOffer.setCountry(country);
-				jobOffer.setUrl(apply_link);
-				jobOffer.setContractType("Undefined");
-				jobOffer.setWorkMode("Undefined");
-				jobOffer.setPublishDate("Undefined");
-				jobOffer.setJobField(predictTitle.predictField(id_jobInfo.get(id).getFirst()).replace(" / ", " - "));
-				jobOffer.setPost(innerHTML);
-				if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(id_jobInfo.get(id).getFirst(),
-						"LEAR", city, country, apply_link)) {
-
-					try {
-						jobsOffersRepository.save(jobOffer);
-					} catch (DataIntegrityViolationException e) {
-						logger.info("Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
-					}
-				}
-			} catch (Exception e) {
-				System.out.println(
-						"⚠️ Unexpected error at job " + id + " (" + jobsLinks.get(id) + "): " + e.getMessage());
-				continue;
+						+ detailDriver.findElement(By.cssSelector("div.applylink a.btn-primary")).getDomAttribute("href");
+
+				saveJobOffer(offersBatch, jobsLinks.get(id), id_jobInfo.get(id).getFirst(), jobFields.get(id), city,
+						country, apply_link, innerHTML);
+			});
+		} finally {
+			webDriverPool.release(driver);
+		}
+	}
+
+	/*
+	 * Same crawl as getFulljobs, but every page is downloaded with HttpPageFetcher and read with jsoup.
+	 * The next page is the link of the pagination item that follows the active one.
+	 * */
+	private void getFulljobsOverHttp(boolean isFullJobsCollection) throws IOException, InterruptedException {
+		int jobIndex = 0;
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		int maxNumberOfPagesClicked = 3;
+
+		String pageLink = LearLink;
+		while (pageLink != null) {
+			Document page = httpPageFetcher.fetch(pageLink);
+			for (Map<String, String> job : HtmlCardExtractor.extract(page, JOB_ROW)) {
+				List<String> infos = new ArrayList<>();
+				infos.add(job.get("title") + " - " + job.get("domain"));
+
+				id_jobInfo.put(jobIndex, infos);
+				jobsLinks.put(jobIndex, "https://jobs.lear.com" + job.get("link"));
+				jobIndex++;
+			}
+
+			pageLink = nextPageLink(page);
+			maxNumberOfPagesClicked--;
+			if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+				pageLink = null;
 			}
+		}
 
+		List<String> jobFields = predictTitle.predictFields(
+				IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
+			httpPageFetcher.visitAll(IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (page, id) -> {
+				List<Map<String, String>> details = HtmlCardExtractor.extract(page, JOB_DETAIL);
+				if (details.isEmpty()) {
+					throw new IllegalStateException("job description not found");
+				}
+				Map<String, String> detail = details.getFirst();
+				saveJobOffer(offersBatch, jobsLinks.get(id), id_jobInfo.get(id).getFirst(), jobFields.get(id),
+						detail.get("city"), detail.get("country"), "https://jobs.lear.com" + detail.get("applyLink"),
+						detail.get("post"));
+			});
 		}
-		closeDriver();
 	}
 
-	private void closeDriver() {
-		driver.quit();
+	private String nextPageLink(Document page) {
+		Elements btnList = page.select("div.pagination-well ul.pagination li");
+		if (btnList.size() < 2) {
+			return null;
+		}
+		List<Element> pageBtns = btnList.subList(1, btnList.size() - 1);
+		for (int i = 0; i < pageBtns.size(); i++) {
+			if (pageBtns.get(i).className().contains("active")) {
+				Element nextBtn = i + 1 < pageBtns.size() ? pageBtns.get(i + 1).selectFirst("a") : null;
+				return nextBtn == null ? null : nextBtn.absUrl("href");
+			}
+		}
+		return null;
 	}
 
-	public void safeClick(WebDriver driver, WebElement element) {
-		try {
-			((JavascriptExecutor) driver).executeScript("arguments[0].scrollIntoView({block: 'center'});", element);
-			Thread.sleep(500);
-			element.click();
-		} catch (ElementClickInterceptedException e) {
-			((JavascriptExecutor) driver).executeScript("arguments[0].click();", element);
-		} catch (Exception ex) {
-			System.out.println("Error clicking element: " + ex.getMessage());
+	private void saveJobOffer(JobOffersBatch offersBatch, String sourceUrl, String title, String jobField, String city,
+			String country, String apply_link, String innerHTML) {
+		String normalizedCountry = countryNormalizer.find(country.toLowerCase());
+		if (!normalizedCountry.equals("NOT FOUND")) {
+			country = normalizedCountry;
 		}
+
+		JobsOffers jobOffer = new JobsOffers();
+		jobOffer.setTitle(title);
+		jobOffer.setCompany("LEAR");
+		jobOffer.setCity(city);
+		jobOffer.setCountry(country);
+		jobOffer.setUrl(apply_link);
+		jobOffer.setSourceUrl(sourceUrl);
+		jobOffer.setContractType("Undefined");
+		jobOffer.setWorkMode("Undefined");
+		jobOffer.setPublishDate("Undefined");
+		jobOffer.setJobField(jobField.replace(" / ", " - "));
+		jobOffer.setPost(innerHTML.replace("\n", "").replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>",""));
+		offersBatch.add(jobOffer);
 	}
+
 }
@@ -1,220 +1,246 @@
 package com.websolutions.companies.collection.services;
 
 import java.io.IOException;
-import java.net.URI;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
-import java.util.logging.Logger;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 import org.openqa.selenium.By;
-import org.openqa.selenium.ElementClickInterceptedException;
-import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.SearchContext;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.edge.EdgeOptions;
-import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.websolutions.companies.collection.browser.BrowserInteractions;
+import com.websolutions.companies.collection.browser.CardExtractor;
+import com.websolutions.companies.collection.browser.CardSpec;
+import com.websolutions.companies.collection.browser.DetailPageFetcher;
+import com.websolutions.companies.collection.browser.JsonListingMapper.ListingCapture;
+import com.websolutions.companies.collection.browser.JsonListingMapper;
+import com.websolutions.companies.collection.browser.TracedWebDriverWait;
+import com.websolutions.companies.collection.browser.WebDriverPool;
 import com.websolutions.companies.collection.entites.JobsOffers;
-import com.websolutions.companies.collection.locations.DetectCities;
+import com.websolutions.companies.collection.ingestion.IngestionPipeline;
+import com.websolutions.companies.collection.ingestion.JobOffersBatch;
+import com.websolutions.companies.collection.ingestion.KnownCardsStreak;
+import com.websolutions.companies.collection.ingestion.KnownOffersFilter;
 import com.websolutions.companies.collection.modelAI.PredictTitle;
-import com.websolutions.companies.collection.repositories.JobsOffersRepository;
-import com.websolutions.companies.collection.utils.CountryNormalizer;
 
 @Service
-public class ScalianJobCollector {
-
-	private static final Logger logger = Logger.getLogger(ExpleoJobCollector.class.getName());
-	private final HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
-	private final HashMap<Integer, String> jobsLinks = new HashMap<>();
-	private final JobsOffersRepository jobsOffersRepository;
-	private WebDriver driver;
-	private EdgeOptions options;
+public class ScalianJobCollector implements JobCollector {
+
+	private final IngestionPipeline ingestionPipeline;
+	private final WebDriverPool webDriverPool;
+	private final KnownOffersFilter knownOffersFilter;
+	private final BrowserInteractions browserInteractions;
+	private final JsonListingMapper jsonListingMapper;
+	private final DetailPageFetcher detailPageFetcher;
+	/*
+	 * One vacancy tile of the search results, all the tiles of a page are read in one browser call.
+	 * */
+	private static final CardSpec VACANCY_TILE = CardSpec
+			.of("div.row.dragElement div.attrax-list-widget__lists div.attrax-list-widget__list div.attrax-vacancy-tile")
+			.text("title", "a.attrax-vacancy-tile__title")
+			.attribute("link", "a.attrax-vacancy-tile__title", "href")
+			.optionalText("contractType",
+					"div.attrax-vacancy-tile__option-contract-type p.attrax-vacancy-tile__item-value")
+			.optionalText("location", "div.attrax-vacancy-tile__location-freetext p.attrax-vacancy-tile__item-value");
 	private String ScalianLink = "https://careers.scalian.com/en/jobs?q=&options=&page=1";
-	private int maxNumberOfPagesClicked = 1;
-	boolean isFinalPageReached = false;
-	private final DetectCities detectCities;
-	private CountryNormalizer countryNormalizer;
 	private PredictTitle predictTitle;
 
-	public ScalianJobCollector(JobsOffersRepository jobsOffersRepository, DetectCities detectCities,
-			CountryNormalizer countryNormalizer, PredictTitle predictTitle) {
+	public ScalianJobCollector(IngestionPipeline ingestionPipeline, PredictTitle predictTitle, WebDriverPool webDriverPool,
+			DetailPageFetcher detailPageFetcher, JsonListingMapper jsonListingMapper,
+			BrowserInteractions browserInteractions, KnownOffersFilter knownOffersFilter) {
 		super();
-		this.jobsOffersRepository = jobsOffersRepository;
-		this.detectCities = detectCities;
-		this.countryNormalizer = countryNormalizer;
+		this.webDriverPool = webDriverPool;
+		this.knownOffersFilter = knownOffersFilter;
+		this.browserInteractions = browserInteractions;
+		this.jsonListingMapper = jsonListingMapper;
+		this.detailPageFetcher = detailPageFetcher;
+		this.ingestionPipeline = ingestionPipeline;
 		this.predictTitle = predictTitle;
 	}
 
-	public void getFulljobs(boolean isFullJobsCollection) throws IOException, InterruptedException {
+	@Override
+	public String getCompanyName() {
+		return "Scalian";
+	}
+
+	@Override
+	public void collect(boolean isFullJobsCollection) throws Exception {
+		collect(CrawlMode.of(isFullJobsCollection));
+	}
+
+	@Override
+	public void collect(CrawlMode crawlMode) throws Exception {
+		getFulljobs(crawlMode);
+	}
+
+	public void getFulljobs(CrawlMode crawlMode) throws IOException, InterruptedException {
 		int jobIndex = 0;
 
-		options = new EdgeOptions();
-		options.addArguments("--no-sandbox");
-		options.addArguments("--headless=new");
-		options.addArguments("--disable-dev-shm-usage");
-		options.addArguments("--lang=en-US");
-		options.addArguments("--disable-gpu");
-		options.addArguments("--disable-notifications");
-		options.addArguments("--window-size=1920,1080");
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		int maxNumberOfPagesClicked = 1;
+		boolean isFinalPageReached = false;
 
-		driver = new RemoteWebDriver(URI.create("http://selenium:4444").toURL(), options);
+		WebDriver driver = webDriverPool.borrow(getCompanyName());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
 
-		WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(15));
+			WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(15));
 
-		driver.get(ScalianLink);
+			/*
+			 * The vacancy tiles come from the Attrax search API, with a JSON mapping configured each page is read
+			 * from the API payload, otherwise (or if nothing usable was captured) from the tiles.
+			 * */
+			try (ListingCapture listingCapture = jsonListingMapper.capture(driver, getCompanyName()).orElse(null)) {
+				driver.get(ScalianLink);
 
-		boolean popupAppearedAndClosed = false;
-		if (!popupAppearedAndClosed) {
-			try {
-				WebElement shadowHost = wait
-						.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector("div.needsclick")));
+				boolean popupAppearedAndClosed = false;
+				if (!popupAppearedAndClosed) {
+					try {
+						WebElement shadowHost = wait
+								.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector("div.needsclick")));
 
-				SearchContext shadowRoot = shadowHost.getShadowRoot();
-				WebElement acceptBtn = wait.until(d -> shadowRoot.findElement(By.id("axeptio_btn_acceptAll")));
-				safeClick(driver, acceptBtn);
+						SearchContext shadowRoot = shadowHost.getShadowRoot();
+						WebElement acceptBtn = wait.until(d -> shadowRoot.findElement(By.id("axeptio_btn_acceptAll")));
+						browserInteractions.safeClick(driver, acceptBtn);
 
-			} catch (TimeoutException e) {
-				e.printStackTrace();
-			}
-			popupAppearedAndClosed = true;
-		}
+					} catch (TimeoutException e) {
+						e.printStackTrace();
+					}
+					popupAppearedAndClosed = true;
+				}
 
-		List<WebElement> numberOfJobsPerPage = wait
-				.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector(
-						"div.row.dragElement.widget.container-widget.job-results__main-content-container div.attrax-pagination__resultsperpage")))
-				.getFirst().findElements(By.tagName("a"));
-		WebElement maxNumberOfPagesButton = numberOfJobsPerPage.getLast();
-		safeClick(driver, maxNumberOfPagesButton);
-
-		while (!isFinalPageReached) {
-			List<WebElement> jobs = wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector(
-					"div.row.dragElement div.attrax-list-widget__lists div.attrax-list-widget__list div.attrax-vacancy-tile")));
-			for (WebElement job : jobs) {
-				String job_title = job.findElement(By.cssSelector("a.attrax-vacancy-tile__title")).getText();
+				List<WebElement> numberOfJobsPerPage = wait
+						.until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector(
+								"div.row.dragElement.widget.container-widget.job-results__main-content-container div.attrax-pagination__resultsperpage")))
+						.getFirst().findElements(By.tagName("a"));
+				WebElement maxNumberOfPagesButton = numberOfJobsPerPage.getLast();
+				if (listingCapture != null) {
+					listingCapture.discardPending();
+				}
+				browserInteractions.safeClick(driver, maxNumberOfPagesButton);
+
+				KnownCardsStreak knownCards = knownOffersFilter.startStreak(crawlMode == CrawlMode.INCREMENTAL);
+				while (!isFinalPageReached) {
+					List<JobsOffers> capturedJobs = listingCapture == null ? List.of()
+							: listingCapture.nextPage(Duration.ofSeconds(10));
+					if (!capturedJobs.isEmpty()) {
+						for (JobsOffers capturedJob : capturedJobs) {
+							String city = capturedJob.getCity();
+							String country = "Undefined";
+
+							List<String> infos = new ArrayList<>();
+							infos.add(capturedJob.getTitle());
+							infos.add(city);
+							infos.add(country);
+							infos.add(capturedJob.getContractType());
+
+							id_jobInfo.put(jobIndex, infos);
+							jobsLinks.put(jobIndex, capturedJob.getUrl());
+							jobIndex++;
+						}
+					} else {
+						wait.until(ExpectedConditions
+								.presenceOfAllElementsLocatedBy(By.cssSelector(VACANCY_TILE.getCardSelector())));
+						for (Map<String, String> job : CardExtractor.extract(driver, VACANCY_TILE)) {
+							String job_title = job.get("title");
 				
-				/* Contract type extraction section */
-				String contract_type = "Undefined";
-				List<WebElement> contract_elements = job.findElements(
-				    By.cssSelector("div.attrax-vacancy-tile__option-contract-type p.attrax-vacancy-tile__item-value")
-				);
-				if (!contract_elements.isEmpty()) {contract_type = contract_elements.getFirst().getText().strip();}
-
-				/* Location extraction section */
-				String location = "Undefined";
-				List<WebElement> location_elements = job.findElements(
-					By.cssSelector("div.attrax-vacancy-tile__location-freetext p.attrax-vacancy-tile__item-value")
-				);
-				if (!location_elements.isEmpty()) {location = location_elements.getFirst().getText().strip();}
+							/* Contract type and location are not displayed on every tile */
+							String contract_type = job.get("contractType") != null ? job.get("contractType") : "Undefined";
+							String location = job.get("location") != null ? job.get("location") : "Undefined";
 				
-				String job_link = "https://careers.scalian.com"
-						+ job.findElement(By.cssSelector("a.attrax-vacancy-tile__title")).getDomAttribute("href");
+							String job_link = "https://careers.scalian.com" + job.get("link");
 				
-				/*
-				String domain = job
-						.findElement(By.cssSelector(
-								"div.attrax-vacancy-tile__option-function p.attrax-vacancy-tile__item-value"))
-						.getDomProperty("innerHTML").replace("\n", "").strip();
-						*/
-
-				String city = location.strip();
-				String country = "Undefined";
-				Optional<String> detectedCountry = detectCities.getCountryForCity(city);
-				if (detectedCountry.isPresent()) {
-					country = detectedCountry.get();
-
-					String normalizedCountry = countryNormalizer.find(country.toLowerCase());
-					if (!normalizedCountry.equals("NOT FOUND")) {
-						country = normalizedCountry;
+							/*
+							String domain = job
+									.findElement(By.cssSelector(
+											"div.attrax-vacancy-tile__option-function p.attrax-vacancy-tile__item-value"))
+									.getDomProperty("innerHTML").replace("\n", "").strip();
+									*/
+
+							String city = location.strip();
+							String country = "Undefined";
+
+							List<String> infos = new ArrayList<>();
+							infos.add(job_title.strip());
+							infos.add(city);
+							infos.add(country);
+							infos.add(contract_type.strip());
+
+							id_jobInfo.put(jobIndex, infos);
+							jobsLinks.put(jobIndex, job_link);
+							jobIndex++;
+
+						}
 					}
-				}
-
-				List<String> infos = new ArrayList<>();
-				infos.add(job_title.strip());
-				infos.add(city);
-				infos.add(country);
-				infos.add(contract_type.strip());
 
-				id_jobInfo.put(jobIndex, infos);
-				jobsLinks.put(jobIndex, job_link);
-				jobIndex++;
-
-			}
-
-			try {
+					/* Incremental crawl : the listing is sorted by date, after a run of known cards everything is older */
+					if (knownCards.reachedWith(jobsLinks)) {
+						break;
+					}
 
-				WebElement nextPageButton = driver.findElement(By.cssSelector(
-						"div.row.dragElement.widget.container-widget.job-results__main-content-container div.attrax-pagination__pagination ul li.attrax-pagination__next"));
-				safeClick(driver, nextPageButton);
-				maxNumberOfPagesClicked--;
-				if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
-					isFinalPageReached = true;
+					try {
 
+						WebElement nextPageButton = driver.findElement(By.cssSelector(
+								"div.row.dragElement.widget.container-widget.job-results__main-content-container div.attrax-pagination__pagination ul li.attrax-pagination__next"));
+						String listingBefore = browserInteractions.listingSignature(driver, VACANCY_TILE.getCardSelector());
+						browserInteractions.safeClick(driver, nextPageButton);
+						browserInteractions.awaitListingChange(driver, VACANCY_TILE.getCardSelector(), listingBefore);
+						maxNumberOfPagesClicked--;
+						if (crawlMode == CrawlMode.RECENT && maxNumberOfPagesClicked == 0) {
+							isFinalPageReached = true;
+
+						}
+					} catch (Exception e) {
+						isFinalPageReached = true;
+					}
 				}
-			} catch (Exception e) {
-				isFinalPageReached = true;
 			}
-		}
 
-		for (int id = 0; id < jobsLinks.size(); id++) {
-			try {
-				driver.get(jobsLinks.get(id));
-				String innerHTML = wait
-						.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector("div.description-widget")))
-						.getDomProperty("innerHTML").replace("\n", "").replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
-
-				String apply_link = "https://careers.scalian.com"
-						+ driver.findElements(By.cssSelector("div.job-details__details-container a.jobApplyBtn"))
-								.getFirst().getDomAttribute("href");
-
-				JobsOffers jobOffer = new JobsOffers();
-				jobOffer.setTitle(id_jobInfo.get(id).getFirst());
-				jobOffer.setCompany("Scalian");
-				jobOffer.setCity(id_jobInfo.get(id).get(1));
-				jobOffer.setCountry(id_jobInfo.get(id).get(2));
-				jobOffer.setUrl(apply_link);
-				jobOffer.setContractType(id_jobInfo.get(id).get(3));
-				jobOffer.setWorkMode("Undefined");
-				jobOffer.setPublishDate("Undefined");
-				jobOffer.setJobField(predictTitle.predictField(id_jobInfo.get(id).getFirst()).replace(" / ", " - "));
-				jobOffer.setPost(innerHTML);
-				if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(id_jobInfo.get(id).getFirst(),
-						"Scalian", id_jobInfo.get(id).get(1), id_jobInfo.get(id).get(2), apply_link)) {
-
-					try {
-						jobsOffersRepository.save(jobOffer);
-					} catch (DataIntegrityViolationException e) {
-						logger.info("Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
-					}
+			List<String> jobFields = predictTitle.predictFields(
+					IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+			detailPageFetcher.visitAll(driver,
+					IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (detailDriver, id) -> {
+				WebDriverWait detailWait = new TracedWebDriverWait(detailDriver, Duration.ofSeconds(15));
+				try {
+					String innerHTML = detailWait
+							.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector("div.description-widget")))
+							.getDomProperty("innerHTML").replace("\n", "").replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
+
+					String apply_link = "https://careers.scalian.com"
+							+ detailDriver.findElements(By.cssSelector("div.job-details__details-container a.jobApplyBtn"))
+									.getFirst().getDomAttribute("href");
+
+					JobsOffers jobOffer = new JobsOffers();
+					jobOffer.setTitle(id_jobInfo.get(id).getFirst());
+					jobOffer.setCompany("Scalian");
+					jobOffer.setCity(id_jobInfo.get(id).get(1));
+					jobOffer.setCountry(id_jobInfo.get(id).get(2));
+					jobOffer.setUrl(apply_link);
+					jobOffer.setSourceUrl(jobsLinks.get(id));
+					jobOffer.setContractType(id_jobInfo.get(id).get(3));
+					jobOffer.setWorkMode("Undefined");
+					jobOffer.setPublishDate("Undefined");
+					jobOffer.setJobField(jobFields.get(id).replace(" / ", " - "));
+					jobOffer.setPost(innerHTML);
+					offersBatch.add(jobOffer);
+				} catch (Exception e) {
+					System.out.println(
+							"⚠️ Unexpected error at job " + id + " (" + jobsLinks.get(id) + "): " + e.getMessage());
 				}
-			} catch (Exception e) {
-				System.out.println(
-						"⚠️ Unexpected error at job " + id + " (" + jobsLinks.get(id) + "): " + e.getMessage());
-				continue;
-			}
 
+			});
+		} finally {
+			webDriverPool.release(driver);
 		}
-		driver.quit();
 
 	}
-
-	public void safeClick(WebDriver driver, WebElement element) {
-		try {
-			((JavascriptExecutor) driver).executeScript("arguments[0].scrollIntoView({block: 'center'});", element);
-			Thread.sleep(500);
-			element.click();
-		} catch (ElementClickInterceptedException e) {
-			((JavascriptExecutor) driver).executeScript("arguments[0].click();", element);
-		} catch (Exception ex) {
-			System.out.println("Error clicking element: " + ex.getMessage());
-		}
-	}
 }
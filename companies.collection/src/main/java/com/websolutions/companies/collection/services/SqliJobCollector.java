@@ -1,192 +1,258 @@
 package com.websolutions.companies.collection.services;
 
-import java.net.MalformedURLException;
-import java.net.URI;
+import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.logging.Logger;
+import java.util.Map;
+import java.util.stream.IntStream;
 
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 import org.openqa.selenium.By;
-import org.openqa.selenium.ElementClickInterceptedException;
-import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.edge.EdgeOptions;
-import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.websolutions.companies.collection.browser.BrowserInteractions;
+import com.websolutions.companies.collection.browser.BrowserProfile;
+import com.websolutions.companies.collection.browser.CardSpec;
+import com.websolutions.companies.collection.browser.DetailPageFetcher;
+import com.websolutions.companies.collection.browser.HtmlCardExtractor;
+import com.websolutions.companies.collection.browser.HttpPageFetcher;
+import com.websolutions.companies.collection.browser.TracedWebDriverWait;
+import com.websolutions.companies.collection.browser.WebDriverPool;
 import com.websolutions.companies.collection.entites.JobsOffers;
+import com.websolutions.companies.collection.ingestion.IngestionPipeline;
+import com.websolutions.companies.collection.ingestion.JobOffersBatch;
 import com.websolutions.companies.collection.modelAI.PredictTitle;
-import com.websolutions.companies.collection.repositories.JobsOffersRepository;
 import com.websolutions.companies.collection.utils.CountryNormalizer;
 
 @Service
-public class SqliJobCollector {
-	private static final Logger logger = Logger.getLogger(ExpleoJobCollector.class.getName());
-	private final HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
-	private final HashMap<Integer, String> jobsLinks = new HashMap<>();
-	private final JobsOffersRepository jobsOffersRepository;
-	private WebDriver driver;
-	private EdgeOptions options;
-	private boolean isFinalPageReached = false;
-	private int maxNumberOfPagesClicked = 5;
+public class SqliJobCollector implements JobCollector {
+	private final IngestionPipeline ingestionPipeline;
+	private final WebDriverPool webDriverPool;
+	private final DetailPageFetcher detailPageFetcher;
+	private final HttpPageFetcher httpPageFetcher;
+	private final BrowserInteractions browserInteractions;
 	private String SqliLink = "https://www.sqli.com/int-en/careers/our-jobs?f%5B0%5D=";
+
+	/* The same selectors as the browser path, used when the site is crawled over plain HTTP */
+	private static final CardSpec JOB_CARD = CardSpec.of("div.jobs-list div.jobs-list__jobs ul li")
+			.text("title", "p.title-h3")
+			.text("location", "dl dd:nth-child(2)")
+			.text("contractType", "dl dd:nth-child(4)")
+			.attribute("link", "p.title-h3 a", "href");
 	private CountryNormalizer countryNormalizer;
 	private PredictTitle predictTitle;
 
-	public SqliJobCollector(JobsOffersRepository jobsOffersRepository, CountryNormalizer countryNormalizer,
-			PredictTitle predictTitle) {
+	public SqliJobCollector(IngestionPipeline ingestionPipeline, CountryNormalizer countryNormalizer,
+			PredictTitle predictTitle, WebDriverPool webDriverPool, BrowserInteractions browserInteractions,
+			HttpPageFetcher httpPageFetcher, DetailPageFetcher detailPageFetcher) {
 		super();
-		this.jobsOffersRepository = jobsOffersRepository;
+		this.webDriverPool = webDriverPool;
+		this.detailPageFetcher = detailPageFetcher;
+		this.httpPageFetcher = httpPageFetcher;
+		this.browserInteractions = browserInteractions;
+		this.ingestionPipeline = ingestionPipeline;
 		this.countryNormalizer = countryNormalizer;
 		this.predictTitle = predictTitle;
 	}
 
-	public void getFulljobs(boolean isFullJobsCollection) throws MalformedURLException {
-		int jobIndex = 0;
+	@Override
+	public String getCompanyName() {
+		return "SQLI";
+	}
+
+	@Override
+	public void collect(boolean isFullJobsCollection) throws Exception {
+		getFulljobs(isFullJobsCollection);
+	}
 
-		options = new EdgeOptions();
-		options.addArguments("--no-sandbox");
-		options.addArguments("--disable-dev-shm-usage");
-		options.addArguments("--lang=en-US");
-		options.addArguments("--disable-gpu");
-		options.addArguments("--disable-notifications");
-		options.addArguments("--window-size=1920,1080");
+	public void getFulljobs(boolean isFullJobsCollection) throws IOException, InterruptedException {
+		if (httpPageFetcher.isHttpMode(getCompanyName())) {
+			getFulljobsOverHttp(isFullJobsCollection);
+			return;
+		}
 
-		driver = new RemoteWebDriver(URI.create("http://selenium:4444").toURL(), options);
+		int jobIndex = 0;
 
-		WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(15));
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		boolean isFinalPageReached = false;
+		int maxNumberOfPagesClicked = 5;
 
-		driver.get(SqliLink);
+		WebDriver driver = webDriverPool.borrow(BrowserProfile.HEADED, getCompanyName());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
 
-		boolean popupAppearedAndClosed = false;
-		if (!popupAppearedAndClosed) {
-			/* Check if popup cookies is appearing */
-			try {
-				WebElement closeBtn = driver.findElement(By.id("didomi-notice-agree-button"));
-				safeClick(driver, closeBtn);
-			} catch (TimeoutException e) {
-				e.printStackTrace();
-			}
-			popupAppearedAndClosed = true;
-		}
+			WebDriverWait wait = new TracedWebDriverWait(driver, Duration.ofSeconds(15));
 
-		while (!isFinalPageReached) {
-			List<WebElement> jobs = wait.until(ExpectedConditions
-					.presenceOfAllElementsLocatedBy(By.cssSelector("div.jobs-list div.jobs-list__jobs ul li")));
-			for (WebElement job : jobs) {
-				String job_title = job.findElement(By.cssSelector("p.title-h3")).getText();
-				String location = job.findElement(By.cssSelector("dl dd:nth-child(2)")).getText();
-				String contract_type = job.findElement(By.cssSelector("dl dd:nth-child(4)")).getText();
-				String job_link = "https://www.sqli.com"
-						+ job.findElement(By.cssSelector("p.title-h3 a")).getDomAttribute("href");
-
-				String city = "Undefined";
-				String country = "Undefined";
-
-				String[] splitLocation = location.split(",");
-				if (splitLocation.length >= 2) {
-					city = splitLocation[0].strip();
-					country = splitLocation[1].strip();
-
-					String normalizedCountry = countryNormalizer.find(country.toLowerCase());
-					if (!normalizedCountry.equals("NOT FOUND")) {
-						country = normalizedCountry;
-					}
+			driver.get(SqliLink);
+
+			boolean popupAppearedAndClosed = false;
+			if (!popupAppearedAndClosed) {
+				/* Check if popup cookies is appearing */
+				try {
+					WebElement closeBtn = driver.findElement(By.id("didomi-notice-agree-button"));
+					browserInteractions.safeClick(driver, closeBtn);
+				} catch (TimeoutException e) {
+					e.printStackTrace();
 				}
+				popupAppearedAndClosed = true;
+			}
 
-				List<String> infos = new ArrayList<>();
-				infos.add(job_title.strip());
-				infos.add(city);
-				infos.add(country);
-				infos.add(contract_type.strip());
+			while (!isFinalPageReached) {
+				List<WebElement> jobs = wait.until(ExpectedConditions
+						.presenceOfAllElementsLocatedBy(By.cssSelector("div.jobs-list div.jobs-list__jobs ul li")));
+				for (WebElement job : jobs) {
+					String job_title = job.findElement(By.cssSelector("p.title-h3")).getText();
+					String location = job.findElement(By.cssSelector("dl dd:nth-child(2)")).getText();
+					String contract_type = job.findElement(By.cssSelector("dl dd:nth-child(4)")).getText();
+					String job_link = "https://www.sqli.com"
+							+ job.findElement(By.cssSelector("p.title-h3 a")).getDomAttribute("href");
 
-				id_jobInfo.put(jobIndex, infos);
-				jobsLinks.put(jobIndex, job_link);
-				jobIndex++;
+					List<String> infos = jobInfo(job_title, location, contract_type);
+					id_jobInfo.put(jobIndex, infos);
+					jobsLinks.put(jobIndex, job_link);
+					jobIndex++;
 
-			}
+				}
 
-			try {
-				List<WebElement> btnList = driver
-						.findElements(By.cssSelector("div.jobs-list nav.pager ul li[class*='item--next']"));
+				try {
+					List<WebElement> btnList = driver
+							.findElements(By.cssSelector("div.jobs-list nav.pager ul li[class*='item--next']"));
 
-				if (btnList.isEmpty()) {
-					isFinalPageReached = true;
-				} else {
-					String btnCssClass = btnList.getFirst().findElement(By.tagName("a")).getDomAttribute("class");
-					if (btnCssClass.contains("disabled")) {
+					if (btnList.isEmpty()) {
 						isFinalPageReached = true;
 					} else {
-						safeClick(driver, btnList.getFirst());
-						maxNumberOfPagesClicked--;
-						if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+						String btnCssClass = btnList.getFirst().findElement(By.tagName("a")).getDomAttribute("class");
+						if (btnCssClass.contains("disabled")) {
 							isFinalPageReached = true;
+						} else {
+							String listingBefore = browserInteractions.listingSignature(driver, JOB_CARD.getCardSelector());
+							browserInteractions.safeClick(driver, btnList.getFirst());
+							browserInteractions.awaitListingChange(driver, JOB_CARD.getCardSelector(), listingBefore);
+							maxNumberOfPagesClicked--;
+							if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+								isFinalPageReached = true;
+							}
 						}
 					}
+				} catch (Exception e) {
+					isFinalPageReached = true;
 				}
-			} catch (Exception e) {
-				isFinalPageReached = true;
 			}
-		}
 
-		for (int id = 0; id < jobsLinks.size(); id++) {
-			try {
-				driver.get(jobsLinks.get(id));
-				String innerHTML = wait
+			List<String> jobFields = predictTitle.predictFields(
+					IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+			detailPageFetcher.visitAll(driver,
+					IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (detailDriver, id) -> {
+				WebDriverWait detailWait = new TracedWebDriverWait(detailDriver, Duration.ofSeconds(15));
+				String innerHTML = detailWait
 						.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector(
 								"div.node-job-page div.node-job-page__wrapper div.node-job-page__description")))
-						.getDomProperty("innerHTML").replace("\n", "").replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>","");
+						.getDomProperty("innerHTML");
 
-				String apply_link = driver.findElements(By.cssSelector("a.button-primary")).getFirst()
+				String apply_link = detailDriver.findElements(By.cssSelector("a.button-primary")).getFirst()
 						.getDomAttribute("href");
 
-				JobsOffers jobOffer = new JobsOffers();
-				jobOffer.setTitle(id_jobInfo.get(id).getFirst());
-				jobOffer.setCompany("SQLI");
-				jobOffer.setCity(id_jobInfo.get(id).get(1));
-				jobOffer.setCountry(id_jobInfo.get(id).get(2));
-				jobOffer.setUrl(apply_link);
-				jobOffer.setContractType(id_jobInfo.get(id).get(3));
-				jobOffer.setWorkMode("Undefined");
-				jobOffer.setPublishDate("Undefined");
-				jobOffer.setJobField(predictTitle.predictField(id_jobInfo.get(id).getFirst()).replace(" / ", " - "));
-				jobOffer.setPost(innerHTML);
-				if (!jobsOffersRepository.existsByTitleAndCompanyAndCityAndCountryAndUrl(id_jobInfo.get(id).getFirst(),
-						"SQLI", id_jobInfo.get(id).get(1), id_jobInfo.get(id).get(2), apply_link)) {
-
-					try {
-						jobsOffersRepository.save(jobOffer);
-					} catch (DataIntegrityViolationException e) {
-						logger.info("Duplicate detected: " + jobOffer.getTitle() + " @ " + jobOffer.getUrl());
-					}
-				}
-			} catch (Exception e) {
-				System.out.println(
-						"⚠️ Unexpected error at job " + id + " (" + jobsLinks.get(id) + "): " + e.getMessage());
-				continue;
+				saveJobOffer(offersBatch, jobsLinks.get(id), id_jobInfo.get(id), jobFields.get(id), apply_link,
+						innerHTML);
+			});
+		} finally {
+			webDriverPool.release(driver);
+		}
+
+	}
+
+	/*
+	 * Same crawl as getFulljobs, but every page is downloaded with HttpPageFetcher and read with jsoup.
+	 * */
+	private void getFulljobsOverHttp(boolean isFullJobsCollection) throws IOException, InterruptedException {
+		int jobIndex = 0;
+		HashMap<Integer, List<String>> id_jobInfo = new HashMap<>();
+		HashMap<Integer, String> jobsLinks = new HashMap<>();
+		int maxNumberOfPagesClicked = 5;
+
+		String pageLink = SqliLink;
+		while (pageLink != null) {
+			Document page = httpPageFetcher.fetch(pageLink);
+			for (Map<String, String> job : HtmlCardExtractor.extract(page, JOB_CARD)) {
+				id_jobInfo.put(jobIndex, jobInfo(job.get("title"), job.get("location"), job.get("contractType")));
+				jobsLinks.put(jobIndex, "https://www.sqli.com" + job.get("link"));
+				jobIndex++;
 			}
 
+			/* The "next" item of the pager has a disabled link on the last page */
+			Element nextBtn = page.selectFirst("div.jobs-list nav.pager ul li[class*='item--next'] a");
+			pageLink = null;
+			if (nextBtn != null && !nextBtn.className().contains("disabled")) {
+				pageLink = nextBtn.absUrl("href");
+			}
+			if (pageLink != null) {
+				maxNumberOfPagesClicked--;
+				if (isFullJobsCollection == false && maxNumberOfPagesClicked == 0) {
+					pageLink = null;
+				}
+			}
 		}
-		driver.quit();
 
+		List<String> jobFields = predictTitle.predictFields(
+				IntStream.range(0, id_jobInfo.size()).mapToObj(id -> id_jobInfo.get(id).getFirst()).toList());
+		try (JobOffersBatch offersBatch = ingestionPipeline.openBatch(getCompanyName())) {
+			httpPageFetcher.visitAll(IntStream.range(0, jobsLinks.size()).mapToObj(jobsLinks::get).toList(), (page, id) -> {
+				Element post = page.selectFirst("div.node-job-page div.node-job-page__wrapper div.node-job-page__description");
+				Element applyButton = page.selectFirst("a.button-primary");
+				if (post == null || applyButton == null) {
+					throw new IllegalStateException("job description not found");
+				}
+				saveJobOffer(offersBatch, jobsLinks.get(id), id_jobInfo.get(id), jobFields.get(id),
+						applyButton.attr("href"), post.html());
+			});
+		}
 	}
 
-	public void safeClick(WebDriver driver, WebElement element) {
-		try {
-			((JavascriptExecutor) driver).executeScript("arguments[0].scrollIntoView({block: 'center'});", element);
-			Thread.sleep(500);
-			element.click();
-		} catch (ElementClickInterceptedException e) {
-			((JavascriptExecutor) driver).executeScript("arguments[0].click();", element);
-		} catch (Exception ex) {
-			System.out.println("Error clicking element: " + ex.getMessage());
+	private List<String> jobInfo(String job_title, String location, String contract_type) {
+		String city = "Undefined";
+		String country = "Undefined";
+
+		String[] splitLocation = location.split(",");
+		if (splitLocation.length >= 2) {
+			city = splitLocation[0].strip();
+			country = splitLocation[1].strip();
+
+			String normalizedCountry = countryNormalizer.find(country.toLowerCase());
+			if (!normalizedCountry.equals("NOT FOUND")) {
+				country = normalizedCountry;
+			}
 		}
+
+		List<String> infos = new ArrayList<>();
+		infos.add(job_title.strip());
+		infos.add(city);
+		infos.add(country);
+		infos.add(contract_type.strip());
+		return infos;
+	}
+
+	private void saveJobOffer(JobOffersBatch offersBatch, String sourceUrl, List<String> jobInfo, String jobField,
+			String apply_link, String innerHTML) {
+		JobsOffers jobOffer = new JobsOffers();
+		jobOffer.setTitle(jobInfo.getFirst());
+		jobOffer.setCompany("SQLI");
+		jobOffer.setCity(jobInfo.get(1));
+		jobOffer.setCountry(jobInfo.get(2));
+		jobOffer.setUrl(apply_link);
+		jobOffer.setSourceUrl(sourceUrl);
+		jobOffer.setContractType(jobInfo.get(3));
+		jobOffer.setWorkMode("Undefined");
+		jobOffer.setPublishDate("Undefined");
+		jobOffer.setJobField(jobField.replace(" / ", " - "));
+		jobOffer.setPost(innerHTML.replace("\n", "").replaceAll("(?i)<p>(\\s|&nbsp;|&#160;|<br\\s*/?>)*</p>",""));
+		offersBatch.add(jobOffer);
 	}
 }
@@ -0,0 +1,43 @@
+package com.websolutions.companies.collection.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import com.websolutions.companies.collection.entites.JobsOffers;
+
+/*
+ * A fixed-size key for the identity of a job offer (title, company, city, country, url).
+ * Comparing five VARCHAR columns, some of them long URLs, means a wide index and slow comparisons. The fingerprint is
+ * a 128 bit hash of the normalized values, stored in a uuid column with a unique index : a duplicate check is a
+ * probe on 16 bytes, however long the values are.
+ *
+ * The values are stripped, lower-cased and their inner whitespace collapsed before hashing, so "Paris " and "paris"
+ * give the same fingerprint. A separator that can't appear in scraped text keeps ("ab", "c") apart from ("a", "bc").
+ * */
+public final class OfferFingerprint {
+
+	private static final char SEPARATOR = '\u001F';
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private OfferFingerprint() {
+	}
+
+	public static UUID of(JobsOffers offer) {
+		return of(offer.getTitle(), offer.getCompany(), offer.getCity(), offer.getCountry(), offer.getUrl());
+	}
+
+	public static UUID of(String title, String company, String city, String country, String url) {
+		String identity = normalize(title) + SEPARATOR + normalize(company) + SEPARATOR + normalize(city) + SEPARATOR
+				+ normalize(country) + SEPARATOR + normalize(url);
+		return UUID.nameUUIDFromBytes(identity.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static String normalize(String value) {
+		if (value == null) {
+			return "";
+		}
+		return WHITESPACE.matcher(value.strip().toLowerCase(Locale.ROOT)).replaceAll(" ");
+	}
+}
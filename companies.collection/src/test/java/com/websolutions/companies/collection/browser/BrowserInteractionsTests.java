@@ -0,0 +1,56 @@
+package com.websolutions.companies.collection.browser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import org.junit.jupiter.api.Test;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BrowserInteractionsTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final WebDriver driver = mock(WebDriver.class, withSettings().extraInterfaces(JavascriptExecutor.class));
+	private final BrowserInteractions browserInteractions = new BrowserInteractions(mock(WebDriverPool.class), 100, 500,
+			new CollectorMetrics(registry));
+
+	@Test
+	void countsTheClicksThatFail() {
+		WebElement element = mock(WebElement.class);
+		doThrow(new WebDriverException("element not interactable")).when(element).click();
+
+		browserInteractions.safeClick(driver, element);
+
+		assertEquals(1, registry.counter("collector.click.failures", "collector", "none").count());
+	}
+
+	@Test
+	void waitsForTheNextPageOfTheListing() {
+		when(((JavascriptExecutor) driver).executeScript(anyString(), any()))
+				.thenReturn("10|Data Engineer|Cloud Architect", "10|Data Engineer|Cloud Architect", "8|Test Engineer|DevOps");
+
+		String before = browserInteractions.listingSignature(driver, "li.job");
+		assertTrue(browserInteractions.awaitListingChange(driver, "li.job", before));
+	}
+
+	@Test
+	void givesUpWhenTheListingNeverChanges() {
+		when(((JavascriptExecutor) driver).executeScript(anyString(), any())).thenReturn("10|Data Engineer|Cloud Architect");
+
+		String before = browserInteractions.listingSignature(driver, "li.job");
+		assertFalse(browserInteractions.awaitListingChange(driver, "li.job", before));
+	}
+}
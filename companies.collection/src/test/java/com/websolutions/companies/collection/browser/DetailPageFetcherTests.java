@@ -0,0 +1,45 @@
+package com.websolutions.companies.collection.browser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.openqa.selenium.WebDriver;
+
+import com.websolutions.companies.collection.ingestion.KnownOffersFilter;
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+import com.websolutions.companies.collection.replay.PageRecorder;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DetailPageFetcherTests {
+
+	private static final List<String> LINKS = List.of("https://careers.example.com/jobs/1",
+			"https://careers.example.com/jobs/2", "https://careers.example.com/jobs/3");
+
+	@Test
+	void neverLoadsTheDetailPageOfAKnownOffer() {
+		KnownOffersFilter knownOffersFilter = mock(KnownOffersFilter.class);
+		when(knownOffersFilter.knownLinks(anyCollection())).thenReturn(Set.of(LINKS.get(1)));
+		/* No extra session : below the parallel threshold everything runs on the caller's driver, in order */
+		DetailPageFetcher detailPageFetcher = new DetailPageFetcher(mock(WebDriverPool.class), 0, knownOffersFilter,
+				mock(PageRecorder.class), new CollectorMetrics(new SimpleMeterRegistry()));
+		WebDriver driver = mock(WebDriver.class);
+
+		List<Integer> visited = new ArrayList<>();
+		detailPageFetcher.visitAll(driver, LINKS, (detailDriver, index) -> visited.add(index));
+
+		assertEquals(List.of(0, 2), visited);
+		verify(driver).get(LINKS.get(0));
+		verify(driver, never()).get(LINKS.get(1));
+		verify(driver).get(LINKS.get(2));
+	}
+}
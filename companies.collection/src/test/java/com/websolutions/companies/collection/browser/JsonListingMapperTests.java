@@ -0,0 +1,60 @@
+package com.websolutions.companies.collection.browser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.websolutions.companies.collection.browser.JsonListingMapper.JsonListingSpec;
+import com.websolutions.companies.collection.browser.NetworkResponseCapture.CapturedResponse;
+import com.websolutions.companies.collection.entites.JobsOffers;
+
+class JsonListingMapperTests {
+
+	private static final JsonListingSpec SPEC = new JsonListingSpec("/api/jobs", "/data/jobs", "/title", "/city", "",
+			"/contract", "", "/path", "https://careers.example.com");
+
+	private final JsonListingMapper mapper = new JsonListingMapper(new MockEnvironment(),
+			mock(NetworkResponseCapture.class));
+
+	@Test
+	void mapsTheJobsOfThePayload() {
+		String body = """
+				{"data": {"jobs": [
+				  {"title": "Data Engineer", "city": ["Casablanca", "Rabat"], "contract": "CDI", "path": "/jobs/1"},
+				  {"title": "", "city": "Paris", "path": "/jobs/2"},
+				  {"title": "DevOps Engineer", "city": null, "path": "https://jobs.example.org/3"}
+				]}}
+				""";
+
+		List<JobsOffers> offers = mapper.map(List.of(new CapturedResponse("https://careers.example.com/api/jobs", 200,
+				body)), SPEC, "Example");
+
+		/* The job without a title is dropped */
+		assertEquals(2, offers.size());
+		JobsOffers first = offers.get(0);
+		assertEquals("Data Engineer", first.getTitle());
+		assertEquals("Casablanca, Rabat", first.getCity());
+		assertEquals("Undefined", first.getCountry());
+		assertEquals("CDI", first.getContractType());
+		assertEquals("https://careers.example.com/jobs/1", first.getUrl());
+
+		JobsOffers second = offers.get(1);
+		assertEquals("Undefined", second.getCity());
+		assertEquals("https://jobs.example.org/3", second.getUrl());
+	}
+
+	@Test
+	void ignoresErrorsAndPayloadsOfAnotherShape() {
+		List<JobsOffers> offers = mapper.map(List.of(
+				new CapturedResponse("https://careers.example.com/api/jobs", 500, "{\"data\": {\"jobs\": []}}"),
+				new CapturedResponse("https://careers.example.com/api/jobs", 200, "{\"results\": [{\"title\": \"x\"}]}"),
+				new CapturedResponse("https://careers.example.com/api/jobs", 200, "not json")), SPEC, "Example");
+
+		assertTrue(offers.isEmpty());
+	}
+}
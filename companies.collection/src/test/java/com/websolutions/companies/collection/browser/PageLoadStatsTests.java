@@ -0,0 +1,59 @@
+package com.websolutions.companies.collection.browser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PageLoadStatsTests {
+
+	@Test
+	void computesNearestRankPercentiles() {
+		PageLoadStats stats = new PageLoadStats(new CollectorMetrics(new SimpleMeterRegistry()));
+		/* 1 to 100 ms, recorded out of order */
+		for (int millis = 100; millis >= 1; millis--) {
+			stats.record("https://careers.example.com/jobs/" + millis, "http", TimeUnit.MILLISECONDS.toNanos(millis));
+		}
+
+		PageLoadStats.PageLoadStat overall = stats.overall();
+		assertEquals(100, overall.count());
+		assertEquals(50, overall.p50Millis());
+		assertEquals(99, overall.p99Millis());
+		assertEquals(100, overall.maxMillis());
+	}
+
+	@Test
+	void keepsTheHostsApart() {
+		PageLoadStats stats = new PageLoadStats(new CollectorMetrics(new SimpleMeterRegistry()));
+		stats.record("https://careers.example.com/jobs/1", "browser", TimeUnit.MILLISECONDS.toNanos(10));
+		stats.record("https://careers.example.com/jobs/2", "browser", TimeUnit.MILLISECONDS.toNanos(30));
+		stats.record("https://jobs.example.org/offer/1", "http", TimeUnit.MILLISECONDS.toNanos(1000));
+
+		List<PageLoadStats.PageLoadStat> hosts = stats.stats();
+		assertEquals(2, hosts.size());
+		PageLoadStats.PageLoadStat careers = hosts.get(0);
+		assertEquals(2, careers.count());
+		/* With 2 samples the median is the first one and the 99th percentile the last one */
+		assertEquals(10, careers.p50Millis());
+		assertEquals(30, careers.p99Millis());
+		assertEquals(1000, hosts.get(1).p50Millis());
+
+		PageLoadStats.PageLoadStat overall = stats.overall();
+		assertEquals(3, overall.count());
+		assertEquals(30, overall.p50Millis());
+		assertEquals(1000, overall.p99Millis());
+	}
+
+	@Test
+	void reportsZeroWithoutSamples() {
+		PageLoadStats.PageLoadStat overall = new PageLoadStats(new CollectorMetrics(new SimpleMeterRegistry())).overall();
+		assertEquals(0, overall.count());
+		assertEquals(0, overall.p99Millis());
+	}
+}
@@ -0,0 +1,40 @@
+package com.websolutions.companies.collection.browser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.events.EventFiringDecorator;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+import com.websolutions.companies.collection.ratelimit.HostRateLimiter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SessionListenerTests {
+
+	@Test
+	void countsAndTimesEveryPageLoad() {
+		CollectorMetrics metrics = new CollectorMetrics(new SimpleMeterRegistry());
+		PageLoadStats pageLoadStats = new PageLoadStats(metrics);
+		AtomicInteger pageLoads = new AtomicInteger();
+		LongAdder commands = new LongAdder();
+		WebDriverPool.SessionListener listener = new WebDriverPool.SessionListener(pageLoads, commands,
+				new HostRateLimiter(new MockEnvironment(), 0, 1, metrics), pageLoadStats);
+
+		WebDriver raw = mock(WebDriver.class);
+		when(raw.navigate()).thenReturn(mock(WebDriver.Navigation.class));
+		WebDriver driver = new EventFiringDecorator<WebDriver>(listener).decorate(raw);
+		driver.get("https://careers.example.com/jobs");
+		driver.navigate().to("https://careers.example.com/jobs?page=2");
+
+		assertEquals(2, pageLoads.get());
+		assertEquals(2, pageLoadStats.overall().count());
+	}
+}
@@ -0,0 +1,107 @@
+package com.websolutions.companies.collection.checkpoints;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.websolutions.companies.collection.entites.JobsOffers;
+import com.websolutions.companies.collection.services.CrawlMode;
+
+class CrawlCheckpointStoreTests {
+
+	private static final String COLLECTOR = "ExpleoJobCollector";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void resumesWhereTheCrawlStopped() {
+		CrawlCheckpointStore store = store(Duration.ofDays(1));
+		CrawlCheckpoint checkpoint = store.resume(COLLECTOR, CrawlMode.FULL);
+		assertFalse(checkpoint.restoreListing(new HashMap<>(), new HashMap<>()));
+
+		Map<Integer, List<String>> jobInfo = new HashMap<>();
+		Map<Integer, String> jobsLinks = new HashMap<>();
+		jobInfo.put(0, List.of("Data Engineer", "Paris", "France"));
+		jobsLinks.put(0, "https://careers.example.com/jobs/1");
+		checkpoint.pageRead(1, jobInfo, jobsLinks);
+		jobInfo.put(1, List.of("Cloud Architect", "Lyon", "France"));
+		jobsLinks.put(1, "https://careers.example.com/jobs/2");
+		checkpoint.listingRead(jobInfo, jobsLinks);
+		JobsOffers stored = new JobsOffers();
+		stored.setSourceUrl("https://careers.example.com/jobs/1");
+		checkpoint.stored(List.of(stored));
+
+		CrawlCheckpoint resumed = store(Duration.ofDays(1)).resume(COLLECTOR, CrawlMode.FULL);
+		Map<Integer, List<String>> restoredInfo = new HashMap<>();
+		Map<Integer, String> restoredLinks = new HashMap<>();
+		assertTrue(resumed.restoreListing(restoredInfo, restoredLinks));
+		assertEquals(jobInfo, restoredInfo);
+		assertEquals(jobsLinks, restoredLinks);
+		assertEquals(1, resumed.pagesRead());
+		assertTrue(resumed.isStored("https://careers.example.com/jobs/1"));
+		assertFalse(resumed.isStored("https://careers.example.com/jobs/2"));
+
+		resumed.finish();
+		assertFalse(Files.exists(directory.resolve(COLLECTOR + ".json")));
+		assertEquals(0, store.resume(COLLECTOR, CrawlMode.FULL).pagesRead());
+	}
+
+	@Test
+	void startsOverAfterACrawlInAnotherMode() {
+		CrawlCheckpointStore store = store(Duration.ofDays(1));
+		store.resume(COLLECTOR, CrawlMode.RECENT).pageRead(1, Map.of(0, List.of("Data Engineer")),
+				Map.of(0, "https://careers.example.com/jobs/1"));
+
+		CrawlCheckpoint checkpoint = store.resume(COLLECTOR, CrawlMode.FULL);
+		assertEquals(0, checkpoint.pagesRead());
+		assertFalse(Files.exists(directory.resolve(COLLECTOR + ".json")));
+	}
+
+	@Test
+	void startsOverAfterAnOldCheckpoint() {
+		CrawlCheckpointStore store = store(Duration.ofDays(1));
+		long twoDaysAgo = System.currentTimeMillis() - Duration.ofDays(2).toMillis();
+		store.save(COLLECTOR, new CrawlCheckpoint.State(CrawlMode.FULL, twoDaysAgo, 3, false,
+				Map.of(0, List.of("Data Engineer")), Map.of(0, "https://careers.example.com/jobs/1"), Set.of()));
+
+		assertEquals(3, store(Duration.ofDays(3)).resume(COLLECTOR, CrawlMode.FULL).pagesRead());
+		assertEquals(0, store.resume(COLLECTOR, CrawlMode.FULL).pagesRead());
+		assertFalse(Files.exists(directory.resolve(COLLECTOR + ".json")));
+	}
+
+	@Test
+	void keepsEveryOfferStoredByParallelDetailThreads() {
+		CrawlCheckpoint checkpoint = store(Duration.ofDays(1)).resume(COLLECTOR, CrawlMode.FULL);
+		/* The file writes run outside the state lock, an older copy written last would lose offers */
+		try (ExecutorService detailThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < 50; i++) {
+				JobsOffers stored = new JobsOffers();
+				stored.setSourceUrl("https://careers.example.com/jobs/" + i);
+				detailThreads.submit(() -> checkpoint.stored(List.of(stored)));
+			}
+		}
+
+		CrawlCheckpoint resumed = store(Duration.ofDays(1)).resume(COLLECTOR, CrawlMode.FULL);
+		for (int i = 0; i < 50; i++) {
+			assertTrue(resumed.isStored("https://careers.example.com/jobs/" + i));
+		}
+	}
+
+	private CrawlCheckpointStore store(Duration maxAge) {
+		return new CrawlCheckpointStore(directory.toString(), true, maxAge);
+	}
+}
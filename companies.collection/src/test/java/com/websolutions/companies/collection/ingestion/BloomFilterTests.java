@@ -0,0 +1,48 @@
+package com.websolutions.companies.collection.ingestion;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class BloomFilterTests {
+
+	private static final int ENTRIES = 20_000;
+
+	@Test
+	void neverMissesAnAddedUrl() {
+		KnownOffersFilter.BloomFilter filter = new KnownOffersFilter.BloomFilter(ENTRIES, 0.01);
+		for (int i = 0; i < ENTRIES; i++) {
+			filter.add(url(i));
+		}
+		for (int i = 0; i < ENTRIES; i++) {
+			assertTrue(filter.mightContain(url(i)), url(i));
+		}
+	}
+
+	@Test
+	void keepsTheConfiguredFalsePositiveRate() {
+		KnownOffersFilter.BloomFilter filter = new KnownOffersFilter.BloomFilter(ENTRIES, 0.01);
+		for (int i = 0; i < ENTRIES; i++) {
+			filter.add(url(i));
+		}
+		int falsePositives = 0;
+		for (int i = ENTRIES; i < 2 * ENTRIES; i++) {
+			if (filter.mightContain(url(i))) {
+				falsePositives++;
+			}
+		}
+		/* 1% of 20 000 is 200, the margin covers the rounding of the bit array to whole words */
+		assertTrue(falsePositives < 300, falsePositives + " false positives");
+	}
+
+	@Test
+	void sizesTheBitArrayForTheEntries() {
+		/* -n ln(p) / ln(2)^2 : about 9.6 bits per entry for 1% */
+		long bytes = new KnownOffersFilter.BloomFilter(ENTRIES, 0.01).sizeInBytes();
+		assertTrue(bytes >= ENTRIES * 9.5 / 8 && bytes <= ENTRIES * 9.7 / 8 + 8, bytes + " bytes");
+	}
+
+	private static String url(int i) {
+		return "https://careers.example.com/jobs/" + i;
+	}
+}
@@ -0,0 +1,52 @@
+package com.websolutions.companies.collection.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTests {
+
+	@Test
+	void servesTheBurstWithoutWaiting() {
+		TokenBucket bucket = new TokenBucket(1, 3);
+		assertEquals(0, bucket.reserve());
+		assertEquals(0, bucket.reserve());
+		assertEquals(0, bucket.reserve());
+		assertTrue(bucket.reserve() > 0);
+	}
+
+	@Test
+	void queuesTheRequestsAfterTheBurst() {
+		TokenBucket bucket = new TokenBucket(2, 1);
+		assertEquals(0, bucket.reserve());
+
+		/* 2 requests per second : the next tokens come back after 500 ms, then 1 s */
+		long first = bucket.reserve();
+		long second = bucket.reserve();
+		assertTrue(first > TimeUnit.MILLISECONDS.toNanos(400) && first <= TimeUnit.MILLISECONDS.toNanos(500), "" + first);
+		assertTrue(second > TimeUnit.MILLISECONDS.toNanos(900) && second <= TimeUnit.SECONDS.toNanos(1), "" + second);
+	}
+
+	@Test
+	void refillsUpToTheBurst() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(100, 2);
+		assertEquals(0, bucket.reserve());
+		assertEquals(0, bucket.reserve());
+
+		/* 100 ms give back 10 tokens, only 2 are kept */
+		Thread.sleep(100);
+		assertEquals(0, bucket.reserve());
+		assertEquals(0, bucket.reserve());
+		assertTrue(bucket.reserve() > 0);
+	}
+
+	@Test
+	void keepsAtLeastOneToken() {
+		TokenBucket bucket = new TokenBucket(1, 0);
+		assertEquals(1, bucket.burst());
+		assertEquals(0, bucket.reserve());
+	}
+}
@@ -0,0 +1,84 @@
+package com.websolutions.companies.collection.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReplayServerTests {
+
+	private static final String LISTING = "https://careers.example.com/jobs?page=2";
+	private static final String API = "https://careers.example.com/api/jobs?offset=50";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void servesRecordedPagesOffline() throws Exception {
+		Path file = directory.resolve("ExampleJobCollector.zip");
+		try (FixtureArchive.Writer writer = FixtureArchive.create(file)) {
+			writer.add(LISTING, 200, "text/html",
+					"<ul><li><a href=\"/jobs/42\">Embedded Software Engineer</a></li></ul>".getBytes(StandardCharsets.UTF_8));
+			writer.add(API, 200, "application/json", "{\"jobs\":[{\"title\":\"Data Engineer\"}]}".getBytes(StandardCharsets.UTF_8));
+		}
+
+		FixtureArchive archive = FixtureArchive.read(file);
+		assertEquals(2, archive.size());
+
+		HttpClient client = HttpClient.newHttpClient();
+		try (ReplayServer server = ReplayServer.start(archive)) {
+			HttpResponse<String> listing = get(client, server.localUrl(LISTING));
+			assertEquals(200, listing.statusCode());
+			Document page = Jsoup.parse(listing.body(), LISTING);
+			assertEquals("Embedded Software Engineer", page.selectFirst("a").text());
+			assertEquals("https://careers.example.com/jobs/42", page.selectFirst("a").absUrl("href"));
+
+			HttpResponse<String> api = get(client, server.localUrl(API));
+			assertEquals(200, api.statusCode());
+			assertTrue(api.headers().firstValue("Content-Type").orElse("").startsWith("application/json"));
+			assertTrue(api.body().contains("Data Engineer"));
+
+			assertEquals(404, get(client, server.localUrl("https://careers.example.com/jobs?page=3")).statusCode());
+			assertEquals(2, server.servedRequests());
+			assertEquals(1, server.missingRequests());
+		}
+	}
+
+	@Test
+	void servesLinksResolvedAgainstTheReplayAddress() throws Exception {
+		Path file = directory.resolve("ExampleJobCollector.zip");
+		try (FixtureArchive.Writer writer = FixtureArchive.create(file)) {
+			writer.add("https://careers.example.com/jobs/42", 200, "text/html",
+					"<h1>Embedded Software Engineer</h1>".getBytes(StandardCharsets.UTF_8));
+		}
+
+		HttpClient client = HttpClient.newHttpClient();
+		try (ReplayServer server = ReplayServer.start(FixtureArchive.read(file),
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), "localhost")) {
+			assertTrue(server.baseUrl().startsWith("http://localhost:"));
+
+			/* A relative href of a replayed page, resolved by the browser against the replay address */
+			String resolved = server.baseUrl() + "/jobs/42";
+			assertEquals(resolved, server.localUrl(resolved));
+			HttpResponse<String> detail = get(client, resolved);
+			assertEquals(200, detail.statusCode());
+			assertTrue(detail.body().contains("Embedded Software Engineer"));
+		}
+	}
+
+	private static HttpResponse<String> get(HttpClient client, String url) throws Exception {
+		return client.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+	}
+}
@@ -0,0 +1,162 @@
+package com.websolutions.companies.collection.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.websolutions.companies.collection.browser.BrowserInteractions;
+import com.websolutions.companies.collection.browser.DetailPageFetcher;
+import com.websolutions.companies.collection.browser.HttpPageFetcher;
+import com.websolutions.companies.collection.browser.PageLoadStats;
+import com.websolutions.companies.collection.browser.WebDriverPool;
+import com.websolutions.companies.collection.entites.JobsOffers;
+import com.websolutions.companies.collection.ingestion.IngestionPipeline;
+import com.websolutions.companies.collection.ingestion.JobOffersBatch;
+import com.websolutions.companies.collection.ingestion.KnownOffersFilter;
+import com.websolutions.companies.collection.metrics.CollectorMetrics;
+import com.websolutions.companies.collection.modelAI.PredictTitle;
+import com.websolutions.companies.collection.orchestration.CollectorContext;
+import com.websolutions.companies.collection.ratelimit.HostRateLimiter;
+import com.websolutions.companies.collection.replay.FixtureArchive;
+import com.websolutions.companies.collection.replay.PageRecorder;
+import com.websolutions.companies.collection.replay.ReplayServer;
+import com.websolutions.companies.collection.utils.CountryNormalizer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/*
+ * Crawls Devoteam over HTTP from recorded pages : the site is an archive written by hand, a first crawl served from it
+ * is recorded by PageRecorder, and a second crawl replays that recording. Both must parse the same offers.
+ * */
+class DevoteamReplayTests {
+
+	private static final String LISTING = "https://www.devoteam.com/fr/jobs/";
+	private static final String LISTING_PAGE_2 = "https://www.devoteam.com/fr/jobs/page/2/";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void parsesRecordedPagesReplayedOverHttp() throws Exception {
+		Path site = directory.resolve("site.zip");
+		try (FixtureArchive.Writer writer = FixtureArchive.create(site)) {
+			html(writer, LISTING, listing(new String[][] {
+					{ "https://www.devoteam.com/fr/jobs/data-engineer/", "Data Engineer, CDI" },
+					{ "https://www.devoteam.com/fr/jobs/cloud-architect/", "Cloud Architect, Freelance" } }, "/fr/jobs/page/2/"));
+			html(writer, LISTING_PAGE_2, listing(new String[][] {
+					{ "https://www.devoteam.com/fr/jobs/embedded-developer/", "Embedded Developer, CDI" } }, null));
+			html(writer, "https://www.devoteam.com/fr/jobs/data-engineer/", detail("Paris • France", "data-1"));
+			html(writer, "https://www.devoteam.com/fr/jobs/cloud-architect/", detail("Lyon • France", "cloud-2"));
+			html(writer, "https://www.devoteam.com/fr/jobs/embedded-developer/", detail("Munich • Deutschland", "embedded-3"));
+		}
+
+		Path recordings = directory.resolve("recordings");
+		PageRecorder recorder = new PageRecorder(true, recordings.toString());
+		List<JobsOffers> recorded;
+		try (ReplayServer server = ReplayServer.start(FixtureArchive.read(site));
+				CollectorContext.Scope scope = CollectorContext.enter("Devoteam");
+				PageRecorder.Recording recording = recorder.start("Devoteam")) {
+			recorded = crawl(server.baseUrl(), recorder);
+		}
+
+		FixtureArchive recording = FixtureArchive.read(recordings.resolve("Devoteam.zip"));
+		assertEquals(5, recording.size());
+		assertTrue(recording.find(LISTING_PAGE_2).isPresent());
+
+		List<JobsOffers> replayed;
+		try (ReplayServer server = ReplayServer.start(recording)) {
+			replayed = crawl(server.baseUrl(), new PageRecorder(false, recordings.toString()));
+		}
+
+		for (List<JobsOffers> offers : List.of(recorded, replayed)) {
+			assertEquals(3, offers.size());
+			JobsOffers cloud = offers.get(0);
+			assertEquals("Cloud Architect", cloud.getTitle());
+			assertEquals("Freelance", cloud.getContractType());
+			assertEquals("Lyon", cloud.getCity());
+			assertEquals("France", cloud.getCountry());
+			assertEquals("https://apply.devoteam.com/cloud-2", cloud.getUrl());
+			assertEquals("https://www.devoteam.com/fr/jobs/cloud-architect/", cloud.getSourceUrl());
+			assertEquals("IT - Software", cloud.getJobField());
+			assertEquals("<p>Offer cloud-2</p>", cloud.getPost());
+
+			JobsOffers embedded = offers.get(2);
+			assertEquals("Embedded Developer", embedded.getTitle());
+			assertEquals("Munich", embedded.getCity());
+			assertEquals("Germany", embedded.getCountry());
+		}
+	}
+
+	/*
+	 * Runs the collector over HTTP against the replay server, with the offers added to its batch returned by title.
+	 * */
+	private static List<JobsOffers> crawl(String replayServeFrom, PageRecorder recorder) throws Exception {
+		CollectorMetrics metrics = new CollectorMetrics(new SimpleMeterRegistry());
+		MockEnvironment environment = new MockEnvironment().withProperty("http-fetch.mode.Devoteam", "http");
+		HttpPageFetcher httpPageFetcher = new HttpPageFetcher(environment, "Mozilla/5.0", 10, 4, replayServeFrom,
+				new HostRateLimiter(environment, 0, 1, metrics), mock(KnownOffersFilter.class), recorder,
+				new PageLoadStats(metrics), metrics);
+
+		List<JobsOffers> offers = Collections.synchronizedList(new ArrayList<>());
+		JobOffersBatch batch = mock(JobOffersBatch.class);
+		doAnswer(invocation -> offers.add(invocation.getArgument(0))).when(batch).add(any());
+		IngestionPipeline ingestionPipeline = mock(IngestionPipeline.class);
+		when(ingestionPipeline.openBatch(anyString())).thenReturn(batch);
+		PredictTitle predictTitle = mock(PredictTitle.class);
+		when(predictTitle.predictFields(anyList()))
+				.thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).stream().map(title -> "IT / Software").toList());
+
+		try {
+			new DevoteamJobCollector(ingestionPipeline, new CountryNormalizer(), predictTitle, mock(WebDriverPool.class),
+					mock(BrowserInteractions.class), httpPageFetcher, mock(DetailPageFetcher.class)).collect(true);
+		} finally {
+			httpPageFetcher.shutdown();
+		}
+
+		List<JobsOffers> sorted = new ArrayList<>(offers);
+		sorted.sort(Comparator.comparing(JobsOffers::getTitle));
+		return sorted;
+	}
+
+	private static String listing(String[][] cards, String nextPage) {
+		StringBuilder html = new StringBuilder("<html><body><div class=\"jobs-list\">");
+		for (String[] card : cards) {
+			html.append("<div class=\"container\"><div class=\"wrapper\"><a href=\"").append(card[0])
+					.append("\"><h2 class=\"title\">").append(card[1]).append("</h2></a></div></div>");
+		}
+		html.append("</div><div class=\"pagination-wrapper\"><a class=\"active\" href=\"/fr/jobs/\">1</a>");
+		if (nextPage == null) {
+			html.append("<a class=\"next\" href=\"#\">&gt;</a>");
+		} else {
+			html.append("<a class=\"next active\" href=\"").append(nextPage).append("\">&gt;</a>");
+		}
+		return html.append("</div></body></html>").toString();
+	}
+
+	private static String detail(String location, String reference) {
+		return "<html><body><div class=\"wp-block-acf-post-header\"><div class=\"wp-block-group\"><p>" + location
+				+ "</p></div></div><div class=\"entry-content wp-block-post-content\"><div class=\"description\">"
+				+ "<p>Offer " + reference + "</p>\n<p>&nbsp;</p></div><div class=\"wp-block-buttons\">"
+				+ "<a href=\"https://apply.devoteam.com/" + reference + "\">Postuler</a></div></div></body></html>";
+	}
+
+	private static void html(FixtureArchive.Writer writer, String url, String html) throws Exception {
+		writer.add(url, 200, "text/html", html.getBytes(StandardCharsets.UTF_8));
+	}
+}
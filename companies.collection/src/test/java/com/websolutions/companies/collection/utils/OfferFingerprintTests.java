@@ -0,0 +1,46 @@
+package com.websolutions.companies.collection.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+import com.websolutions.companies.collection.entites.JobsOffers;
+
+class OfferFingerprintTests {
+
+	@Test
+	void normalizesCaseAndWhitespace() {
+		assertEquals("data engineer", OfferFingerprint.normalize("  Data \t Engineer\n"));
+		assertEquals("", OfferFingerprint.normalize(null));
+		assertEquals(OfferFingerprint.of("Data Engineer", "Devoteam", "Paris", "France", "https://apply/1"),
+				OfferFingerprint.of(" data  ENGINEER", "devoteam ", "paris", "FRANCE", "https://apply/1 "));
+	}
+
+	@Test
+	void keepsTheFieldsApart() {
+		assertNotEquals(OfferFingerprint.of("ab", "c", "Paris", "France", "https://apply/1"),
+				OfferFingerprint.of("a", "bc", "Paris", "France", "https://apply/1"));
+		assertNotEquals(OfferFingerprint.of("Data Engineer", "Devoteam", "Paris", "France", "https://apply/1"),
+				OfferFingerprint.of("Data Engineer", "Devoteam", "Paris", "France", "https://apply/2"));
+		assertNotEquals(OfferFingerprint.of("Data Engineer", "Devoteam", null, "France", "https://apply/1"),
+				OfferFingerprint.of("Data Engineer", "Devoteam", "Paris", "France", "https://apply/1"));
+	}
+
+	@Test
+	void fingerprintsAnOfferByItsIdentity() {
+		JobsOffers offer = new JobsOffers();
+		offer.setTitle("Data Engineer");
+		offer.setCompany("Devoteam");
+		offer.setCity("Paris");
+		offer.setCountry("France");
+		offer.setUrl("https://apply/1");
+		offer.setPost("<p>Description</p>");
+
+		assertEquals(OfferFingerprint.of("Data Engineer", "Devoteam", "Paris", "France", "https://apply/1"),
+				OfferFingerprint.of(offer));
+		offer.setPost("<p>Another description</p>");
+		assertEquals(OfferFingerprint.of("Data Engineer", "Devoteam", "Paris", "France", "https://apply/1"),
+				OfferFingerprint.of(offer));
+	}
+}